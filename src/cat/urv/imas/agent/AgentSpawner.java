@@ -0,0 +1,130 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.agent;
+
+import jade.wrapper.AgentContainer;
+import jade.wrapper.AgentController;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk creation of agents. Agents are added first and then created and
+ * started all together by a pool of threads, instead of one by one from the
+ * agent thread. When several containers are given, agents are dealt among
+ * them in round robin, and every container gets its own threads.
+ */
+public class AgentSpawner {
+
+    /**
+     * Threads creating agents on a single container.
+     */
+    public static final int THREADS_PER_CONTAINER = 4;
+
+    /**
+     * Agents to create.
+     */
+    private final List<String> names = new ArrayList<>();
+    private final List<String> classNames = new ArrayList<>();
+    private final List<Object[]> arguments = new ArrayList<>();
+    /**
+     * Container of every agent, or null to deal it in round robin.
+     */
+    private final List<AgentContainer> targets = new ArrayList<>();
+
+    /**
+     * Adds an agent to create in any container.
+     *
+     * @param agentName String Agent name
+     * @param className String Agent class
+     * @param args Object[] Arguments; null, if they are not needed
+     */
+    public void add(String agentName, String className, Object[] args) {
+        add(null, agentName, className, args);
+    }
+
+    /**
+     * Adds an agent to create in the given container.
+     *
+     * @param container container of the agent; null for any.
+     * @param agentName String Agent name
+     * @param className String Agent class
+     * @param args Object[] Arguments; null, if they are not needed
+     */
+    public void add(AgentContainer container, String agentName, String className, Object[] args) {
+        targets.add(container);
+        names.add(agentName);
+        classNames.add(className);
+        arguments.add(args);
+    }
+
+    /**
+     * Number of agents added.
+     *
+     * @return agents to create.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Creates and starts all the added agents, and waits until all of them
+     * are started. Agents that cannot be created are reported on the error
+     * output, as UtilsAgents.createAgent does.
+     *
+     * @param containers containers to deal the agents without container.
+     * @return number of agents started.
+     */
+    public int spawn(List<AgentContainer> containers) {
+        int threads = Math.max(1, Math.min(size(), containers.size() * THREADS_PER_CONTAINER));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger started = new AtomicInteger();
+        List<Future<?>> pending = new ArrayList<>(size());
+        try {
+            for (int i = 0; i < size(); i++) {
+                AgentContainer container = (targets.get(i) != null)
+                        ? targets.get(i) : containers.get(i % containers.size());
+                String name = names.get(i);
+                String className = classNames.get(i);
+                Object[] args = arguments.get(i);
+                pending.add(pool.submit(() -> {
+                    try {
+                        AgentController controller = container.createNewAgent(name, className, args);
+                        controller.start();
+                        started.incrementAndGet();
+                    } catch (Exception e) {
+                        System.err.println("ERROR: Cannot create agent " + name + " of class " + className);
+                        e.printStackTrace();
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: Agent creation interrupted");
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+        return started.get();
+    }
+}
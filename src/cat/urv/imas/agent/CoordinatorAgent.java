@@ -18,7 +18,11 @@
 package cat.urv.imas.agent;
 
 import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.behaviour.coordinator.MapDeltaBehaviour;
 import cat.urv.imas.behaviour.coordinator.RequesterBehaviour;
+import cat.urv.imas.behaviour.coordinator.StepBarrierBehaviour;
+import cat.urv.imas.onthology.GarbageTaskBatch;
+import cat.urv.imas.onthology.MapDelta;
 import cat.urv.imas.onthology.MessageContent;
 import jade.core.*;
 import jade.domain.*;
@@ -41,6 +45,19 @@ public class CoordinatorAgent extends ImasAgent {
      * System agent id.
      */
     private AID systemAgent;
+    /**
+     * Harvester Coordinator agent id.
+     */
+    private AID harvesterCoordinatorAgent;
+    /**
+     * True while waiting for a snapshot of the game settings; changes of the
+     * steps are ignored meanwhile.
+     */
+    private boolean waitingForMap = false;
+    /**
+     * How scouts and harvesters are run, resolved at setup.
+     */
+    private ExecutionMode mode;
 
     /**
      * Builds the coordinator agent.
@@ -60,6 +77,8 @@ public class CoordinatorAgent extends ImasAgent {
         this.setEnabledO2ACommunication(true, 1);
         /* ********************************************************************/
 
+        this.mode = ExecutionMode.fromProperty();
+
         // Register the agent to the DF
         ServiceDescription sd1 = new ServiceDescription();
         sd1.setType(AgentType.COORDINATOR.toString());
@@ -83,7 +102,29 @@ public class CoordinatorAgent extends ImasAgent {
         this.systemAgent = UtilsAgents.searchAgent(this, searchCriterion);
         // searchAgent is a blocking method, so we will obtain always a correct AID
 
-        /* ********************************************************************/
+        // search Harvester Coordinator Agent
+        searchCriterion = new ServiceDescription();
+        searchCriterion.setType(AgentType.HARVESTER_COORDINATOR.toString());
+        this.harvesterCoordinatorAgent = UtilsAgents.searchAgent(this, searchCriterion);
+        // searchAgent is a blocking method, so we will obtain always a correct AID
+
+        requestMap();
+
+        // changes of every step are applied on the received game settings
+        this.addBehaviour(new MapDeltaBehaviour(this));
+
+        // end of every step is reported up to the System agent
+        this.addBehaviour(new StepBarrierBehaviour(this, this.systemAgent));
+
+        // setup finished. When we receive the last inform, the agent itself will add
+        // a behaviour to send/receive actions
+    }
+
+    /**
+     * Requests a snapshot of the whole game settings to the System agent.
+     * It is done at startup and whenever a change of step cannot be applied.
+     */
+    public void requestMap() {
         ACLMessage initialRequest = new ACLMessage(ACLMessage.REQUEST);
         initialRequest.clearAllReceiver();
         initialRequest.addReceiver(this.systemAgent);
@@ -95,13 +136,45 @@ public class CoordinatorAgent extends ImasAgent {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        
+        this.waitingForMap = true;
 
         //we add a behaviour that sends the message and waits for an answer
         this.addBehaviour(new RequesterBehaviour(this, initialRequest));
+        countMessages(1);
+    }
 
-        // setup finished. When we receive the last inform, the agent itself will add
-        // a behaviour to send/receive actions
+    /**
+     * Tells whether a snapshot of the game settings has been requested and
+     * not received yet.
+     *
+     * @return true when waiting for the game settings.
+     */
+    public boolean isWaitingForMap() {
+        return this.waitingForMap;
+    }
+
+    /**
+     * Announces the garbage detected during a step to the Harvester
+     * Coordinator agent, as a single batch of tasks, together with the
+     * buildings emptied (see GarbageTaskBatch.fromDelta()). The batch is
+     * sent even when empty, as the Harvester Coordinator agent holds the
+     * step barrier until the batch of the step is allocated. In pooled
+     * execution the System agent allocates the garbage itself, so nothing is
+     * announced.
+     *
+     * @param delta changes of the step, already applied on the game settings.
+     */
+    public void announceGarbage(MapDelta delta) {
+        if (this.harvesterCoordinatorAgent == null || this.mode == ExecutionMode.POOLED) {
+            return;
+        }
+        GarbageTaskBatch batch = GarbageTaskBatch.fromDelta(game, delta);
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setProtocol(MessageContent.GARBAGE_TASKS);
+        msg.addReceiver(this.harvesterCoordinatorAgent);
+        getCodec().fillContent(msg, batch);
+        send(msg);
+        countMessages(1);
     }
 
     /**
@@ -111,6 +184,7 @@ public class CoordinatorAgent extends ImasAgent {
      */
     public void setGame(GameSettings game) {
         this.game = game;
+        this.waitingForMap = false;
     }
 
     /**
@@ -0,0 +1,69 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.agent;
+
+/**
+ * How scouts and harvesters are executed, selected at launch with the MODE
+ * system property.
+ *
+ * With AGENTS (the default) every scout and harvester is a JADE agent, with
+ * its own thread. With POOLED they are not created as agents: their logic is
+ * stepped by the System agent through an in-process kernel (see
+ * cat.urv.imas.simulation.InProcessKernel) on a bounded worker pool of
+ * POOL_SIZE threads, so the number of threads does not grow with the city.
+ * Coordinators are JADE agents in both modes.
+ */
+public enum ExecutionMode {
+    AGENTS,
+    POOLED;
+
+    /**
+     * System property with the execution mode: "agents" or "pooled".
+     */
+    public static final String MODE = "imas.execution";
+    /**
+     * System property with the number of worker threads of the pooled mode;
+     * by default, the number of available processors.
+     */
+    public static final String POOL_SIZE = "imas.pool.size";
+
+    /**
+     * Gets the execution mode given by the MODE system property.
+     *
+     * @return the execution mode; AGENTS when the property is not set.
+     */
+    public static ExecutionMode fromProperty() {
+        String value = System.getProperty(MODE, AGENTS.name()).trim();
+        try {
+            return valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown execution mode \"" + value + "\"; using " + AGENTS);
+            return AGENTS;
+        }
+    }
+
+    /**
+     * Gets the number of worker threads of the pooled mode, given by the
+     * POOL_SIZE system property.
+     *
+     * @return number of worker threads, at least 1.
+     */
+    public static int poolSize() {
+        return Math.max(1, Integer.getInteger(POOL_SIZE, Runtime.getRuntime().availableProcessors()));
+    }
+}
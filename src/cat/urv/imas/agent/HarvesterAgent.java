@@ -20,13 +20,19 @@ package cat.urv.imas.agent;
 import static cat.urv.imas.agent.ImasAgent.OWNER;
 import cat.urv.imas.onthology.GameSettings;
 import cat.urv.imas.behaviour.coordinator.RequesterBehaviour;
+import cat.urv.imas.behaviour.coordinator.StepBarrierBehaviour;
+import cat.urv.imas.behaviour.harvester.GarbageBidderBehaviour;
+import cat.urv.imas.map.RoutingTable;
+import cat.urv.imas.onthology.GarbageTask;
 import cat.urv.imas.onthology.GarbageType;
 import cat.urv.imas.onthology.MessageContent;
+import cat.urv.imas.onthology.StepReport;
 import jade.core.*;
 import jade.domain.*;
 import jade.domain.FIPAAgentManagement.*;
 import jade.domain.FIPANames.InteractionProtocol;
 import jade.lang.acl.*;
+import java.util.List;
 
 /**
  * The Harvester agent. 
@@ -52,21 +58,14 @@ public class HarvesterAgent extends ImasAgent {
      */
     private AID harvesterPlasticCoordinatorAgent;
     /**
-     * Row number for this agent, zero based.
+     * Position, capacity, allowed types and awarded tasks of this harvester,
+     * and how it bids for garbage.
      */
-    private int row = -1;
+    private HarvesterLogic logic = new HarvesterLogic(-1, -1, 0, null);
     /**
-     * Column number for this agent, zero based.
+     * Tasks taken since the last step report.
      */
-    private int col = -1;
-    /**
-     * Types of garbage allowed to harvest.
-     */
-    protected GarbageType[] allowedTypes;
-    /**
-     * Maximum units of garbage of any type able to harvest at a time.
-     */
-    protected int capacity;
+    private int awarded = 0;
     
     /**
      * Builds the harvester agent.
@@ -80,10 +79,7 @@ public class HarvesterAgent extends ImasAgent {
      */
     public HarvesterAgent(Object[] arguments) {
         super(AgentType.HARVESTER);
-        this.row = Integer.parseInt(arguments[0].toString());
-        this.col = Integer.parseInt(arguments[1].toString());
-        this.capacity = Integer.parseInt(arguments[2].toString());
-        this.allowedTypes = (GarbageType[])arguments[3];
+        this.logic = createLogic(arguments);
     }
     
 
@@ -92,10 +88,25 @@ public class HarvesterAgent extends ImasAgent {
      */
     public HarvesterAgent(int row, int col, int capacity, GarbageType[] allowedTypes) {
         super(AgentType.HARVESTER);
-        this.row = row;
-        this.col = col;
-        this.capacity = capacity;
-        this.allowedTypes = allowedTypes;
+        this.logic = new HarvesterLogic(row, col, capacity, allowedTypes);
+    }
+
+    /**
+     * Builds the harvester logic from the agent arguments: row, column,
+     * capacity, allowed types and, optionally, the routing table of the city
+     * (only when created in the same JVM as the System agent) and the
+     * number of the harvester in creation order.
+     *
+     * @param arguments agent arguments.
+     * @return harvester logic.
+     */
+    private static HarvesterLogic createLogic(Object[] arguments) {
+        RoutingTable routing = (arguments.length > 4) ? (RoutingTable) arguments[4] : null;
+        int id = (arguments.length > 5) ? Integer.parseInt(arguments[5].toString()) : -1;
+        return new HarvesterLogic(Integer.parseInt(arguments[0].toString()),
+                Integer.parseInt(arguments[1].toString()), id,
+                Integer.parseInt(arguments[2].toString()),
+                (GarbageType[]) arguments[3], routing);
     }
 
     /**
@@ -109,11 +120,21 @@ public class HarvesterAgent extends ImasAgent {
         this.setEnabledO2ACommunication(true, 1);
         /* ********************************************************************/
 
-        // Register the agent to the DF
+        // JADE builds the agent with the default constructor
+        Object[] arguments = getArguments();
+        if (arguments != null && arguments.length >= 4) {
+            this.logic = createLogic(arguments);
+        }
+
+        // Register the agent to the DF, telling the types of garbage it
+        // harvests so that each type coordinator only calls for its own.
         ServiceDescription sd1 = new ServiceDescription();
-        sd1.setType(AgentType.HARVESTER_COORDINATOR.toString());
+        sd1.setType(AgentType.HARVESTER.toString());
         sd1.setName(getLocalName());
         sd1.setOwnership(OWNER);
+        for (GarbageType allowed : logic.getAllowedTypes()) {
+            sd1.addProperties(new Property(GARBAGE_PROPERTY, allowed.getShortString()));
+        }
         
         DFAgentDescription dfd = new DFAgentDescription();
         dfd.addServices(sd1);
@@ -143,6 +164,30 @@ public class HarvesterAgent extends ImasAgent {
         searchCriterion.setType(AgentType.HARVESTER_PLASTIC_COORDINATOR.toString());
         this.harvesterPlasticCoordinatorAgent = UtilsAgents.searchAgent(this, searchCriterion);
         // searchAgent is a blocking method, so we will obtain always a correct AID
+
+        // bid for the garbage announced by the type coordinators
+        this.addBehaviour(new GarbageBidderBehaviour(this));
+
+        // end of every step is reported up to the coordinator of its first
+        // allowed type, so every harvester is counted once
+        this.addBehaviour(new StepBarrierBehaviour(this, getTypeCoordinator(logic.getAllowedTypes()[0])));
+    }
+
+    /**
+     * Gets the coordinator of a type of garbage.
+     *
+     * @param type type of garbage.
+     * @return AID of the harvester coordinator of that type.
+     */
+    private AID getTypeCoordinator(GarbageType type) {
+        switch (type) {
+            case GLASS:
+                return this.harvesterGlassCoordinatorAgent;
+            case PAPER:
+                return this.harvesterPaperCoordinatorAgent;
+            default:
+                return this.harvesterPlasticCoordinatorAgent;
+        }
     }
 
     /**
@@ -170,7 +215,7 @@ public class HarvesterAgent extends ImasAgent {
      * @return the current row number in the map, in zero base.
      */
     public int getRow() {
-        return this.row;
+        return logic.getRow();
     }
 
     /**
@@ -179,7 +224,7 @@ public class HarvesterAgent extends ImasAgent {
      * @return Column number in the map, in zero base.
      */
     public int getCol() {
-        return this.col;
+        return logic.getCol();
     }
     
     /**
@@ -188,7 +233,7 @@ public class HarvesterAgent extends ImasAgent {
      * @return harvester capacity.
      */
     public int getCapacity() {
-        return this.capacity;
+        return logic.getCapacity();
     }
     
     /**
@@ -197,10 +242,64 @@ public class HarvesterAgent extends ImasAgent {
      * @return true if type is allowed or return false if not.
      */
     public boolean isAllowedType(GarbageType type){
-        for(int i = 0;i < allowedTypes.length;i++)
-            if(allowedTypes[i] == type)
-                return true;
-        return false;
+        return logic.isAllowedType(type);
+    }
+
+    /**
+     * Units of garbage this harvester can still commit to.
+     *
+     * @return capacity not taken by the awarded tasks.
+     */
+    public int getRemainingCapacity() {
+        return logic.getRemainingCapacity();
+    }
+
+    /**
+     * Adds a task awarded in a garbage auction (see
+     * HarvesterLogic.assignTask()).
+     *
+     * @param task awarded task.
+     * @return true if the task is taken; false if it is refused.
+     */
+    public boolean assignTask(GarbageTask task) {
+        if (!logic.assignTask(task)) {
+            return false;
+        }
+        awarded++;
+        return true;
+    }
+
+    /**
+     * Gets the awarded tasks not done yet.
+     *
+     * @return awarded tasks, in order of arrival.
+     */
+    public List<GarbageTask> getTasks() {
+        return logic.getTasks();
+    }
+
+    /**
+     * Gets the decision logic of this harvester.
+     *
+     * @return harvester logic.
+     */
+    public HarvesterLogic getLogic() {
+        return logic;
+    }
+
+    @Override
+    public void stepPerformed(StepReport performed) {
+        logic.moved(performed);
+    }
+
+    @Override
+    public StepReport createStepReport(int step) {
+        StepReport report = new StepReport(step);
+        report.setHarvester(logic.getTasks().size(), logic.getRemainingCapacity(), logic.isBusy());
+        report.addAwarded(awarded);
+        awarded = 0;
+        logic.decide(report);
+        return report;
     }
 
     /* ********************************************************************** */
@@ -18,13 +18,18 @@
 package cat.urv.imas.agent;
 
 import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.behaviour.coordinator.GarbageTaskDispatchBehaviour;
 import cat.urv.imas.behaviour.coordinator.RequesterBehaviour;
+import cat.urv.imas.behaviour.coordinator.StepBarrierBehaviour;
+import cat.urv.imas.onthology.GarbageType;
 import cat.urv.imas.onthology.MessageContent;
 import jade.core.*;
 import jade.domain.*;
 import jade.domain.FIPAAgentManagement.*;
 import jade.domain.FIPANames.InteractionProtocol;
 import jade.lang.acl.*;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * The Harvester Coordinator agent. 
@@ -41,6 +46,22 @@ public class HarvesterCoordinatorAgent extends ImasAgent {
      * Coordinator agent id.
      */
     private AID coordinatorAgent;
+    /**
+     * Coordinator agent id of every type of garbage.
+     */
+    private final Map<GarbageType, AID> typeCoordinators = new EnumMap<>(GarbageType.class);
+    /**
+     * How scouts and harvesters are executed.
+     */
+    private final ExecutionMode mode = ExecutionMode.fromProperty();
+    /**
+     * Behaviour forwarding the garbage tasks to the type coordinators.
+     */
+    private final GarbageTaskDispatchBehaviour dispatch = new GarbageTaskDispatchBehaviour(this);
+    /**
+     * Step barrier towards the Coordinator agent.
+     */
+    private StepBarrierBehaviour barrier;
 
     /**
      * Builds the harvester coordinator agent.
@@ -83,8 +104,46 @@ public class HarvesterCoordinatorAgent extends ImasAgent {
         this.coordinatorAgent = UtilsAgents.searchAgent(this, searchCriterion);
         // searchAgent is a blocking method, so we will obtain always a correct AID
 
-        //more setup
-        
+        // search the coordinator of every type of garbage
+        searchCriterion = new ServiceDescription();
+        searchCriterion.setType(AgentType.HARVESTER_PAPER_COORDINATOR.toString());
+        this.typeCoordinators.put(GarbageType.PAPER, UtilsAgents.searchAgent(this, searchCriterion));
+        searchCriterion = new ServiceDescription();
+        searchCriterion.setType(AgentType.HARVESTER_GLASS_COORDINATOR.toString());
+        this.typeCoordinators.put(GarbageType.GLASS, UtilsAgents.searchAgent(this, searchCriterion));
+        searchCriterion = new ServiceDescription();
+        searchCriterion.setType(AgentType.HARVESTER_PLASTIC_COORDINATOR.toString());
+        this.typeCoordinators.put(GarbageType.PLASTIC, UtilsAgents.searchAgent(this, searchCriterion));
+
+        // garbage detected every step is forwarded by type
+        this.addBehaviour(dispatch);
+
+        // end of every step is reported up to the Coordinator agent, once
+        // the garbage of the step is allocated
+        this.barrier = new StepBarrierBehaviour(this, this.coordinatorAgent);
+        this.addBehaviour(barrier);
+    }
+
+    /**
+     * Rounds of the step barrier wait until the garbage announced in their
+     * step is allocated, unless the harvesters are pooled: then the System
+     * agent allocates it and nothing is announced.
+     *
+     * @param step step of the round.
+     * @return true if the round can start.
+     */
+    @Override
+    public boolean isReadyForRound(int step) {
+        return mode == ExecutionMode.POOLED || dispatch.isAllocated(step);
+    }
+
+    /**
+     * Gets the step barrier towards the Coordinator agent.
+     *
+     * @return step barrier behaviour.
+     */
+    public StepBarrierBehaviour getStepBarrier() {
+        return barrier;
     }
 
     /**
@@ -105,4 +164,14 @@ public class HarvesterCoordinatorAgent extends ImasAgent {
         return this.game;
     }
 
+    /**
+     * Gets the coordinator of a type of garbage.
+     *
+     * @param type type of garbage.
+     * @return the agent id of its coordinator.
+     */
+    public AID getTypeCoordinator(GarbageType type) {
+        return this.typeCoordinators.get(type);
+    }
+
 }
@@ -0,0 +1,388 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.agent;
+
+import cat.urv.imas.map.RoutingTable;
+import cat.urv.imas.onthology.GarbageBid;
+import cat.urv.imas.onthology.GarbageTask;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.StepReport;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decision logic of a harvester, without any JADE dependency: its position,
+ * capacity and allowed types, the garbage tasks it has been awarded and the
+ * garbage it carries, how it bids for garbage and where it heads to. The
+ * Harvester agent delegates on it, and the in-process kernel (see
+ * cat.urv.imas.simulation.InProcessKernel) steps it with plain method calls.
+ *
+ * The capacity of a harvester is taken by the garbage it carries and by the
+ * units committed to its tasks. A task commits the units of its building up
+ * to the capacity left; they are released when the task is done, whatever
+ * was actually picked up, and the load when it is unloaded. A harvester
+ * carries a single type of garbage at a time: it unloads before heading to
+ * a task of another type.
+ */
+public class HarvesterLogic {
+
+    /**
+     * Row number, zero based.
+     */
+    private int row;
+    /**
+     * Column number, zero based.
+     */
+    private int col;
+    /**
+     * Number of the harvester, in creation order; -1 if unknown.
+     */
+    private final int id;
+    /**
+     * Types of garbage allowed to harvest.
+     */
+    private final GarbageType[] allowedTypes;
+    /**
+     * Maximum units of garbage of any type able to harvest at a time.
+     */
+    private final int capacity;
+    /**
+     * Street distances of the city, shared with the other harvesters; null
+     * if unknown.
+     */
+    private final RoutingTable routing;
+    /**
+     * Garbage tasks awarded and not done yet, with the units committed to
+     * each of them as amount.
+     */
+    private final List<GarbageTask> tasks = new ArrayList<>();
+    /**
+     * Units of garbage committed to the awarded tasks.
+     */
+    private int committed = 0;
+    /**
+     * Units of garbage carried, and their type (null when empty).
+     */
+    private int load = 0;
+    private GarbageType loadType = null;
+
+    /**
+     * Builds the logic of a harvester.
+     *
+     * @param row initial row.
+     * @param col initial column.
+     * @param capacity units of garbage it can carry.
+     * @param allowedTypes types of garbage it harvests.
+     */
+    public HarvesterLogic(int row, int col, int capacity, GarbageType[] allowedTypes) {
+        this(row, col, -1, capacity, allowedTypes, null);
+    }
+
+    /**
+     * Builds the logic of a harvester that bids with street distances.
+     *
+     * @param row initial row.
+     * @param col initial column.
+     * @param id number of the harvester, in creation order; it breaks the
+     * ties between equal bids (see GarbageTaskBatch.award()).
+     * @param capacity units of garbage it can carry.
+     * @param allowedTypes types of garbage it harvests.
+     * @param routing street distances of the city; null to bid with the
+     * Manhattan distance.
+     */
+    public HarvesterLogic(int row, int col, int id, int capacity, GarbageType[] allowedTypes, RoutingTable routing) {
+        this.routing = routing;
+        this.row = row;
+        this.col = col;
+        this.id = id;
+        this.capacity = capacity;
+        this.allowedTypes = (allowedTypes == null) ? new GarbageType[0] : allowedTypes;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Updates the position.
+     *
+     * @param row current row.
+     * @param col current column.
+     */
+    public void moveTo(int row, int col) {
+        this.row = row;
+        this.col = col;
+    }
+
+    /**
+     * Updates the position and the garbage carried with the moves and
+     * garbage actions committed in a step.
+     *
+     * @param performed moves and garbage actions committed in the step.
+     */
+    public void moved(StepReport performed) {
+        if (routing == null) {
+            return;
+        }
+        int cell = row * routing.getCols() + col;
+        int action = performed.getAction(cell);
+        if (action >= 0) {
+            if (performed.isPickup(action)) {
+                completeTask(performed.getActionUnits(action));
+            } else {
+                unloaded(performed.getActionUnits(action));
+            }
+        }
+        moved(performed.getDestination(cell));
+    }
+
+    /**
+     * Updates the position after a step.
+     *
+     * @param to flat index of the cell the harvester moved to, or -1 if it
+     * stayed.
+     */
+    public void moved(int to) {
+        if (routing != null && to >= 0) {
+            moveTo(to / routing.getCols(), to % routing.getCols());
+        }
+    }
+
+    /**
+     * Decides what to do in the next step, and adds it to the report of this
+     * harvester. With garbage to unload (no task left, or the next one is of
+     * another type), it heads to the nearest recycling center of its type;
+     * otherwise, to the building of its first task. In both cases it heads
+     * to the street in front chosen with RoutingTable.approach(), and once
+     * there it requests to unload or to pick up the garbage. Movements are
+     * planned and resolved by the System agent (see MoveResolutionStage),
+     * and garbage actions performed by its GarbageCollectionStage.
+     *
+     * @param report report of this harvester for the step done.
+     */
+    public void decide(StepReport report) {
+        if (routing == null) {
+            return;
+        }
+        int cols = routing.getCols();
+        int cell = row * cols + col;
+        if (load > 0 && (tasks.isEmpty() || tasks.get(0).getType() != loadType)) {
+            int center = routing.nearestCenter(cell, loadType);
+            if (center < 0) {
+                return;
+            }
+            if (routing.isAround(cell, center)) {
+                report.addUnload(cell, center, loadType, load);
+            } else {
+                headTo(report, cell, center, null);
+            }
+            return;
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        GarbageTask task = tasks.get(0);
+        int building = task.getRow() * cols + task.getCol();
+        if (routing.isAround(cell, building)) {
+            report.addPickup(cell, building, task.getType(), task.getAmount());
+        } else {
+            headTo(report, cell, building, task.getType());
+        }
+    }
+
+    /**
+     * Requests a move towards the street in front of a building or
+     * recycling center.
+     *
+     * @param report report of this harvester.
+     * @param cell cell index of the harvester.
+     * @param target cell index of the building or recycling center.
+     * @param type garbage type to be recycled next; null if none.
+     */
+    private void headTo(StepReport report, int cell, int target, GarbageType type) {
+        int goal = routing.approach(cell, target, type);
+        if (goal >= 0) {
+            report.addMove(cell, goal);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public GarbageType[] getAllowedTypes() {
+        return allowedTypes;
+    }
+
+    /**
+     * Tells whether a type of garbage can be harvested.
+     *
+     * @param type type of garbage.
+     * @return true if the type is allowed.
+     */
+    public boolean isAllowedType(GarbageType type) {
+        for (GarbageType allowed : allowedTypes) {
+            if (allowed == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Units of garbage this harvester can still commit to.
+     *
+     * @return capacity not taken by the awarded tasks nor the load.
+     */
+    public int getRemainingCapacity() {
+        return capacity - committed - load;
+    }
+
+    /**
+     * Tells whether this harvester has work: tasks to do or garbage to
+     * unload.
+     *
+     * @return true if busy.
+     */
+    public boolean isBusy() {
+        return !tasks.isEmpty() || load > 0;
+    }
+
+    /**
+     * Units of garbage carried.
+     *
+     * @return load.
+     */
+    public int getLoad() {
+        return load;
+    }
+
+    /**
+     * Type of the garbage carried.
+     *
+     * @return type of garbage, or null when empty.
+     */
+    public GarbageType getLoadType() {
+        return loadType;
+    }
+
+    /**
+     * Adds a task awarded in a garbage auction, committing the units of its
+     * building up to the capacity left. Awards this harvester cannot take
+     * are refused, to be auctioned again.
+     *
+     * @param task awarded task.
+     * @return true if the task is taken; false when it is of a type not
+     * allowed or there is no capacity left.
+     */
+    public boolean assignTask(GarbageTask task) {
+        int units = Math.min(task.getAmount(), getRemainingCapacity());
+        if (units <= 0 || !isAllowedType(task.getType())) {
+            return false;
+        }
+        tasks.add(new GarbageTask(task.getRow(), task.getCol(), task.getType(), units));
+        committed += units;
+        return true;
+    }
+
+    /**
+     * Completes the first task with the garbage actually picked up: it is
+     * loaded, and the units committed to the task are released.
+     *
+     * @param collected units picked up; may be less than committed when
+     * the building had less garbage, or none at all.
+     */
+    public void completeTask(int collected) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        GarbageTask task = tasks.remove(0);
+        committed -= task.getAmount();
+        if (collected > 0) {
+            load += collected;
+            loadType = task.getType();
+        }
+    }
+
+    /**
+     * Unloads garbage at a recycling center, releasing its capacity.
+     *
+     * @param units units unloaded.
+     */
+    public void unloaded(int units) {
+        load = Math.max(0, load - units);
+        if (load == 0) {
+            loadType = null;
+        }
+    }
+
+    /**
+     * Gets the awarded tasks not done yet.
+     *
+     * @return awarded tasks, in order of arrival.
+     */
+    public List<GarbageTask> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Answers a call for proposals: the estimated cost of every task of a
+     * type this harvester can harvest, while it has capacity left. Tasks
+     * whose building or recycling center cannot be reached are not bid for.
+     *
+     * @param announced tasks of the call for proposals.
+     * @return the bid, or null to refuse.
+     */
+    public GarbageBid bid(List<GarbageTask> announced) {
+        int remaining = getRemainingCapacity();
+        int[] costs = new int[announced.size()];
+        boolean any = false;
+        for (int i = 0; i < costs.length; i++) {
+            GarbageTask task = announced.get(i);
+            costs[i] = (remaining > 0 && isAllowedType(task.getType())) ? cost(task) : GarbageBid.NO_BID;
+            any |= (costs[i] != GarbageBid.NO_BID);
+        }
+        return any ? new GarbageBid(id, remaining, costs) : null;
+    }
+
+    /**
+     * Estimated cost of a task: the moves to the building plus the moves
+     * from it to the nearest recycling center accepting its garbage (see
+     * RoutingTable.tripDistance). Without routing table, the Manhattan
+     * distance to the building.
+     *
+     * @param task announced task.
+     * @return number of moves, or GarbageBid.NO_BID if it cannot be done.
+     */
+    public int cost(GarbageTask task) {
+        if (routing == null) {
+            return Math.abs(row - task.getRow()) + Math.abs(col - task.getCol());
+        }
+        int cols = routing.getCols();
+        int trip = routing.tripDistance(row * cols + col, task.getRow() * cols + task.getCol(), task.getType());
+        return (trip == RoutingTable.UNREACHABLE) ? GarbageBid.NO_BID : trip;
+    }
+}
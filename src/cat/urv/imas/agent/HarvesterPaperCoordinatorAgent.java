@@ -19,7 +19,10 @@ package cat.urv.imas.agent;
 
 import static cat.urv.imas.agent.ImasAgent.OWNER;
 import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.behaviour.coordinator.GarbageAuctioneerBehaviour;
 import cat.urv.imas.behaviour.coordinator.RequesterBehaviour;
+import cat.urv.imas.behaviour.coordinator.StepBarrierBehaviour;
+import cat.urv.imas.onthology.GarbageType;
 import cat.urv.imas.onthology.MessageContent;
 import jade.core.*;
 import jade.domain.*;
@@ -84,7 +87,11 @@ public class HarvesterPaperCoordinatorAgent extends ImasAgent {
         this.harvesterCoordinatorAgent = UtilsAgents.searchAgent(this, searchCriterion);
         // searchAgent is a blocking method, so we will obtain always a correct AID
 
-        
+        // allocate the paper garbage among the harvesters
+        this.addBehaviour(new GarbageAuctioneerBehaviour(this, GarbageType.PAPER));
+
+        // end of every step of the paper harvesters is reported up together
+        this.addBehaviour(new StepBarrierBehaviour(this, this.harvesterCoordinatorAgent));
     }
 
     /**
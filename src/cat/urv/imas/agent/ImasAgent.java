@@ -17,6 +17,9 @@
  */
 package cat.urv.imas.agent;
 
+import cat.urv.imas.onthology.ImasCodec;
+import cat.urv.imas.onthology.StepReport;
+import cat.urv.imas.log.LogPipeline;
 import jade.core.Agent;
 
 /**
@@ -34,14 +37,29 @@ public class ImasAgent extends Agent {
      * Agents' owner.
      */
     public static final String OWNER = "urv";
+    /**
+     * Property of the harvesters' DF service, with the short string of every
+     * type of garbage they can harvest.
+     */
+    public static final String GARBAGE_PROPERTY = "garbage";
     /**
      * Language used for communication.
      */
-    public static final String LANGUAGE = "serialized-object";
+    public static final String LANGUAGE = ImasCodec.NAME;
     /**
      * Onthology used in the communication.
      */
-    public static final String ONTOLOGY = "serialized-object";
+    public static final String ONTOLOGY = "imas-city";
+    
+    /**
+     * Codec for the content of messages. Only used from the agent's thread.
+     */
+    private final ImasCodec codec = new ImasCodec();
+    /**
+     * Messages sent and not reported yet (see countMessages()). Only used
+     * from the agent's thread.
+     */
+    private int sentMessages = 0;
     
     /**
      * Creates the agent.
@@ -61,21 +79,97 @@ public class ImasAgent extends Agent {
     }
     
     /**
-     * Add a new message to the log.
+     * Gets the codec to fill in and extract the content of messages.
+     * @return the codec for the onthology objects.
+     */
+    public ImasCodec getCodec() {
+        return this.codec;
+    }
+    
+    /**
+     * Called by the step barrier (see StepBarrierBehaviour) once a step is
+     * done, before the report of this agent is built. Agents that move
+     * update their position from the committed moves.
+     *
+     * @param performed moves committed in the step.
+     */
+    public void stepPerformed(StepReport performed) {
+    }
+
+    /**
+     * Builds the report of this agent alone for a simulation step, sent up
+     * the hierarchy by the step barrier (see StepBarrierBehaviour).
+     * Subclasses add their own state and requested actions.
+     *
+     * @param step step reported.
+     * @return report of this agent.
+     */
+    public StepReport createStepReport(int step) {
+        return new StepReport(step);
+    }
+
+    /**
+     * Tells whether the round of the step barrier for a step may start on
+     * this agent. When it may not, the StepBarrierBehaviour holds the round
+     * until the agent releases it (see StepBarrierBehaviour.release()). By
+     * default rounds start as soon as they are requested.
+     *
+     * @param step step of the round.
+     * @return true if the round can start.
+     */
+    public boolean isReadyForRound(int step) {
+        return true;
+    }
+
+    /**
+     * Counts messages sent by this agent besides the ones of the step
+     * barrier (auctions, garbage tasks, map requests...). They are added to
+     * the next report this agent sends up the hierarchy.
+     *
+     * @param count number of messages.
+     */
+    public void countMessages(int count) {
+        sentMessages += count;
+    }
+
+    /**
+     * Gets the messages counted since the last call, and resets the count.
+     *
+     * @return number of messages.
+     */
+    public int takeSentMessages() {
+        int count = sentMessages;
+        sentMessages = 0;
+        return count;
+    }
+
+    /**
+     * Agent clean-up: other agents of this JVM no longer find it through
+     * the cache of UtilsAgents.searchAgent.
+     */
+    @Override
+    protected void takeDown() {
+        UtilsAgents.forgetAgent(getAID());
+    }
+
+    /**
+     * Add a new message to the log. It is written asynchronously by the
+     * {@link LogPipeline}, so it never blocks the agent on console output.
      *
      * @param str message to show
      */
     public void log(String str) {
-        System.out.println(getLocalName() + ": " + str);
+        LogPipeline.info(getLocalName() + ": " + str);
     }
     
     /**
-     * Add a new message to the error log.
+     * Add a new message to the error log. It is written asynchronously by the
+     * {@link LogPipeline}.
      *
      * @param str message to show
      */
     public void errorLog(String str) {
-        System.err.println(getLocalName() + ": " + str);
+        LogPipeline.error(getLocalName() + ": " + str);
     }
     
 }
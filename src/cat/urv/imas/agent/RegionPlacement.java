@@ -0,0 +1,170 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.agent;
+
+import jade.wrapper.AgentContainer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Placement of the scouts and harvesters by map region. The map is split in
+ * a grid of rectangular regions of (about) the same size, and every region
+ * has its own JADE container, so that agents working on the same area share
+ * a container and large cities are spread among the cores.
+ * 
+ * Only scouts and harvesters are placed by region: the System agent and the
+ * coordinators stay in the home container, and scouts and harvesters mostly
+ * talk to them (step reports, map updates, garbage auctions). So, with
+ * several regions, most messages still go from one container to another;
+ * regions spread the agents, not their messages.
+ * 
+ * The number of regions is given by the REGIONS system property, either as
+ * "RxC" or as a total number of regions (which is split in a grid as square
+ * as possible). By default there is a single region, hosted in the System
+ * agent's container.
+ */
+public class RegionPlacement {
+
+    /**
+     * System property with the number of regions.
+     */
+    public static final String REGIONS = "imas.regions";
+
+    /**
+     * Size of the map.
+     */
+    private final int rows;
+    private final int cols;
+    /**
+     * Number of regions along each dimension.
+     */
+    private final int regionRows;
+    private final int regionCols;
+    /**
+     * Container of every region, once created.
+     */
+    private final List<AgentContainer> containers = new ArrayList<>();
+
+    /**
+     * Builds the placement.
+     *
+     * @param rows map rows.
+     * @param cols map columns.
+     * @param regionRows number of regions along the rows.
+     * @param regionCols number of regions along the columns.
+     */
+    public RegionPlacement(int rows, int cols, int regionRows, int regionCols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.regionRows = Math.max(1, Math.min(rows, regionRows));
+        this.regionCols = Math.max(1, Math.min(cols, regionCols));
+    }
+
+    /**
+     * Builds the placement given by the REGIONS system property.
+     *
+     * @param rows map rows.
+     * @param cols map columns.
+     * @return the placement of the agents.
+     */
+    public static RegionPlacement fromProperty(int rows, int cols) {
+        String value = System.getProperty(REGIONS, "1").trim().toLowerCase();
+        try {
+            int x = value.indexOf('x');
+            if (x > 0) {
+                return new RegionPlacement(rows, cols,
+                        Integer.parseInt(value.substring(0, x)), Integer.parseInt(value.substring(x + 1)));
+            }
+            int count = Math.max(1, Integer.parseInt(value));
+            int r = (int) Math.sqrt(count);
+            while (count % r != 0) {
+                r--;
+            }
+            // more regions along the longest dimension
+            return (rows >= cols)
+                    ? new RegionPlacement(rows, cols, count / r, r)
+                    : new RegionPlacement(rows, cols, r, count / r);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Invalid " + REGIONS + " value: " + value);
+            return new RegionPlacement(rows, cols, 1, 1);
+        }
+    }
+
+    /**
+     * Number of regions.
+     *
+     * @return total number of regions.
+     */
+    public int getRegionCount() {
+        return regionRows * regionCols;
+    }
+
+    /**
+     * Gets the region of a cell.
+     *
+     * @param row row of the cell.
+     * @param col column of the cell.
+     * @return region number.
+     */
+    public int regionOf(int row, int col) {
+        return (row * regionRows / rows) * regionCols + (col * regionCols / cols);
+    }
+
+    /**
+     * Name of the container of a region.
+     *
+     * @param region region number.
+     * @return container name.
+     */
+    public String getContainerName(int region) {
+        return "region-" + (region / regionCols) + "-" + (region % regionCols);
+    }
+
+    /**
+     * Creates the containers of the regions. With a single region, the given
+     * container is used.
+     *
+     * @param home container of the System agent.
+     * @return containers of all regions, by region number.
+     */
+    public List<AgentContainer> createContainers(AgentContainer home) {
+        containers.clear();
+        if (getRegionCount() == 1) {
+            containers.add(home);
+            return containers;
+        }
+        for (int region = 0; region < getRegionCount(); region++) {
+            AgentContainer container = UtilsAgents.createContainer(getContainerName(region));
+            // a region without its own container falls back to the home one
+            containers.add((container != null) ? container : home);
+        }
+        return containers;
+    }
+
+    /**
+     * Gets the container of the region of a cell. createContainers() must
+     * have been called.
+     *
+     * @param row row of the cell.
+     * @param col column of the cell.
+     * @return container for the agents on that cell.
+     */
+    public AgentContainer containerOf(int row, int col) {
+        return containers.get(regionOf(row, col));
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.agent;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Snapshot of the resources used by this JVM: live and peak threads,
+ * resident set size and heap, so that the execution modes can be compared.
+ */
+public class RuntimeMetrics {
+
+    /**
+     * Linux file with the status of this process.
+     */
+    private static final String PROC_STATUS = "/proc/self/status";
+
+    /**
+     * Live threads.
+     */
+    private final int threads;
+    /**
+     * Highest number of live threads since the JVM started.
+     */
+    private final int peakThreads;
+    /**
+     * Resident set size, in bytes, or -1 when unknown.
+     */
+    private final long rss;
+    /**
+     * Used heap, in bytes.
+     */
+    private final long heap;
+
+    private RuntimeMetrics(int threads, int peakThreads, long rss, long heap) {
+        this.threads = threads;
+        this.peakThreads = peakThreads;
+        this.rss = rss;
+        this.heap = heap;
+    }
+
+    /**
+     * Takes a snapshot of the current resources.
+     *
+     * @return current metrics.
+     */
+    public static RuntimeMetrics sample() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Runtime runtime = Runtime.getRuntime();
+        return new RuntimeMetrics(bean.getThreadCount(), bean.getPeakThreadCount(),
+                readRss(), runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Reads the resident set size of this process (Linux only).
+     *
+     * @return bytes, or -1 when it cannot be read.
+     */
+    private static long readRss() {
+        try (BufferedReader in = new BufferedReader(new FileReader(PROC_STATUS))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    String[] fields = line.trim().split("\\s+");
+                    return Long.parseLong(fields[1]) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not available on this system
+        }
+        return -1;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getPeakThreads() {
+        return peakThreads;
+    }
+
+    public long getRss() {
+        return rss;
+    }
+
+    public long getHeap() {
+        return heap;
+    }
+
+    @Override
+    public String toString() {
+        return "threads: " + threads + " (peak " + peakThreads + "), RSS: "
+                + ((rss < 0) ? "unknown" : (rss >> 20) + " MB")
+                + ", heap: " + (heap >> 20) + " MB";
+    }
+}
@@ -20,8 +20,11 @@ package cat.urv.imas.agent;
 import static cat.urv.imas.agent.ImasAgent.OWNER;
 import cat.urv.imas.onthology.GameSettings;
 import cat.urv.imas.behaviour.coordinator.RequesterBehaviour;
+import cat.urv.imas.behaviour.coordinator.StepBarrierBehaviour;
 import cat.urv.imas.map.CellType;
+import cat.urv.imas.map.RoutingTable;
 import cat.urv.imas.onthology.MessageContent;
+import cat.urv.imas.onthology.StepReport;
 import jade.core.*;
 import jade.domain.*;
 import jade.domain.FIPAAgentManagement.*;
@@ -44,13 +47,9 @@ public class ScoutAgent extends ImasAgent {
      */
     private AID scoutCoordinatorAgent;
     /**
-     * Row number for this agent, zero based.
+     * Position of this agent and how it explores the city.
      */
-    private int row = -1;
-    /**
-     * Column number for this agent, zero based.
-     */
-    private int col = -1;
+    private ScoutLogic logic = new ScoutLogic(-1, -1, 0, null);
     
     /**
      * Builds the scout agent.
@@ -64,8 +63,7 @@ public class ScoutAgent extends ImasAgent {
      */
     public ScoutAgent(Object[] arguments) {
         super(AgentType.SCOUT);
-        this.row = Integer.parseInt(arguments[0].toString());
-        this.col = Integer.parseInt(arguments[1].toString());
+        this.logic = createLogic(arguments);
     }
 
     /**
@@ -73,8 +71,23 @@ public class ScoutAgent extends ImasAgent {
      */
     public ScoutAgent(int row, int col) {
         super(AgentType.SCOUT);
-        this.row = row;
-        this.col = col;
+        this.logic = new ScoutLogic(row, col, 0, null);
+    }
+
+    /**
+     * Builds the scout logic from the agent arguments: row, column and,
+     * optionally, the number of the scout and the routing table of the city
+     * (only when created in the same JVM as the System agent). Without
+     * routing table, the scout does not move.
+     *
+     * @param arguments agent arguments.
+     * @return scout logic.
+     */
+    private static ScoutLogic createLogic(Object[] arguments) {
+        int id = (arguments.length > 2) ? Integer.parseInt(arguments[2].toString()) : 0;
+        RoutingTable routing = (arguments.length > 3) ? (RoutingTable) arguments[3] : null;
+        return new ScoutLogic(Integer.parseInt(arguments[0].toString()),
+                Integer.parseInt(arguments[1].toString()), id, routing);
     }
 
     /**
@@ -88,9 +101,15 @@ public class ScoutAgent extends ImasAgent {
         this.setEnabledO2ACommunication(true, 1);
         /* ********************************************************************/
 
+        // JADE builds the agent with the default constructor
+        Object[] arguments = getArguments();
+        if (arguments != null && arguments.length >= 2) {
+            this.logic = createLogic(arguments);
+        }
+
         // Register the agent to the DF
         ServiceDescription sd1 = new ServiceDescription();
-        sd1.setType(AgentType.HARVESTER_COORDINATOR.toString());
+        sd1.setType(AgentType.SCOUT.toString());
         sd1.setName(getLocalName());
         sd1.setOwnership(OWNER);
         
@@ -110,7 +129,9 @@ public class ScoutAgent extends ImasAgent {
         searchCriterion.setType(AgentType.SCOUT_COORDINATOR.toString());
         this.scoutCoordinatorAgent = UtilsAgents.searchAgent(this, searchCriterion);
         // searchAgent is a blocking method, so we will obtain always a correct AID
-        
+
+        // end of every step is reported up to the Scout Coordinator agent
+        this.addBehaviour(new StepBarrierBehaviour(this, this.scoutCoordinatorAgent));
     }
 
     /**
@@ -138,7 +159,7 @@ public class ScoutAgent extends ImasAgent {
      * @return the current row number in the map, in zero base.
      */
     public int getRow() {
-        return this.row;
+        return logic.getRow();
     }
 
     /**
@@ -147,7 +168,19 @@ public class ScoutAgent extends ImasAgent {
      * @return Column number in the map, in zero base.
      */
     public int getCol() {
-        return this.col;
+        return logic.getCol();
+    }
+
+    @Override
+    public void stepPerformed(StepReport performed) {
+        logic.moved(performed);
+    }
+
+    @Override
+    public StepReport createStepReport(int step) {
+        StepReport report = new StepReport(step);
+        logic.decide(report);
+        return report;
     }
 
     /* ********************************************************************** */
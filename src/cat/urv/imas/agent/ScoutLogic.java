@@ -0,0 +1,193 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.agent;
+
+import cat.urv.imas.map.RoutingTable;
+import cat.urv.imas.onthology.StepReport;
+
+/**
+ * Decision logic of a scout, without any JADE dependency: its position and
+ * how it explores the city. A scout walks along the streets, keeping its
+ * heading until it reaches a crossing, where it takes the streets in turns,
+ * or a corner or dead end, where it turns. When a move is refused, it tries
+ * the next street. The Scout agent delegates on it, and the in-process
+ * kernel (see cat.urv.imas.simulation.InProcessKernel) steps it with plain
+ * method calls, so both explore the same way.
+ */
+public class ScoutLogic {
+
+    /**
+     * Row and column offsets of the 4 headings, clockwise from north.
+     */
+    private static final int[] HEADING_DR = {-1, 0, 1, 0};
+    private static final int[] HEADING_DC = {0, 1, 0, -1};
+
+    /**
+     * Row number, zero based.
+     */
+    private int row;
+    /**
+     * Column number, zero based.
+     */
+    private int col;
+    /**
+     * Street distances of the city, to know the streets; null if unknown.
+     */
+    private final RoutingTable routing;
+    /**
+     * Current heading, as an index of HEADING_DR and HEADING_DC.
+     */
+    private int heading;
+    /**
+     * Number of crossings passed, to take their streets in turns.
+     */
+    private int crossings;
+    /**
+     * True when a move was requested and not committed yet.
+     */
+    private boolean moving = false;
+
+    /**
+     * Builds the logic of a scout.
+     *
+     * @param row initial row.
+     * @param col initial column.
+     * @param id number of the scout, in creation order; scouts with
+     * different numbers start with different headings.
+     * @param routing street distances of the city; null for a scout that
+     * does not move.
+     */
+    public ScoutLogic(int row, int col, int id, RoutingTable routing) {
+        this.row = row;
+        this.col = col;
+        this.routing = routing;
+        this.heading = Math.floorMod(id, HEADING_DR.length);
+        this.crossings = id;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    /**
+     * Updates the position with the moves committed in a step. A requested
+     * move that was not committed turns the scout to the next street.
+     *
+     * @param performed moves committed in the step.
+     */
+    public void moved(StepReport performed) {
+        if (routing != null) {
+            moved(performed.getDestination(row * routing.getCols() + col));
+        }
+    }
+
+    /**
+     * Updates the position after a step. A refused move turns the scout
+     * once: calling it again with -1 has no effect until its next decision.
+     *
+     * @param to flat index of the cell the scout moved to, or -1 if it
+     * stayed.
+     */
+    public void moved(int to) {
+        if (routing == null) {
+            return;
+        }
+        if (to >= 0) {
+            row = to / routing.getCols();
+            col = to % routing.getCols();
+        } else if (moving) {
+            heading = (heading + 1) % HEADING_DR.length;
+        }
+        moving = false;
+    }
+
+    /**
+     * Decides the move of the next step, and adds it to the report of this
+     * scout.
+     *
+     * @param report report of this scout for the step done.
+     */
+    public void decide(StepReport report) {
+        if (routing == null) {
+            return;
+        }
+        // ahead, then right and left: while it can go ahead, only streets
+        // crossing its own (not the other lane of a wide street) are taken
+        boolean ahead = next(heading) >= 0;
+        int[] options = new int[3];
+        int count = 0;
+        if (ahead) {
+            options[count++] = heading;
+        }
+        for (int turn : new int[]{1, 3}) {
+            int h = (heading + turn) % HEADING_DR.length;
+            if (next(h) >= 0 && (!ahead || isCrossing(h))) {
+                options[count++] = h;
+            }
+        }
+        int chosen;
+        if (count == 0) {
+            // dead end
+            chosen = (heading + 2) % HEADING_DR.length;
+            if (next(chosen) < 0) {
+                return;
+            }
+        } else if (count == 1) {
+            chosen = options[0];
+        } else {
+            chosen = options[crossings++ % count];
+        }
+        heading = chosen;
+        moving = true;
+        report.addMove(row * routing.getCols() + col, next(chosen));
+    }
+
+    /**
+     * Tells whether the street next to the scout in a heading goes on
+     * beyond it, as a crossing street does.
+     *
+     * @param h heading.
+     * @return true if the two cells in that heading are streets.
+     */
+    private boolean isCrossing(int h) {
+        int r = row + 2 * HEADING_DR[h];
+        int c = col + 2 * HEADING_DC[h];
+        return r >= 0 && r < routing.getRows() && c >= 0 && c < routing.getCols()
+                && routing.isStreet(r * routing.getCols() + c);
+    }
+
+    /**
+     * Gets the street next to the scout in a heading.
+     *
+     * @param h heading.
+     * @return flat index of the street, or -1 if there is none.
+     */
+    private int next(int h) {
+        int r = row + HEADING_DR[h];
+        int c = col + HEADING_DC[h];
+        if (r < 0 || r >= routing.getRows() || c < 0 || c >= routing.getCols()) {
+            return -1;
+        }
+        int cell = r * routing.getCols() + c;
+        return routing.isStreet(cell) ? cell : -1;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.agent;
+
+import java.util.Arrays;
+
+/**
+ * Timings of the phases of the start up of the city, measured by the System
+ * agent. Times are in nanoseconds from the creation of this object, so that
+ * overlapping phases (e.g., discovery runs while agents are being created)
+ * can be told apart.
+ */
+public class StartupMetrics {
+
+    /**
+     * Phases of the start up.
+     */
+    public enum Phase {
+        /**
+         * Registration of the System agent to the DF.
+         */
+        DF_REGISTRATION,
+        /**
+         * Loading of the game settings.
+         */
+        LOAD,
+        /**
+         * Creation and start of all the agents.
+         */
+        CREATION,
+        /**
+         * Until all scouts and harvesters are registered to the DF.
+         */
+        DISCOVERY,
+        /**
+         * Until the first simulation step is completed.
+         */
+        FIRST_STEP
+    }
+
+    /**
+     * Time of reference.
+     */
+    private final long origin = System.nanoTime();
+    /**
+     * Start time of every phase, by ordinal; -1 when not started.
+     */
+    private final long[] starts = new long[Phase.values().length];
+    /**
+     * End time of every phase, by ordinal; -1 when not finished.
+     */
+    private final long[] ends = new long[Phase.values().length];
+
+    public StartupMetrics() {
+        Arrays.fill(starts, -1);
+        Arrays.fill(ends, -1);
+    }
+
+    /**
+     * Marks the start of a phase.
+     *
+     * @param phase phase started.
+     */
+    public synchronized void start(Phase phase) {
+        starts[phase.ordinal()] = System.nanoTime() - origin;
+    }
+
+    /**
+     * Marks the end of a phase. Phases never started are taken as started at
+     * the time of reference.
+     *
+     * @param phase phase finished.
+     */
+    public synchronized void end(Phase phase) {
+        if (ends[phase.ordinal()] < 0) {
+            ends[phase.ordinal()] = System.nanoTime() - origin;
+        }
+        if (starts[phase.ordinal()] < 0) {
+            starts[phase.ordinal()] = 0;
+        }
+    }
+
+    /**
+     * Tells whether a phase has finished.
+     *
+     * @param phase phase to check.
+     * @return true if it has finished.
+     */
+    public synchronized boolean isFinished(Phase phase) {
+        return ends[phase.ordinal()] >= 0;
+    }
+
+    /**
+     * Tells whether all phases have finished.
+     *
+     * @return true if the start up is over.
+     */
+    public synchronized boolean isComplete() {
+        for (long end : ends) {
+            if (end < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the duration of a phase.
+     *
+     * @param phase phase to check.
+     * @return milliseconds, or -1 if it has not finished.
+     */
+    public synchronized double getMillis(Phase phase) {
+        int i = phase.ordinal();
+        return (ends[i] < 0) ? -1 : (ends[i] - starts[i]) / 1e6;
+    }
+
+    /**
+     * Gets the time at which a phase finished.
+     *
+     * @param phase phase to check.
+     * @return milliseconds from the time of reference, or -1.
+     */
+    public synchronized double getFinishedAt(Phase phase) {
+        int i = phase.ordinal();
+        return (ends[i] < 0) ? -1 : ends[i] / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder str = new StringBuilder("Start up:");
+        for (Phase phase : Phase.values()) {
+            str.append(String.format(" %s %.1f ms (at %.1f ms);",
+                    phase.name().toLowerCase(), getMillis(phase), getFinishedAt(phase)));
+        }
+        return str.toString();
+    }
+}
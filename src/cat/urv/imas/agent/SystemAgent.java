@@ -20,17 +20,37 @@ package cat.urv.imas.agent;
 import cat.urv.imas.onthology.InitialGameSettings;
 import cat.urv.imas.onthology.GameSettings;
 import cat.urv.imas.gui.GraphicInterface;
+import cat.urv.imas.behaviour.coordinator.StepBarrierBehaviour;
 import cat.urv.imas.behaviour.system.RequestResponseBehaviour;
+import cat.urv.imas.behaviour.system.SimulationStepBehaviour;
+import cat.urv.imas.behaviour.system.StartupDiscoveryBehaviour;
 import cat.urv.imas.map.Cell;
+import cat.urv.imas.map.RoutingTable;
 import cat.urv.imas.map.StreetCell;
 import cat.urv.imas.onthology.HarvesterInfoAgent;
-import cat.urv.imas.onthology.InfoAgent;
-import static com.sun.org.apache.xerces.internal.util.FeatureState.is;
+import cat.urv.imas.onthology.MessageContent;
+import cat.urv.imas.onthology.StepReport;
+import cat.urv.imas.simulation.GarbageSpawningStage;
+import cat.urv.imas.simulation.GarbageCollectionStage;
+import cat.urv.imas.simulation.InProcessKernel;
+import cat.urv.imas.simulation.MoveResolutionStage;
+import cat.urv.imas.simulation.ScoutSensingStage;
+import cat.urv.imas.simulation.SimulationEngine;
+import cat.urv.imas.simulation.StepStatistics;
 import jade.core.*;
 import jade.domain.*;
 import jade.domain.FIPAAgentManagement.*;
 import jade.domain.FIPANames.InteractionProtocol;
 import jade.lang.acl.*;
+import jade.wrapper.AgentContainer;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -40,10 +60,35 @@ import jade.lang.acl.*;
  */
 public class SystemAgent extends ImasAgent {
 
+    /**
+     * Agent argument (or system property set to true) to run the simulation
+     * without GUI, as fast as possible.
+     */
+    public static final String HEADLESS = "headless";
+    /**
+     * Milliseconds between steps when the GUI is shown.
+     */
+    private static final long GUI_STEP_PERIOD = 500;
+    /**
+     * System property with the path of the CSV file where the statistics of
+     * every step are written when the simulation finishes. The statistics of
+     * the recycling centers go to the same path with a "-centers" suffix.
+     */
+    public static final String STATISTICS_FILE = "imas.stats.file";
+    /**
+     * System property with the path of the game settings to simulate; by
+     * default, "game.settings".
+     */
+    public static final String SETTINGS_FILE = "imas.settings";
+
     /**
      * GUI with the map, system agent log and statistics.
      */
     private GraphicInterface gui;
+    /**
+     * Engine advancing the world every simulation step.
+     */
+    private SimulationEngine engine;
     /**
      * Game settings. At the very beginning, it will contain the loaded
      * initial configuration settings.
@@ -54,6 +99,46 @@ public class SystemAgent extends ImasAgent {
      * round.
      */
     private AID coordinatorAgent;
+    /**
+     * Agents that got a snapshot of the game settings, and so they receive
+     * the changes of every simulation step.
+     */
+    private final Set<AID> mapSubscribers = new LinkedHashSet<>();
+    /**
+     * Timings of the start up.
+     */
+    private final StartupMetrics startup = new StartupMetrics();
+    /**
+     * How scouts and harvesters are executed.
+     */
+    private final ExecutionMode mode = ExecutionMode.fromProperty();
+    /**
+     * Worker pool running the scouts and harvesters in pooled execution;
+     * null otherwise.
+     */
+    private ForkJoinPool pool;
+    /**
+     * Root of the step barrier along the agent hierarchy.
+     */
+    private final StepBarrierBehaviour barrier = new StepBarrierBehaviour(this, null);
+    /**
+     * Aggregated report of the last step completed by all the agents; null
+     * until the first one.
+     */
+    private StepReport lastStepReport;
+    /**
+     * Stage committing the movements the agents report every step.
+     */
+    private final MoveResolutionStage moves = new MoveResolutionStage();
+    /**
+     * Stage performing the garbage pickups and unloads the harvesters report
+     * every step.
+     */
+    private final GarbageCollectionStage collection = new GarbageCollectionStage();
+    /**
+     * True once the simulation finished.
+     */
+    private volatile boolean finished = false;
 
     /**
      * Builds the System agent.
@@ -98,6 +183,53 @@ public class SystemAgent extends ImasAgent {
     public GameSettings getGame() {
         return this.game;
     }
+
+    /**
+     * Gets the simulation engine.
+     *
+     * @return simulation engine.
+     */
+    public SimulationEngine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * Tells whether the simulation finished, and so its statistics are
+     * complete. May be called from any thread.
+     *
+     * @return true once all the steps were performed and reported.
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Gets the timings of the start up.
+     *
+     * @return start up metrics.
+     */
+    public StartupMetrics getStartupMetrics() {
+        return this.startup;
+    }
+
+    /**
+     * Tells whether this agent runs without GUI. It is so when the agent
+     * receives the "headless" argument, when the system property "headless"
+     * is true, or when there is no display available at all.
+     *
+     * @return true if no GUI has to be loaded.
+     */
+    public boolean isHeadless() {
+        Object[] arguments = getArguments();
+        if (arguments != null) {
+            for (Object argument : arguments) {
+                if (HEADLESS.equals(argument)) {
+                    return true;
+                }
+            }
+        }
+        return Boolean.getBoolean(HEADLESS) || java.awt.GraphicsEnvironment.isHeadless();
+    }
     
     /**
      * Agent setup method - called when it first come on-line. Configuration of
@@ -110,6 +242,7 @@ public class SystemAgent extends ImasAgent {
         this.setEnabledO2ACommunication(true, 1);
 
         // 1. Register the agent to the DF
+        startup.start(StartupMetrics.Phase.DF_REGISTRATION);
         ServiceDescription sd1 = new ServiceDescription();
         sd1.setType(AgentType.SYSTEM.toString());
         sd1.setName(getLocalName());
@@ -125,18 +258,37 @@ public class SystemAgent extends ImasAgent {
             System.err.println(getLocalName() + " failed registration to DF [ko]. Reason: " + e.getMessage());
             doDelete();
         }
+        startup.end(StartupMetrics.Phase.DF_REGISTRATION);
 
         // 2. Load game settings.
-        this.game = InitialGameSettings.load("game.settings");
+        startup.start(StartupMetrics.Phase.LOAD);
+        this.game = InitialGameSettings.load(System.getProperty(SETTINGS_FILE, "game.settings"));
+        startup.end(StartupMetrics.Phase.LOAD);
         log("Initial configuration settings loaded");
 
-        // 3. Load GUI
-        try {
-            this.gui = new GraphicInterface(game);
-            gui.setVisible(true);
-            log("GUI loaded");
-        } catch (Exception e) {
-            e.printStackTrace();
+        // 3. Load GUI, unless running headless
+        boolean headless = isHeadless();
+        if (headless) {
+            log("Running headless: no GUI loaded");
+        } else {
+            try {
+                this.gui = new GraphicInterface(game);
+                gui.setVisible(true);
+                log("GUI loaded");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        this.engine = new SimulationEngine(game);
+        this.engine.addStage(moves);
+        this.engine.addStage(collection);
+        this.engine.addStage(new GarbageSpawningStage(game));
+        this.engine.addStage(new ScoutSensingStage());
+        if (mode == ExecutionMode.POOLED) {
+            // scouts and harvesters are stepped by the engine itself
+            this.pool = new ForkJoinPool(ExecutionMode.poolSize());
+            new InProcessKernel(engine, pool);
+            log("Pooled execution: scouts and harvesters run on " + pool.getParallelism() + " worker threads");
         }
 
         // search CoordinatorAgent
@@ -145,35 +297,65 @@ public class SystemAgent extends ImasAgent {
         this.coordinatorAgent = UtilsAgents.searchAgent(this, searchCriterion);
         // searchAgent is a blocking method, so we will obtain always a correct AID
         
-        //4. Generate All Agents
+        //4. Generate All Agents, all together
+        AgentSpawner spawner = new AgentSpawner();
+        AgentContainer home = this.getContainerController();
         //create harvester coordinator agent
-        UtilsAgents.createAgent(this.getContainerController(),"harvecoord", "cat.urv.imas.agent.HarvesterCoordinatorAgent", null);
+        spawner.add(home, "harvecoord", "cat.urv.imas.agent.HarvesterCoordinatorAgent", null);
         //create harvester paper coordinator agent
-        UtilsAgents.createAgent(this.getContainerController(),"papercoord", "cat.urv.imas.agent.HarvesterPaperCoordinatorAgent", null);
+        spawner.add(home, "papercoord", "cat.urv.imas.agent.HarvesterPaperCoordinatorAgent", null);
         //create harvester glass coordinator agent 
-        UtilsAgents.createAgent(this.getContainerController(),"glasscoord", "cat.urv.imas.agent.HarvesterGlassCoordinatorAgent", null);
+        spawner.add(home, "glasscoord", "cat.urv.imas.agent.HarvesterGlassCoordinatorAgent", null);
         //create harvester plastic coordinator agent
-        UtilsAgents.createAgent(this.getContainerController(),"plasticcoord", "cat.urv.imas.agent.HarvesterPlasticCoordinatorAgent", null);
+        spawner.add(home, "plasticcoord", "cat.urv.imas.agent.HarvesterPlasticCoordinatorAgent", null);
         //create scout coordinator agent
-        UtilsAgents.createAgent(this.getContainerController(),"scoutcoord", "cat.urv.imas.agent.ScoutCoordinatorAgent", null);
-        //create scouts and harvesters
-        Cell[][] map = this.game.getMap();
+        spawner.add(home, "scoutcoord", "cat.urv.imas.agent.ScoutCoordinatorAgent", null);
+        //create scouts and harvesters, from the agent positions computed when
+        //loading the map (so that large maps are not scanned cell by cell),
+        //in the container of the region they start in (coordinators stay in
+        //this one). In pooled execution they are not JADE agents.
+        boolean agents = (mode == ExecutionMode.AGENTS);
+        RegionPlacement placement = RegionPlacement.fromProperty(game.getRows(), game.getCols());
+        List<AgentContainer> regions = Collections.singletonList(home);
+        if (agents) {
+            regions = placement.createContainers(home);
+            log(placement.getRegionCount() + " map regions");
+        }
         int hcount = 1;
         int scount = 1;
         Object[] arguments = null;
-        for(int r = 0;r < map.length;r++)
-            for(int c = 0;c < map[r].length;c++)
-                if(map[r][c] instanceof StreetCell && ((StreetCell)map[r][c]).isThereAnAgent()){
-                    InfoAgent info = ((StreetCell)map[r][c]).getAgent();
-                    if(info.getType() == AgentType.SCOUT){
-                        arguments = new Object[]{r, c};
-                        UtilsAgents.createAgent(this.getContainerController(),"scout"+(scount++), "cat.urv.imas.agent.ScoutAgent", arguments);
-                    }
-                    else if(info.getType() == AgentType.HARVESTER){
-                        arguments = new Object[]{r, c, ((HarvesterInfoAgent)info).getCapacity(), ((HarvesterInfoAgent)info).getAllowedType()};
-                        UtilsAgents.createAgent(this.getContainerController(),"harve"+(hcount++), "cat.urv.imas.agent.HarvesterAgent", arguments);
-                    }
-                }
+        // agents in containers of this JVM share the routing table; agents
+        // in other JVMs get a serialized copy of it (see its size in
+        // RoutingTable)
+        RoutingTable routing = this.game.getRouting();
+        List<Cell> scouts = this.game.getAgentList().get(AgentType.SCOUT);
+        if (agents && scouts != null) {
+            for (Cell cell : scouts) {
+                arguments = new Object[]{cell.getRow(), cell.getCol(), scount - 1, routing};
+                spawner.add(placement.containerOf(cell.getRow(), cell.getCol()), "scout"+(scount++), "cat.urv.imas.agent.ScoutAgent", arguments);
+            }
+        }
+        List<Cell> harvesters = this.game.getAgentList().get(AgentType.HARVESTER);
+        if (agents && harvesters != null) {
+            for (Cell cell : harvesters) {
+                HarvesterInfoAgent info = (HarvesterInfoAgent) ((StreetCell) cell).getAgent();
+                arguments = new Object[]{cell.getRow(), cell.getCol(), info.getCapacity(), info.getAllowedType(), routing, hcount - 1};
+                spawner.add(placement.containerOf(cell.getRow(), cell.getCol()), "harve"+(hcount++), "cat.urv.imas.agent.HarvesterAgent", arguments);
+            }
+        }
+        // discovery is measured while agents are created
+        int expected = (scount - 1) + (hcount - 1);
+        startup.start(StartupMetrics.Phase.DISCOVERY);
+        if (expected > 0) {
+            this.addBehaviour(new StartupDiscoveryBehaviour(this, startup, expected));
+        } else {
+            startup.end(StartupMetrics.Phase.DISCOVERY);
+        }
+        startup.start(StartupMetrics.Phase.CREATION);
+        int started = spawner.spawn(regions);
+        startup.end(StartupMetrics.Phase.CREATION);
+        log(started + " of " + spawner.size() + " agents started in "
+                + String.format("%.1f", startup.getMillis(StartupMetrics.Phase.CREATION)) + " ms");
         
         // add behaviours
         // we wait for the initialization of the game
@@ -181,12 +363,183 @@ public class SystemAgent extends ImasAgent {
 
         this.addBehaviour(new RequestResponseBehaviour(this, mt));
 
+        // the Coordinator agent subscribes to the step barrier
+        this.addBehaviour(barrier);
+
+        // the step engine runs as fast as possible when headless
+        startup.start(StartupMetrics.Phase.FIRST_STEP);
+        // the first step waits for the agents started, this one and the
+        // Coordinator agent to join the step barrier
+        this.addBehaviour(new SimulationStepBehaviour(this, engine, (headless) ? 0 : GUI_STEP_PERIOD, started + 2));
+
         // Setup finished. When the last inform is received, the agent itself will add
         // a behaviour to send/receive actions
     }
     
+    /**
+     * Called by the step behaviour once a simulation step is completed.
+     *
+     * @param engine engine that performed the step.
+     */
+    public void stepCompleted(SimulationEngine engine) {
+        sendDelta(engine);
+        if (this.gui != null) {
+            this.gui.updateGame(engine.getDelta());
+            this.gui.showStatistics(engine.getStatistics());
+        }
+        if (!startup.isFinished(StartupMetrics.Phase.FIRST_STEP)) {
+            startup.end(StartupMetrics.Phase.FIRST_STEP);
+            startupPhaseFinished();
+        }
+    }
+
+    /**
+     * Gets the root of the step barrier, which the step behaviour uses to
+     * wait for all the agents at the end of every step.
+     *
+     * @return root step barrier.
+     */
+    public StepBarrierBehaviour getStepBarrier() {
+        return barrier;
+    }
+
+    /**
+     * Called by the step behaviour once all the agents reported the end of
+     * a step. The movements and garbage actions they request are performed
+     * in the next step.
+     *
+     * @param report report aggregated along the agent hierarchy.
+     */
+    public void stepReported(StepReport report) {
+        this.lastStepReport = report;
+        countMessages(report.getMessages());
+        // the harvesters report their state once the step is done
+        if (report.getHarvesters() > 0) {
+            engine.getStatistics().addHarvesters(report.getBusyHarvesters(),
+                    report.getHarvesters() - report.getBusyHarvesters());
+            engine.getStatistics().addAwarded(report.getAwarded());
+        }
+        moves.request(report);
+        collection.request(report);
+    }
+
+    /**
+     * Builds the report of what was performed in a step, to be sent down
+     * the agent hierarchy: the moves committed and the garbage picked up
+     * and unloaded.
+     *
+     * @param step step performed.
+     * @return report of the performed step.
+     */
+    public StepReport performedReport(int step) {
+        StepReport performed = StepReport.performed(step, engine.getDelta());
+        collection.addPerformed(performed);
+        return performed;
+    }
+
+    /**
+     * Gets the aggregated report of the last step completed by all the
+     * agents.
+     *
+     * @return last step report, or null if none was completed yet.
+     */
+    public StepReport getLastStepReport() {
+        return lastStepReport;
+    }
+
+    /**
+     * Called by the step behaviour once all simulation steps are performed:
+     * the statistics are logged, and written as CSV when the
+     * <code>imas.stats.file</code> system property is set.
+     *
+     * @param engine engine that performed the simulation.
+     */
+    public void simulationFinished(SimulationEngine engine) {
+        StepStatistics statistics = engine.getStatistics();
+        log("Simulation statistics\n" + statistics);
+        log(String.format("Execution mode %s: %s, step latency %.3f ms mean, %.3f ms max",
+                mode, RuntimeMetrics.sample(), statistics.getWindowMean(StepStatistics.LATENCY) / 1e6,
+                statistics.getMaxLatency() / 1e6));
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+        this.finished = true;
+        String filename = System.getProperty(STATISTICS_FILE);
+        if (filename == null || filename.isEmpty()) {
+            return;
+        }
+        int dot = filename.lastIndexOf('.');
+        String centersFilename = (dot > 0)
+                ? filename.substring(0, dot) + "-centers" + filename.substring(dot)
+                : filename + "-centers";
+        try (Writer steps = new FileWriter(filename);
+                Writer centers = new FileWriter(centersFilename)) {
+            statistics.writeCsv(steps);
+            statistics.writeCentersCsv(centers);
+            log("Statistics written to " + filename + " and " + centersFilename);
+        } catch (IOException e) {
+            errorLog("Cannot write statistics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts messages sent by this agent, or reported by the others with the
+     * step barrier, in the simulation statistics.
+     *
+     * @param count number of messages.
+     */
+    @Override
+    public void countMessages(int count) {
+        if (this.engine != null) {
+            this.engine.getStatistics().addMessages(count);
+        }
+    }
+
+    /**
+     * Called when a phase of the start up that ends asynchronously finishes;
+     * the start up timings are reported once all of them are known.
+     */
+    public void startupPhaseFinished() {
+        if (startup.isComplete()) {
+            log(startup.toString());
+            log("Execution mode " + mode + ": " + RuntimeMetrics.sample());
+        }
+    }
+
+    /**
+     * Registers an agent to receive the changes of every step, once it got a
+     * snapshot of the game settings.
+     *
+     * @param subscriber agent that got the game settings.
+     */
+    public void addMapSubscriber(AID subscriber) {
+        mapSubscribers.add(subscriber);
+    }
+
+    /**
+     * Sends the changes of the last step to all the map subscribers.
+     *
+     * @param engine engine that performed the step.
+     */
+    private void sendDelta(SimulationEngine engine) {
+        if (mapSubscribers.isEmpty()) {
+            return;
+        }
+        ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
+        inform.setProtocol(MessageContent.MAP_DELTA);
+        inform.setOntology(ONTOLOGY);
+        for (AID subscriber : mapSubscribers) {
+            inform.addReceiver(subscriber);
+        }
+        getCodec().fillContent(inform, engine.getDelta());
+        send(inform);
+        countMessages(mapSubscribers.size());
+    }
+
     public void updateGUI() {
-        this.gui.updateGame();
+        if (this.gui != null) {
+            this.gui.updateGame();
+        }
     }
 
 }
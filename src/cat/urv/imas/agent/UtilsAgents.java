@@ -26,9 +26,12 @@ import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
 import jade.domain.FIPAAgentManagement.SearchConstraints;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
 import jade.wrapper.AgentContainer;
 import jade.wrapper.AgentController;
 import jade.wrapper.StaleProxyException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class for agents.
@@ -36,9 +39,19 @@ import jade.wrapper.StaleProxyException;
 public class UtilsAgents {
 
     /**
-     * After each search of an agent, we will wait for 2 seconds before retrying.
+     * Maximum time to wait for the DF to notify a new registration matching
+     * a search, before subscribing again.
      */
-    private static final long DELAY = 2000;
+    private static final long SEARCH_TIMEOUT = 10000;
+
+    /**
+     * AIDs already found, by agent type and platform. Shared by all the
+     * agents of this JVM, so that only the first agent looking for a given
+     * type waits for the DF. Entries are dropped when the agent found is
+     * taken down, or when a message to it cannot be delivered (see
+     * forgetUnreachable).
+     */
+    private static final Map<String, AID> FOUND = new ConcurrentHashMap<>();
     
     /**
      * To prevent being instanced.
@@ -48,13 +61,24 @@ public class UtilsAgents {
 
 
     /**
-     * To search an agent of a certain type
+     * To search an agent of a certain type. Agents found by type are kept in
+     * a cache; when the agent is not registered yet, the DF is subscribed and
+     * the agent is returned as soon as the DF notifies its registration.
      *
      * @param parent Agent
      * @param sd ServiceDescription search criterion
      * @return AID of the agent if it is foun, it is a *blocking* method
      */
     public static AID searchAgent(Agent parent, ServiceDescription sd) {
+        // only searches by type alone are cached
+        String key = (sd.getName() == null && !sd.getAllProperties().hasNext())
+                ? sd.getType() + '@' + parent.getHap() : null;
+        if (key != null) {
+            AID cached = FOUND.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
         /**
          * Searching an agent of the specified type
          */
@@ -62,17 +86,15 @@ public class UtilsAgents {
         DFAgentDescription dfd = new DFAgentDescription();
         dfd.addServices(sd);
         try {
-            while (true) {
-                SearchConstraints c = new SearchConstraints();
-                c.setMaxResults(new Long(-1));
-                DFAgentDescription[] result = DFService.search(parent, dfd, c);
-                if (result.length > 0) {
-                    dfd = result[0];
-                    searchedAgent = dfd.getName();
-                    break;
-                }
-                Thread.sleep(DELAY);
-
+            SearchConstraints c = new SearchConstraints();
+            c.setMaxResults(new Long(1));
+            DFAgentDescription[] result = DFService.search(parent, dfd, c);
+            while (result == null || result.length == 0) {
+                result = DFService.searchUntilFound(parent, parent.getDefaultDF(), dfd, c, SEARCH_TIMEOUT);
+            }
+            searchedAgent = result[0].getName();
+            if (key != null) {
+                FOUND.put(key, searchedAgent);
             }
         } catch (Exception fe) {
             System.err.println("ERROR: Cannot search the expected agent from parent " + parent.getLocalName());
@@ -82,6 +104,72 @@ public class UtilsAgents {
         return searchedAgent;
     }
 
+    /**
+     * Forgets an agent found before, e.g., after that agent died, so that
+     * the next search asks the DF again.
+     *
+     * @param agent AID of the agent.
+     */
+    public static void forgetAgent(AID agent) {
+        FOUND.values().remove(agent);
+    }
+
+    /**
+     * Tells whether a message is the FAILURE sent by the AMS when a message
+     * of the given agent could not be delivered.
+     *
+     * @param parent agent that sent the undelivered message.
+     * @param msg message received.
+     * @return true for delivery failures.
+     */
+    public static boolean isDeliveryFailure(Agent parent, ACLMessage msg) {
+        return msg.getPerformative() == ACLMessage.FAILURE && parent.getAMS().equals(msg.getSender());
+    }
+
+    /**
+     * Tells whether a delivery failure refers to the given receiver.
+     *
+     * @param failure FAILURE sent by the AMS.
+     * @param receiver receiver of the undelivered message.
+     * @return true if the receiver is the one that could not be reached.
+     */
+    public static boolean isUnreachable(ACLMessage failure, AID receiver) {
+        // the content is like "(... (MTS-error (agent-identifier :name x@p) ...))"
+        String content = failure.getContent();
+        int error = (content == null) ? -1 : content.indexOf("MTS-error");
+        int name = (error < 0) ? -1 : content.indexOf(":name ", error);
+        if (name < 0) {
+            return false;
+        }
+        int start = name + ":name ".length();
+        int end = start;
+        while (end < content.length() && content.charAt(end) != ' ' && content.charAt(end) != ')') {
+            end++;
+        }
+        return receiver.getName().equals(content.substring(start, end));
+    }
+
+    /**
+     * Forgets the agents found before that a delivery failure refers to.
+     * Behaviours receiving the FAILURE replies of their protocols call it,
+     * so that a dead agent is looked up again in the DF.
+     *
+     * @param parent agent that sent the undelivered message.
+     * @param failure message received.
+     * @return true if the message was a delivery failure.
+     */
+    public static boolean forgetUnreachable(Agent parent, ACLMessage failure) {
+        if (!isDeliveryFailure(parent, failure)) {
+            return false;
+        }
+        for (AID found : FOUND.values()) {
+            if (isUnreachable(failure, found)) {
+                forgetAgent(found);
+            }
+        }
+        return true;
+    }
+
     /**
      * To create an agent in a given container
      *
@@ -122,6 +210,26 @@ public class UtilsAgents {
         }
     }
 
+    /**
+     * To create a new local container, with the default profile.
+     *
+     * @param name container name; null for a default one.
+     * @return AgentContainer created; null if it cannot be created.
+     */
+    public static AgentContainer createContainer(String name) {
+        try {
+            Profile p = new ProfileImpl();
+            if (name != null) {
+                p.setParameter(Profile.CONTAINER_NAME, name);
+            }
+            return Runtime.instance().createAgentContainer(p);
+        } catch (Exception e) {
+            System.err.println("ERROR: Cannot create agent container");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * To create the agent and the container together, returning the container.
      *
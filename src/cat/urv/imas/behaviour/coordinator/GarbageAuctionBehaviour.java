@@ -0,0 +1,140 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.coordinator;
+
+import cat.urv.imas.agent.ImasAgent;
+import cat.urv.imas.agent.UtilsAgents;
+import cat.urv.imas.onthology.GarbageBid;
+import cat.urv.imas.onthology.GarbageTask;
+import cat.urv.imas.onthology.GarbageTaskBatch;
+import jade.lang.acl.ACLMessage;
+import jade.proto.ContractNetInitiator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A single contract-net round for a batch of garbage tasks. Once all the
+ * harvesters have answered (or the deadline expires), tasks are awarded
+ * with GarbageTaskBatch.award(). Each bidder receives a single
+ * ACCEPT_PROPOSAL with all its tasks, or a REJECT_PROPOSAL. Tasks not
+ * awarded, and the ones a winner sends back in a FAILURE, are returned to
+ * the auctioneer when the round ends.
+ */
+public class GarbageAuctionBehaviour extends ContractNetInitiator {
+
+    /**
+     * Behaviour that started this round.
+     */
+    private final GarbageAuctioneerBehaviour auctioneer;
+    /**
+     * Auctioned tasks.
+     */
+    private final GarbageTaskBatch batch;
+    /**
+     * Tasks not awarded.
+     */
+    private final List<GarbageTask> unassigned = new ArrayList<>();
+
+    public GarbageAuctionBehaviour(GarbageAuctioneerBehaviour auctioneer, ACLMessage cfp, GarbageTaskBatch batch) {
+        super(auctioneer.getAgent(), cfp);
+        this.auctioneer = auctioneer;
+        this.batch = batch;
+    }
+
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"}) // JADE declares both vectors raw
+    protected void handleAllResponses(Vector responses, Vector acceptances) {
+        award((List<ACLMessage>) responses, (List<ACLMessage>) acceptances);
+    }
+
+    /**
+     * Awards the batch among the received proposals.
+     *
+     * @param responses all the responses to the call for proposals.
+     * @param acceptances where the accept and reject replies are added.
+     */
+    private void award(List<ACLMessage> responses, List<ACLMessage> acceptances) {
+        ImasAgent agent = (ImasAgent) myAgent;
+        List<ACLMessage> proposals = new ArrayList<>();
+        List<GarbageBid> bids = new ArrayList<>();
+        for (ACLMessage msg : responses) {
+            if (msg.getPerformative() != ACLMessage.PROPOSE) {
+                continue;
+            }
+            try {
+                GarbageBid bid = (GarbageBid) agent.getCodec().extractContent(msg);
+                if (bid.size() == batch.size()) {
+                    proposals.add(msg);
+                    bids.add(bid);
+                }
+            } catch (Exception e) {
+                agent.errorLog("Incorrect proposal from " + msg.getSender().getLocalName() + ": " + e.toString());
+            }
+        }
+
+        List<GarbageTask> tasks = batch.getTasks();
+        int[] winner = batch.award(bids);
+
+        GarbageTaskBatch[] awards = new GarbageTaskBatch[bids.size()];
+        for (int t = 0; t < tasks.size(); t++) {
+            if (winner[t] < 0) {
+                unassigned.add(tasks.get(t));
+                continue;
+            }
+            if (awards[winner[t]] == null) {
+                awards[winner[t]] = new GarbageTaskBatch(batch.getStep());
+            }
+            awards[winner[t]].add(tasks.get(t));
+        }
+        for (int b = 0; b < proposals.size(); b++) {
+            ACLMessage reply = proposals.get(b).createReply();
+            if (awards[b] == null) {
+                reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
+            } else {
+                reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+                agent.getCodec().fillContent(reply, awards[b]);
+            }
+            acceptances.add(reply);
+        }
+        agent.countMessages(proposals.size());
+        agent.log("Awarded " + (tasks.size() - unassigned.size()) + " of " + tasks.size() + " " + auctioneer.getType().getShortString() + " tasks");
+    }
+
+    @Override
+    protected void handleFailure(ACLMessage failure) {
+        if (UtilsAgents.forgetUnreachable(myAgent, failure)) {
+            ((ImasAgent) myAgent).errorLog("A harvester cannot be reached");
+            return;
+        }
+        ImasAgent agent = (ImasAgent) myAgent;
+        try {
+            GarbageTaskBatch refused = (GarbageTaskBatch) agent.getCodec().extractContent(failure);
+            unassigned.addAll(refused.getTasks());
+            agent.log("Harvester " + failure.getSender().getLocalName() + " refused " + refused.size() + " tasks");
+        } catch (Exception e) {
+            agent.errorLog("Harvester " + failure.getSender().getLocalName() + " failed to take its tasks");
+        }
+    }
+
+    @Override
+    public int onEnd() {
+        auctioneer.auctionFinished(unassigned);
+        return super.onEnd();
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.coordinator;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.agent.ImasAgent;
+import cat.urv.imas.onthology.GarbageBacklog;
+import cat.urv.imas.onthology.GarbageTask;
+import cat.urv.imas.onthology.GarbageTaskBatch;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.MessageContent;
+import jade.core.AID;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.domain.FIPANames.InteractionProtocol;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Behaviour for the type coordinators (paper, glass and plastic) to allocate
+ * the garbage of their type to the harvesters. Batches of tasks come from the
+ * Harvester Coordinator agent; tasks are kept pending while an auction is
+ * running, so that a single contract-net round (see GarbageAuctionBehaviour)
+ * allocates all the garbage announced meanwhile. Tasks no harvester can take
+ * are kept for the next round, in a bounded GarbageBacklog that also drops
+ * the tasks of emptied buildings; they alone do not start a round. The
+ * harvesters are searched in the DF before every round, so that the ones
+ * gone are not called and the new ones are.
+ *
+ * Every batch is confirmed to its sender once no auction is running, so
+ * that the Harvester Coordinator agent knows the garbage is allocated (see
+ * GarbageTaskDispatchBehaviour).
+ */
+public class GarbageAuctioneerBehaviour extends CyclicBehaviour {
+
+    /**
+     * Time given to the harvesters to answer a call for proposals.
+     */
+    public static final long REPLY_TIMEOUT = 2000;
+
+    /**
+     * Template to catch the batches of tasks.
+     */
+    private final MessageTemplate template = MessageTemplate.and(
+            MessageTemplate.MatchProtocol(MessageContent.GARBAGE_TASKS),
+            MessageTemplate.MatchPerformative(ACLMessage.INFORM));
+    /**
+     * Type of garbage auctioned.
+     */
+    private final GarbageType type;
+    /**
+     * Tasks waiting for the next auction.
+     */
+    private final GarbageBacklog pending = new GarbageBacklog();
+    /**
+     * Harvesters able to harvest this type of garbage, as found in the DF
+     * for the last round.
+     */
+    private final List<AID> harvesters = new ArrayList<>();
+    /**
+     * Step of the latest batch received.
+     */
+    private int step = 0;
+    /**
+     * True while a contract-net round is running.
+     */
+    private boolean running = false;
+    /**
+     * Batches received and not confirmed yet.
+     */
+    private final List<ACLMessage> unconfirmed = new ArrayList<>();
+
+    public GarbageAuctioneerBehaviour(ImasAgent agent, GarbageType type) {
+        super(agent);
+        this.type = type;
+    }
+
+    @Override
+    public void action() {
+        ACLMessage msg = myAgent.receive(template);
+        if (msg == null) {
+            block();
+            return;
+        }
+        ImasAgent agent = (ImasAgent) myAgent;
+        unconfirmed.add(msg);
+        try {
+            GarbageTaskBatch batch = (GarbageTaskBatch) agent.getCodec().extractContent(msg);
+            step = Math.max(step, batch.getStep());
+            pending.add(batch);
+        } catch (Exception e) {
+            agent.errorLog("Incorrect garbage tasks: " + e.toString());
+        }
+        if (!running && pending.hasNewTasks()) {
+            startAuction();
+        }
+        confirm();
+    }
+
+    /**
+     * Confirms the batches received, unless an auction is running.
+     */
+    private void confirm() {
+        if (running) {
+            return;
+        }
+        ImasAgent agent = (ImasAgent) myAgent;
+        for (ACLMessage batch : unconfirmed) {
+            ACLMessage reply = batch.createReply();
+            reply.setPerformative(ACLMessage.CONFIRM);
+            agent.send(reply);
+            agent.countMessages(1);
+        }
+        unconfirmed.clear();
+    }
+
+    /**
+     * Sends one call for proposals with all the pending tasks.
+     */
+    private void startAuction() {
+        ImasAgent agent = (ImasAgent) myAgent;
+        int expired = pending.expire(step);
+        if (expired > 0) {
+            agent.log("Dropped " + expired + " " + type.getShortString() + " tasks waiting for more than " + GarbageBacklog.MAX_AGE + " steps");
+        }
+        if (pending.isEmpty() || findHarvesters().isEmpty()) {
+            return;
+        }
+        GarbageTaskBatch batch = pending.take(step);
+
+        ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+        cfp.setProtocol(InteractionProtocol.FIPA_CONTRACT_NET);
+        for (AID harvester : harvesters) {
+            cfp.addReceiver(harvester);
+        }
+        cfp.setReplyByDate(new Date(System.currentTimeMillis() + REPLY_TIMEOUT));
+        agent.getCodec().fillContent(cfp, batch);
+        agent.countMessages(harvesters.size());
+        running = true;
+        agent.log("Auctioning " + batch.size() + " " + type.getShortString() + " tasks among " + harvesters.size() + " harvesters");
+        agent.addBehaviour(new GarbageAuctionBehaviour(this, cfp, batch));
+    }
+
+    /**
+     * Called when a contract-net round ends.
+     *
+     * @param unassigned tasks no harvester took.
+     */
+    void auctionFinished(List<GarbageTask> unassigned) {
+        running = false;
+        pending.putBack(unassigned);
+        // unassigned tasks alone wait for the next batch, so that harvesters
+        // are not flooded when none of them has capacity left.
+        if (pending.hasNewTasks()) {
+            startAuction();
+        }
+        confirm();
+    }
+
+    /**
+     * Looks up the harvesters of this type of garbage in the DF.
+     *
+     * @return harvesters currently registered.
+     */
+    private List<AID> findHarvesters() {
+        harvesters.clear();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(AgentType.HARVESTER.toString());
+        sd.addProperties(new Property(ImasAgent.GARBAGE_PROPERTY, type.getShortString()));
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.addServices(sd);
+        // all of them, not only the default maximum of the DF
+        SearchConstraints all = new SearchConstraints();
+        all.setMaxResults(new Long(-1));
+        try {
+            for (DFAgentDescription found : DFService.search(myAgent, dfd, all)) {
+                harvesters.add(found.getName());
+            }
+        } catch (FIPAException e) {
+            ((ImasAgent) myAgent).errorLog("Harvesters cannot be searched: " + e.getMessage());
+        }
+        return harvesters;
+    }
+
+    /**
+     * Gets the type of garbage auctioned.
+     *
+     * @return type of garbage.
+     */
+    public GarbageType getType() {
+        return type;
+    }
+}
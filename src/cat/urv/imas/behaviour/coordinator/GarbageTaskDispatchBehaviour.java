@@ -0,0 +1,165 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.coordinator;
+
+import cat.urv.imas.agent.HarvesterCoordinatorAgent;
+import cat.urv.imas.agent.UtilsAgents;
+import cat.urv.imas.onthology.GarbageTask;
+import cat.urv.imas.onthology.GarbageTaskBatch;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.MessageContent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Behaviour for the Harvester Coordinator agent to split the batches of
+ * garbage tasks sent by the Coordinator agent by type of garbage, and to
+ * forward every part to the coordinator of its type.
+ *
+ * Parts are forwarded one at a time, in the order of the types, each one
+ * once the previous type coordinator confirmed that its auction is done, so
+ * harvesters of several types bid knowing the tasks they were already
+ * awarded. The Coordinator agent sends a batch every step, even an empty
+ * one, and the round of the step barrier of a step is held until its batch
+ * is allocated (see isAllocated()): the harvesters decide with all the
+ * tasks of the step, as in the in-process kernel.
+ */
+public class GarbageTaskDispatchBehaviour extends CyclicBehaviour {
+
+    /**
+     * Template to catch the batches of tasks and the confirmations of the
+     * type coordinators.
+     */
+    private final MessageTemplate template = MessageTemplate.and(
+            MessageTemplate.MatchProtocol(MessageContent.GARBAGE_TASKS),
+            MessageTemplate.or(MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                    MessageTemplate.or(MessageTemplate.MatchPerformative(ACLMessage.CONFIRM),
+                            MessageTemplate.MatchPerformative(ACLMessage.FAILURE))));
+    /**
+     * Parts waiting to be forwarded, in order. Every batch ends with an
+     * empty part of its step.
+     */
+    private final Deque<GarbageTaskBatch> parts = new ArrayDeque<>();
+    /**
+     * True while a type coordinator has not confirmed the last part.
+     */
+    private boolean forwarding = false;
+    /**
+     * Step of the last batch whose parts were all confirmed.
+     */
+    private int allocated = 0;
+
+    public GarbageTaskDispatchBehaviour(HarvesterCoordinatorAgent agent) {
+        super(agent);
+    }
+
+    @Override
+    public void action() {
+        ACLMessage msg = myAgent.receive(template);
+        if (msg == null) {
+            block();
+            return;
+        }
+        HarvesterCoordinatorAgent agent = (HarvesterCoordinatorAgent) myAgent;
+        switch (msg.getPerformative()) {
+            case ACLMessage.INFORM:
+                try {
+                    split((GarbageTaskBatch) agent.getCodec().extractContent(msg));
+                } catch (Exception e) {
+                    agent.errorLog("Incorrect garbage tasks: " + e.toString());
+                    return;
+                }
+                break;
+            case ACLMessage.FAILURE:
+                if (!UtilsAgents.forgetUnreachable(agent, msg)) {
+                    return;
+                }
+                // the type coordinator is gone: its part is given up
+                agent.errorLog("A type coordinator cannot be reached");
+                forwarding = false;
+                break;
+            default:
+                forwarding = false;
+        }
+        forward();
+    }
+
+    /**
+     * Queues the parts of a batch, one per type of garbage with tasks,
+     * followed by an empty part that marks the end of the batch.
+     *
+     * @param batch tasks announced by the Coordinator agent.
+     */
+    private void split(GarbageTaskBatch batch) {
+        GarbageType[] types = GarbageType.values();
+        GarbageTaskBatch[] split = new GarbageTaskBatch[types.length];
+        for (GarbageTask task : batch.getTasks()) {
+            int t = task.getType().ordinal();
+            if (split[t] == null) {
+                split[t] = new GarbageTaskBatch(batch.getStep());
+            }
+            split[t].add(task);
+        }
+        for (GarbageTaskBatch part : split) {
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+        parts.add(new GarbageTaskBatch(batch.getStep()));
+    }
+
+    /**
+     * Forwards the next part to the coordinator of its type, unless one is
+     * being auctioned. The ends of batch reached meanwhile release the held
+     * round of the step barrier.
+     */
+    private void forward() {
+        HarvesterCoordinatorAgent agent = (HarvesterCoordinatorAgent) myAgent;
+        while (!forwarding && !parts.isEmpty()) {
+            GarbageTaskBatch part = parts.poll();
+            if (part.isEmpty()) {
+                allocated = Math.max(allocated, part.getStep());
+                agent.getStepBarrier().release();
+                continue;
+            }
+            ACLMessage forward = new ACLMessage(ACLMessage.INFORM);
+            forward.setProtocol(MessageContent.GARBAGE_TASKS);
+            forward.addReceiver(agent.getTypeCoordinator(part.getTasks().get(0).getType()));
+            agent.getCodec().fillContent(forward, part);
+            agent.send(forward);
+            agent.countMessages(1);
+            forwarding = true;
+        }
+    }
+
+    /**
+     * Tells whether the garbage announced in a step is allocated. Batches
+     * carry the version of the game settings with their step applied, that
+     * is, the number of steps done (see GarbageTaskBatch.fromDelta()).
+     *
+     * @param step step number, zero based.
+     * @return true once every type coordinator has auctioned its part of
+     * that step, or of a later one.
+     */
+    public boolean isAllocated(int step) {
+        return allocated > step;
+    }
+}
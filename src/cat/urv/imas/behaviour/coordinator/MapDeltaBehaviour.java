@@ -0,0 +1,95 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.coordinator;
+
+import cat.urv.imas.agent.CoordinatorAgent;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.MapDelta;
+import cat.urv.imas.onthology.MessageContent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Behaviour for the Coordinator agent to keep its game settings up to date.
+ * Once the whole game settings are received (see RequesterBehaviour), the
+ * System agent sends an INFORM with a MapDelta every simulation step. Deltas
+ * are applied in order; when a delta cannot be applied (i.e., some step was
+ * missed), a new snapshot is requested.
+ *
+ * Deltas received while waiting for a snapshot are kept until it arrives:
+ * this behaviour may take them from the queue before the snapshot is taken,
+ * even when the snapshot is older than some of them. The ones already in the
+ * snapshot are only announced.
+ */
+public class MapDeltaBehaviour extends CyclicBehaviour {
+
+    /**
+     * Template to catch the messages with the changes of every step.
+     */
+    private final MessageTemplate template = MessageTemplate.and(
+            MessageTemplate.MatchProtocol(MessageContent.MAP_DELTA),
+            MessageTemplate.MatchPerformative(ACLMessage.INFORM));
+
+    /**
+     * Deltas received and not applied yet.
+     */
+    private final List<MapDelta> received = new ArrayList<>();
+
+    public MapDeltaBehaviour(CoordinatorAgent agent) {
+        super(agent);
+    }
+
+    @Override
+    public void action() {
+        ACLMessage msg = myAgent.receive(template);
+        if (msg == null) {
+            block();
+            return;
+        }
+        CoordinatorAgent agent = (CoordinatorAgent) myAgent;
+        try {
+            received.add((MapDelta) agent.getCodec().extractContent(msg));
+        } catch (Exception e) {
+            agent.errorLog("Incorrect changes of step (" + e.getMessage() + "). Requesting the whole map.");
+            received.clear();
+            agent.requestMap();
+            return;
+        }
+        GameSettings game = agent.getGame();
+        if (game == null || agent.isWaitingForMap()) {
+            return;
+        }
+        try {
+            for (MapDelta delta : received) {
+                if (delta.getBaseVersion() >= game.getVersion()) {
+                    game.applyDelta(delta);
+                }
+                // the ones in the snapshot are announced as well
+                agent.announceGarbage(delta);
+            }
+        } catch (Exception e) {
+            agent.errorLog("Changes of step cannot be applied (" + e.getMessage() + "). Requesting the whole map.");
+            agent.requestMap();
+        } finally {
+            received.clear();
+        }
+    }
+}
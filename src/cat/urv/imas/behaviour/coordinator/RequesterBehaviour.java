@@ -21,6 +21,7 @@ import jade.core.AID;
 import jade.lang.acl.ACLMessage;
 import jade.proto.AchieveREInitiator;
 import cat.urv.imas.agent.CoordinatorAgent;
+import cat.urv.imas.agent.UtilsAgents;
 import cat.urv.imas.onthology.GameSettings;
 
 /**
@@ -60,7 +61,7 @@ public class RequesterBehaviour extends AchieveREInitiator {
         CoordinatorAgent agent = (CoordinatorAgent) this.getAgent();
         agent.log("INFORM received from " + ((AID) msg.getSender()).getLocalName());
         try {
-            GameSettings game = (GameSettings) msg.getContentObject();
+            GameSettings game = (GameSettings) agent.getCodec().extractContent(msg);
             agent.setGame(game);
             agent.log(game.getShortString());
         } catch (Exception e) {
@@ -87,6 +88,10 @@ public class RequesterBehaviour extends AchieveREInitiator {
     @Override
     protected void handleFailure(ACLMessage msg) {
         CoordinatorAgent agent = (CoordinatorAgent) this.getAgent();
+        if (UtilsAgents.forgetUnreachable(agent, msg)) {
+            agent.errorLog("The System agent cannot be reached.");
+            return;
+        }
         agent.log("The action has failed.");
 
     } //End of handleFailure
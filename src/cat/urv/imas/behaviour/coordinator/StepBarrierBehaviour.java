@@ -0,0 +1,290 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.coordinator;
+
+import cat.urv.imas.agent.ImasAgent;
+import cat.urv.imas.agent.UtilsAgents;
+import cat.urv.imas.onthology.MessageContent;
+import cat.urv.imas.onthology.StepReport;
+import jade.core.AID;
+import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Step barrier along the agent hierarchy (see MessageContent.STEP_BARRIER).
+ * Every agent taking part runs one of these behaviours: it subscribes to its
+ * superior, learns its subordinates from their subscriptions and, when a
+ * step is done, forwards the request down with a single message and sends
+ * up a single report merging its own with all of its subordinates'. The
+ * System agent is the root: it has no superior and starts every round. The
+ * request carries the moves committed in the step, which every agent gets
+ * (see ImasAgent.stepPerformed()) before building its own report.
+ *
+ * A round that is not complete when the next one starts is abandoned, so a
+ * missing subordinate delays its superiors only until the root gives up. An
+ * agent may also hold a round until it is ready for it (see
+ * ImasAgent.isReadyForRound()), e.g., until the garbage of the step is
+ * allocated. Rounds of StepReport.JOINING only count the agents: nothing is
+ * performed nor decided.
+ */
+public class StepBarrierBehaviour extends CyclicBehaviour {
+
+    /**
+     * Template to catch the messages of the barrier.
+     */
+    private final MessageTemplate template = MessageTemplate.MatchProtocol(MessageContent.STEP_BARRIER);
+    /**
+     * Superior agent; null for the root.
+     */
+    private final AID superior;
+    /**
+     * Subscribed subordinates, in order of subscription.
+     */
+    private final Set<AID> subordinates = new LinkedHashSet<>();
+    /**
+     * Subordinates that have not reported the current round yet.
+     */
+    private final Set<AID> waiting = new HashSet<>();
+    /**
+     * Report of the current round; null when no round is running.
+     */
+    private StepReport report;
+    /**
+     * Report of the last completed round.
+     */
+    private StepReport lastReport;
+    /**
+     * Request of a round held until this agent is ready for it; null if
+     * none.
+     */
+    private StepReport held;
+    /**
+     * Behaviour of the same agent waiting for the rounds to complete; null
+     * for none.
+     */
+    private Behaviour listener;
+
+    /**
+     * Builds the behaviour.
+     *
+     * @param agent agent taking part in the barrier.
+     * @param superior superior agent in the hierarchy; null for the root.
+     */
+    public StepBarrierBehaviour(ImasAgent agent, AID superior) {
+        super(agent);
+        this.superior = superior;
+    }
+
+    @Override
+    public void onStart() {
+        if (superior != null) {
+            ACLMessage subscribe = new ACLMessage(ACLMessage.SUBSCRIBE);
+            subscribe.setProtocol(MessageContent.STEP_BARRIER);
+            subscribe.addReceiver(superior);
+            myAgent.send(subscribe);
+            ((ImasAgent) myAgent).countMessages(1);
+        }
+    }
+
+    @Override
+    public void action() {
+        ACLMessage msg = myAgent.receive(template);
+        if (msg == null) {
+            block();
+            return;
+        }
+        ImasAgent agent = (ImasAgent) myAgent;
+        switch (msg.getPerformative()) {
+            case ACLMessage.SUBSCRIBE:
+                subordinates.add(msg.getSender());
+                break;
+            case ACLMessage.REQUEST:
+                try {
+                    held = (StepReport) agent.getCodec().extractContent(msg);
+                    release();
+                } catch (Exception e) {
+                    agent.errorLog("Incorrect step request: " + e.toString());
+                }
+                break;
+            case ACLMessage.INFORM:
+                try {
+                    StepReport received = (StepReport) agent.getCodec().extractContent(msg);
+                    if (report != null && received.getStep() == report.getStep()
+                            && waiting.remove(msg.getSender())) {
+                        report.merge(received);
+                        if (waiting.isEmpty()) {
+                            finishRound();
+                        }
+                    }
+                } catch (Exception e) {
+                    agent.errorLog("Incorrect step report: " + e.toString());
+                }
+                break;
+            case ACLMessage.FAILURE:
+                if (UtilsAgents.forgetUnreachable(agent, msg)) {
+                    unreachable(msg);
+                }
+                break;
+            default:
+                agent.errorLog("Unexpected step barrier message: " + ACLMessage.getPerformative(msg.getPerformative()));
+        }
+    }
+
+    /**
+     * Drops the subordinates that a delivery failure refers to, so that
+     * the rounds no longer wait for them.
+     *
+     * @param failure FAILURE sent by the AMS.
+     */
+    private void unreachable(ACLMessage failure) {
+        ImasAgent agent = (ImasAgent) myAgent;
+        if (superior != null && UtilsAgents.isUnreachable(failure, superior)) {
+            agent.errorLog("Superior " + superior.getLocalName() + " cannot be reached");
+        }
+        Iterator<AID> it = subordinates.iterator();
+        while (it.hasNext()) {
+            AID subordinate = it.next();
+            if (UtilsAgents.isUnreachable(failure, subordinate)) {
+                it.remove();
+                agent.errorLog("Subordinate " + subordinate.getLocalName() + " cannot be reached");
+                if (waiting.remove(subordinate) && report != null && waiting.isEmpty()) {
+                    finishRound();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the round of a step: this agent's report is built and the
+     * request is forwarded to all the subordinates. Any running round is
+     * abandoned.
+     *
+     * @param performed moves committed in the step done (see
+     * StepReport.performed()).
+     */
+    public void startRound(StepReport performed) {
+        ImasAgent agent = (ImasAgent) myAgent;
+        if (performed.getStep() == StepReport.JOINING) {
+            report = new StepReport(StepReport.JOINING);
+        } else {
+            agent.stepPerformed(performed);
+            report = agent.createStepReport(performed.getStep());
+        }
+        waiting.clear();
+        waiting.addAll(subordinates);
+        if (!subordinates.isEmpty()) {
+            ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+            request.setProtocol(MessageContent.STEP_BARRIER);
+            agent.getCodec().fillContent(request, performed);
+            for (AID subordinate : subordinates) {
+                request.addReceiver(subordinate);
+            }
+            myAgent.send(request);
+            report.addMessages(subordinates.size());
+        }
+        if (waiting.isEmpty()) {
+            finishRound();
+        }
+    }
+
+    /**
+     * Starts the round requested by the superior, unless this agent is not
+     * ready for it yet; then it is held until this method is called again.
+     * A newer request replaces the one held.
+     */
+    public void release() {
+        if (held != null && ((ImasAgent) myAgent).isReadyForRound(held.getStep())) {
+            StepReport performed = held;
+            held = null;
+            startRound(performed);
+        }
+    }
+
+    /**
+     * Sends the aggregated report of the current round to the superior.
+     */
+    private void finishRound() {
+        if (superior != null) {
+            report.addMessages(1 + ((ImasAgent) myAgent).takeSentMessages());
+            ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
+            inform.setProtocol(MessageContent.STEP_BARRIER);
+            inform.addReceiver(superior);
+            ((ImasAgent) myAgent).getCodec().fillContent(inform, report);
+            myAgent.send(inform);
+        }
+        lastReport = report;
+        report = null;
+        if (listener != null) {
+            listener.restart();
+        }
+    }
+
+    /**
+     * Sets a behaviour of the same agent to be woken up whenever a round is
+     * complete, e.g., the one waiting for isComplete.
+     *
+     * @param listener blocked behaviour to restart; null for none.
+     */
+    public void setListener(Behaviour listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tells whether the round of a step is complete.
+     *
+     * @param step step number.
+     * @return true once the reports of all subordinates for that step (or a
+     * later one) have been merged.
+     */
+    public boolean isComplete(int step) {
+        return lastReport != null && lastReport.getStep() >= step;
+    }
+
+    /**
+     * Gets the report of the last completed round.
+     *
+     * @return aggregated report, or null when no round was completed.
+     */
+    public StepReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Number of subordinates that have not reported the current round.
+     *
+     * @return subordinates being waited for.
+     */
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * Number of subscribed subordinates.
+     *
+     * @return direct subordinates.
+     */
+    public int getSubordinateCount() {
+        return subordinates.size();
+    }
+}
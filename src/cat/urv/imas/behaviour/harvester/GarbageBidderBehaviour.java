@@ -0,0 +1,94 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.harvester;
+
+import cat.urv.imas.agent.HarvesterAgent;
+import cat.urv.imas.onthology.GarbageBid;
+import cat.urv.imas.onthology.GarbageTask;
+import cat.urv.imas.onthology.GarbageTaskBatch;
+import jade.domain.FIPANames.InteractionProtocol;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.ContractNetResponder;
+import java.util.List;
+
+/**
+ * Behaviour for the Harvester agent to take part in the garbage auctions of
+ * the type coordinators (FIPA contract net). Every call for proposals holds
+ * all the garbage of a type detected in a step; the harvester proposes its
+ * estimated travel cost to every building of a type it can harvest and the
+ * capacity it has left, and keeps the tasks it is awarded. Awarded tasks it
+ * can no longer take (its capacity was taken meanwhile) are sent back in a
+ * FAILURE, to be auctioned again.
+ */
+public class GarbageBidderBehaviour extends ContractNetResponder {
+
+    public GarbageBidderBehaviour(HarvesterAgent agent) {
+        super(agent, MessageTemplate.and(
+                MessageTemplate.MatchProtocol(InteractionProtocol.FIPA_CONTRACT_NET),
+                MessageTemplate.MatchPerformative(ACLMessage.CFP)));
+    }
+
+    @Override
+    protected ACLMessage handleCfp(ACLMessage cfp) {
+        HarvesterAgent agent = (HarvesterAgent) myAgent;
+        ACLMessage reply = cfp.createReply();
+        agent.countMessages(1);
+        try {
+            List<GarbageTask> tasks = ((GarbageTaskBatch) agent.getCodec().extractContent(cfp)).getTasks();
+            GarbageBid bid = agent.getLogic().bid(tasks);
+            if (bid == null) {
+                reply.setPerformative(ACLMessage.REFUSE);
+                return reply;
+            }
+            reply.setPerformative(ACLMessage.PROPOSE);
+            agent.getCodec().fillContent(reply, bid);
+        } catch (Exception e) {
+            agent.errorLog("Incorrect call for proposals: " + e.toString());
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+        }
+        return reply;
+    }
+
+    @Override
+    protected ACLMessage handleAcceptProposal(ACLMessage cfp, ACLMessage propose, ACLMessage accept) {
+        HarvesterAgent agent = (HarvesterAgent) myAgent;
+        ACLMessage reply = accept.createReply();
+        agent.countMessages(1);
+        try {
+            GarbageTaskBatch awarded = (GarbageTaskBatch) agent.getCodec().extractContent(accept);
+            GarbageTaskBatch refused = new GarbageTaskBatch(awarded.getStep());
+            for (GarbageTask task : awarded.getTasks()) {
+                if (!agent.assignTask(task)) {
+                    refused.add(task);
+                }
+            }
+            agent.log("Awarded " + awarded.size() + " garbage tasks, " + refused.size() + " refused");
+            if (refused.isEmpty()) {
+                reply.setPerformative(ACLMessage.INFORM);
+            } else {
+                reply.setPerformative(ACLMessage.FAILURE);
+                agent.getCodec().fillContent(reply, refused);
+            }
+        } catch (Exception e) {
+            agent.errorLog("Incorrect award: " + e.toString());
+            reply.setPerformative(ACLMessage.FAILURE);
+        }
+        return reply;
+    }
+}
@@ -32,7 +32,8 @@ import java.util.Map;
  * A request-responder behaviour for System agent, answering to queries
  * from the Coordinator agent. The Coordinator Agent sends a REQUEST of the whole
  * game information and the System Agent sends an AGREE and then an INFORM
- * with the city information.
+ * with the city information. Afterwards, the requester receives a MapDelta
+ * with the changes of every simulation step.
  */
 public class RequestResponseBehaviour extends AchieveREResponder {
 
@@ -70,6 +71,7 @@ public class RequestResponseBehaviour extends AchieveREResponder {
             e.printStackTrace();
         }
         agent.log("Response being prepared");
+        agent.countMessages(1);
         return reply;
     }
 
@@ -96,13 +98,17 @@ public class RequestResponseBehaviour extends AchieveREResponder {
         reply.setPerformative(ACLMessage.INFORM);
 
         try {
-            reply.setContentObject(agent.getGame());
+            agent.getCodec().fillContent(reply, agent.getGame());
+            reply.setOntology(SystemAgent.ONTOLOGY);
+            // from now on, only the changes of every step are sent.
+            agent.addMapSubscriber(msg.getSender());
         } catch (Exception e) {
             reply.setPerformative(ACLMessage.FAILURE);
             agent.errorLog(e.toString());
             e.printStackTrace();
         }
         agent.log("Game settings sent");
+        agent.countMessages(1);
         return reply;
 
     }
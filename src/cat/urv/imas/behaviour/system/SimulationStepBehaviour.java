@@ -0,0 +1,242 @@
+/**
+ *  IMAS base code for the practical work.
+ *  Copyright (C) 2014 DEIM - URV
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.system;
+
+import cat.urv.imas.agent.SystemAgent;
+import cat.urv.imas.behaviour.coordinator.StepBarrierBehaviour;
+import cat.urv.imas.onthology.StepReport;
+import cat.urv.imas.simulation.SimulationEngine;
+import jade.core.behaviours.SimpleBehaviour;
+
+/**
+ * Behaviour for the System agent that drives the simulation engine, one step
+ * per execution. When a period is given, steps are spaced at least that
+ * amount of milliseconds (so that the GUI can follow them); with a zero
+ * period steps are performed as fast as possible (headless mode).
+ *
+ * After every step a round of the step barrier is started, and the next step
+ * waits until all the agents reported the end of the current one, or until
+ * the barrier timeout elapsed (BARRIER_TIMEOUT milliseconds unless set with
+ * the TIMEOUT_PROPERTY system property; 0 waits indefinitely). Rounds given
+ * up are logged and counted in the statistics.
+ *
+ * The first step waits until all the agents created joined the step
+ * barrier, so that none of them misses a step: rounds of StepReport.JOINING
+ * are run one after the other, at most every JOIN_PERIOD milliseconds (a
+ * round not complete after BARRIER_TIMEOUT is abandoned), until their report
+ * counts all of them, or until JOIN_TIMEOUT elapsed.
+ */
+public class SimulationStepBehaviour extends SimpleBehaviour {
+
+    /**
+     * Default maximum milliseconds to wait for the agents to report a step.
+     */
+    public static final long BARRIER_TIMEOUT = 2000;
+    /**
+     * System property with the maximum milliseconds to wait for the agents
+     * to report a step; 0 to wait indefinitely.
+     */
+    public static final String TIMEOUT_PROPERTY = "imas.barrier.timeout";
+    /**
+     * Maximum milliseconds to wait for the agents to join the step barrier.
+     */
+    public static final long JOIN_TIMEOUT = 30000;
+    /**
+     * Milliseconds between two rounds counting the agents that joined.
+     */
+    private static final long JOIN_PERIOD = 50;
+
+    /**
+     * Engine to advance.
+     */
+    private final SimulationEngine engine;
+    /**
+     * Minimum time between two consecutive steps, in milliseconds.
+     */
+    private final long period;
+    /**
+     * Time at which the next step is allowed to start, in milliseconds.
+     */
+    private long nextStepAt = 0;
+    /**
+     * Step whose barrier round is running; -1 when none.
+     */
+    private int waitingStep = -1;
+    /**
+     * Maximum milliseconds to wait for a barrier round; 0 for no limit.
+     */
+    private final long barrierTimeout;
+    /**
+     * Time at which the running barrier round is given up, in milliseconds.
+     */
+    private long barrierDeadline;
+    /**
+     * Number of agents expected in the step barrier, the System agent
+     * included.
+     */
+    private final int expectedAgents;
+    /**
+     * True once the agents joined the step barrier (or the wait was given
+     * up).
+     */
+    private boolean joined = false;
+    /**
+     * Time at which the wait for the agents is given up, in milliseconds; 0
+     * until the first round counting them.
+     */
+    private long joinDeadline = 0;
+    /**
+     * Time at which the round counting the agents started, in
+     * milliseconds.
+     */
+    private long joinRoundAt = 0;
+
+    /**
+     * Builds the behaviour.
+     *
+     * @param agent System agent owning this behaviour.
+     * @param engine engine to advance.
+     * @param period minimum milliseconds between steps; 0 for no delay.
+     * @param expectedAgents agents expected in the step barrier, the System
+     * agent included.
+     */
+    public SimulationStepBehaviour(SystemAgent agent, SimulationEngine engine, long period, int expectedAgents) {
+        super(agent);
+        this.engine = engine;
+        this.period = period;
+        this.expectedAgents = expectedAgents;
+        this.barrierTimeout = timeoutFromProperty(agent);
+    }
+
+    /**
+     * Reads the barrier timeout from TIMEOUT_PROPERTY.
+     *
+     * @param agent agent to log errors.
+     * @return milliseconds; 0 for no limit.
+     */
+    private static long timeoutFromProperty(SystemAgent agent) {
+        String value = System.getProperty(TIMEOUT_PROPERTY);
+        if (value == null) {
+            return BARRIER_TIMEOUT;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            agent.errorLog("Invalid " + TIMEOUT_PROPERTY + " value: " + value);
+            return BARRIER_TIMEOUT;
+        }
+    }
+
+    @Override
+    public void onStart() {
+        ((SystemAgent) myAgent).getStepBarrier().setListener(this);
+    }
+
+    @Override
+    public void action() {
+        SystemAgent agent = (SystemAgent) myAgent;
+        StepBarrierBehaviour barrier = agent.getStepBarrier();
+        if (!joined && !join(agent, barrier)) {
+            return;
+        }
+        if (waitingStep >= 0) {
+            if (barrier.isComplete(waitingStep)) {
+                agent.stepReported(barrier.getLastReport());
+            } else {
+                if (barrierTimeout == 0) {
+                    block();
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                if (now < barrierDeadline) {
+                    block(barrierDeadline - now);
+                    return;
+                }
+                agent.errorLog("Step " + waitingStep + " not reported by "
+                        + barrier.getWaitingCount() + " subordinates in " + barrierTimeout + " ms");
+                engine.getStatistics().addAbandonedRound();
+            }
+            waitingStep = -1;
+            if (!engine.hasNextStep()) {
+                return;
+            }
+        }
+        if (period > 0) {
+            long now = System.currentTimeMillis();
+            if (now < nextStepAt) {
+                block(nextStepAt - now);
+                return;
+            }
+            nextStepAt = now + period;
+        }
+        engine.step();
+        agent.stepCompleted(engine);
+        waitingStep = engine.getCurrentStep() - 1;
+        barrierDeadline = System.currentTimeMillis() + barrierTimeout;
+        barrier.startRound(agent.performedReport(waitingStep));
+    }
+
+    /**
+     * Runs the rounds counting the agents that joined the step barrier,
+     * until all of them did.
+     *
+     * @param agent System agent.
+     * @param barrier root of the step barrier.
+     * @return true once the first step can be performed.
+     */
+    private boolean join(SystemAgent agent, StepBarrierBehaviour barrier) {
+        StepReport last = barrier.getLastReport();
+        if (last != null && last.getAgents() >= expectedAgents) {
+            agent.log("All " + expectedAgents + " agents joined the step barrier");
+            joined = true;
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (joinDeadline == 0) {
+            joinDeadline = now + JOIN_TIMEOUT;
+        } else if (now >= joinDeadline) {
+            agent.errorLog("Only " + ((last == null) ? 1 : last.getAgents()) + " of " + expectedAgents
+                    + " agents joined the step barrier in " + JOIN_TIMEOUT + " ms");
+            joined = true;
+            return true;
+        }
+        boolean running = barrier.getWaitingCount() > 0;
+        long next = joinRoundAt + (running ? BARRIER_TIMEOUT : JOIN_PERIOD);
+        if (now >= next) {
+            barrier.startRound(StepReport.performed(StepReport.JOINING, engine.getDelta()));
+            joinRoundAt = now;
+            next = now + JOIN_PERIOD;
+        }
+        block(next - now);
+        return false;
+    }
+
+    @Override
+    public boolean done() {
+        return waitingStep < 0 && !engine.hasNextStep();
+    }
+
+    @Override
+    public int onEnd() {
+        SystemAgent agent = (SystemAgent) myAgent;
+        agent.log("Simulation finished after " + engine.getCurrentStep() + " steps ("
+                + String.format("%.1f", engine.getStepsPerSecond()) + " steps/s)");
+        agent.simulationFinished(engine);
+        return super.onEnd();
+    }
+}
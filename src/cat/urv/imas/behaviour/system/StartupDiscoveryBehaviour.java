@@ -0,0 +1,82 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.behaviour.system;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.agent.StartupMetrics;
+import cat.urv.imas.agent.SystemAgent;
+import jade.core.AID;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Behaviour for the System agent to measure the discovery phase of the start
+ * up: it subscribes to the DF and counts the scouts and harvesters as their
+ * registrations are notified, until all the expected ones are registered.
+ */
+public class StartupDiscoveryBehaviour extends SubscriptionInitiator {
+
+    /**
+     * Start up timings to update.
+     */
+    private final StartupMetrics metrics;
+    /**
+     * Number of scouts and harvesters to wait for.
+     */
+    private final int expected;
+    /**
+     * Scouts and harvesters already registered.
+     */
+    private final Set<AID> registered = new HashSet<>();
+
+    public StartupDiscoveryBehaviour(SystemAgent agent, StartupMetrics metrics, int expected) {
+        super(agent, DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), new DFAgentDescription(), null));
+        this.metrics = metrics;
+        this.expected = expected;
+    }
+
+    @Override
+    protected void handleInform(ACLMessage inform) {
+        SystemAgent agent = (SystemAgent) myAgent;
+        try {
+            for (DFAgentDescription dfd : DFService.decodeNotification(inform.getContent())) {
+                Iterator<?> services = dfd.getAllServices();
+                while (services.hasNext()) {
+                    String type = ((ServiceDescription) services.next()).getType();
+                    if (AgentType.SCOUT.toString().equals(type) || AgentType.HARVESTER.toString().equals(type)) {
+                        registered.add(dfd.getName());
+                    }
+                }
+            }
+        } catch (FIPAException e) {
+            agent.errorLog("Incorrect DF notification: " + e.getMessage());
+        }
+        if (registered.size() >= expected && !metrics.isFinished(StartupMetrics.Phase.DISCOVERY)) {
+            metrics.end(StartupMetrics.Phase.DISCOVERY);
+            cancel(agent.getDefaultDF(), true);
+            agent.startupPhaseFinished();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.benchmark;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Minimal micro-benchmark harness. Every benchmark is run repeatedly for a
+ * warm up time, so that the JIT compiles it, and then measured for a given
+ * time. Results of the operations are consumed, so that the JIT cannot
+ * discard them.
+ * 
+ * Times can be set with the system properties "bench.warmup" and
+ * "bench.time", in milliseconds.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Warm up time, in milliseconds.
+     */
+    private final long warmupMillis = Long.getLong("bench.warmup", 500);
+    /**
+     * Measurement time, in milliseconds.
+     */
+    private final long measureMillis = Long.getLong("bench.time", 1000);
+    /**
+     * Minimum number of measured operations.
+     */
+    private static final int MIN_OPERATIONS = 3;
+    /**
+     * Consumed results.
+     */
+    private volatile int sink;
+
+    /**
+     * Prints the header of the results table.
+     */
+    public void printHeader() {
+        System.out.println(String.format("%-28s %-34s %10s %14s %14s  %s",
+                "benchmark", "city", "ops", "avg us/op", "min us/op", "notes"));
+    }
+
+    /**
+     * Runs and reports a benchmark.
+     *
+     * @param name benchmark name.
+     * @param city name of the city used.
+     * @param operation operation to measure; its result is consumed.
+     * @return average nanoseconds per operation.
+     * @throws Exception if the operation fails.
+     */
+    public double run(String name, String city, Callable<?> operation) throws Exception {
+        return run(name, city, operation, "");
+    }
+
+    /**
+     * Runs and reports a benchmark.
+     *
+     * @param name benchmark name.
+     * @param city name of the city used.
+     * @param operation operation to measure; its result is consumed.
+     * @param notes extra information to report.
+     * @return average nanoseconds per operation.
+     * @throws Exception if the operation fails.
+     */
+    public double run(String name, String city, Callable<?> operation, String notes) throws Exception {
+        long end = System.nanoTime() + warmupMillis * 1000000L;
+        while (System.nanoTime() < end) {
+            consume(operation.call());
+        }
+        long operations = 0;
+        long total = 0;
+        long min = Long.MAX_VALUE;
+        end = System.nanoTime() + measureMillis * 1000000L;
+        while (operations < MIN_OPERATIONS || System.nanoTime() < end) {
+            long start = System.nanoTime();
+            consume(operation.call());
+            long elapsed = System.nanoTime() - start;
+            total += elapsed;
+            min = Math.min(min, elapsed);
+            operations++;
+        }
+        double average = (double) total / operations;
+        System.out.println(String.format("%-28s %-34s %10d %14.2f %14.2f  %s",
+                name, city, operations, average / 1000, min / 1000.0, notes));
+        return average;
+    }
+
+    private void consume(Object result) {
+        sink += (result == null) ? 0 : System.identityHashCode(result);
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.benchmark;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.gui.MapVisualizer;
+import cat.urv.imas.map.Cell;
+import cat.urv.imas.map.CityGrid;
+import cat.urv.imas.map.SettableBuildingCell;
+import cat.urv.imas.map.StreetCell;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.ImasCodec;
+import cat.urv.imas.onthology.InitialGameSettings;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks of the hot paths on the map: loading and building the city,
+ * garbage detection and removal, the search of agents done when starting the
+ * System agent, rendering of the map and serialization of the game settings.
+ * 
+ * They are run on the given settings files (by default, the three shipped
+ * ones) and on synthetic large cities made of copies of the first one: the
+ * "bench.tiles" system property tells how many copies per side (by default,
+ * "5,25,50", that is, 100x100 up to 1000x1000 cities from a 20x20 one).
+ */
+public class Benchmarks {
+
+    /**
+     * Settings files used when none is given.
+     */
+    private static final String[] DEFAULT_FILES = {
+        "game.settings",
+        "game.evaluation.firstdate.settings",
+        "game.evaluation.seconddate.settings",
+    };
+
+    private final BenchmarkRunner runner = new BenchmarkRunner();
+
+    public static void main(String[] args) throws Exception {
+        String[] files = (args.length > 0) ? args : DEFAULT_FILES;
+        Benchmarks benchmarks = new Benchmarks();
+        benchmarks.runner.printHeader();
+        InitialGameSettings base = null;
+        for (String file : files) {
+            InitialGameSettings settings = (InitialGameSettings) InitialGameSettings.load(file);
+            if (base == null) {
+                base = settings;
+            }
+            benchmarks.runner.run("load", file, () -> InitialGameSettings.load(file));
+            benchmarks.runAll(file, settings);
+        }
+        for (String value : System.getProperty("bench.tiles", "5,25,50").split(",")) {
+            int tiles = Integer.parseInt(value.trim());
+            InitialGameSettings settings = tile(base, tiles);
+            String city = "synthetic " + settings.getRows() + "x" + settings.getCols();
+            benchmarks.runAll(city, settings);
+        }
+    }
+
+    /**
+     * Runs all benchmarks but load on a city.
+     *
+     * @param city name of the city.
+     * @param settings its settings, already initialized.
+     * @throws Exception if some benchmark fails.
+     */
+    private void runAll(String city, InitialGameSettings settings) throws Exception {
+        runner.run("initMap", city, () -> {
+            InitialGameSettings copy = copy(settings, 1);
+            copy.initMap();
+            return copy;
+        });
+
+        List<SettableBuildingCell> buildings = buildings(settings);
+        runner.run("detect+removeGarbage", city, () -> {
+            int removed = 0;
+            for (SettableBuildingCell building : buildings) {
+                building.updateGarbage(GarbageType.PAPER, 3);
+                building.detectGarbage();
+                while (building.isFound()) {
+                    building.removeGarbage();
+                    removed++;
+                }
+            }
+            return removed;
+        }, buildings.size() + " buildings");
+        runner.run("detect+pickup", city, () -> {
+            int removed = 0;
+            for (SettableBuildingCell building : buildings) {
+                building.updateGarbage(GarbageType.PAPER, 3);
+                building.detectGarbage();
+                removed += building.pickup(GarbageType.PAPER, Integer.MAX_VALUE);
+            }
+            return removed;
+        }, buildings.size() + " buildings");
+
+        runner.run("scan agents (whole map)", city, () -> scanMap(settings));
+        runner.run("scan agents (agent list)", city, () -> scanAgentList(settings));
+
+        if (!GraphicsEnvironment.isHeadless()) {
+            MapVisualizer visualizer = new MapVisualizer(settings);
+            BufferedImage image = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+            visualizer.setSize(image.getWidth(), image.getHeight());
+            runner.run("render whole map (offscreen)", city, () -> {
+                visualizer.renderAll();
+                return visualizer;
+            });
+            runner.run("paintComponent (offscreen)", city, () -> {
+                Graphics2D g = image.createGraphics();
+                visualizer.paintComponent(g);
+                g.dispose();
+                return image;
+            });
+            List<Cell> agents = new ArrayList<>();
+            for (List<Cell> cells : settings.getAgentList().values()) {
+                agents.addAll(cells);
+            }
+            runner.run("render agent cells (offscreen)", city, () -> {
+                for (Cell cell : agents) {
+                    visualizer.cellChanged(settings.indexOf(cell));
+                }
+                visualizer.renderChangedCells();
+                return visualizer;
+            }, agents.size() + " cells");
+        }
+
+        ImasCodec codec = new ImasCodec();
+        runner.run("serialize (java)", city, () -> javaSerialize(settings), javaSerialize(settings).length + " bytes");
+        runner.run("serialize (codec)", city, () -> codec.encodeContent(settings), codec.encodeContent(settings).length + " bytes");
+    }
+
+    /**
+     * Counts the scouts and harvesters looking at every cell, as the System
+     * agent used to do.
+     */
+    private static int scanMap(GameSettings settings) {
+        int count = 0;
+        CityGrid grid = settings.getGrid();
+        if (grid != null) {
+            for (int i = 0; i < grid.getRows() * grid.getCols(); i++) {
+                if (grid.getType(i) == CityGrid.STREET && grid.getAgentId(i) >= 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        for (Cell[] row : settings.getMap()) {
+            for (Cell cell : row) {
+                if (cell instanceof StreetCell && ((StreetCell) cell).isThereAnAgent()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the scouts and harvesters from the agent list.
+     */
+    private static int scanAgentList(GameSettings settings) {
+        int count = 0;
+        for (AgentType type : new AgentType[]{AgentType.SCOUT, AgentType.HARVESTER}) {
+            List<Cell> cells = settings.getAgentList().get(type);
+            for (Cell cell : cells) {
+                count += (cell.getRow() >= 0) ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] javaSerialize(GameSettings settings) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(settings);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<SettableBuildingCell> buildings(GameSettings settings) {
+        List<SettableBuildingCell> buildings = new ArrayList<>();
+        for (int r = 0; r < settings.getRows(); r++) {
+            for (int c = 0; c < settings.getCols(); c++) {
+                Cell cell = settings.get(r, c);
+                if (cell instanceof SettableBuildingCell) {
+                    buildings.add((SettableBuildingCell) cell);
+                }
+            }
+        }
+        return buildings;
+    }
+
+    /**
+     * Builds a city made of tiles x tiles copies of the given one.
+     *
+     * @param base city to copy.
+     * @param tiles copies per side.
+     * @return the initialized settings.
+     * @throws Exception if the city cannot be built.
+     */
+    static InitialGameSettings tile(InitialGameSettings base, int tiles) throws Exception {
+        InitialGameSettings settings = copy(base, tiles);
+        settings.initMap();
+        return settings;
+    }
+
+    /**
+     * Copies the fields initMap() uses, with tiles x tiles copies of the map.
+     */
+    private static InitialGameSettings copy(InitialGameSettings base, int tiles) {
+        int[][] map = base.getInitialMap();
+        int rows = map.length;
+        int cols = map[0].length;
+        int[][] tiled = new int[rows * tiles][cols * tiles];
+        for (int r = 0; r < tiled.length; r++) {
+            for (int t = 0; t < tiles; t++) {
+                System.arraycopy(map[r % rows], 0, tiled[r], t * cols, cols);
+            }
+        }
+        InitialGameSettings settings = new InitialGameSettings();
+        settings.setInitialMap(tiled);
+        settings.setHarvestersCapacity(base.getHarvestersCapacity());
+        settings.setSupportedGarbageByHarvesters(repeat(base.getSupportedGarbageByHarvesters(), tiles * tiles));
+        settings.setRecyclingCenterPrices(repeat(base.getRecyclingCenterPrices(), tiles * tiles));
+        return settings;
+    }
+
+    private static <T> T[] repeat(T[] items, int times) {
+        T[] result = Arrays.copyOf(items, items.length * times);
+        for (int i = items.length; i < result.length; i++) {
+            result[i] = items[i % items.length];
+        }
+        return result;
+    }
+
+    private static int[][] repeat(int[][] items, int times) {
+        int[][] result = new int[items.length * times][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = items[i % items.length];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.check;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Minimal harness for the checks: it counts the expectations checked, prints
+ * the ones that fail and a summary of every group of checks.
+ */
+public class CheckRunner {
+
+    /**
+     * Maximum number of failures printed per group.
+     */
+    private static final int MAX_PRINTED = 20;
+
+    /**
+     * Name of the current group of checks.
+     */
+    private String group;
+    /**
+     * Expectations checked and failed in the current group.
+     */
+    private int groupChecks;
+    private int groupFailures;
+    /**
+     * Expectations checked and failed in all groups.
+     */
+    private int checks;
+    private int failures;
+
+    /**
+     * Starts a new group of checks, finishing the current one.
+     *
+     * @param name name of the group.
+     */
+    public void group(String name) {
+        endGroup();
+        group = name;
+        groupChecks = 0;
+        groupFailures = 0;
+    }
+
+    /**
+     * Prints the summary of the current group, if any.
+     */
+    public void endGroup() {
+        if (group != null) {
+            System.out.println(String.format("%-60s %6d checks, %d failed", group, groupChecks, groupFailures));
+            group = null;
+        }
+    }
+
+    /**
+     * Checks a condition.
+     *
+     * @param condition expected to be true.
+     * @param what description of the expectation.
+     * @return the condition.
+     */
+    public boolean check(boolean condition, String what) {
+        checks++;
+        groupChecks++;
+        if (!condition) {
+            failures++;
+            groupFailures++;
+            if (groupFailures <= MAX_PRINTED) {
+                System.out.println("  FAILED: " + what);
+            }
+        }
+        return condition;
+    }
+
+    /**
+     * Checks that two values are equal; arrays are compared by content.
+     *
+     * @param expected expected value.
+     * @param actual actual value.
+     * @param what description of the value.
+     * @return true if they are equal.
+     */
+    public boolean equal(Object expected, Object actual, String what) {
+        boolean same = Objects.deepEquals(expected, actual);
+        return check(same, what + ": expected " + text(expected) + ", got " + text(actual));
+    }
+
+    private static String text(Object value) {
+        if (value instanceof Object[]) {
+            return Arrays.deepToString((Object[]) value);
+        } else if (value instanceof int[]) {
+            return Arrays.toString((int[]) value);
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length + " bytes";
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Number of expectations checked.
+     *
+     * @return checks done so far.
+     */
+    public int getChecks() {
+        return checks;
+    }
+
+    /**
+     * Number of failed expectations.
+     *
+     * @return failures so far.
+     */
+    public int getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.check;
+
+/**
+ * Runs all the checks (see CodecCheck and ConformanceCheck) and exits with
+ * status 1 when any of them fails, so that it can be used from scripts.
+ */
+public class Checks {
+
+    public static void main(String[] args) throws Exception {
+        CheckRunner runner = new CheckRunner();
+        new CodecCheck(runner).run();
+        new ConformanceCheck(runner).run();
+        runner.endGroup();
+        System.out.println(runner.getChecks() + " checks, " + runner.getFailures() + " failed");
+        System.exit(runner.getFailures() == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,453 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.check;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.map.BuildingCell;
+import cat.urv.imas.map.Cell;
+import cat.urv.imas.map.CellType;
+import cat.urv.imas.map.RecyclingCenterCell;
+import cat.urv.imas.map.SettableBuildingCell;
+import cat.urv.imas.map.StreetCell;
+import cat.urv.imas.onthology.CityGenerator;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.GarbageBid;
+import cat.urv.imas.onthology.GarbageTask;
+import cat.urv.imas.onthology.GarbageTaskBatch;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.HarvesterInfoAgent;
+import cat.urv.imas.onthology.ImasCodec;
+import cat.urv.imas.onthology.InfoAgent;
+import cat.urv.imas.onthology.InitialGameSettings;
+import cat.urv.imas.onthology.MapDelta;
+import cat.urv.imas.onthology.StepReport;
+import jade.content.lang.Codec;
+import jade.core.AID;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Round-trip checks of ImasCodec: every content type is encoded, decoded and
+ * compared field by field with the original, and encoding the decoded copy
+ * must give the same bytes again. The game settings are checked with both
+ * backings (Cell[][] and CityGrid), which must also encode the same.
+ * Malformed contents (truncated or with corrupted bytes) must be rejected
+ * with a CodecException, and nothing else.
+ */
+public class CodecCheck {
+
+    /**
+     * Seed of the random garbage and agent ids.
+     */
+    private static final long SEED = 20160101L;
+
+    private final CheckRunner runner;
+    private final ImasCodec codec = new ImasCodec();
+
+    public CodecCheck(CheckRunner runner) {
+        this.runner = runner;
+    }
+
+    public void run() throws Exception {
+        gameSettings();
+        mapDelta();
+        stepReport();
+        garbageTasks();
+        garbageBid();
+        infoAgents();
+        malformed();
+    }
+
+    /**
+     * Encodes and decodes the content, checking that the decoded copy has
+     * the same class (or a superclass) and encodes to the same bytes.
+     *
+     * @param content content to send.
+     * @param what description of the content.
+     * @return the decoded copy.
+     */
+    private Object roundTrip(Object content, String what) throws Exception {
+        byte[] bytes = codec.encodeContent(content);
+        Object decoded = codec.decodeContent(bytes);
+        // InitialGameSettings is sent as the GameSettings it extends.
+        runner.check(decoded.getClass().isInstance(content), what + " decoded as " + decoded.getClass().getName());
+        runner.equal(bytes, codec.encodeContent(decoded), what + " encoded again");
+        return decoded;
+    }
+
+    private void gameSettings() throws Exception {
+        runner.group("codec: GameSettings on Cell[][]");
+        GameSettings map = city(40, 40);
+        runner.check(map.getGrid() == null, "small city backed by Cell[][]");
+        checkGame(map, "small city");
+
+        runner.group("codec: GameSettings on CityGrid");
+        GameSettings grid = city(40, 40);
+        grid.useGrid();
+        runner.check(grid.getGrid() != null, "city moved to a CityGrid");
+        checkGame(grid, "small city on grid");
+        runner.equal(codec.encodeContent(map), codec.encodeContent(grid), "same encoding for both backings");
+
+        runner.group("codec: GameSettings on CityGrid (large)");
+        GameSettings large = city(500, 500);
+        runner.check(large.getGrid() != null, "large city backed by CityGrid");
+        checkGame(large, "large city");
+    }
+
+    /**
+     * Generates a city with garbage, some of it found, agents with full
+     * AIDs and a version other than 0.
+     *
+     * @param rows number of rows.
+     * @param cols number of columns.
+     * @return the city.
+     */
+    private GameSettings city(int rows, int cols) throws Exception {
+        InitialGameSettings game = new CityGenerator(rows, cols).generate();
+        game.initMap();
+        Random random = new Random(SEED);
+        GarbageType[] types = GarbageType.values();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                Cell cell = game.get(r, c);
+                if (cell instanceof SettableBuildingCell && random.nextInt(5) == 0) {
+                    SettableBuildingCell building = (SettableBuildingCell) cell;
+                    // Amounts of several bytes once encoded.
+                    building.setGarbage(types[random.nextInt(types.length)], 1 + random.nextInt(1 << 20));
+                    if (random.nextBoolean()) {
+                        building.detectGarbage();
+                    }
+                }
+            }
+        }
+        int id = 0;
+        for (Map.Entry<AgentType, List<Cell>> entry : game.getAgentList().entrySet()) {
+            for (Cell cell : entry.getValue()) {
+                InfoAgent agent = ((StreetCell) cell).getAgent();
+                if (id % 3 != 2) {
+                    AID aid = new AID(entry.getKey().getShortString() + id + "@host:1099/JADE", AID.ISGUID);
+                    if (id % 3 == 1) {
+                        aid.addAddresses("http://host:7778/acc");
+                    }
+                    agent.setAID(aid);
+                }
+                id++;
+            }
+        }
+        game.setVersion(1 + random.nextInt(1000));
+        return game;
+    }
+
+    private void checkGame(GameSettings game, String what) throws Exception {
+        GameSettings copy = (GameSettings) roundTrip(game, what);
+        runner.equal(game.getTitle(), copy.getTitle(), what + " title");
+        runner.equal(game.getSeed(), copy.getSeed(), what + " seed");
+        runner.equal(game.getSimulationSteps(), copy.getSimulationSteps(), what + " steps");
+        runner.equal(game.getNewGarbageProbability(), copy.getNewGarbageProbability(), what + " garbage probability");
+        runner.equal(game.getMaxNumberBuildingWithNewGargabe(), copy.getMaxNumberBuildingWithNewGargabe(), what + " buildings with new garbage");
+        runner.equal(game.getMaxAmountOfNewGargabe(), copy.getMaxAmountOfNewGargabe(), what + " new garbage amount");
+        runner.equal(game.getHarvestersCapacity(), copy.getHarvestersCapacity(), what + " capacity");
+        runner.equal(game.getRecyclingCenterPrices(), copy.getRecyclingCenterPrices(), what + " prices");
+        runner.equal(game.getAllowedGarbageTypePerHarvester(), copy.getAllowedGarbageTypePerHarvester(), what + " allowed types");
+        runner.equal(game.getVersion(), copy.getVersion(), what + " version");
+        runner.equal(game.getRows(), copy.getRows(), what + " rows");
+        runner.equal(game.getCols(), copy.getCols(), what + " cols");
+        boolean large = game.getRows() * game.getCols() >= GameSettings.GRID_THRESHOLD;
+        runner.equal(large, copy.getGrid() != null, what + " decoded on a CityGrid");
+
+        int mismatches = 0;
+        for (int r = 0; r < game.getRows(); r++) {
+            for (int c = 0; c < game.getCols(); c++) {
+                String expected = describe(game.get(r, c));
+                String actual = describe(copy.get(r, c));
+                if (!expected.equals(actual)) {
+                    mismatches++;
+                    runner.equal(expected, actual, what + " cell " + r + "," + c);
+                }
+            }
+        }
+        runner.check(mismatches == 0, what + " cells: " + mismatches + " differ");
+
+        runner.equal(game.getAgentList().keySet(), copy.getAgentList().keySet(), what + " agent types");
+        for (Map.Entry<AgentType, List<Cell>> entry : game.getAgentList().entrySet()) {
+            List<Cell> cells = entry.getValue();
+            List<Cell> copied = copy.getAgentList().get(entry.getKey());
+            if (runner.check(copied != null && copied.size() == cells.size(), what + " " + entry.getKey() + " count")) {
+                for (int i = 0; i < cells.size(); i++) {
+                    runner.equal(describe(cells.get(i)), describe(copied.get(i)),
+                            what + " " + entry.getKey() + " " + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Describes everything the codec carries of a cell, whatever its class.
+     *
+     * @param cell the cell.
+     * @return its description.
+     */
+    private static String describe(Cell cell) {
+        String at = cell.getRow() + "," + cell.getCol() + " ";
+        if (cell instanceof StreetCell) {
+            StreetCell street = (StreetCell) cell;
+            return at + "street " + (street.isThereAnAgent() ? describe(street.getAgent()) : "-");
+        } else if (cell instanceof SettableBuildingCell) {
+            SettableBuildingCell building = (SettableBuildingCell) cell;
+            GarbageType type = building.getRealGarbageType();
+            return at + "building " + type
+                    + ((type == null) ? "" : " " + building.getRealGarbageAmount(type))
+                    + (building.isFound() ? " found" : "");
+        } else if (cell instanceof BuildingCell) {
+            return at + "building " + ((BuildingCell) cell).getGarbage();
+        } else if (cell instanceof RecyclingCenterCell) {
+            return at + "center " + Arrays.toString(((RecyclingCenterCell) cell).getPrices());
+        }
+        return at + cell.getCellType();
+    }
+
+    /**
+     * Describes everything the codec carries of an agent. A harvester without
+     * allowed types is sent as one with an empty list.
+     *
+     * @param agent the agent.
+     * @return its description.
+     */
+    private static String describe(InfoAgent agent) {
+        AID aid = agent.getAID();
+        String text = agent.getType() + " "
+                + ((aid == null) ? "-" : aid.getName() + Arrays.toString(aid.getAddressesArray()));
+        if (agent instanceof HarvesterInfoAgent) {
+            HarvesterInfoAgent harvester = (HarvesterInfoAgent) agent;
+            GarbageType[] allowed = harvester.getAllowedType();
+            text += " capacity " + harvester.getCapacity()
+                    + " " + Arrays.toString((allowed == null) ? new GarbageType[0] : allowed);
+        }
+        return text;
+    }
+
+    private void mapDelta() throws Exception {
+        runner.group("codec: MapDelta");
+        checkDelta(new MapDelta(0), "empty delta");
+        MapDelta delta = new MapDelta(41);
+        delta.addMove(0, 1);
+        delta.addMove(249999, 249499);
+        delta.addGarbage(17, GarbageType.PAPER, 300000);
+        delta.addGarbage(18, null, 0);
+        delta.addGarbage(20, GarbageType.PLASTIC, 0);
+        delta.addGarbage(19, GarbageType.GLASS, 1);
+        delta.addDetected(17);
+        delta.addDetected(123456);
+        checkDelta(delta, "delta");
+    }
+
+    private void checkDelta(MapDelta delta, String what) throws Exception {
+        MapDelta copy = (MapDelta) roundTrip(delta, what);
+        runner.equal(delta.getBaseVersion(), copy.getBaseVersion(), what + " base version");
+        runner.equal(delta.getVersion(), copy.getVersion(), what + " version");
+        if (runner.equal(delta.getMoveCount(), copy.getMoveCount(), what + " moves")) {
+            for (int i = 0; i < delta.getMoveCount(); i++) {
+                runner.equal(delta.getMoveFrom(i), copy.getMoveFrom(i), what + " move " + i + " from");
+                runner.equal(delta.getMoveTo(i), copy.getMoveTo(i), what + " move " + i + " to");
+            }
+        }
+        if (runner.equal(delta.getGarbageCount(), copy.getGarbageCount(), what + " garbage")) {
+            for (int i = 0; i < delta.getGarbageCount(); i++) {
+                runner.equal(delta.getGarbageCell(i), copy.getGarbageCell(i), what + " garbage " + i + " cell");
+                runner.equal(delta.getGarbageType(i), copy.getGarbageType(i), what + " garbage " + i + " type");
+                runner.equal(delta.getGarbageAmount(i), copy.getGarbageAmount(i), what + " garbage " + i + " amount");
+            }
+        }
+        if (runner.equal(delta.getDetectedCount(), copy.getDetectedCount(), what + " detected")) {
+            for (int i = 0; i < delta.getDetectedCount(); i++) {
+                runner.equal(delta.getDetected(i), copy.getDetected(i), what + " detected " + i);
+            }
+        }
+    }
+
+    private void stepReport() throws Exception {
+        runner.group("codec: StepReport");
+        checkReport(new StepReport(0), "empty report");
+        StepReport report = new StepReport(599);
+        report.setHarvester(3, 17, true);
+        report.addMove(40, 41);
+        report.addPickup(42, 43, GarbageType.GLASS, 17);
+        report.addMessages(1000);
+        report.addAwarded(2);
+        StepReport other = new StepReport(599);
+        other.setHarvester(0, 20, false);
+        other.addMove(249999, 249998);
+        other.addUnload(249997, 249497, GarbageType.PAPER, 300000);
+        report.merge(other);
+        checkReport(report, "merged report");
+    }
+
+    private void checkReport(StepReport report, String what) throws Exception {
+        StepReport copy = (StepReport) roundTrip(report, what);
+        runner.equal(report.getStep(), copy.getStep(), what + " step");
+        runner.equal(report.getAgents(), copy.getAgents(), what + " agents");
+        runner.equal(report.getHarvesters(), copy.getHarvesters(), what + " harvesters");
+        runner.equal(report.getBusyHarvesters(), copy.getBusyHarvesters(), what + " busy harvesters");
+        runner.equal(report.getTasks(), copy.getTasks(), what + " tasks");
+        runner.equal(report.getRemainingCapacity(), copy.getRemainingCapacity(), what + " remaining capacity");
+        runner.equal(report.getMessages(), copy.getMessages(), what + " messages");
+        runner.equal(report.getAwarded(), copy.getAwarded(), what + " awarded tasks");
+        if (runner.equal(report.getMoveCount(), copy.getMoveCount(), what + " moves")) {
+            for (int i = 0; i < report.getMoveCount(); i++) {
+                runner.equal(report.getMoveFrom(i), copy.getMoveFrom(i), what + " move " + i + " from");
+                runner.equal(report.getMoveTo(i), copy.getMoveTo(i), what + " move " + i + " to");
+            }
+        }
+        if (runner.equal(report.getActionCount(), copy.getActionCount(), what + " garbage actions")) {
+            for (int i = 0; i < report.getActionCount(); i++) {
+                runner.equal(report.isPickup(i), copy.isPickup(i), what + " action " + i + " pickup");
+                runner.equal(report.getActionHarvester(i), copy.getActionHarvester(i), what + " action " + i + " harvester");
+                runner.equal(report.getActionTarget(i), copy.getActionTarget(i), what + " action " + i + " target");
+                runner.equal(report.getActionType(i), copy.getActionType(i), what + " action " + i + " type");
+                runner.equal(report.getActionUnits(i), copy.getActionUnits(i), what + " action " + i + " units");
+            }
+        }
+    }
+
+    private void garbageTasks() throws Exception {
+        runner.group("codec: GarbageTaskBatch");
+        checkBatch(new GarbageTaskBatch(0), "empty batch");
+        GarbageTaskBatch batch = new GarbageTaskBatch(77);
+        batch.add(new GarbageTask(0, 0, GarbageType.PLASTIC, 1));
+        batch.add(new GarbageTask(499, 1, GarbageType.PAPER, 300000));
+        batch.add(new GarbageTask(12, 499, GarbageType.GLASS, 5));
+        checkBatch(batch, "batch");
+    }
+
+    private void checkBatch(GarbageTaskBatch batch, String what) throws Exception {
+        GarbageTaskBatch copy = (GarbageTaskBatch) roundTrip(batch, what);
+        runner.equal(batch.getStep(), copy.getStep(), what + " step");
+        if (runner.equal(batch.size(), copy.size(), what + " size")) {
+            for (int i = 0; i < batch.size(); i++) {
+                GarbageTask task = batch.getTasks().get(i);
+                GarbageTask copied = copy.getTasks().get(i);
+                runner.equal(task.getRow(), copied.getRow(), what + " task " + i + " row");
+                runner.equal(task.getCol(), copied.getCol(), what + " task " + i + " col");
+                runner.equal(task.getType(), copied.getType(), what + " task " + i + " type");
+                runner.equal(task.getAmount(), copied.getAmount(), what + " task " + i + " amount");
+            }
+        }
+    }
+
+    private void garbageBid() throws Exception {
+        runner.group("codec: GarbageBid");
+        checkBid(new GarbageBid(-1, 0, new int[0]), "empty bid");
+        checkBid(new GarbageBid(4711, 20, new int[]{0, 17, GarbageBid.NO_BID, 1 << 20}), "bid");
+    }
+
+    private void checkBid(GarbageBid bid, String what) throws Exception {
+        GarbageBid copy = (GarbageBid) roundTrip(bid, what);
+        runner.equal(bid.getBidder(), copy.getBidder(), what + " bidder");
+        runner.equal(bid.getCapacity(), copy.getCapacity(), what + " capacity");
+        if (runner.equal(bid.size(), copy.size(), what + " size")) {
+            for (int i = 0; i < bid.size(); i++) {
+                runner.equal(bid.getCost(i), copy.getCost(i), what + " cost " + i);
+            }
+        }
+    }
+
+    private void infoAgents() throws Exception {
+        runner.group("codec: InfoAgent and HarvesterInfoAgent");
+        AID aid = new AID("harvester0@host:1099/JADE", AID.ISGUID);
+        aid.addAddresses("http://host:7778/acc");
+        aid.addAddresses("http://other:7778/acc");
+        checkAgent(new InfoAgent(AgentType.SCOUT), "scout without AID");
+        checkAgent(new InfoAgent(AgentType.SYSTEM, new AID("system@host:1099/JADE", AID.ISGUID)), "system");
+        checkAgent(new HarvesterInfoAgent(AgentType.HARVESTER, aid,
+                new GarbageType[]{GarbageType.GLASS, GarbageType.PLASTIC}, 9), "harvester");
+        checkAgent(new HarvesterInfoAgent(AgentType.HARVESTER), "harvester without allowed types");
+    }
+
+    private void malformed() throws Exception {
+        runner.group("codec: malformed contents");
+        GameSettings map = city(20, 20);
+        checkMalformed(map, "small city");
+        map.useGrid();
+        checkMalformed(map, "small city on CityGrid");
+        MapDelta delta = new MapDelta(41);
+        delta.addMove(0, 1);
+        delta.addGarbage(17, GarbageType.PAPER, 300000);
+        delta.addDetected(17);
+        checkMalformed(delta, "delta");
+        StepReport report = new StepReport(599);
+        report.setHarvester(3, 17, true);
+        report.addMove(40, 41);
+        report.addPickup(42, 43, GarbageType.GLASS, 17);
+        checkMalformed(report, "report");
+        GarbageTaskBatch batch = new GarbageTaskBatch(77);
+        batch.add(new GarbageTask(499, 1, GarbageType.PAPER, 300000));
+        checkMalformed(batch, "batch");
+        checkMalformed(new GarbageBid(4711, 20, new int[]{0, 17, GarbageBid.NO_BID}), "bid");
+        AID aid = new AID("harvester0@host:1099/JADE", AID.ISGUID);
+        aid.addAddresses("http://host:7778/acc");
+        checkMalformed(new HarvesterInfoAgent(AgentType.HARVESTER, aid,
+                new GarbageType[]{GarbageType.GLASS}, 9), "harvester");
+    }
+
+    /**
+     * Decodes every truncation of the encoded content, which must be
+     * rejected, and the content with every byte replaced by a few others,
+     * which must be either decoded or rejected with a CodecException.
+     *
+     * @param content content to send.
+     * @param what description of the content.
+     */
+    private void checkMalformed(Object content, String what) {
+        byte[] bytes = codec.encodeContent(content);
+        int rejected = 0;
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                codec.decodeContent(Arrays.copyOf(bytes, length));
+            } catch (Codec.CodecException e) {
+                rejected++;
+            } catch (RuntimeException e) {
+                runner.check(false, what + " truncated to " + length + " bytes: " + e);
+            }
+        }
+        runner.equal(bytes.length, rejected, what + " truncations rejected");
+        int failed = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            for (int value : new int[]{0x00, 0x7F, 0x80, 0xFF}) {
+                byte[] corrupted = bytes.clone();
+                corrupted[i] = (byte) value;
+                try {
+                    codec.decodeContent(corrupted);
+                } catch (Codec.CodecException e) {
+                    // rejected
+                } catch (RuntimeException e) {
+                    if (failed++ == 0) {
+                        runner.check(false, what + " with byte " + i + " set to " + value + ": " + e);
+                    }
+                }
+            }
+        }
+        runner.equal(0, failed, what + " corrupted bytes decoded or rejected");
+    }
+
+    private void checkAgent(InfoAgent agent, String what) throws Exception {
+        InfoAgent copy = (InfoAgent) roundTrip(agent, what);
+        runner.equal(describe(agent), describe(copy), what);
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.check;
+
+import cat.urv.imas.agent.CoordinatorAgent;
+import cat.urv.imas.agent.SystemAgent;
+import cat.urv.imas.behaviour.system.SimulationStepBehaviour;
+import cat.urv.imas.onthology.CityGenerator;
+import cat.urv.imas.onthology.CompactSettings;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.InitialGameSettings;
+import cat.urv.imas.simulation.InProcessKernel;
+import cat.urv.imas.simulation.SimulationEngine;
+import cat.urv.imas.simulation.StepStatistics;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.wrapper.AgentContainer;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Conformance of the in-process kernel with the JADE-hosted run: a seeded
+ * synthetic city is simulated with InProcessKernel and with the System and
+ * Coordinator agents on an in-process JADE platform, and both must award
+ * the same garbage tasks and record the same statistics totals. Latency and
+ * messages are left out, as only the JADE run sends messages; the barrier
+ * rounds are never given up, as an abandoned round makes the runs differ.
+ */
+public class ConformanceCheck {
+
+    /**
+     * Seed of the city and its garbage.
+     */
+    private static final long SEED = 20161018L;
+    /**
+     * Size of the city and steps simulated.
+     */
+    private static final int SIZE = 30;
+    private static final int STEPS = 300;
+    /**
+     * Local port of the JADE platform, other than the default one so that
+     * the check can run next to a simulation.
+     */
+    private static final int PORT = 1399;
+    /**
+     * Maximum milliseconds the JADE run may take.
+     */
+    private static final long TIMEOUT = 120000;
+
+    private final CheckRunner runner;
+
+    public ConformanceCheck(CheckRunner runner) {
+        this.runner = runner;
+    }
+
+    public void run() throws Exception {
+        runner.group("conformance: in-process kernel and JADE (seed " + SEED + ")");
+        File file = File.createTempFile("conformance", ".settings");
+        file.deleteOnExit();
+        CityGenerator generator = new CityGenerator(SIZE, SIZE);
+        generator.setSeed(SEED);
+        generator.setSimulationSteps(STEPS);
+        CompactSettings.write(generator.generate(), file.getPath());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        InProcessKernel kernel;
+        try {
+            kernel = new InProcessKernel(InitialGameSettings.load(file.getPath()), pool);
+            kernel.run();
+        } finally {
+            pool.shutdown();
+        }
+        SimulationEngine agents = runAgents(file);
+        if (!runner.check(agents != null, "JADE run finished in " + TIMEOUT + " ms")) {
+            return;
+        }
+        StepStatistics expected = kernel.getEngine().getStatistics();
+        StepStatistics actual = agents.getStatistics();
+        runner.equal(kernel.getEngine().getCurrentStep(), agents.getCurrentStep(), "steps");
+        runner.equal(0L, actual.getTotal(StepStatistics.ABANDONED_ROUNDS), "abandoned barrier rounds");
+        runner.equal(kernel.getAwardedCount(), actual.getTotal(StepStatistics.AWARDED_TASKS), "tasks awarded");
+        String[] columns = expected.toCsv().split("\n", 2)[0].split(",");
+        for (int m = 0; m < StepStatistics.METRICS; m++) {
+            if (m != StepStatistics.LATENCY && m != StepStatistics.MESSAGES && m != StepStatistics.ABANDONED_ROUNDS) {
+                // columns[0] is the step
+                runner.equal(expected.getTotal(m), actual.getTotal(m), "total " + columns[m + 1]);
+            }
+        }
+        GameSettings game = kernel.getEngine().getGame();
+        for (int center : game.getRecyclingCenterCells()) {
+            runner.equal(expected.getCenterCoins(center), actual.getCenterCoins(center),
+                    "coins of center (" + center / game.getCols() + "," + center % game.getCols() + ")");
+        }
+    }
+
+    /**
+     * Runs the simulation with JADE agents, hiding their logs.
+     *
+     * @param file settings to simulate.
+     * @return engine of the System agent, or null if it did not finish in
+     * time.
+     * @throws Exception if the platform cannot be started.
+     */
+    private SimulationEngine runAgents(File file) throws Exception {
+        System.setProperty(SystemAgent.SETTINGS_FILE, file.getPath());
+        System.setProperty(SimulationStepBehaviour.TIMEOUT_PROPERTY, "0");
+        Logger.getLogger("jade").setLevel(Level.WARNING);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        Profile profile = new ProfileImpl(null, PORT, null);
+        profile.setParameter(Profile.GUI, "false");
+        profile.setParameter("nomtp", "true");
+        // the platform description is not written in the working directory
+        profile.setParameter(Profile.FILE_DIR, file.getParent() + File.separator);
+        AgentContainer main = jade.core.Runtime.instance().createMainContainer(profile);
+        try {
+            SystemAgent system = new SystemAgent();
+            system.setArguments(new Object[]{SystemAgent.HEADLESS});
+            main.acceptNewAgent("system", system).start();
+            main.createNewAgent("coordinator", CoordinatorAgent.class.getName(), null).start();
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!system.isFinished()) {
+                if (System.currentTimeMillis() > deadline) {
+                    return null;
+                }
+                Thread.sleep(100);
+            }
+            return system.getEngine();
+        } finally {
+            main.kill();
+            System.setOut(out);
+            System.clearProperty(SystemAgent.SETTINGS_FILE);
+            System.clearProperty(SimulationStepBehaviour.TIMEOUT_PROPERTY);
+        }
+    }
+}
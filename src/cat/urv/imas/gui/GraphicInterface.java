@@ -18,7 +18,9 @@
 package cat.urv.imas.gui;
 
 import cat.urv.imas.map.Cell;
+import cat.urv.imas.onthology.MapDelta;
 import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.simulation.StepStatistics;
 import java.awt.*;
 import javax.swing.*;
 import java.awt.Font;
@@ -67,7 +69,7 @@ public class GraphicInterface extends JFrame {
      */
     public GraphicInterface(GameSettings game) {
         jbInit(game.getTitle());
-        showGameMap(game.getMap());
+        showGameMap(game);
     }
 
     /**
@@ -144,8 +146,30 @@ public class GraphicInterface extends JFrame {
      * @param map game map.
      */
     public void showGameMap(Cell[][] map) {
-        this.jMapPanel = new MapVisualizer(map);
-        this.jGamePanel.add(jMapPanel);
+        showGameMap(new MapVisualizer(map));
+    }
+
+    /**
+     * Repaint the whole game map, taking the cells from the game settings
+     * (large maps are not turned into a map of cells).
+     *
+     * @param game game settings.
+     */
+    public void showGameMap(GameSettings game) {
+        showGameMap(new MapVisualizer(game));
+    }
+
+    /**
+     * Shows the given map panel, scrollable.
+     *
+     * @param mapPanel map panel.
+     */
+    private void showGameMap(MapVisualizer mapPanel) {
+        this.jMapPanel = mapPanel;
+        JScrollPane scrollPane = new JScrollPane(jMapPanel);
+        scrollPane.getHorizontalScrollBar().setUnitIncrement(16);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        this.jGamePanel.add(scrollPane);
         this.jGamePanel.repaint();
     }
 
@@ -168,10 +192,39 @@ public class GraphicInterface extends JFrame {
     }
 
     /**
-     * Update the game GUI.
+     * Shows the current aggregates of the simulation statistics.
+     *
+     * @param statistics statistics of the simulation.
+     */
+    public void showStatistics(StepStatistics statistics) {
+        this.jStatisticsPanel.showStatistics(statistics);
+    }
+
+    /**
+     * Update the game GUI, drawing again the whole map.
      */
     public void updateGame() {
-        this.jGamePanel.repaint();
+        SwingUtilities.invokeLater(jMapPanel::redraw);
+    }
+
+    /**
+     * Update the game GUI with the changes of a simulation step: only the
+     * cells involved are drawn again.
+     *
+     * @param delta changes of the last step.
+     */
+    public void updateGame(MapDelta delta) {
+        for (int i = 0; i < delta.getMoveCount(); i++) {
+            jMapPanel.cellChanged(delta.getMoveFrom(i));
+            jMapPanel.cellChanged(delta.getMoveTo(i));
+        }
+        for (int i = 0; i < delta.getGarbageCount(); i++) {
+            jMapPanel.cellChanged(delta.getGarbageCell(i));
+        }
+        for (int i = 0; i < delta.getDetectedCount(); i++) {
+            jMapPanel.cellChanged(delta.getDetected(i));
+        }
+        jMapPanel.refresh();
     }
     
 }
@@ -16,16 +16,24 @@
  */
 package cat.urv.imas.gui;
 
+import cat.urv.imas.log.LogRing;
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.Toolkit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Class showing the area of logs. Initially it contains a textarea and a button
  * to save the logs in a file.
  *
+ * Messages may come from any thread: they are queued and appended in batches
+ * on the event dispatch thread, and only the last {@link #MAX_LINES} lines
+ * are kept.
  */
 public class LogPanel extends JPanel {
 
@@ -45,6 +53,26 @@ public class LogPanel extends JPanel {
      * Margin.
      */
     private static final int INSET = 50;
+    /**
+     * Maximum number of lines kept in the text area.
+     */
+    public static final int MAX_LINES = 5000;
+    /**
+     * Maximum number of queued messages not yet shown.
+     */
+    private static final int QUEUE_CAPACITY = 1 << 14;
+    /**
+     * Messages waiting to be appended.
+     */
+    private final LogRing<String> pending = new LogRing<>(QUEUE_CAPACITY);
+    /**
+     * True while an append is scheduled on the event dispatch thread.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /**
+     * Batch buffer, only used on the event dispatch thread.
+     */
+    private final List<String> batch = new ArrayList<>();
 
     /**
      * Default constructor.
@@ -61,7 +89,40 @@ public class LogPanel extends JPanel {
      * @param msg Message to append.
      */
     public void log(String msg) {
-        jTextArea.append(msg);
+        pending.offer(msg);
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    /**
+     * Appends all queued messages at once and trims the oldest lines.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        StringBuilder text = new StringBuilder();
+        while (pending.drain(batch, QUEUE_CAPACITY) > 0) {
+            for (String msg : batch) {
+                text.append(msg);
+            }
+            batch.clear();
+        }
+        long dropped = pending.takeDropped();
+        if (dropped > 0) {
+            text.append(dropped).append(" log messages dropped\n");
+        }
+        if (text.length() == 0) {
+            return;
+        }
+        jTextArea.append(text.toString());
+        int excess = jTextArea.getLineCount() - MAX_LINES;
+        if (excess > 0) {
+            try {
+                jTextArea.replaceRange(null, 0, jTextArea.getLineStartOffset(excess));
+            } catch (BadLocationException e) {
+                jTextArea.setText(null);
+            }
+        }
     }
 
     /**
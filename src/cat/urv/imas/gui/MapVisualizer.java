@@ -1,6 +1,7 @@
 package cat.urv.imas.gui;
 
 import javax.swing.*;
+import java.awt.AlphaComposite;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.Toolkit;
@@ -10,8 +11,14 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.BitSet;
+import cat.urv.imas.agent.AgentType;
 import cat.urv.imas.map.*;
+import cat.urv.imas.onthology.GameSettings;
 
 /**
  * Visualization of the map. There are several elements to depict, as buildings,
@@ -19,6 +26,16 @@ import cat.urv.imas.map.*;
  * This class *should be* modified and improved in order to show as good as
  * possible all the changes in the simulation. We provide several high-level
  * methods which can be rewritten as needed.<br>
+ * The map is rendered in two layers: the static terrain (the cells
+ * themselves, and the recycling centers with their prices) is drawn once,
+ * and the contents that change along the simulation (agents and garbage)
+ * are drawn on top of it. Only the cells reported as changed (see
+ * cellChanged() and refresh()) are drawn again, so painting does not
+ * depend on the size of the map.<br>
+ * The map can be zoomed (control + mouse wheel) and scrolled when placed
+ * into a JScrollPane. Only the visible cells are visited when the map is
+ * too big to be kept in an image, and when cells become too small to show
+ * their details, the map is shown as a heatmap with a pixel per cell.<br>
  *
  * <b>Company:</b> Universitat Rovira i Virgili (<a
  * href="http://www.urv.cat">URV</a>)
@@ -34,31 +51,126 @@ public class MapVisualizer extends JPanel implements CellVisualizer {
      */
     private static final int GAP = 5;
     /**
-     * City map.
+     * Position of the first cell.
+     */
+    private static final int ORIGIN = GAP + 10;
+    /**
+     * Font for all messages in the map.
+     */
+    private static final Font FONT = new Font("Serif", Font.PLAIN, 11);
+    /**
+     * Minimum cell size (in pixels) to show the details of cells; below it,
+     * the map is shown as a heatmap.
+     */
+    private static final int DETAILED_CELL = 12;
+    /**
+     * Maximum cell size (in pixels) when zooming in.
+     */
+    private static final int MAX_CELL = 256;
+    /**
+     * Minimum size (in pixels) of the whole map when zooming out.
+     */
+    private static final int MIN_MAP = 128;
+    /**
+     * Maximum size (in pixels) of the map to keep it rendered in images;
+     * larger maps are drawn cell by cell, only the visible ones.
+     */
+    private static final long MAX_CACHED_PIXELS = 4L * 1024 * 1024;
+
+    /* Heatmap colors. */
+    private static final int HEAT_STREET = Color.LIGHT_GRAY.getRGB();
+    private static final int HEAT_BUILDING = Color.CYAN.darker().getRGB();
+    private static final int HEAT_GARBAGE = Color.ORANGE.getRGB();
+    private static final int HEAT_RECYCLING_CENTER = Color.GREEN.getRGB();
+    private static final int HEAT_SCOUT = Color.WHITE.getRGB();
+    private static final int HEAT_HARVESTER = Color.RED.getRGB();
+
+    /**
+     * City map, or null when cells are taken from the game settings.
      */
     private final Cell[][] map;
     /**
-     * Cell width.
+     * Game settings to take cells from, when no map is given.
+     */
+    private final GameSettings game;
+    /**
+     * Number of rows of the map.
+     */
+    private final int nrows;
+    /**
+     * Number of columns of the map.
+     */
+    private final int ncols;
+    /**
+     * Cell width and height with no zoom, in pixels.
+     */
+    private final double baseWidth;
+    private final double baseHeight;
+    /**
+     * Current zoom factor.
+     */
+    private double zoom;
+    /**
+     * Cell width and height with the current zoom, in pixels.
      */
-    private final int dx;
+    private double cellWidth;
+    private double cellHeight;
     /**
-     * Cell height.
+     * True when cells are big enough to show their details.
      */
-    private final int dy;
+    private boolean detailed;
+    /**
+     * Cell width, when detailed.
+     */
+    private int dx;
+    /**
+     * Cell height, when detailed.
+     */
+    private int dy;
     /**
      * Dimensions for the cell's border.
      */
-    private final Rectangle2D.Double cellBorder;
+    private Rectangle2D.Double cellBorder;
     /**
      * The way agents are shown into the map.
      */
-    private final Ellipse2D.Double agentFigure;
+    private Ellipse2D.Double agentFigure;
     /**
      * Graphics when painting the city map.
      *
      * @see cat.urv.imas.gui.CellVisualizer
      */
     private Graphics2D temporaryGraphics;
+    /**
+     * True while drawing the static terrain layer; false while drawing the
+     * contents on top of it.
+     */
+    private boolean drawingTerrain;
+    /**
+     * Static terrain layer, drawn once.
+     */
+    private BufferedImage terrain;
+    /**
+     * Whole map as shown: terrain plus the current contents of every cell.
+     */
+    private BufferedImage canvas;
+    /**
+     * Heatmap, with a pixel per cell.
+     */
+    private BufferedImage heatmap;
+    /**
+     * Cells (flat index) changed since the last rendering.
+     */
+    private BitSet dirty = new BitSet();
+    /**
+     * Spare set of cells, swapped with dirty when rendering.
+     */
+    private BitSet rendering = new BitSet();
+    /**
+     * True when a rendering is already scheduled on the event dispatch
+     * thread.
+     */
+    private boolean refreshScheduled = false;
 
     /**
      * Initializes values for a correct map painting.
@@ -66,57 +178,388 @@ public class MapVisualizer extends JPanel implements CellVisualizer {
      * @param map
      */
     public MapVisualizer(Cell[][] map) {
+        this(map, null, map.length, map[0].length);
+    }
+
+    /**
+     * Initializes values for painting the map of the game, without building
+     * the whole map of cells when it is kept in a grid.
+     *
+     * @param game game settings.
+     */
+    public MapVisualizer(GameSettings game) {
+        this(null, game, game.getRows(), game.getCols());
+    }
+
+    private MapVisualizer(Cell[][] map, GameSettings game, int nrows, int ncols) {
         this.map = map;
-        int nrows = map.length;
-        int ncols = map[0].length;
+        this.game = game;
+        this.nrows = nrows;
+        this.ncols = ncols;
 
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
         Point start = new Point(INSET, INSET);
         Point end = new Point(screenSize.width - INSET * 2, screenSize.height - INSET * 2);
 
-        dx = (end.x - start.x) / ncols;
-        dy = ((end.y - start.y) / nrows) - 4;
+        int fitWidth = (end.x - start.x) / ncols;
+        int fitHeight = ((end.y - start.y) / nrows) - 4;
+        if (fitWidth >= DETAILED_CELL && fitHeight >= DETAILED_CELL) {
+            baseWidth = fitWidth;
+            baseHeight = fitHeight;
+        } else {
+            // too big to show the details: the whole map as a heatmap
+            double scale = Math.min((end.x - start.x) / (double) ncols, (end.y - start.y) / (double) nrows);
+            baseWidth = scale;
+            baseHeight = scale;
+        }
+        setZoom(1);
+
+        addMouseWheelListener(e -> {
+            if (e.isControlDown()) {
+                if (e.getWheelRotation() < 0) {
+                    zoomIn();
+                } else {
+                    zoomOut();
+                }
+            } else if (getParent() != null) {
+                // let the scroll pane scroll
+                getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+            }
+        });
+    }
 
-        cellBorder = new Rectangle2D.Double(GAP + 10, GAP + 10, dx, dy);
-        agentFigure = new Ellipse2D.Double(GAP + 10 + (dx / 4), GAP + 10 + (dy / 4), (dx / 2), (dy / 2));
+    /* ****************** Zoom ********************************************** */
 
+    public double getZoom() {
+        return zoom;
     }
 
     /**
-     * Show the whole city map.
+     * Sets the zoom factor; 1 fits the whole map into the screen.
+     *
+     * @param zoom zoom factor.
+     */
+    public void setZoom(double zoom) {
+        this.zoom = zoom;
+        cellWidth = baseWidth * zoom;
+        cellHeight = baseHeight * zoom;
+        detailed = cellWidth >= DETAILED_CELL && cellHeight >= DETAILED_CELL;
+        if (detailed) {
+            dx = (int) cellWidth;
+            dy = (int) cellHeight;
+            cellWidth = dx;
+            cellHeight = dy;
+            cellBorder = new Rectangle2D.Double(ORIGIN, ORIGIN, dx, dy);
+            agentFigure = new Ellipse2D.Double(ORIGIN + (dx / 4), ORIGIN + (dy / 4), (dx / 2), (dy / 2));
+        }
+        terrain = null;
+        canvas = null;
+        setPreferredSize(new Dimension(
+                2 * ORIGIN + (int) Math.ceil(ncols * cellWidth),
+                2 * ORIGIN + (int) Math.ceil(nrows * cellHeight)));
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Doubles the size of cells, up to MAX_CELL pixels.
+     */
+    public void zoomIn() {
+        if (cellWidth * 2 <= MAX_CELL && cellHeight * 2 <= MAX_CELL) {
+            setZoom(zoom * 2);
+        }
+    }
+
+    /**
+     * Halves the size of cells, until the whole map is MIN_MAP pixels.
+     */
+    public void zoomOut() {
+        if (ncols * cellWidth / 2 >= MIN_MAP || nrows * cellHeight / 2 >= MIN_MAP) {
+            setZoom(zoom / 2);
+        }
+    }
+
+    /* ****************** Painting ****************************************** */
+
+    /**
+     * Show the visible part of the city map. Maps small enough are rendered
+     * only once into an image, and painting just copies it.
      *
      * @param graphics
      */
     @Override
     public void paintComponent(Graphics graphics) {
-        Graphics2D g2d = (Graphics2D) graphics;
-
         // 0. initializing graphic element.
         clear(graphics);
 
-        // 1. set graphics for painting
-        this.updateGraphics(g2d);
+        Rectangle clip = graphics.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        if (!detailed) {
+            // 1. heatmap, scaled to the visible cells
+            paintHeatmap((Graphics2D) graphics, clip);
+        } else if (isCacheable()) {
+            // 1. render the whole map, only once
+            if (canvas == null) {
+                renderAll();
+            }
+            // 2. copy it
+            graphics.drawImage(canvas, 0, 0, null);
+        } else {
+            // 1. draw only the visible cells
+            paintCells((Graphics2D) graphics, clip);
+        }
+    }
+
+    /**
+     * Tells whether the whole map fits into the cached images.
+     *
+     * @return true if the map is rendered into images.
+     */
+    private boolean isCacheable() {
+        return (long) (ORIGIN + ncols * dx + 1) * (ORIGIN + nrows * dy + 1) <= MAX_CACHED_PIXELS;
+    }
 
-        // 2. iterate cells and paint them.
-        for (Cell[] row : map) {
+    /**
+     * Renders the whole map into the images kept for painting: the terrain
+     * layer and the contents of all cells, or the heatmap. Maps too big to
+     * be kept in images are not rendered.
+     */
+    public void renderAll() {
+        if (!detailed) {
+            renderHeatmap();
+            return;
+        }
+        if (!isCacheable()) {
+            return;
+        }
+        int width = ORIGIN + ncols * dx + 1;
+        int height = ORIGIN + nrows * dy + 1;
+        terrain = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
-            for (Cell cell : row) {
-                // 2.1. draw the border.
-                g2d.draw(cellBorder);
-                // 2.2. draw the cell
-                cell.draw(this);
-                // 2.3. move on
-                g2d.translate(dx, 0);
+        Graphics2D g2d = terrain.createGraphics();
+        drawingTerrain = true;
+        for (int r = 0; r < nrows; r++) {
+            for (int c = 0; c < ncols; c++) {
+                renderCell(g2d, r, c);
             }
+        }
+        g2d.dispose();
 
-            // 2.4. move on
-            g2d.translate(-(dx * row.length), dy);
+        g2d = canvas.createGraphics();
+        g2d.drawImage(terrain, 0, 0, null);
+        drawingTerrain = false;
+        for (int r = 0; r < nrows; r++) {
+            for (int c = 0; c < ncols; c++) {
+                renderCell(g2d, r, c);
+            }
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * Draws again the whole map, discarding everything rendered so far.
+     * It has to be called from the event dispatch thread.
+     */
+    public void redraw() {
+        terrain = null;
+        canvas = null;
+        heatmap = null;
+        repaint();
+    }
+
+    /**
+     * Draws the cells within the given area, both layers at once.
+     *
+     * @param g2d graphics to paint on.
+     * @param clip area to paint.
+     */
+    private void paintCells(Graphics2D g2d, Rectangle clip) {
+        int firstCol = Math.max(0, (clip.x - ORIGIN) / dx);
+        int lastCol = Math.min(ncols - 1, (clip.x + clip.width - ORIGIN) / dx);
+        int firstRow = Math.max(0, (clip.y - ORIGIN) / dy);
+        int lastRow = Math.min(nrows - 1, (clip.y + clip.height - ORIGIN) / dy);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstCol; c <= lastCol; c++) {
+                drawingTerrain = true;
+                renderCell(g2d, r, c);
+                drawingTerrain = false;
+                renderCell(g2d, r, c);
+            }
         }
+    }
 
-        // 5. unsetting graphics
+    /**
+     * Draws a cell, limited to its own area, with the current layer. The
+     * contents are kept inside the cell border, which is shared with the
+     * neighbour cells.
+     *
+     * @param g2d graphics of the layer.
+     * @param row row of the cell.
+     * @param col column of the cell.
+     */
+    private void renderCell(Graphics2D g2d, int row, int col) {
+        Graphics2D cellGraphics = (Graphics2D) g2d.create();
+        if (drawingTerrain) {
+            cellGraphics.clipRect(ORIGIN + col * dx, ORIGIN + row * dy, dx + 1, dy + 1);
+        } else {
+            cellGraphics.clipRect(ORIGIN + col * dx + 1, ORIGIN + row * dy + 1, dx - 1, dy - 1);
+        }
+        cellGraphics.translate(col * dx, row * dy);
+        this.updateGraphics(cellGraphics);
+        getCell(row, col).draw(this);
         this.updateGraphics(null);
-        // 6. painting reinforcement
-        this.repaint();
+        cellGraphics.dispose();
+    }
+
+    private Cell getCell(int row, int col) {
+        return (map != null) ? map[row][col] : game.get(row, col);
+    }
+
+    /* ****************** Heatmap ******************************************* */
+
+    /**
+     * Renders the heatmap, with a pixel per cell.
+     */
+    private void renderHeatmap() {
+        heatmap = new BufferedImage(ncols, nrows, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) heatmap.getRaster().getDataBuffer()).getData();
+        for (int r = 0; r < nrows; r++) {
+            for (int c = 0; c < ncols; c++) {
+                pixels[r * ncols + c] = heatColor(getCell(r, c));
+            }
+        }
+    }
+
+    /**
+     * Color of a cell in the heatmap: agents, buildings with garbage and
+     * recycling centers stand out from streets and empty buildings.
+     *
+     * @param cell the cell.
+     * @return RGB color.
+     */
+    private static int heatColor(Cell cell) {
+        switch (cell.getCellType()) {
+            case STREET:
+                StreetCell street = (StreetCell) cell;
+                if (!street.isThereAnAgent()) {
+                    return HEAT_STREET;
+                }
+                return (street.getAgent().getType() == AgentType.SCOUT) ? HEAT_SCOUT : HEAT_HARVESTER;
+            case BUILDING:
+                boolean hasGarbage = (cell instanceof SettableBuildingCell)
+                        ? ((SettableBuildingCell) cell).getRealGarbageType() != null
+                        : ((BuildingCell) cell).getGarbageType() != null;
+                return (hasGarbage) ? HEAT_GARBAGE : HEAT_BUILDING;
+            default:
+                return HEAT_RECYCLING_CENTER;
+        }
+    }
+
+    /**
+     * Paints the heatmap of the cells within the given area.
+     *
+     * @param g2d graphics to paint on.
+     * @param clip area to paint.
+     */
+    private void paintHeatmap(Graphics2D g2d, Rectangle clip) {
+        if (heatmap == null) {
+            renderHeatmap();
+        }
+        int firstCol = Math.max(0, (int) ((clip.x - ORIGIN) / cellWidth));
+        int lastCol = Math.min(ncols - 1, (int) ((clip.x + clip.width - ORIGIN) / cellWidth));
+        int firstRow = Math.max(0, (int) ((clip.y - ORIGIN) / cellHeight));
+        int lastRow = Math.min(nrows - 1, (int) ((clip.y + clip.height - ORIGIN) / cellHeight));
+        if (firstCol > lastCol || firstRow > lastRow) {
+            return;
+        }
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, (cellWidth < 1)
+                ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2d.drawImage(heatmap,
+                ORIGIN + (int) (firstCol * cellWidth), ORIGIN + (int) (firstRow * cellHeight),
+                ORIGIN + (int) Math.ceil((lastCol + 1) * cellWidth), ORIGIN + (int) Math.ceil((lastRow + 1) * cellHeight),
+                firstCol, firstRow, lastCol + 1, lastRow + 1, null);
+    }
+
+    /* ****************** Changes ******************************************* */
+
+    /**
+     * Tells that the content of a cell has changed (an agent arrived or left,
+     * or its garbage changed). It is drawn again on the next refresh(). It
+     * can be called from any thread.
+     *
+     * @param index flat cell index (row * cols + col).
+     */
+    public void cellChanged(int index) {
+        synchronized (this) {
+            dirty.set(index);
+        }
+    }
+
+    /**
+     * Schedules the rendering of all changed cells on the event dispatch
+     * thread. It can be called from any thread; calls made before the
+     * rendering takes place are merged into a single one.
+     */
+    public void refresh() {
+        synchronized (this) {
+            if (refreshScheduled) {
+                return;
+            }
+            refreshScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::renderChangedCells);
+    }
+
+    /**
+     * Renders again all changed cells, and repaints only their area. It has
+     * to be called from the event dispatch thread (see refresh()), or when
+     * rendering offscreen.
+     */
+    public void renderChangedCells() {
+        BitSet cells;
+        synchronized (this) {
+            refreshScheduled = false;
+            cells = dirty;
+            dirty = rendering;
+            rendering = cells;
+        }
+        if (!detailed) {
+            if (heatmap != null) {
+                for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+                    int row = i / ncols;
+                    int col = i % ncols;
+                    heatmap.setRGB(col, row, heatColor(getCell(row, col)));
+                    repaint(ORIGIN + (int) (col * cellWidth), ORIGIN + (int) (row * cellHeight),
+                            (int) Math.ceil(cellWidth) + 1, (int) Math.ceil(cellHeight) + 1);
+                }
+            }
+        } else if (canvas != null) {
+            Graphics2D g2d = canvas.createGraphics();
+            for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+                int row = i / ncols;
+                int col = i % ncols;
+                int x = ORIGIN + col * dx;
+                int y = ORIGIN + row * dy;
+                // restore the terrain, and draw the current contents over it
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.drawImage(terrain, x, y, x + dx + 1, y + dy + 1, x, y, x + dx + 1, y + dy + 1, null);
+                g2d.setComposite(AlphaComposite.SrcOver);
+                renderCell(g2d, row, col);
+                repaint(x, y, dx + 1, dy + 1);
+            }
+            g2d.dispose();
+        } else if (!isCacheable()) {
+            // cells are drawn when painting their area
+            for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+                repaint(ORIGIN + (i % ncols) * dx, ORIGIN + (i / ncols) * dy, dx + 1, dy + 1);
+            }
+        }
+        // otherwise, not painted yet: everything is rendered on the first paint
+        cells.clear();
     }
 
     protected void clear(Graphics g) {
@@ -128,21 +571,27 @@ public class MapVisualizer extends JPanel implements CellVisualizer {
     }
 
     protected void drawAgent(Color fillingColor, String message, Color textColor) {
+        if (drawingTerrain) {
+            return;
+        }
         temporaryGraphics.setPaint(fillingColor);
         temporaryGraphics.translate((dx / 6), (dy / 6));
         temporaryGraphics.fill(agentFigure);
         temporaryGraphics.translate(-(dx / 6), -(dy / 6));
-        drawString(message, textColor, dx - 80, dy - 10);
+        drawString(message, textColor, ORIGIN + 2, dy - 10);
     }
 
     /**
      * Just draws a cell with the given filling in color, and the given border
-     * color.
+     * color. It belongs to the terrain layer.
      *
      * @param fillingColor cell's color
      * @param borderColor color for the cell's border
      */
     protected void drawCell(Color fillingColor, Color borderColor) {
+        if (!drawingTerrain) {
+            return;
+        }
         temporaryGraphics.setPaint(fillingColor);
         temporaryGraphics.fill(cellBorder);
         temporaryGraphics.setPaint(borderColor);
@@ -162,8 +611,7 @@ public class MapVisualizer extends JPanel implements CellVisualizer {
             temporaryGraphics.setRenderingHint(
                     RenderingHints.KEY_ANTIALIASING,
                     RenderingHints.VALUE_ANTIALIAS_ON);
-            Font font = new Font("Serif", Font.PLAIN, 11);
-            temporaryGraphics.setFont(font);
+            temporaryGraphics.setFont(FONT);
             temporaryGraphics.setPaint(textColor);
             temporaryGraphics.drawString(message, x, y);
         }
@@ -195,13 +643,17 @@ public class MapVisualizer extends JPanel implements CellVisualizer {
     @Override
     public void drawBuilding(BuildingCell cell) {
         drawCell(Color.CYAN.darker(), Color.DARK_GRAY);
-        drawString(cell.getMapMessage(), Color.WHITE, dx - 40, dy);
+        if (!drawingTerrain) {
+            drawString(cell.getMapMessage(), Color.WHITE, dx - 40, dy);
+        }
     }
 
     @Override
     public void drawRecyclingCenter(RecyclingCenterCell cell) {
         drawCell(Color.RED, Color.GREEN);
-        drawString(cell.getMapMessage(), Color.BLACK, dx - 80, dy);
+        if (drawingTerrain) {
+            drawString(cell.getMapMessage(), Color.BLACK, ORIGIN + 2, dy);
+        }
     }
 
 }
@@ -1,14 +1,20 @@
 package cat.urv.imas.gui;
 
+import cat.urv.imas.simulation.StepStatistics;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.Toolkit;
 import java.awt.event.ActionListener;
 import java.awt.Dimension;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <b>Company:</b> Universitat Rovira i Virgili (<a
  * href="http://www.urv.cat">URV</a>)
+ *
+ * Shows the live aggregates of the step statistics, plus the last message
+ * received. The text is replaced, never appended, so it does not grow along
+ * the simulation; the save button exports the statistics as CSV.
  */
 public class StatisticsPanel
         extends JPanel {
@@ -19,14 +25,57 @@ public class StatisticsPanel
 
     private final int inset = 60;
 
+    /**
+     * Statistics shown, or null until the first step.
+     */
+    private volatile StepStatistics statistics;
+    /**
+     * Last message shown.
+     */
+    private volatile String message = "";
+    /**
+     * True while a refresh is scheduled on the event dispatch thread.
+     */
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
     public StatisticsPanel() {
         super();
         this.initComponents();
         this.setVisible(true);
     }
 
+    /**
+     * Shows a message above the statistics, replacing the previous one. Can
+     * be called from any thread.
+     *
+     * @param msg message to show.
+     */
     public void showMessage(String msg) {
-        jTextArea.append(msg);
+        this.message = msg;
+        scheduleRefresh();
+    }
+
+    /**
+     * Shows the current aggregates of the given statistics. Can be called
+     * from any thread, at every step: refreshes are coalesced.
+     *
+     * @param statistics statistics of the simulation.
+     */
+    public void showStatistics(StepStatistics statistics) {
+        this.statistics = statistics;
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        refreshScheduled.set(false);
+        StepStatistics current = statistics;
+        jTextArea.setText((current == null) ? message : message + "\n\n" + current);
     }
 
     private void initComponents() {
@@ -50,11 +99,13 @@ public class StatisticsPanel
          * button doSave
          */
         doSave = UtilsGUI.createButton("Save log", UtilsGUI.buttonSaveIconPath);
-        doSave.setToolTipText("Save the information into a statistics file");
+        doSave.setToolTipText("Save the statistics of every step into a CSV file");
         doSave.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent evt) {
-                FileSaver.saveContent(evt, fc, StatisticsPanel.this, jTextArea.getText(), "statistics");
+                StepStatistics current = statistics;
+                String content = (current == null) ? jTextArea.getText() : current.toCsv();
+                FileSaver.saveContent(evt, fc, StatisticsPanel.this, content, "statistics");
             }
         });
         this.add(doSave,
@@ -0,0 +1,220 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.log;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log shared by all agents. Messages are queued into a bounded
+ * lock-free ring and a single daemon thread writes them in batches to the
+ * console and, when the <code>imas.log.file</code> system property names a
+ * file, appends them to that file too.
+ */
+public final class LogPipeline {
+
+    /**
+     * System property with the path of the optional log file.
+     */
+    public static final String FILE_PROPERTY = "imas.log.file";
+    /**
+     * Maximum number of queued messages.
+     */
+    private static final int CAPACITY = 1 << 16;
+    /**
+     * Maximum number of messages written per batch.
+     */
+    private static final int BATCH = 1024;
+    /**
+     * How long the writer sleeps when there is nothing to write.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    /**
+     * Maximum time waited for the queue to drain on shutdown.
+     */
+    private static final long SHUTDOWN_MILLIS = 2000;
+    /**
+     * The single pipeline of this JVM.
+     */
+    private static final LogPipeline INSTANCE = new LogPipeline();
+
+    /**
+     * A queued message.
+     */
+    private static final class Entry {
+
+        private final boolean error;
+        private final String text;
+
+        private Entry(boolean error, String text) {
+            this.error = error;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Queued messages.
+     */
+    private final LogRing<Entry> ring = new LogRing<>(CAPACITY);
+    /**
+     * Optional file sink; null when disabled.
+     */
+    private final Writer file;
+    /**
+     * Thread writing the batches.
+     */
+    private final Thread writer;
+    /**
+     * True while the writer holds a batch that is not fully written.
+     */
+    private volatile boolean writing;
+
+    private LogPipeline() {
+        this.file = openFile(System.getProperty(FILE_PROPERTY));
+        this.writer = new Thread(this::run, "imas-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_MILLIS)));
+    }
+
+    /**
+     * Queues an informative message. Never blocks.
+     *
+     * @param msg message, without trailing line break.
+     */
+    public static void info(String msg) {
+        INSTANCE.ring.offer(new Entry(false, msg));
+    }
+
+    /**
+     * Queues an error message. Never blocks.
+     *
+     * @param msg message, without trailing line break.
+     */
+    public static void error(String msg) {
+        INSTANCE.ring.offer(new Entry(true, msg));
+    }
+
+    /**
+     * Waits until every message queued so far has been written.
+     *
+     * @param timeoutMillis maximum time to wait.
+     * @return true if everything was written within the timeout.
+     */
+    public static boolean flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!INSTANCE.ring.isEmpty() || INSTANCE.writing) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.unpark(INSTANCE.writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Writer loop: drains the ring in batches and sleeps when it is empty.
+     */
+    private void run() {
+        List<Entry> batch = new ArrayList<>(BATCH);
+        StringBuilder text = new StringBuilder(4096);
+        while (true) {
+            writing = true;
+            int count = ring.drain(batch, BATCH);
+            long dropped = ring.takeDropped();
+            if (dropped > 0) {
+                batch.add(new Entry(true, dropped + " log messages dropped: log queue full"));
+            }
+            if (!batch.isEmpty()) {
+                write(batch, text);
+                batch.clear();
+            }
+            writing = false;
+            if (count < BATCH) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes a batch to the sinks. Consecutive messages going to the same
+     * console stream are printed at once.
+     *
+     * @param batch messages to write.
+     * @param text reusable buffer.
+     */
+    private void write(List<Entry> batch, StringBuilder text) {
+        int start = 0;
+        while (start < batch.size()) {
+            boolean error = batch.get(start).error;
+            int end = start;
+            text.setLength(0);
+            while (end < batch.size() && batch.get(end).error == error) {
+                text.append(batch.get(end).text).append(System.lineSeparator());
+                end++;
+            }
+            PrintStream out = error ? System.err : System.out;
+            out.print(text);
+            out.flush();
+            start = end;
+        }
+        if (file != null) {
+            try {
+                for (Entry entry : batch) {
+                    if (entry.error) {
+                        file.write("ERROR: ");
+                    }
+                    file.write(entry.text);
+                    file.write(System.lineSeparator());
+                }
+                file.flush();
+            } catch (IOException e) {
+                System.err.println("Cannot write log file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens the file sink in append mode.
+     *
+     * @param filename path of the file, or null.
+     * @return writer, or null if disabled or it cannot be opened.
+     */
+    private static Writer openFile(String filename) {
+        if (filename == null || filename.isEmpty()) {
+            return null;
+        }
+        try {
+            return new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(filename, true), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Cannot open log file " + filename + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.log;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free ring buffer with many producers and a single consumer.
+ * Producers never block: when the ring is full the element is dropped and
+ * counted, so a burst of messages can never stall an agent thread.
+ *
+ * @param <T> type of the buffered elements.
+ */
+public class LogRing<T> {
+
+    /**
+     * Slots of the ring. A null slot is free or still being written.
+     */
+    private final AtomicReferenceArray<T> slots;
+    /**
+     * Capacity - 1, the capacity being a power of two.
+     */
+    private final int mask;
+    /**
+     * Next sequence to be claimed by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Next sequence to be read by the consumer.
+     */
+    private volatile long head;
+    /**
+     * Elements dropped because the ring was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Builds an empty ring.
+     *
+     * @param capacity minimum number of elements held; rounded up to a power
+     * of two.
+     */
+    public LogRing(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an element. Safe to call from any thread.
+     *
+     * @param element element to add; not null.
+     * @return true if added, false if the ring was full and it was dropped.
+     */
+    public boolean offer(T element) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) sequence & mask, element);
+        return true;
+    }
+
+    /**
+     * Moves up to max elements, in order, into the given list. Only the
+     * consumer thread may call it. An element whose producer has claimed a
+     * slot but not written it yet ends the batch and is read next time.
+     *
+     * @param into list receiving the elements.
+     * @param max maximum number of elements to move.
+     * @return number of elements moved.
+     */
+    public int drain(List<? super T> into, int max) {
+        long sequence = head;
+        int count = 0;
+        while (count < max) {
+            int slot = (int) sequence & mask;
+            T element = slots.get(slot);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(slot, null);
+            into.add(element);
+            sequence++;
+            count++;
+        }
+        head = sequence;
+        return count;
+    }
+
+    /**
+     * Tells whether there is nothing left to read.
+     *
+     * @return true when all claimed slots have been consumed.
+     */
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * Returns and resets the number of dropped elements.
+     *
+     * @return elements dropped since the last call.
+     */
+    public long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+
+    /**
+     * Gets the capacity of the ring.
+     *
+     * @return maximum number of elements held.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -19,7 +19,8 @@ package cat.urv.imas.map;
 
 import cat.urv.imas.gui.CellVisualizer;
 import cat.urv.imas.onthology.GarbageType;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -30,18 +31,28 @@ public class BuildingCell extends Cell {
     /**
      * When this garbage is not found yet, an empty list of garbage is returned.
      */
-    protected static Map<GarbageType, Integer> empty = new HashMap();
+    protected static Map<GarbageType, Integer> empty = Collections.emptyMap();
 
     /**
-     * Garbage of the building: it can only be of one type at a time.
-     * But, once generated, it can be of any type and amount.
+     * Types of garbage, by ordinal.
      */
-    protected Map<GarbageType, Integer> garbage;
+    protected static final GarbageType[] TYPES = GarbageType.values();
+
+    /**
+     * Units of garbage of the building, by type ordinal. There can only be
+     * one type at a time. But, once generated, it can be of any type and
+     * amount.
+     */
+    protected int[] garbage;
     /**
      * If true, scouts have found this garbage. false when scouts have
      * to find it yet.
      */
     protected boolean found = false;
+    /**
+     * Index to notify when this building gets or loses its garbage, if any.
+     */
+    protected transient GarbageIndex garbageIndex;
     
     /**
      * Builds a cell corresponding to a building.
@@ -51,7 +62,20 @@ public class BuildingCell extends Cell {
      */
     public BuildingCell(int row, int col) {
         super(CellType.BUILDING, row, col);
-        garbage = new HashMap();
+        garbage = new int[TYPES.length];
+    }
+
+    /**
+     * Builds a cell corresponding to a building whose garbage is kept
+     * elsewhere (see CityGrid).
+     *
+     * @param row row number.
+     * @param col column number.
+     * @param garbage garbage counters, or null when subclasses keep them.
+     */
+    protected BuildingCell(int row, int col, int[] garbage) {
+        super(CellType.BUILDING, row, col);
+        this.garbage = garbage;
     }
     
     /**
@@ -59,8 +83,38 @@ public class BuildingCell extends Cell {
      * @return the garbage on it.
      */
     public Map<GarbageType, Integer> detectGarbage() {
-        found = (!garbage.isEmpty());
-        return garbage;
+        found = (realType() != null);
+        return content();
+    }
+
+    /**
+     * Builds a map with the garbage of this building, for the API based on
+     * maps. Hot paths use the primitive accessors instead.
+     *
+     * @return the garbage on it.
+     */
+    protected Map<GarbageType, Integer> content() {
+        GarbageType type = realType();
+        if (type == null) {
+            return empty;
+        }
+        Map<GarbageType, Integer> content = new EnumMap<>(GarbageType.class);
+        content.put(type, garbage[type.ordinal()]);
+        return content;
+    }
+
+    /**
+     * Type of the garbage of this building, whether or not it is found.
+     *
+     * @return the garbage type, or null if there is no garbage.
+     */
+    protected GarbageType realType() {
+        for (int i = 0; i < garbage.length; i++) {
+            if (garbage[i] > 0) {
+                return TYPES[i];
+            }
+        }
+        return null;
     }
 
     /**
@@ -70,25 +124,90 @@ public class BuildingCell extends Cell {
      * @return the garbage on it.
      */
     public Map<GarbageType, Integer> getGarbage() {
-        return (found) ? garbage : empty;
+        return (found) ? content() : empty;
+    }
+
+    /**
+     * Type of the detected garbage, as getGarbage() but without building a
+     * map.
+     * @return the garbage type, or null if there is no detected garbage.
+     */
+    public GarbageType getGarbageType() {
+        return (found) ? realType() : null;
+    }
+
+    /**
+     * Units of detected garbage of a type, as getGarbage() but without
+     * building a map.
+     * @param type garbage type.
+     * @return units of garbage, or 0 if there is no detected garbage.
+     */
+    public int getGarbageAmount(GarbageType type) {
+        return (found) ? garbage[type.ordinal()] : 0;
+    }
+    
+    /**
+     * Sets the index to notify when this building gets or loses its garbage,
+     * and registers its current state on it.
+     * @param index spatial index of buildings with garbage.
+     */
+    public void setGarbageIndex(GarbageIndex index) {
+        this.garbageIndex = index;
+        garbageChanged();
+    }
+
+    /**
+     * Notifies the current state of the garbage to the index, if any.
+     * Subclasses must call it whenever the garbage changes.
+     */
+    protected void garbageChanged() {
+        if (garbageIndex != null) {
+            garbageIndex.update(getRow(), getCol(), realType() != null);
+        }
+    }
+
+    /**
+     * Tells whether scouts have found the garbage of this building.
+     * @return true if the garbage has been detected.
+     */
+    public boolean isFound() {
+        return found;
     }
     
     /**
      * Removes an item of the current garbage, if any.
-     * When there is no more garbage after removing it, the set of 
-     * garbage is emptied.
+     * When there is no more garbage after removing it, the building is
+     * no longer found.
      */
     public void removeGarbage() {
-        if (found && garbage.size() > 0) {
-            for (Map.Entry<GarbageType, Integer> entry: garbage.entrySet()) {
-                if (entry.getValue() == 1) {
-                    garbage.clear();
-                    found = false;
-                } else {
-                    garbage.replace(entry.getKey(), entry.getValue()-1);
-                }
-            }
+        GarbageType type = getGarbageType();
+        if (type != null) {
+            pickup(type, 1);
+        }
+    }
+
+    /**
+     * Removes as many units of detected garbage of a type as possible, up
+     * to a maximum (e.g. the remaining capacity of a harvester). When there
+     * is no more garbage after removing it, the building is no longer found.
+     *
+     * @param type garbage type to pick up.
+     * @param maxUnits maximum units to remove.
+     * @return units removed; 0 when the garbage is not found, is of another
+     * type, or maxUnits is not positive.
+     */
+    public int pickup(GarbageType type, int maxUnits) {
+        int available = getGarbageAmount(type);
+        int units = Math.min(available, maxUnits);
+        if (units <= 0) {
+            return 0;
+        }
+        garbage[type.ordinal()] = available - units;
+        if (units == available) {
+            found = false;
         }
+        garbageChanged();
+        return units;
     }
     
     /* ***************** Map visualization API ********************************/
@@ -109,13 +228,11 @@ public class BuildingCell extends Cell {
      */
     @Override
     public String getMapMessage() {
-        if (garbage.isEmpty()) {
+        GarbageType type = realType();
+        if (type == null) {
             return "";
         }
-        for (Map.Entry<GarbageType, Integer> entry: garbage.entrySet()) {
-            return entry.getKey().getShortString() + ":" + entry.getValue() + 
-                    ((found) ? "*" : "");
-        }
-        return "";
+        return type.getShortString() + ":" + garbage[type.ordinal()] + 
+                ((found) ? "*" : "");
     }
 }
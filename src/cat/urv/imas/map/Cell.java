@@ -80,6 +80,31 @@ public abstract class Cell implements java.io.Serializable {
         return this.type;
     }
 
+    /**
+     * Cells are identified by their position: there is a single cell for each
+     * position in the map, though it may be accessed through several views
+     * (see CityGrid).
+     *
+     * @param o object to compare with.
+     * @return true if it is a cell in the same position.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Cell)) {
+            return false;
+        }
+        Cell other = (Cell) o;
+        return row == other.row && col == other.col && type == other.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return row * 31 + col;
+    }
+
     /* ********************************************************************** */
     /**
      * Gets a string representation of the cell.
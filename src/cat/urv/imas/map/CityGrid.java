@@ -0,0 +1,501 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.map;
+
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.InfoAgent;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Flat backing store for the city map. Instead of a Cell object per cell,
+ * the whole map is kept in primitive arrays indexed by
+ * <code>row * cols + col</code>:
+ * <ul>
+ * <li>the cell type (one byte per cell),</li>
+ * <li>the garbage of buildings (type and found flag in one byte, plus the
+ * amount),</li>
+ * <li>the agent occupying a street cell, as an id into the agent table.</li>
+ * </ul>
+ * Recycling centers are few, so their prices are kept apart. That is 10
+ * bytes per cell (about 10 MB for a 1000x1000 city), plus the agents.
+ * 
+ * Cells are accessed through lightweight views (see cell()), so that agents
+ * use the same Cell API whatever the backing store is. Views are made on
+ * every access, so the code run every step uses the accessors by index
+ * instead.
+ */
+public class CityGrid implements java.io.Serializable {
+
+    /* Cell types, as stored. */
+    public static final byte STREET = 0;
+    public static final byte BUILDING = 1;
+    public static final byte RECYCLING_CENTER = 2;
+
+    /**
+     * Flag in the garbage byte telling that scouts found the garbage.
+     */
+    private static final int FOUND = 0x80;
+    /**
+     * Mask of the garbage byte to get the garbage type (ordinal + 1).
+     */
+    private static final int TYPE_MASK = 0x7F;
+
+    private final int rows;
+    private final int cols;
+    /**
+     * Cell type of every cell.
+     */
+    private final byte[] types;
+    /**
+     * For buildings: garbage type ordinal + 1 (0 when no garbage) and the
+     * FOUND flag.
+     */
+    private final byte[] garbage;
+    /**
+     * For buildings: amount of garbage.
+     */
+    private final int[] amounts;
+    /**
+     * For streets: id + 1 of the agent in the cell, 0 when empty.
+     */
+    private final int[] occupants;
+    /**
+     * Agents in the city, by id.
+     */
+    private InfoAgent[] agents = new InfoAgent[16];
+    /**
+     * Number of registered agents.
+     */
+    private int agentCount = 0;
+    /**
+     * Sorted cell indices of the recycling centers.
+     */
+    private int[] centers = new int[0];
+    /**
+     * Prices of every recycling center, in the same order as centers.
+     */
+    private int[][] prices = new int[0][];
+    /**
+     * Number of recycling centers; centers and prices may have room for more.
+     */
+    private int centerCount;
+    /**
+     * Index to notify when buildings get or lose their garbage, if any.
+     */
+    private transient GarbageIndex garbageIndex;
+
+    /**
+     * Builds a map full of streets.
+     *
+     * @param rows number of rows.
+     * @param cols number of columns.
+     */
+    public CityGrid(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        int size = rows * cols;
+        this.types = new byte[size];
+        this.garbage = new byte[size];
+        this.amounts = new int[size];
+        this.occupants = new int[size];
+    }
+
+    /**
+     * Copies a map of Cell objects into a new grid.
+     *
+     * @param map city map.
+     * @return the equivalent grid.
+     */
+    public static CityGrid fromCells(Cell[][] map) {
+        CityGrid grid = new CityGrid(map.length, map[0].length);
+        for (int r = 0; r < grid.rows; r++) {
+            for (int c = 0; c < grid.cols; c++) {
+                Cell cell = map[r][c];
+                int index = grid.index(r, c);
+                switch (cell.getCellType()) {
+                    case STREET:
+                        StreetCell street = (StreetCell) cell;
+                        if (street.isThereAnAgent()) {
+                            grid.setAgent(index, street.getAgent());
+                        }
+                        break;
+                    case BUILDING:
+                        BuildingCell building = (BuildingCell) cell;
+                        grid.setBuilding(index);
+                        if (building instanceof SettableBuildingCell) {
+                            SettableBuildingCell settable = (SettableBuildingCell) building;
+                            GarbageType type = settable.getRealGarbageType();
+                            if (type != null) {
+                                grid.setGarbage(index, type, settable.getRealGarbageAmount(type), building.isFound());
+                            }
+                        } else {
+                            GarbageType type = building.getGarbageType();
+                            if (type != null) {
+                                grid.setGarbage(index, type, building.getGarbageAmount(type), true);
+                            }
+                        }
+                        break;
+                    case RECYCLING_CENTER:
+                        grid.setRecyclingCenter(index, ((RecyclingCenterCell) cell).getPrices());
+                        break;
+                }
+            }
+        }
+        return grid;
+    }
+
+    /* ***************** Raw cell data ****************************************/
+
+    /**
+     * Number of bytes written by writeCells().
+     *
+     * @param rows number of rows.
+     * @param cols number of columns.
+     * @return size of the cell data.
+     */
+    public static long cellBytes(int rows, int cols) {
+        return (long) rows * cols * (2 + 4);
+    }
+
+    /**
+     * Writes the type and garbage of all cells at the buffer position: all
+     * type bytes, all garbage bytes and all garbage amounts, in the buffer
+     * byte order. Agents and recycling center prices are not included.
+     *
+     * @param buffer where to write.
+     */
+    public void writeCells(ByteBuffer buffer) {
+        buffer.put(types);
+        buffer.put(garbage);
+        buffer.asIntBuffer().put(amounts);
+        buffer.position(buffer.position() + 4 * amounts.length);
+    }
+
+    /**
+     * Reads the type and garbage of all cells from the buffer position, as
+     * written by writeCells(). Recycling centers still have to be given
+     * their prices (see setRecyclingCenter()). It is meant for new grids:
+     * no garbage index is notified.
+     *
+     * @param buffer where to read from.
+     */
+    public void readCells(ByteBuffer buffer) {
+        buffer.get(types);
+        buffer.get(garbage);
+        buffer.asIntBuffer().get(amounts);
+        buffer.position(buffer.position() + 4 * amounts.length);
+    }
+
+    /* ***************** Dimensions *******************************************/
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Gets the flat index of a cell.
+     *
+     * @param row row number (zero based).
+     * @param col column number (zero based).
+     * @return flat cell index.
+     */
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    /* ***************** Cell views *******************************************/
+
+    /**
+     * Gets a view of the given cell. Views are lightweight and share the
+     * state of this grid, so they can be created on demand.
+     *
+     * @param row row number (zero based).
+     * @param col column number (zero based).
+     * @return a Cell backed by this grid.
+     */
+    public Cell cell(int row, int col) {
+        int index = index(row, col);
+        switch (types[index]) {
+            case BUILDING:
+                return new GridBuildingCell(this, row, col);
+            case RECYCLING_CENTER:
+                return new RecyclingCenterCell(row, col, getPrices(index));
+            default:
+                return new GridStreetCell(this, row, col);
+        }
+    }
+
+    /**
+     * Builds a whole map of views, for the API that still needs it.
+     *
+     * @return the city map, backed by this grid.
+     */
+    public Cell[][] toCells() {
+        Cell[][] map = new Cell[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                map[r][c] = cell(r, c);
+            }
+        }
+        return map;
+    }
+
+    /* ***************** Cell types *******************************************/
+
+    /**
+     * Gets the type of a cell, as stored: STREET, BUILDING or
+     * RECYCLING_CENTER.
+     *
+     * @param index flat cell index.
+     * @return the cell type.
+     */
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public void setBuilding(int index) {
+        types[index] = BUILDING;
+    }
+
+    /**
+     * Sets a recycling center.
+     *
+     * @param index flat cell index.
+     * @param centerPrices prices of recycling plastic, glass and paper.
+     */
+    public void setRecyclingCenter(int index, int[] centerPrices) {
+        types[index] = RECYCLING_CENTER;
+        int position = Arrays.binarySearch(centers, 0, centerCount, index);
+        if (position >= 0) {
+            prices[position] = centerPrices;
+            return;
+        }
+        position = -position - 1;
+        if (centerCount == centers.length) {
+            // grow geometrically: maps are loaded in order, one center at a time
+            int capacity = Math.max(8, 2 * centerCount);
+            centers = Arrays.copyOf(centers, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+        }
+        System.arraycopy(centers, position, centers, position + 1, centerCount - position);
+        System.arraycopy(prices, position, prices, position + 1, centerCount - position);
+        centers[position] = index;
+        prices[position] = centerPrices;
+        centerCount++;
+    }
+
+    /**
+     * Gets the prices of a recycling center.
+     *
+     * @param index flat cell index.
+     * @return prices of recycling plastic, glass and paper; null if the cell
+     * is not a recycling center.
+     */
+    public int[] getPrices(int index) {
+        int position = Arrays.binarySearch(centers, 0, centerCount, index);
+        return (position < 0) ? null : prices[position];
+    }
+
+    /**
+     * Gets the cell indices of all recycling centers.
+     *
+     * @return sorted flat cell indices; do not modify.
+     */
+    public int[] getCenters() {
+        if (centers.length != centerCount) {
+            centers = Arrays.copyOf(centers, centerCount);
+            prices = Arrays.copyOf(prices, centerCount);
+        }
+        return centers;
+    }
+
+    /* ***************** Garbage **********************************************/
+
+    /**
+     * Gets the type of garbage of a building.
+     *
+     * @param index flat cell index.
+     * @return the garbage type, or null if there is no garbage.
+     */
+    public GarbageType getGarbageType(int index) {
+        int type = garbage[index] & TYPE_MASK;
+        return (type == 0) ? null : GarbageType.values()[type - 1];
+    }
+
+    public int getGarbageAmount(int index) {
+        return amounts[index];
+    }
+
+    public boolean isFound(int index) {
+        return (garbage[index] & FOUND) != 0;
+    }
+
+    /**
+     * Sets the garbage of a building. An amount of 0 empties it.
+     *
+     * @param index flat cell index.
+     * @param type garbage type.
+     * @param amount amount of garbage.
+     * @param found true if scouts already found it.
+     */
+    public void setGarbage(int index, GarbageType type, int amount, boolean found) {
+        if (amount <= 0 || type == null) {
+            garbage[index] = 0;
+            amounts[index] = 0;
+        } else {
+            garbage[index] = (byte) ((type.ordinal() + 1) | (found ? FOUND : 0));
+            amounts[index] = amount;
+        }
+        if (garbageIndex != null) {
+            garbageIndex.update(index / cols, index % cols, amounts[index] > 0);
+        }
+    }
+
+    /**
+     * Removes as many units of found garbage of a type from a building as
+     * possible, up to a maximum. The building is no longer found once empty.
+     *
+     * @param index flat cell index.
+     * @param type garbage type to pick up.
+     * @param maxUnits maximum units to remove.
+     * @return units removed.
+     */
+    public int pickup(int index, GarbageType type, int maxUnits) {
+        if (!isFound(index) || getGarbageType(index) != type) {
+            return 0;
+        }
+        int units = Math.min(amounts[index], maxUnits);
+        if (units <= 0) {
+            return 0;
+        }
+        setGarbage(index, type, amounts[index] - units, true);
+        return units;
+    }
+
+    /**
+     * Sets the index to notify when buildings get or lose their garbage, and
+     * registers on it all buildings, with or without garbage.
+     *
+     * @param index spatial index of buildings with garbage.
+     */
+    public void setGarbageIndex(GarbageIndex index) {
+        this.garbageIndex = index;
+        for (int i = 0; i < amounts.length; i++) {
+            if (types[i] == BUILDING) {
+                index.update(i / cols, i % cols, amounts[i] > 0);
+            }
+        }
+    }
+
+    /**
+     * Marks the garbage of the building as found, if there is any.
+     *
+     * @param index flat cell index.
+     * @return true if there is garbage in the building.
+     */
+    public boolean markFound(int index) {
+        if (amounts[index] > 0) {
+            garbage[index] |= FOUND;
+            return true;
+        }
+        return false;
+    }
+
+    /* ***************** Agents ***********************************************/
+
+    /**
+     * Gets the id of the agent in a street cell.
+     *
+     * @param index flat cell index.
+     * @return agent id, or -1 if the cell is empty.
+     */
+    public int getAgentId(int index) {
+        return occupants[index] - 1;
+    }
+
+    /**
+     * Gets the agent in a street cell.
+     *
+     * @param index flat cell index.
+     * @return the agent, or null if the cell is empty.
+     */
+    public InfoAgent getAgent(int index) {
+        int id = occupants[index] - 1;
+        return (id < 0) ? null : agents[id];
+    }
+
+    /**
+     * Gets an agent by its id.
+     *
+     * @param id agent id.
+     * @return the agent.
+     */
+    public InfoAgent getAgentById(int id) {
+        return agents[id];
+    }
+
+    public int getAgentCount() {
+        return agentCount;
+    }
+
+    /**
+     * Places an agent on a street cell, registering it if it is new. The id
+     * of a registered agent is kept by the agent (see InfoAgent.getGridId()),
+     * so an agent is meant to be placed on a single grid.
+     *
+     * @param index flat cell index.
+     * @param agent agent to place.
+     */
+    public void setAgent(int index, InfoAgent agent) {
+        int id = agent.getGridId();
+        if (id < 0 || id >= agentCount || agents[id] != agent) {
+            if (agentCount == agents.length) {
+                agents = Arrays.copyOf(agents, agentCount * 2);
+            }
+            id = agentCount++;
+            agents[id] = agent;
+            agent.setGridId(id);
+        }
+        occupants[index] = id + 1;
+    }
+
+    /**
+     * Empties a street cell.
+     *
+     * @param index flat cell index.
+     */
+    public void clearAgent(int index) {
+        occupants[index] = 0;
+    }
+
+    /**
+     * Moves the agent of a cell to another (empty) cell.
+     *
+     * @param from flat index of the cell with the agent.
+     * @param to flat index of the destination cell.
+     */
+    public void moveAgent(int from, int to) {
+        occupants[to] = occupants[from];
+        occupants[from] = 0;
+    }
+}
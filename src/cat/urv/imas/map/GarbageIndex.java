@@ -0,0 +1,207 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.map;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Spatial index of the buildings that currently hold garbage. For every cell
+ * it keeps a byte mask telling which of its 8 neighbours is a building with
+ * garbage, so that sensing around a position costs as much as the number of
+ * surrounding buildings with garbage.
+ * 
+ * Buildings notify this index whenever they get or lose all their garbage,
+ * and all of them are notified when the index is set up. This way, it also
+ * keeps the pool of free buildings (those without garbage), so that new
+ * garbage can be placed on a random free building in constant time.
+ */
+public class GarbageIndex {
+
+    /**
+     * Row offsets of the 8 neighbours, by direction.
+     */
+    private static final int[] DR = {-1, -1, -1, 0, 0, 1, 1, 1};
+    /**
+     * Column offsets of the 8 neighbours, by direction.
+     */
+    private static final int[] DC = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final int rows;
+    private final int cols;
+    /**
+     * For every cell, bit k is set when the neighbour at direction k is a
+     * building with garbage.
+     */
+    private final byte[] neighbours;
+    /**
+     * Buildings with garbage, by flat cell index.
+     */
+    private final BitSet withGarbage;
+    /**
+     * Position + 1 of every building in the free array, 0 when the cell is
+     * not a free building.
+     */
+    private final int[] freeSlot;
+    /**
+     * Flat cell indices of the free buildings, in no particular order.
+     */
+    private int[] free = new int[64];
+    /**
+     * Number of free buildings.
+     */
+    private int freeCount = 0;
+
+    /**
+     * Builds an empty index.
+     *
+     * @param rows number of rows of the map.
+     * @param cols number of columns of the map.
+     */
+    public GarbageIndex(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.neighbours = new byte[rows * cols];
+        this.withGarbage = new BitSet(rows * cols);
+        this.freeSlot = new int[rows * cols];
+    }
+
+    /**
+     * Updates the state of a building.
+     *
+     * @param row row of the building.
+     * @param col column of the building.
+     * @param hasGarbage true if the building holds some garbage.
+     */
+    public void update(int row, int col, boolean hasGarbage) {
+        int index = row * cols + col;
+        setFree(index, !hasGarbage);
+        if (withGarbage.get(index) == hasGarbage) {
+            return;
+        }
+        withGarbage.set(index, hasGarbage);
+        for (int k = 0; k < 8; k++) {
+            int r = row - DR[k];
+            int c = col - DC[k];
+            if (r >= 0 && r < rows && c >= 0 && c < cols) {
+                int n = r * cols + c;
+                if (hasGarbage) {
+                    neighbours[n] |= 1 << k;
+                } else {
+                    neighbours[n] &= ~(1 << k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds or removes a building from the pool of free buildings.
+     *
+     * @param index flat cell index.
+     * @param isFree true if the building has no garbage.
+     */
+    private void setFree(int index, boolean isFree) {
+        int slot = freeSlot[index];
+        if (isFree && slot == 0) {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = index;
+            freeSlot[index] = freeCount;
+        } else if (!isFree && slot != 0) {
+            // move the last one into the hole
+            int last = free[--freeCount];
+            free[slot - 1] = last;
+            freeSlot[last] = slot;
+            freeSlot[index] = 0;
+        }
+    }
+
+    /**
+     * Number of buildings without garbage.
+     *
+     * @return number of free buildings.
+     */
+    public int freeCount() {
+        return freeCount;
+    }
+
+    /**
+     * Gets a building without garbage. Positions change whenever a building
+     * gets or loses its garbage.
+     *
+     * @param i position among the free buildings, from 0 to freeCount() - 1.
+     * @return flat cell index of the building.
+     */
+    public int getFree(int i) {
+        return free[i];
+    }
+
+    /**
+     * Tells whether the given building holds garbage.
+     *
+     * @param index flat cell index.
+     * @return true if it holds garbage.
+     */
+    public boolean hasGarbage(int index) {
+        return withGarbage.get(index);
+    }
+
+    /**
+     * Number of buildings holding garbage.
+     *
+     * @return number of buildings.
+     */
+    public int count() {
+        return withGarbage.cardinality();
+    }
+
+    /**
+     * Gets which neighbours of a position are buildings with garbage.
+     * Iterate its set bits and use rowOffset()/colOffset() to get the
+     * position of every building.
+     *
+     * @param row row number (zero based).
+     * @param col column number (zero based).
+     * @return mask where bit k is set if the neighbour at direction k is a
+     * building with garbage.
+     */
+    public int neighbourMask(int row, int col) {
+        return neighbours[row * cols + col] & 0xFF;
+    }
+
+    /**
+     * Row offset of a direction.
+     *
+     * @param direction direction, from 0 to 7.
+     * @return row offset, from -1 to 1.
+     */
+    public static int rowOffset(int direction) {
+        return DR[direction];
+    }
+
+    /**
+     * Column offset of a direction.
+     *
+     * @param direction direction, from 0 to 7.
+     * @return column offset, from -1 to 1.
+     */
+    public static int colOffset(int direction) {
+        return DC[direction];
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.map;
+
+import cat.urv.imas.onthology.GarbageType;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Building cell view whose garbage is kept in a CityGrid.
+ */
+class GridBuildingCell extends SettableBuildingCell {
+
+    /**
+     * Grid backing this cell.
+     */
+    private final CityGrid grid;
+    /**
+     * Flat index of this cell in the grid.
+     */
+    private final int index;
+
+    GridBuildingCell(CityGrid grid, int row, int col) {
+        super(row, col, null);
+        this.grid = grid;
+        this.index = grid.index(row, col);
+    }
+
+    @Override
+    protected Map<GarbageType, Integer> content() {
+        GarbageType type = grid.getGarbageType(index);
+        if (type == null) {
+            return empty;
+        }
+        return Collections.singletonMap(type, grid.getGarbageAmount(index));
+    }
+
+    @Override
+    public Map<GarbageType, Integer> detectGarbage() {
+        grid.markFound(index);
+        return content();
+    }
+
+    @Override
+    protected GarbageType realType() {
+        return grid.getGarbageType(index);
+    }
+
+    @Override
+    public Map<GarbageType, Integer> getGarbage() {
+        return (grid.isFound(index)) ? content() : empty;
+    }
+
+    @Override
+    public GarbageType getGarbageType() {
+        return (grid.isFound(index)) ? grid.getGarbageType(index) : null;
+    }
+
+    @Override
+    public int getGarbageAmount(GarbageType type) {
+        return (grid.isFound(index) && grid.getGarbageType(index) == type) ? grid.getGarbageAmount(index) : 0;
+    }
+
+    @Override
+    public void setGarbageIndex(GarbageIndex index) {
+        // the grid notifies the index of all its buildings
+    }
+
+    @Override
+    public boolean isFound() {
+        return grid.isFound(index);
+    }
+
+    @Override
+    public int pickup(GarbageType type, int maxUnits) {
+        return grid.pickup(index, type, maxUnits);
+    }
+
+    @Override
+    public int getRealGarbageAmount(GarbageType type) {
+        return (grid.getGarbageType(index) == type) ? grid.getGarbageAmount(index) : 0;
+    }
+
+    @Override
+    public void setGarbage(GarbageType type, int amount) {
+        if (grid.getGarbageAmount(index) > 0) {
+            throw new IllegalStateException("This building (" + this.getRow() + "," + this.getCol() + ") has garbage yet: " + this.getMapMessage());
+        }
+        grid.setGarbage(index, type, amount, false);
+    }
+
+    @Override
+    public void updateGarbage(GarbageType type, int amount) {
+        grid.setGarbage(index, type, amount, amount > 0 && grid.isFound(index));
+    }
+
+    @Override
+    public String getMapMessage() {
+        GarbageType type = grid.getGarbageType(index);
+        if (type == null) {
+            return "";
+        }
+        return type.getShortString() + ":" + grid.getGarbageAmount(index)
+                + ((grid.isFound(index)) ? "*" : "");
+    }
+}
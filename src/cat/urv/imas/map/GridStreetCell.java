@@ -0,0 +1,85 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.map;
+
+import cat.urv.imas.onthology.InfoAgent;
+
+/**
+ * Street cell view whose agent is kept in a CityGrid.
+ */
+class GridStreetCell extends StreetCell {
+
+    /**
+     * Grid backing this cell.
+     */
+    private final CityGrid grid;
+    /**
+     * Flat index of this cell in the grid.
+     */
+    private final int index;
+
+    GridStreetCell(CityGrid grid, int row, int col) {
+        super(row, col);
+        this.grid = grid;
+        this.index = grid.index(row, col);
+    }
+
+    @Override
+    public boolean isThereAnAgent() {
+        return grid.getAgentId(index) >= 0;
+    }
+
+    @Override
+    public void addAgent(InfoAgent newAgent) throws Exception {
+        if (this.isThereAnAgent()) {
+            throw new Exception("Full STREET cell");
+        }
+        if (newAgent == null) {
+            throw new Exception("No valid agent to be set (null)");
+        }
+        grid.setAgent(index, newAgent);
+    }
+
+    @Override
+    public void removeAgent(InfoAgent oldInfoAgent) throws Exception {
+        InfoAgent agent = grid.getAgent(index);
+        if (agent == null) {
+            throw new Exception("There is no agent in cell");
+        }
+        if (oldInfoAgent == null) {
+            throw new Exception("No valid agent to be remove (null).");
+        } else if (!oldInfoAgent.equals(agent)) {
+            throw new Exception("No matching agent to be remove.");
+        }
+        grid.clearAgent(index);
+    }
+
+    @Override
+    public void setAgent(InfoAgent agent) {
+        if (agent == null) {
+            grid.clearAgent(index);
+        } else {
+            grid.setAgent(index, agent);
+        }
+    }
+
+    @Override
+    public InfoAgent getAgent() {
+        return grid.getAgent(index);
+    }
+}
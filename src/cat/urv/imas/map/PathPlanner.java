@@ -0,0 +1,656 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.map;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A* shortest paths over the streets, respecting that a street cell holds a
+ * single agent.
+ * 
+ * Paths are arrays of flat cell indices, from the origin to the destination,
+ * both included. They are shared with the cache and must not be modified.
+ * 
+ * plan(from, to) avoids the currently occupied cells. Its results are cached
+ * by (from, to); a cached path is checked against the occupancy when it is
+ * looked up, and dropped if any of its cells became occupied. The rest of a
+ * path, from its second cell, is cached as well, so that an agent following
+ * it step by step does not search again. A cached path
+ * longer than the street distance (a detour around occupied cells) is also
+ * dropped once any cell was freed after it was found, since a shorter one
+ * may exist then. Searches give up after expanding SEARCH_FACTOR times the
+ * estimated distance (plus SEARCH_SLACK) streets, so that a destination
+ * walled in by agents does not cost a search of the whole city.
+ * 
+ * planReserved(from, to, step) is a space-time search (moving or waiting one
+ * step at a time) over a table of cells reserved by the paths of the other
+ * agents, so that many harvesters can plan in the same step without
+ * colliding. It searches up to WINDOW steps ahead and returns the part of
+ * the path found so far when the destination is farther.
+ */
+public class PathPlanner {
+
+    /**
+     * Number of steps ahead explored by planReserved.
+     */
+    public static final int WINDOW = 16;
+    /**
+     * Number of steps kept in the reservation table.
+     */
+    private static final int HORIZON = 2 * WINDOW;
+    /**
+     * Maximum number of cached paths.
+     */
+    private static final int CACHE_SIZE = 4096;
+    /**
+     * Streets expanded by plan(), at most, per unit of estimated distance.
+     */
+    private static final int SEARCH_FACTOR = 4;
+    /**
+     * Streets expanded by plan(), at most, besides SEARCH_FACTOR.
+     */
+    private static final int SEARCH_SLACK = 256;
+    /**
+     * Space-time nodes explored by planReserved(), at most.
+     */
+    private static final int MAX_NODES = 1024;
+
+    /**
+     * Row offsets of the 4 moves.
+     */
+    private static final int[] MOVE_DR = {-1, 0, 0, 1};
+    /**
+     * Column offsets of the 4 moves.
+     */
+    private static final int[] MOVE_DC = {0, -1, 1, 0};
+
+    private final RoutingTable routing;
+    private final int rows;
+    private final int cols;
+    /**
+     * Cells currently holding an agent.
+     */
+    private final BitSet occupied;
+    /**
+     * Reserved cells, by step modulo HORIZON.
+     */
+    private final BitSet[] reserved;
+    /**
+     * First step kept in the reservation table.
+     */
+    private int firstStep;
+    /**
+     * Cached paths, by (from, to).
+     */
+    private final Map<Long, CachedPath> cache;
+    /**
+     * Number of times an occupied cell was freed.
+     */
+    private long freed = 0;
+
+    /* A* state, by street id. Entries are valid when their stamp is current. */
+    private final int[] cost;
+    private final int[] parent;
+    private final int[] seen;
+    private final int[] closed;
+    private int stamp;
+    /**
+     * Whether the last search had to skip an occupied cell.
+     */
+    private boolean blocked;
+
+    /* Space-time search nodes. */
+    private int[] nodeCell = new int[256];
+    private int[] nodeTime = new int[256];
+    private int[] nodeParent = new int[256];
+    private int nodeCount;
+    private final LongSet visited = new LongSet();
+
+    private final Heap heap = new Heap();
+
+    /**
+     * Builds a planner without occupied cells.
+     *
+     * @param routing street distances of the city.
+     */
+    public PathPlanner(RoutingTable routing) {
+        this.routing = routing;
+        this.rows = routing.getRows();
+        this.cols = routing.getCols();
+        this.occupied = new BitSet(rows * cols);
+        this.reserved = new BitSet[HORIZON];
+        for (int i = 0; i < HORIZON; i++) {
+            reserved[i] = new BitSet(rows * cols);
+        }
+        this.cache = new LinkedHashMap<Long, CachedPath>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedPath> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+        int streets = routing.getStreetCount();
+        this.cost = new int[streets];
+        this.parent = new int[streets];
+        this.seen = new int[streets];
+        this.closed = new int[streets];
+    }
+
+    /* ***************** Occupancy ********************************************/
+
+    /**
+     * Updates the occupancy of a street cell. Cached paths through it, and
+     * cached detours when it is freed, are dropped when they are looked up.
+     *
+     * @param cell flat cell index.
+     * @param isOccupied true if an agent is on it.
+     */
+    public void setOccupied(int cell, boolean isOccupied) {
+        if (!isOccupied && occupied.get(cell)) {
+            freed++;
+        }
+        occupied.set(cell, isOccupied);
+    }
+
+    /**
+     * Tells whether a cell holds an agent.
+     *
+     * @param cell flat cell index.
+     * @return true if it is occupied.
+     */
+    public boolean isOccupied(int cell) {
+        return occupied.get(cell);
+    }
+
+    /**
+     * Drops all cached paths.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    /* ***************** Single agent paths ***********************************/
+
+    /**
+     * Gets a shortest path avoiding occupied cells.
+     *
+     * @param from flat index of the origin street.
+     * @param to flat index of the destination street.
+     * @return the path, or null if there is none.
+     */
+    public int[] plan(int from, int to) {
+        Long key = ((long) from << 32) | to;
+        CachedPath cached = cache.get(key);
+        if (cached != null && !((cached.freed < 0 || cached.freed == freed) && isFree(cached.path))) {
+            cache.remove(key);
+            cached = null;
+        }
+        if (cached == null) {
+            int[] path = search(from, to);
+            if (path == null) {
+                return null;
+            }
+            // without skipping occupied cells, it is the shortest path anyway
+            cached = new CachedPath(path, blocked ? freed : -1);
+            cache.put(key, cached);
+        }
+        int[] path = cached.path;
+        if (path.length > 2) {
+            Long next = ((long) path[1] << 32) | to;
+            if (!cache.containsKey(next)) {
+                cache.put(next, new CachedPath(Arrays.copyOfRange(path, 1, path.length), cached.freed));
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Tells whether an agent can follow a path from a given step without
+     * running into the reserved cells, within the reservation window.
+     *
+     * @param path the path.
+     * @param start step at which the agent is on the first cell.
+     * @return true if no cell is reserved when the agent gets there, and
+     * the first move is not a swap.
+     */
+    public boolean isClear(int[] path, int start) {
+        int end = Math.min(path.length, WINDOW + 1);
+        for (int i = 1; i < end; i++) {
+            if (isReserved(path[i], start + i)) {
+                return false;
+            }
+        }
+        return path.length < 2
+                || !(isReserved(path[1], start) && isReserved(path[0], start + 1));
+    }
+
+    /**
+     * Tells whether none of the cells of a path, but the origin, is occupied.
+     *
+     * @param path the path.
+     * @return true if it can be followed.
+     */
+    private boolean isFree(int[] path) {
+        for (int i = 1; i < path.length; i++) {
+            if (occupied.get(path[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A* search from one street to another.
+     *
+     * @param from flat index of the origin street.
+     * @param to flat index of the destination street.
+     * @return the path, or null if there is none or it was not found within
+     * the search budget.
+     */
+    private int[] search(int from, int to) {
+        blocked = false;
+        if (!routing.isStreet(from) || !routing.isStreet(to)) {
+            return null;
+        }
+        if (from == to) {
+            return new int[]{from};
+        }
+        if (occupied.get(to) || estimate(from, to) == RoutingTable.UNREACHABLE) {
+            return null;
+        }
+        stamp++;
+        heap.clear();
+        int source = routing.getStreetId(from);
+        cost[source] = 0;
+        parent[source] = -1;
+        seen[source] = stamp;
+        heap.push(source, estimate(from, to));
+        int budget = SEARCH_FACTOR * estimate(from, to) + SEARCH_SLACK;
+        while (!heap.isEmpty()) {
+            int street = heap.pop();
+            if (closed[street] == stamp) {
+                continue;
+            }
+            closed[street] = stamp;
+            if (--budget < 0) {
+                return null;
+            }
+            int cell = routing.getStreetCell(street);
+            if (cell == to) {
+                return rebuild(street);
+            }
+            int row = cell / cols;
+            int col = cell % cols;
+            int next = cost[street] + 1;
+            for (int k = 0; k < 4; k++) {
+                int r = row + MOVE_DR[k];
+                int c = col + MOVE_DC[k];
+                if (r < 0 || r >= rows || c < 0 || c >= cols) {
+                    continue;
+                }
+                int neighbourCell = r * cols + c;
+                int neighbour = routing.getStreetId(neighbourCell);
+                if (neighbour < 0 || closed[neighbour] == stamp) {
+                    continue;
+                }
+                if (occupied.get(neighbourCell)) {
+                    blocked = true;
+                    continue;
+                }
+                if (seen[neighbour] != stamp || next < cost[neighbour]) {
+                    seen[neighbour] = stamp;
+                    cost[neighbour] = next;
+                    parent[neighbour] = street;
+                    heap.push(neighbour, next + estimate(neighbourCell, to));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the path found by search().
+     *
+     * @param street street id of the destination.
+     * @return the path.
+     */
+    private int[] rebuild(int street) {
+        int[] path = new int[cost[street] + 1];
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = routing.getStreetCell(street);
+            street = parent[street];
+        }
+        return path;
+    }
+
+    /**
+     * Lower bound of the distance between two streets, by table lookups
+     * (see RoutingTable.lowerBound).
+     *
+     * @param from flat cell index.
+     * @param to flat cell index.
+     * @return estimated number of moves, or RoutingTable.UNREACHABLE.
+     */
+    private int estimate(int from, int to) {
+        return routing.lowerBound(from, to);
+    }
+
+    /* ***************** Reservations *****************************************/
+
+    /**
+     * Drops the reservations of the steps before the given one. To be called
+     * once per simulation step.
+     *
+     * @param step current simulation step.
+     */
+    public void advanceTo(int step) {
+        if (step - firstStep >= HORIZON) {
+            clearReservations();
+        } else {
+            for (int t = firstStep; t < step; t++) {
+                reserved[t % HORIZON].clear();
+            }
+        }
+        firstStep = step;
+    }
+
+    /**
+     * Drops all reservations.
+     */
+    public void clearReservations() {
+        for (BitSet slot : reserved) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * Tells whether a cell is reserved at a given step.
+     *
+     * @param cell flat cell index.
+     * @param step simulation step.
+     * @return true if some agent will be on it.
+     */
+    public boolean isReserved(int cell, int step) {
+        return step >= firstStep && step < firstStep + HORIZON
+                && reserved[step % HORIZON].get(cell);
+    }
+
+    /**
+     * Reserves the cells of a path, the i-th cell at step start + i. The last
+     * cell stays reserved while the reservation table reaches.
+     *
+     * @param path the path.
+     * @param start step at which the agent is on the first cell.
+     */
+    public void reserve(int[] path, int start) {
+        mark(path, start, true);
+    }
+
+    /**
+     * Releases the cells reserved by reserve(path, start).
+     *
+     * @param path the path.
+     * @param start step at which the agent was on the first cell.
+     */
+    public void release(int[] path, int start) {
+        mark(path, start, false);
+    }
+
+    private void mark(int[] path, int start, boolean value) {
+        int end = firstStep + HORIZON;
+        for (int t = Math.max(start, firstStep); t < end; t++) {
+            int i = Math.min(t - start, path.length - 1);
+            reserved[t % HORIZON].set(path[i], value);
+        }
+    }
+
+    /**
+     * Gets a path avoiding the reserved cells, with waits where needed. The
+     * i-th cell of the path is where the agent is at step + i. Occupied
+     * cells are only avoided for the first move: later, their agents are
+     * expected to have reserved their paths. The origin must not be reserved
+     * by the agent itself (see release).
+     *
+     * @param from flat index of the origin street.
+     * @param to flat index of the destination street.
+     * @param step current simulation step.
+     * @return the path up to the destination, or up to the closest cell to it
+     * found within WINDOW steps (and MAX_NODES nodes); null if the agent
+     * cannot even wait.
+     */
+    public int[] planReserved(int from, int to, int step) {
+        if (!routing.isStreet(from) || !routing.isStreet(to)) {
+            return null;
+        }
+        nodeCount = 0;
+        heap.clear();
+        visited.clear();
+        int root = addNode(from, 0, -1);
+        heap.push(root, estimate(from, to));
+        int best = root;
+        int bestEstimate = estimate(from, to);
+        while (!heap.isEmpty()) {
+            int node = heap.pop();
+            int cell = nodeCell[node];
+            int time = nodeTime[node];
+            if (cell == to) {
+                return rebuildTimed(node);
+            }
+            int left = estimate(cell, to);
+            if (left < bestEstimate || (left == bestEstimate && time < nodeTime[best])) {
+                best = node;
+                bestEstimate = left;
+            }
+            if (time == WINDOW) {
+                // nodes come out by estimated total cost, so this is the best
+                // way found towards the destination
+                return rebuildTimed(node);
+            }
+            expand(node, cell, cell, from, to, step);
+            int row = cell / cols;
+            int col = cell % cols;
+            for (int k = 0; k < 4; k++) {
+                int r = row + MOVE_DR[k];
+                int c = col + MOVE_DC[k];
+                if (r >= 0 && r < rows && c >= 0 && c < cols && routing.isStreet(r * cols + c)) {
+                    expand(node, cell, r * cols + c, from, to, step);
+                }
+            }
+        }
+        return (best == root) ? null : rebuildTimed(best);
+    }
+
+    /**
+     * Adds the move (or wait) from a node to a cell, if it is allowed.
+     */
+    private void expand(int node, int cell, int next, int from, int to, int step) {
+        int time = nodeTime[node] + 1;
+        int t = step + time;
+        if (isReserved(next, t)) {
+            return;
+        }
+        // two agents cannot swap their cells
+        if (next != cell && isReserved(next, t - 1) && isReserved(cell, t)) {
+            return;
+        }
+        if (time == 1 && next != from && occupied.get(next)) {
+            return;
+        }
+        if (nodeCount >= MAX_NODES || !visited.add((long) time * rows * cols + next)) {
+            return;
+        }
+        int child = addNode(next, time, node);
+        int left = estimate(next, to);
+        if (left != RoutingTable.UNREACHABLE) {
+            heap.push(child, time + left);
+        }
+    }
+
+    private int addNode(int cell, int time, int parentNode) {
+        if (nodeCount == nodeCell.length) {
+            nodeCell = Arrays.copyOf(nodeCell, nodeCount * 2);
+            nodeTime = Arrays.copyOf(nodeTime, nodeCount * 2);
+            nodeParent = Arrays.copyOf(nodeParent, nodeCount * 2);
+        }
+        nodeCell[nodeCount] = cell;
+        nodeTime[nodeCount] = time;
+        nodeParent[nodeCount] = parentNode;
+        return nodeCount++;
+    }
+
+    private int[] rebuildTimed(int node) {
+        int[] path = new int[nodeTime[node] + 1];
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = nodeCell[node];
+            node = nodeParent[node];
+        }
+        return path;
+    }
+
+    /* ***************** Helpers **********************************************/
+
+    /**
+     * A path of the cache.
+     */
+    private static class CachedPath {
+
+        /**
+         * Cells of the path.
+         */
+        final int[] path;
+        /**
+         * Value of the freed counter when a detour was found; -1 for
+         * shortest paths, which stay valid when cells are freed.
+         */
+        final long freed;
+
+        CachedPath(int[] path, long freed) {
+            this.path = path;
+            this.freed = freed;
+        }
+    }
+
+    /**
+     * Binary min-heap of ints by priority.
+     */
+    private static class Heap {
+
+        private int[] values = new int[256];
+        private int[] priorities = new int[256];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(int value, int priority) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                priorities = Arrays.copyOf(priorities, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int up = (i - 1) >> 1;
+                if (priorities[up] <= priority) {
+                    break;
+                }
+                values[i] = values[up];
+                priorities[i] = priorities[up];
+                i = up;
+            }
+            values[i] = value;
+            priorities[i] = priority;
+        }
+
+        int pop() {
+            int result = values[0];
+            int value = values[--size];
+            int priority = priorities[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && priorities[child + 1] < priorities[child]) {
+                    child++;
+                }
+                if (priorities[child] >= priority) {
+                    break;
+                }
+                values[i] = values[child];
+                priorities[i] = priorities[child];
+                i = child;
+            }
+            values[i] = value;
+            priorities[i] = priority;
+            return result;
+        }
+    }
+
+    /**
+     * Open addressing set of non negative longs.
+     */
+    private static class LongSet {
+
+        private long[] keys = new long[1024];
+        private int size;
+
+        LongSet() {
+            Arrays.fill(keys, -1);
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(keys, -1);
+                size = 0;
+            }
+        }
+
+        boolean add(long key) {
+            if (2 * (size + 1) > keys.length) {
+                long[] old = keys;
+                keys = new long[old.length * 2];
+                Arrays.fill(keys, -1);
+                size = 0;
+                for (long k : old) {
+                    if (k >= 0) {
+                        add(k);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int i = (int) (key ^ (key >>> 29)) * 0x9E3779B9 & mask;
+            while (keys[i] >= 0) {
+                if (keys[i] == key) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            size++;
+            return true;
+        }
+    }
+}
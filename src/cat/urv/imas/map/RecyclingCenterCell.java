@@ -18,6 +18,7 @@
 package cat.urv.imas.map;
 
 import cat.urv.imas.gui.CellVisualizer;
+import cat.urv.imas.onthology.GarbageType;
 
 /**
  * Cell that represents a recycling center.
@@ -41,6 +42,42 @@ public class RecyclingCenterCell extends Cell {
         this.prices = prices;
     }
 
+    /**
+     * Gets the recycling prices.
+     *
+     * @return prices of recycling plastic, glass and paper, respectively.
+     */
+    public int[] getPrices() {
+        return prices;
+    }
+
+    /**
+     * Gets the price of recycling the given type of garbage.
+     *
+     * @param type type of garbage.
+     * @return coins paid per unit; 0 if it is not recycled here.
+     */
+    public int getPrice(GarbageType type) {
+        return prices[priceIndex(type)];
+    }
+
+    /**
+     * Position of the given type of garbage in the array of prices.
+     *
+     * @param type type of garbage.
+     * @return index in the prices array.
+     */
+    public static int priceIndex(GarbageType type) {
+        switch (type) {
+            case PLASTIC:
+                return 0;
+            case GLASS:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
     /* ***************** Map visualization API ********************************/
     @Override
     public void draw(CellVisualizer visual) {
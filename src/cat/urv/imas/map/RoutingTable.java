@@ -0,0 +1,714 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.map;
+
+import cat.urv.imas.onthology.GarbageType;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed street distances for harvester routing. Agents move between
+ * orthogonally adjacent street cells; a building or a recycling center is
+ * reached from any street cell around it (its frontage).
+ * 
+ * At construction it computes, by breadth-first search over the street graph:
+ * <ul>
+ * <li>the distance from every street to every recycling center, when there
+ * are at most MAX_CENTER_FIELDS centers (otherwise, it is computed on
+ * demand),</li>
+ * <li>for every type of garbage, the distance to, and the nearest, recycling
+ * center accepting it,</li>
+ * <li>the all-pairs distance between streets, when there are at most
+ * MAX_ALL_PAIRS_STREETS streets. With more streets, the connected component
+ * of every street and the distance from LANDMARKS streets spread over the
+ * map to every street, which bound the distance between any two streets
+ * (see lowerBound()).</li>
+ * </ul>
+ * So the trip distances used to bid for garbage (see tripDistance()) are
+ * table lookups whatever the size of the map. Exact distances on large maps
+ * and distances to centers beyond MAX_CENTER_FIELDS are computed on demand,
+ * keeping the most recently used fields within CACHE_BYTES.
+ * 
+ * All distances are in number of moves. Lookups can be done from several
+ * threads at a time.
+ * 
+ * It is serializable, so that it can be given to agents started in another
+ * JVM, but it is not small: 5 bytes per cell, 4 bytes per street for each
+ * recycling center and twice for each garbage type, and either 2 bytes per
+ * pair of streets (up to 8 MB) or 36 bytes per street for the components
+ * and landmarks. The cache of distance fields is not sent.
+ */
+public class RoutingTable implements java.io.Serializable {
+
+    /**
+     * Distance of unreachable destinations.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    /**
+     * Maximum number of streets for which the all-pairs table is built
+     * (2 bytes per pair).
+     */
+    public static final int MAX_ALL_PAIRS_STREETS = 2048;
+    /**
+     * Maximum number of recycling centers whose distance fields are built in
+     * advance (4 bytes per street and center).
+     */
+    public static final int MAX_CENTER_FIELDS = 16;
+    /**
+     * Number of landmarks of maps without the all-pairs table (2 bytes per
+     * street and landmark).
+     */
+    public static final int LANDMARKS = 16;
+    /**
+     * Maximum size of the distance fields computed on demand and kept (4
+     * bytes per street and field). One field is kept at least.
+     */
+    public static final long CACHE_BYTES = 16L << 20;
+    /**
+     * Unreachable value in the all-pairs table.
+     */
+    private static final short NO_PATH = -1;
+    /**
+     * Unreachable (or too far) value in the landmark tables.
+     */
+    private static final char FAR = Character.MAX_VALUE;
+
+    /**
+     * Row offsets of the 4 moves.
+     */
+    private static final int[] MOVE_DR = {-1, 0, 0, 1};
+    /**
+     * Column offsets of the 4 moves.
+     */
+    private static final int[] MOVE_DC = {0, -1, 1, 0};
+
+    private final int rows;
+    private final int cols;
+    /**
+     * Cell type of every cell (see CityGrid constants).
+     */
+    private final byte[] types;
+    /**
+     * Street id of every cell, or -1 if it is not a street.
+     */
+    private final int[] streetIds;
+    /**
+     * Cell index of every street, by street id.
+     */
+    private final int[] streets;
+    /**
+     * Cell indices of the recycling centers.
+     */
+    private final int[] centers;
+    /**
+     * Distance from every street to every recycling center, by center number
+     * and street id; null when fields are computed on demand.
+     */
+    private final int[][] centerDistance;
+    /**
+     * Distance from every street to the nearest recycling center accepting a
+     * type of garbage, by garbage type ordinal and street id.
+     */
+    private final int[][] typeDistance;
+    /**
+     * Nearest recycling center (cell index) accepting a type of garbage, by
+     * garbage type ordinal and street id; -1 if none is reachable.
+     */
+    private final int[][] typeNearest;
+    /**
+     * All-pairs distances, by (from street id * streets + to street id), or
+     * null for large maps.
+     */
+    private final short[] allPairs;
+    /**
+     * Connected component of every street id, or null when the all-pairs
+     * table is built.
+     */
+    private final int[] components;
+    /**
+     * Distance from every landmark to every street id (FAR if unreachable or
+     * too far), by landmark number; null when the all-pairs table is built.
+     */
+    private final char[][] landmarkDistance;
+    /**
+     * Distance fields computed on demand, by source street id, or by
+     * -(center number + 1) for recycling centers.
+     */
+    private transient Map<Integer, int[]> fields;
+    /**
+     * Maximum number of distance fields kept (see CACHE_BYTES).
+     */
+    private final long cachedFields;
+    /**
+     * Reused queue for the searches.
+     */
+    private transient int[] queue;
+
+    /**
+     * Builds the routing table.
+     *
+     * @param rows number of rows.
+     * @param cols number of columns.
+     * @param types type of every cell, by flat index (see CityGrid constants).
+     * @param centers cell indices of the recycling centers.
+     * @param prices prices of every recycling center, in the same order.
+     */
+    public RoutingTable(int rows, int cols, byte[] types, int[] centers, int[][] prices) {
+        this.rows = rows;
+        this.cols = cols;
+        this.types = types;
+        this.centers = centers;
+        this.streetIds = new int[types.length];
+        int count = 0;
+        for (int i = 0; i < types.length; i++) {
+            streetIds[i] = (types[i] == CityGrid.STREET) ? count++ : -1;
+        }
+        this.streets = new int[count];
+        for (int i = 0; i < types.length; i++) {
+            if (streetIds[i] >= 0) {
+                streets[streetIds[i]] = i;
+            }
+        }
+        this.queue = new int[count];
+        this.cachedFields = Math.max(1, CACHE_BYTES / (4L * Math.max(1, count)));
+
+        if (centers.length <= MAX_CENTER_FIELDS) {
+            centerDistance = new int[centers.length][];
+            for (int c = 0; c < centers.length; c++) {
+                centerDistance[c] = search(frontage(centers[c]), null, new int[count], null);
+            }
+        } else {
+            centerDistance = null;
+        }
+
+        // a single search per type, from the frontage of all the centers
+        // accepting it, labelling every street with the center it comes from
+        GarbageType[] garbageTypes = GarbageType.values();
+        typeDistance = new int[garbageTypes.length][];
+        typeNearest = new int[garbageTypes.length][];
+        for (GarbageType type : garbageTypes) {
+            int priceIndex = RecyclingCenterCell.priceIndex(type);
+            int[] sources = new int[16];
+            int[] labels = new int[16];
+            int length = 0;
+            for (int c = 0; c < centers.length; c++) {
+                if (prices[c][priceIndex] <= 0) {
+                    continue;
+                }
+                int[] frontage = frontage(centers[c]);
+                if (length + frontage.length > sources.length) {
+                    int capacity = Math.max(2 * sources.length, length + frontage.length);
+                    sources = Arrays.copyOf(sources, capacity);
+                    labels = Arrays.copyOf(labels, capacity);
+                }
+                System.arraycopy(frontage, 0, sources, length, frontage.length);
+                Arrays.fill(labels, length, length + frontage.length, centers[c]);
+                length += frontage.length;
+            }
+            sources = Arrays.copyOf(sources, length);
+            labels = Arrays.copyOf(labels, length);
+            int[] nearest = new int[count];
+            typeDistance[type.ordinal()] = search(sources, labels, new int[count], nearest);
+            typeNearest[type.ordinal()] = nearest;
+        }
+
+        if (count <= MAX_ALL_PAIRS_STREETS) {
+            allPairs = new short[count * count];
+            int[] field = new int[count];
+            for (int s = 0; s < count; s++) {
+                search(new int[]{s}, null, field, null);
+                for (int t = 0; t < count; t++) {
+                    allPairs[s * count + t] = (field[t] == UNREACHABLE) ? NO_PATH : (short) field[t];
+                }
+            }
+            components = null;
+            landmarkDistance = null;
+        } else {
+            allPairs = null;
+            components = label();
+            landmarkDistance = landmarks(Math.min(LANDMARKS, count));
+        }
+    }
+
+    /**
+     * Labels every street with its connected component.
+     *
+     * @return component number of every street id.
+     */
+    private int[] label() {
+        int[] component = new int[streets.length];
+        Arrays.fill(component, -1);
+        int next = 0;
+        for (int s = 0; s < streets.length; s++) {
+            if (component[s] >= 0) {
+                continue;
+            }
+            component[s] = next;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = s;
+            while (head < tail) {
+                int cell = streets[queue[head++]];
+                int row = cell / cols;
+                int col = cell % cols;
+                for (int k = 0; k < 4; k++) {
+                    int r = row + MOVE_DR[k];
+                    int c = col + MOVE_DC[k];
+                    if (r >= 0 && r < rows && c >= 0 && c < cols) {
+                        int neighbour = streetIds[r * cols + c];
+                        if (neighbour >= 0 && component[neighbour] < 0) {
+                            component[neighbour] = next;
+                            queue[tail++] = neighbour;
+                        }
+                    }
+                }
+            }
+            next++;
+        }
+        return component;
+    }
+
+    /**
+     * Builds the landmark tables. Landmarks are chosen one at a time as the
+     * street farthest from the ones already chosen (unreachable streets
+     * first, so that every component gets one while there are landmarks
+     * left), starting from the first street.
+     *
+     * @param count number of landmarks.
+     * @return distance from every landmark to every street id.
+     */
+    private char[][] landmarks(int count) {
+        char[][] tables = new char[count][];
+        int[] closest = new int[streets.length];
+        Arrays.fill(closest, UNREACHABLE);
+        int[] field = new int[streets.length];
+        int landmark = 0;
+        for (int l = 0; l < count; l++) {
+            search(new int[]{landmark}, null, field, null);
+            char[] table = new char[streets.length];
+            int farthest = 0;
+            for (int s = 0; s < streets.length; s++) {
+                table[s] = (field[s] >= FAR) ? FAR : (char) field[s];
+                closest[s] = Math.min(closest[s], field[s]);
+                if (closest[s] > closest[farthest]) {
+                    farthest = s;
+                }
+            }
+            tables[l] = table;
+            landmark = farthest;
+        }
+        return tables;
+    }
+
+    /**
+     * Breadth-first search over the street graph.
+     *
+     * @param sources street ids at distance 0.
+     * @param sourceLabels label of every source; null for no labels.
+     * @param distance where to put the distance of every street id.
+     * @param label where to put the label of the closest source of every
+     * street id (-1 if unreachable); null for no labels.
+     * @return the distance array.
+     */
+    private int[] search(int[] sources, int[] sourceLabels, int[] distance, int[] label) {
+        if (queue == null) {
+            queue = new int[streets.length];
+        }
+        Arrays.fill(distance, UNREACHABLE);
+        if (label != null) {
+            Arrays.fill(label, -1);
+        }
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < sources.length; i++) {
+            int source = sources[i];
+            if (distance[source] != 0) {
+                distance[source] = 0;
+                queue[tail++] = source;
+                if (label != null) {
+                    label[source] = sourceLabels[i];
+                }
+            }
+        }
+        while (head < tail) {
+            int street = queue[head++];
+            int cell = streets[street];
+            int row = cell / cols;
+            int col = cell % cols;
+            int next = distance[street] + 1;
+            for (int k = 0; k < 4; k++) {
+                int r = row + MOVE_DR[k];
+                int c = col + MOVE_DC[k];
+                if (r >= 0 && r < rows && c >= 0 && c < cols) {
+                    int neighbour = streetIds[r * cols + c];
+                    if (neighbour >= 0 && distance[neighbour] == UNREACHABLE) {
+                        distance[neighbour] = next;
+                        queue[tail++] = neighbour;
+                        if (label != null) {
+                            label[neighbour] = label[street];
+                        }
+                    }
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Gets the street ids around a cell (8-neighbourhood), from where it can
+     * be reached.
+     *
+     * @param cell flat cell index.
+     * @return street ids of its frontage.
+     */
+    private int[] frontage(int cell) {
+        int[] result = new int[8];
+        int count = 0;
+        int row = cell / cols;
+        int col = cell % cols;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                int r = row + dr;
+                int c = col + dc;
+                if ((dr != 0 || dc != 0) && r >= 0 && r < rows && c >= 0 && c < cols
+                        && streetIds[r * cols + c] >= 0) {
+                    result[count++] = streetIds[r * cols + c];
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /* ***************** Lookups **********************************************/
+
+    /**
+     * Number of rows of the city.
+     *
+     * @return number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Number of columns of the city.
+     *
+     * @return number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Gets the street id of a cell.
+     *
+     * @param cell flat cell index.
+     * @return its street id, or -1 if it is not a street.
+     */
+    public int getStreetId(int cell) {
+        return streetIds[cell];
+    }
+
+    /**
+     * Gets the cell of a street.
+     *
+     * @param street street id.
+     * @return its flat cell index.
+     */
+    public int getStreetCell(int street) {
+        return streets[street];
+    }
+
+    /**
+     * Tells whether distance(from, to) is a table lookup.
+     *
+     * @return true if the all-pairs table was built.
+     */
+    public boolean hasAllPairs() {
+        return allPairs != null;
+    }
+
+    /**
+     * Number of street cells.
+     *
+     * @return number of streets.
+     */
+    public int getStreetCount() {
+        return streets.length;
+    }
+
+    /**
+     * Tells whether a cell is a street.
+     *
+     * @param cell flat cell index.
+     * @return true if agents can stand on it.
+     */
+    public boolean isStreet(int cell) {
+        return streetIds[cell] >= 0;
+    }
+
+    /**
+     * Distance between two street cells.
+     *
+     * @param from flat index of the origin street.
+     * @param to flat index of the destination street.
+     * @return number of moves, or UNREACHABLE.
+     */
+    public int distance(int from, int to) {
+        int s = streetIds[from];
+        int t = streetIds[to];
+        if (s < 0 || t < 0) {
+            return UNREACHABLE;
+        }
+        if (allPairs != null) {
+            short d = allPairs[s * streets.length + t];
+            return (d == NO_PATH) ? UNREACHABLE : d;
+        }
+        return field(s)[t];
+    }
+
+    /**
+     * Lower bound of the distance between two street cells, only by table
+     * lookups: the exact distance when the all-pairs table is built.
+     * Otherwise, the largest of the Manhattan distance and the difference
+     * of their distances to every landmark (a street cannot be closer to
+     * another one than that, by the triangle inequality).
+     *
+     * @param from flat index of the origin street.
+     * @param to flat index of the destination street.
+     * @return number of moves at least, or UNREACHABLE.
+     */
+    public int lowerBound(int from, int to) {
+        int s = streetIds[from];
+        int t = streetIds[to];
+        if (s < 0 || t < 0) {
+            return UNREACHABLE;
+        }
+        if (allPairs != null) {
+            short d = allPairs[s * streets.length + t];
+            return (d == NO_PATH) ? UNREACHABLE : d;
+        }
+        if (components[s] != components[t]) {
+            return UNREACHABLE;
+        }
+        int best = Math.abs(from / cols - to / cols) + Math.abs(from % cols - to % cols);
+        for (char[] table : landmarkDistance) {
+            int a = table[s];
+            int b = table[t];
+            if (a != FAR && b != FAR) {
+                best = Math.max(best, Math.abs(a - b));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Distance field from the given street, for large maps.
+     *
+     * @param source street id.
+     * @return distance to every street id.
+     */
+    private synchronized int[] field(int source) {
+        int[] field = fields().get(source);
+        if (field == null) {
+            field = search(new int[]{source}, null, new int[streets.length], null);
+            fields.put(source, field);
+        }
+        return field;
+    }
+
+    /**
+     * Cache of distance fields, created on first use (it is not serialized).
+     *
+     * @return the cache.
+     */
+    private Map<Integer, int[]> fields() {
+        if (fields == null) {
+            fields = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                    return size() > cachedFields;
+                }
+            };
+        }
+        return fields;
+    }
+
+    /**
+     * Distance from a street cell to the nearest street in front of a
+     * building (or any other non street cell).
+     *
+     * @param from flat index of the origin street.
+     * @param building flat index of the building.
+     * @return number of moves, or UNREACHABLE.
+     */
+    public int distanceToBuilding(int from, int building) {
+        int best = UNREACHABLE;
+        int row = building / cols;
+        int col = building % cols;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                int r = row + dr;
+                int c = col + dc;
+                if ((dr != 0 || dc != 0) && r >= 0 && r < rows && c >= 0 && c < cols
+                        && types[r * cols + c] == CityGrid.STREET) {
+                    best = Math.min(best, distance(from, r * cols + c));
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Distance from a street to a given recycling center.
+     *
+     * @param from flat index of the origin street.
+     * @param center flat index of the recycling center.
+     * @return number of moves, or UNREACHABLE.
+     */
+    public int distanceToCenter(int from, int center) {
+        int c = Arrays.binarySearch(centers, center);
+        int s = streetIds[from];
+        if (c < 0 || s < 0) {
+            return UNREACHABLE;
+        }
+        if (centerDistance != null) {
+            return centerDistance[c][s];
+        }
+        return centerField(c)[s];
+    }
+
+    /**
+     * Distance field from a recycling center, for many centers.
+     *
+     * @param c center number.
+     * @return distance to every street id.
+     */
+    private synchronized int[] centerField(int c) {
+        int[] field = fields().get(-(c + 1));
+        if (field == null) {
+            field = search(frontage(centers[c]), null, new int[streets.length], null);
+            fields.put(-(c + 1), field);
+        }
+        return field;
+    }
+
+    /**
+     * Distance from a street to the nearest recycling center accepting the
+     * given type of garbage.
+     *
+     * @param from flat index of the origin street.
+     * @param type type of garbage.
+     * @return number of moves, or UNREACHABLE.
+     */
+    public int distanceToNearestCenter(int from, GarbageType type) {
+        int s = streetIds[from];
+        return (s < 0) ? UNREACHABLE : typeDistance[type.ordinal()][s];
+    }
+
+    /**
+     * Length of the trip to collect garbage from a building and bring it to
+     * a recycling center: moves to a street in front of the building, plus
+     * moves from there to the nearest recycling center accepting the type.
+     * The street in front that makes the shortest trip is taken. It costs
+     * no search: on maps without the all-pairs table, the moves to the
+     * building are estimated by lowerBound().
+     *
+     * @param from flat index of the origin street.
+     * @param building flat index of the building.
+     * @param type type of garbage.
+     * @return number of moves, or UNREACHABLE.
+     */
+    public int tripDistance(int from, int building, GarbageType type) {
+        int[] toCenter = typeDistance[type.ordinal()];
+        int best = UNREACHABLE;
+        for (int front : frontage(building)) {
+            if (toCenter[front] == UNREACHABLE) {
+                continue;
+            }
+            int approach = lowerBound(from, streets[front]);
+            if (approach != UNREACHABLE) {
+                best = Math.min(best, approach + toCenter[front]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Chooses the street in front of a building or recycling center where an
+     * agent heading to it should stop: the one with the shortest straight
+     * line from the origin plus, when a type of garbage is given, street
+     * distance from there to the nearest recycling center accepting it.
+     * Like tripDistance, it costs no search on large maps.
+     *
+     * @param from flat index of the origin street.
+     * @param target flat index of the building or recycling center.
+     * @param type type of garbage to bring to a recycling center; null to
+     * only approach the target.
+     * @return flat index of the street, or -1 if there is none.
+     */
+    public int approach(int from, int target, GarbageType type) {
+        int row = from / cols;
+        int col = from % cols;
+        int best = -1;
+        long bestCost = Long.MAX_VALUE;
+        for (int front : frontage(target)) {
+            int cell = streets[front];
+            long cost = Math.abs(cell / cols - row) + Math.abs(cell % cols - col);
+            if (type != null) {
+                int toCenter = typeDistance[type.ordinal()][front];
+                if (toCenter == UNREACHABLE) {
+                    continue;
+                }
+                cost += toCenter;
+            }
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tells whether a cell is around another one (8-neighbourhood), as a
+     * street in front of a building or recycling center is.
+     *
+     * @param cell flat cell index.
+     * @param target flat cell index of the building or recycling center.
+     * @return true if they are different and touch each other.
+     */
+    public boolean isAround(int cell, int target) {
+        return cell != target
+                && Math.abs(cell / cols - target / cols) <= 1
+                && Math.abs(cell % cols - target % cols) <= 1;
+    }
+
+    /**
+     * Nearest recycling center accepting the given type of garbage.
+     *
+     * @param from flat index of the origin street.
+     * @param type type of garbage.
+     * @return flat index of the recycling center, or -1 if none is reachable.
+     */
+    public int nearestCenter(int from, GarbageType type) {
+        int s = streetIds[from];
+        return (s < 0) ? -1 : typeNearest[type.ordinal()][s];
+    }
+}
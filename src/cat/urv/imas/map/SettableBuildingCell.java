@@ -18,6 +18,8 @@
 package cat.urv.imas.map;
 
 import cat.urv.imas.onthology.GarbageType;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Building cell API for System agent which allows to set new garbage in buildings.
@@ -29,11 +31,64 @@ public class SettableBuildingCell extends BuildingCell {
     public SettableBuildingCell(int row, int col) {
         super(row, col);
     }
+
+    protected SettableBuildingCell(int row, int col, int[] garbage) {
+        super(row, col, garbage);
+    }
     
+    /**
+     * Gets the real garbage of this building, whether or not it has been
+     * detected by scouts. It does not mark it as found.
+     *
+     * @return the garbage on it.
+     */
+    public Map<GarbageType, Integer> getRealGarbage() {
+        return content();
+    }
+
+    /**
+     * Type of the real garbage of this building, as getRealGarbage() but
+     * without building a map.
+     *
+     * @return the garbage type, or null if there is no garbage.
+     */
+    public GarbageType getRealGarbageType() {
+        return realType();
+    }
+
+    /**
+     * Units of real garbage of a type, as getRealGarbage() but without
+     * building a map.
+     *
+     * @param type garbage type.
+     * @return units of garbage.
+     */
+    public int getRealGarbageAmount(GarbageType type) {
+        return garbage[type.ordinal()];
+    }
+
     public void setGarbage(GarbageType type, int amount) {
-        if (!garbage.isEmpty()) {
+        if (realType() != null) {
             throw new IllegalStateException("This building (" + this.getRow() + "," + this.getCol() + ") has garbage yet: " + this.getMapMessage());
         }
-        garbage.put(type, amount);
+        garbage[type.ordinal()] = amount;
+        garbageChanged();
+    }
+
+    /**
+     * Overrides the current garbage of this building, as when replaying the
+     * changes of a simulation step. An amount of 0 empties the building.
+     *
+     * @param type type of garbage; ignored when amount is 0.
+     * @param amount current amount of garbage.
+     */
+    public void updateGarbage(GarbageType type, int amount) {
+        Arrays.fill(garbage, 0);
+        if (amount > 0) {
+            garbage[type.ordinal()] = amount;
+        } else {
+            found = false;
+        }
+        garbageChanged();
     }
 }
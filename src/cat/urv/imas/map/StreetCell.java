@@ -57,7 +57,6 @@ public class StreetCell extends Cell {
      * @throws Exception
      */
     public void addAgent(InfoAgent newAgent) throws Exception {
-        System.out.println("Add an agent to " + this + "<--" + newAgent);
         if (this.isThereAnAgent()) {
             throw new Exception("Full STREET cell");
         }
@@ -68,12 +67,22 @@ public class StreetCell extends Cell {
         this.agent = newAgent;
     }
 
+    /**
+     * Sets the agent of this cell without any check. Only intended for
+     * movements already resolved (see GameSettings.commitMoves()).
+     *
+     * @param agent agent, or null to empty the cell.
+     */
+    public void setAgent(InfoAgent agent) {
+        this.agent = agent;
+    }
+
     public void removeAgent(InfoAgent oldInfoAgent) throws Exception {
         //System.out.println("Remove an agent to " + this.toString());
         if (!this.isThereAnAgent()) {
             throw new Exception("There is no agent in cell");
         }
-        if (oldInfoAgent != null) {
+        if (oldInfoAgent == null) {
             throw new Exception("No valid agent to be remove (null).");
         } else if (!oldInfoAgent.equals(agent)) {
             throw new Exception("No matching agent to be remove.");
@@ -100,7 +109,7 @@ public class StreetCell extends Cell {
     @Override
     public String toStringSpecialization() {
         if (this.isThereAnAgent()) {
-            return "(agent " + agent.toString() + ")";
+            return "(agent " + getAgent().toString() + ")";
         } else {
             return "";
         }
@@ -109,6 +118,7 @@ public class StreetCell extends Cell {
     /* ***************** Map visualization API ********************************/
     @Override
     public void draw(CellVisualizer visual) {
+        InfoAgent agent = getAgent();
         if (agent == null) {
             visual.drawEmptyStreet(this);
         } else {
@@ -127,6 +137,7 @@ public class StreetCell extends Cell {
 
     @Override
     public String getMapMessage() {
+        InfoAgent agent = getAgent();
         if (agent == null) {
             return "";
         } else {
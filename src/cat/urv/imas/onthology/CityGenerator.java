@@ -0,0 +1,329 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import cat.urv.imas.agent.AgentType;
+import static cat.urv.imas.onthology.InitialGameSettings.G;
+import static cat.urv.imas.onthology.InitialGameSettings.H;
+import static cat.urv.imas.onthology.InitialGameSettings.L;
+import static cat.urv.imas.onthology.InitialGameSettings.P;
+import static cat.urv.imas.onthology.InitialGameSettings.R;
+import static cat.urv.imas.onthology.InitialGameSettings.S;
+import static cat.urv.imas.onthology.InitialGameSettings.SC;
+import java.util.Random;
+
+/**
+ * Generator of synthetic cities of any size, to be used instead of the map
+ * hand written in GenerateGameSettings when testing how the system scales.
+ * 
+ * The city is a grid of square blocks of buildings separated by two-cell
+ * wide streets and surrounded by a row of buildings, as in the shipped
+ * maps. Scouts and harvesters are placed on random street cells and
+ * recycling centers on the corner of random blocks. The same parameters
+ * and seed always produce the same city.
+ */
+public class CityGenerator {
+
+    /**
+     * Width of all streets, in cells.
+     */
+    public static final int STREET_WIDTH = 2;
+    /**
+     * Value of every building cell (number of people in it).
+     */
+    public static final int BUILDING = 10;
+    /**
+     * Maximum price paid by a recycling center per garbage unit.
+     */
+    public static final int MAX_PRICE = 10;
+    /**
+     * All non empty sets of supported garbage types, to choose from for every
+     * harvester.
+     */
+    private static final String[][] GARBAGE_SETS = {
+        {L}, {P}, {G}, {G, P}, {L, P}, {G, L}, {G, P, L},
+    };
+
+    private int rows = 20;
+    private int cols = 20;
+    private int blockSize = 2;
+    /**
+     * Fraction of street cells with a scout on it.
+     */
+    private double scoutDensity = 0.02;
+    /**
+     * Fraction of street cells with a harvester on it.
+     */
+    private double harvesterDensity = 0.04;
+    /**
+     * Fraction of blocks with a recycling center on its corner.
+     */
+    private double recyclingCenterDensity = 0.1;
+    private int harvestersCapacity = 6;
+    private int simulationSteps = 600;
+    private long seed = 1234567L;
+
+    /**
+     * Builds a generator for a city of the given size, with the default
+     * block size, densities and seed.
+     * 
+     * @param rows number of rows.
+     * @param cols number of columns.
+     */
+    public CityGenerator(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public double getScoutDensity() {
+        return scoutDensity;
+    }
+
+    public void setScoutDensity(double scoutDensity) {
+        this.scoutDensity = scoutDensity;
+    }
+
+    public double getHarvesterDensity() {
+        return harvesterDensity;
+    }
+
+    public void setHarvesterDensity(double harvesterDensity) {
+        this.harvesterDensity = harvesterDensity;
+    }
+
+    public double getRecyclingCenterDensity() {
+        return recyclingCenterDensity;
+    }
+
+    public void setRecyclingCenterDensity(double recyclingCenterDensity) {
+        this.recyclingCenterDensity = recyclingCenterDensity;
+    }
+
+    public int getHarvestersCapacity() {
+        return harvestersCapacity;
+    }
+
+    public void setHarvestersCapacity(int harvestersCapacity) {
+        this.harvestersCapacity = harvestersCapacity;
+    }
+
+    public int getSimulationSteps() {
+        return simulationSteps;
+    }
+
+    public void setSimulationSteps(int simulationSteps) {
+        this.simulationSteps = simulationSteps;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generates the settings of a new city. There is always at least one
+     * scout, one harvester and one recycling center, and recycling centers
+     * treat all garbage types among them, so that the settings pass the
+     * checks done by setRecyclingCenterPrices() and initMap(). The map is
+     * not initialized: call initMap() when needed.
+     * 
+     * @return the settings for the city.
+     */
+    public InitialGameSettings generate() {
+        int period = blockSize + STREET_WIDTH;
+        if (blockSize < 1 || rows < period + 3 || cols < period + 3) {
+            throw new IllegalArgumentException("A city of " + rows + "x" + cols
+                    + " cells has no room for blocks of " + blockSize + " cells.");
+        }
+        Random random = new Random(seed);
+        int[][] map = new int[rows][cols];
+        int streets = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (isStreet(row, col, period)) {
+                    streets++;
+                } else {
+                    map[row][col] = BUILDING;
+                }
+            }
+        }
+
+        // street cells in random order: scouts first, then harvesters
+        int[] streetCells = new int[streets];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (map[row][col] == S) {
+                    streetCells[n++] = row * cols + col;
+                }
+            }
+        }
+        int scouts = count(scoutDensity, streets - 1);
+        int harvesters = count(harvesterDensity, streets - scouts);
+        shuffle(streetCells, scouts + harvesters, random);
+        String[][] supported = new String[harvesters][];
+        for (int i = 0; i < scouts + harvesters; i++) {
+            int cell = streetCells[i];
+            if (i < scouts) {
+                map[cell / cols][cell % cols] = SC;
+            } else {
+                map[cell / cols][cell % cols] = H;
+                supported[i - scouts] = GARBAGE_SETS[random.nextInt(GARBAGE_SETS.length)];
+            }
+        }
+
+        // recycling centers take the top left corner of a block, which is
+        // next to the streets above and on the left of the block
+        int blockRows = (rows - 3) / period;
+        int blockCols = (cols - 3) / period;
+        int[] blocks = new int[blockRows * blockCols];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = i;
+        }
+        int centers = count(recyclingCenterDensity, blocks.length);
+        shuffle(blocks, centers, random);
+        int[][] prices = new int[centers][];
+        int treated = 0; // if 7, all garbage types are treated.
+        for (int i = 0; i < centers; i++) {
+            int row = 1 + STREET_WIDTH + (blocks[i] / blockCols) * period;
+            int col = 1 + STREET_WIDTH + (blocks[i] % blockCols) * period;
+            map[row][col] = R;
+            prices[i] = new int[3];
+            for (int j = 0; j < 3; j++) {
+                if (random.nextBoolean()) {
+                    prices[i][j] = 1 + random.nextInt(MAX_PRICE);
+                    treated |= 1 << j;
+                }
+            }
+        }
+        for (int j = 0; j < 3; j++) {
+            if ((treated & (1 << j)) == 0) {
+                prices[centers - 1][j] = 1 + random.nextInt(MAX_PRICE);
+            }
+        }
+
+        InitialGameSettings settings = new InitialGameSettings();
+        settings.setSeed(seed);
+        settings.setTitle("Synthetic city " + rows + "x" + cols + " (seed " + seed + ")");
+        settings.setSimulationSteps(simulationSteps);
+        settings.setHarvestersCapacity(harvestersCapacity);
+        settings.setRecyclingCenterPrices(prices);
+        settings.setSupportedGarbageByHarvesters(supported);
+        settings.setInitialMap(map);
+        return settings;
+    }
+
+    /**
+     * Tells whether the cell is a street: the outer row and column of cells
+     * are buildings, and inside, every block is preceded by a street.
+     * 
+     * @param row row number.
+     * @param col column number.
+     * @param period size of a block plus its street.
+     * @return true if the cell is a street.
+     */
+    private boolean isStreet(int row, int col, int period) {
+        if (row == 0 || col == 0 || row == rows - 1 || col == cols - 1) {
+            return false;
+        }
+        return (row - 1) % period < STREET_WIDTH || (col - 1) % period < STREET_WIDTH;
+    }
+
+    /**
+     * Number of elements for the given density, between 1 and max.
+     * 
+     * @param density fraction of elements.
+     * @param max maximum number of elements.
+     * @return number of elements.
+     */
+    private static int count(double density, int max) {
+        return Math.max(1, Math.min(max, (int) Math.round(density * max)));
+    }
+
+    /**
+     * Moves a random sample of n elements to the beginning of the array
+     * (partial Fisher-Yates shuffle).
+     * 
+     * @param values values to shuffle.
+     * @param n number of elements to sample.
+     * @param random random number generator.
+     */
+    private static void shuffle(int[] values, int n, Random random) {
+        for (int i = 0; i < n; i++) {
+            int j = i + random.nextInt(values.length - i);
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Generates a city and builds its map, telling how long it took.
+     * 
+     * @param args rows, columns and optionally block size, seed and the file
+     * where to store the settings (in the CompactSettings format).
+     * @throws Exception if the map cannot be built.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: CityGenerator rows cols [blockSize [seed [file]]]");
+            System.exit(-1);
+        }
+        CityGenerator generator = new CityGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        if (args.length > 2) {
+            generator.setBlockSize(Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            generator.setSeed(Long.parseLong(args[3]));
+        }
+        long start = System.nanoTime();
+        InitialGameSettings settings = generator.generate();
+        long generated = System.nanoTime();
+        settings.initMap();
+        long built = System.nanoTime();
+        System.out.println(settings.getTitle() + ": "
+                + settings.getRecyclingCenterPrices().length + " recycling centers, "
+                + settings.getSupportedGarbageByHarvesters().length + " harvesters, "
+                + settings.getAgentList().get(AgentType.SCOUT).size() + " scouts.");
+        System.out.println("Generated in " + (generated - start) / 1000000 + " ms, map built in "
+                + (built - generated) / 1000000 + " ms.");
+        if (args.length > 4) {
+            CompactSettings.write(settings, args[4]);
+            System.out.println("Stored in '" + args[4] + "'.");
+        }
+    }
+}
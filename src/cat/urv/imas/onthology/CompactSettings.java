@@ -0,0 +1,254 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Compact binary format for the initial game settings, meant for large
+ * cities, whose XML file (one element per cell) would be far too big and
+ * slow to load.
+ * 
+ * A file starts with the MAGIC bytes and the format version, followed by
+ * all the settings. The map is written row by row as runs of equal cells:
+ * every run is the cell value and how many times it repeats, both as
+ * variable-length quantities. The file is read as a stream, without
+ * keeping more than the resulting settings in memory.
+ * 
+ * InitialGameSettings.load() recognizes these files by their MAGIC bytes,
+ * so they can be used wherever an XML settings file is expected.
+ */
+public class CompactSettings {
+
+    /**
+     * First bytes of every compact settings file: "IMAS".
+     */
+    public static final int MAGIC = 0x494D4153;
+    /**
+     * Version of the format. Files with another version are rejected.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Tells whether the file is in this format, by its first bytes.
+     * 
+     * @param filename settings file.
+     * @return true if it is a compact settings file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isCompact(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /* ***************** Writing **********************************************/
+
+    /**
+     * Stores the settings in a file in this format.
+     * 
+     * @param settings settings to store.
+     * @param filename settings file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(InitialGameSettings settings, String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            writeVarInt(out, FORMAT_VERSION);
+            out.writeUTF(settings.getTitle() == null ? "" : settings.getTitle());
+            out.writeFloat(settings.getSeed());
+            writeVarInt(out, settings.getSimulationSteps());
+            writeVarInt(out, settings.getNewGarbageProbability());
+            writeVarInt(out, settings.getMaxNumberBuildingWithNewGargabe());
+            writeVarInt(out, settings.getMaxAmountOfNewGargabe());
+            writeVarInt(out, settings.getHarvestersCapacity());
+
+            int[][] prices = settings.getRecyclingCenterPrices();
+            writeVarInt(out, prices.length);
+            for (int[] centerPrices : prices) {
+                for (int j = 0; j < 3; j++) {
+                    writeVarInt(out, centerPrices[j]);
+                }
+            }
+
+            String[][] supported = settings.getSupportedGarbageByHarvesters();
+            writeVarInt(out, supported.length);
+            for (String[] types : supported) {
+                writeVarInt(out, types.length);
+                for (String type : types) {
+                    out.writeUTF(type);
+                }
+            }
+
+            int[][] map = settings.getInitialMap();
+            int cols = map[0].length;
+            writeVarInt(out, map.length);
+            writeVarInt(out, cols);
+            for (int[] row : map) {
+                int col = 0;
+                while (col < cols) {
+                    int value = row[col];
+                    int run = 1;
+                    while (col + run < cols && row[col + run] == value) {
+                        run++;
+                    }
+                    writeVarInt(out, (value << 1) ^ (value >> 31)); // zigzag: cells may be negative
+                    writeVarInt(out, run);
+                    col += run;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a non negative integer in 7-bit groups, least significant first.
+     *
+     * @param out where to write.
+     * @param value value to write.
+     * @throws IOException if it cannot be written.
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /* ***************** Reading **********************************************/
+
+    /**
+     * Loads the settings from a file in this format. The map is not
+     * initialized: call initMap() when needed.
+     * 
+     * @param filename settings file.
+     * @return the settings.
+     * @throws IOException if the file cannot be read or is not valid.
+     */
+    public static InitialGameSettings read(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename), BUFFER_SIZE))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Loads the settings from a stream in this format.
+     * 
+     * @param stream where to read from.
+     * @return the settings.
+     * @throws IOException if the stream cannot be read or is not valid.
+     */
+    public static InitialGameSettings read(InputStream stream) throws IOException {
+        DataInputStream in = (stream instanceof DataInputStream)
+                ? (DataInputStream) stream : new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a compact settings file.");
+        }
+        int version = readVarInt(in);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Compact settings version " + version + " is not supported.");
+        }
+        InitialGameSettings settings = new InitialGameSettings();
+        settings.setTitle(in.readUTF());
+        settings.setSeed(in.readFloat());
+        settings.setSimulationSteps(readVarInt(in));
+        settings.setNewGarbageProbability(readVarInt(in));
+        settings.setMaxNumberBuildingWithNewGargabe(readVarInt(in));
+        settings.setMaxAmountOfNewGargabe(readVarInt(in));
+        settings.setHarvestersCapacity(readVarInt(in));
+
+        int[][] prices = new int[readVarInt(in)][3];
+        for (int[] centerPrices : prices) {
+            for (int j = 0; j < 3; j++) {
+                centerPrices[j] = readVarInt(in);
+            }
+        }
+        settings.setRecyclingCenterPrices(prices);
+
+        String[][] supported = new String[readVarInt(in)][];
+        for (int i = 0; i < supported.length; i++) {
+            supported[i] = new String[readVarInt(in)];
+            for (int j = 0; j < supported[i].length; j++) {
+                supported[i][j] = in.readUTF().intern();
+            }
+        }
+        settings.setSupportedGarbageByHarvesters(supported);
+
+        int rows = readVarInt(in);
+        int cols = readVarInt(in);
+        int[][] map = new int[rows][cols];
+        for (int[] row : map) {
+            int col = 0;
+            while (col < cols) {
+                int zigzag = readVarInt(in);
+                int value = (zigzag >>> 1) ^ -(zigzag & 1);
+                int run = readVarInt(in);
+                if (run <= 0 || col + run > cols) {
+                    throw new IOException("Corrupted map in compact settings file.");
+                }
+                if (value != 0) {
+                    Arrays.fill(row, col, col + run, value);
+                }
+                col += run;
+            }
+        }
+        settings.setInitialMap(map);
+        return settings;
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Converts a settings file (XML or compact) into a compact one.
+     * 
+     * @param args source and destination files.
+     * @throws Exception if the files cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: CompactSettings source destination");
+            System.exit(-1);
+        }
+        write((InitialGameSettings) InitialGameSettings.load(args[0]), args[1]);
+    }
+}
@@ -18,7 +18,20 @@
 package cat.urv.imas.onthology;
 
 import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.map.BuildingCell;
 import cat.urv.imas.map.Cell;
+import cat.urv.imas.map.CellType;
+import cat.urv.imas.map.CityGrid;
+import cat.urv.imas.map.GarbageIndex;
+import cat.urv.imas.map.PathPlanner;
+import cat.urv.imas.map.RecyclingCenterCell;
+import cat.urv.imas.map.RoutingTable;
+import cat.urv.imas.map.SettableBuildingCell;
+import cat.urv.imas.map.StreetCell;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import javax.xml.bind.annotation.XmlElement;
@@ -57,9 +70,26 @@ public class GameSettings implements java.io.Serializable {
      */
     private int simulationSteps = 100;
     /**
-     * City map.
+     * Maps with at least this number of cells are kept in a CityGrid instead
+     * of a Cell object per cell.
+     */
+    public static final int GRID_THRESHOLD = 250000;
+    /**
+     * Maximum number of recycling centers or agents listed per line in the
+     * summaries.
+     */
+    private static final int MAX_LISTED = 10;
+
+    /**
+     * City map. When the map is kept in a grid, it is only built on demand
+     * (see getMap()).
      */
     protected Cell[][] map;
+    /**
+     * Flat backing store for the city map, or null when the map is kept as
+     * Cell objects.
+     */
+    protected CityGrid grid;
     /**
      * From 0 to 100 (meaning percentage) of probability of having new
      * garbage in the city at every step.
@@ -93,6 +123,65 @@ public class GameSettings implements java.io.Serializable {
      * Title to set to the GUI.
      */
     protected String title = "Demo title";
+    /**
+     * Number of simulation steps already applied on this city map. Used to
+     * check that deltas are applied in order.
+     */
+    protected int version = 0;
+    /**
+     * Spatial index of buildings with garbage. It is built on demand, so that
+     * it is not sent along with the game settings.
+     */
+    protected transient GarbageIndex garbageIndex;
+    /**
+     * Street distances for routing. Cell types never change, so it is built
+     * once, on demand, and it is not sent along with the game settings.
+     */
+    protected transient RoutingTable routing;
+    /**
+     * Path planner over the streets, built on demand and kept up to date
+     * with the movements of the agents.
+     */
+    protected transient PathPlanner planner;
+    /**
+     * Reused result of detectBuildingsWithGarbage(row, col).
+     */
+    private transient Cell[] detected;
+    /**
+     * Flat index of the cell of every agent, by type and in the order of
+     * agentList. Built on demand and kept up to date by commitMoves.
+     */
+    private transient Map<AgentType, int[]> agentCells;
+    /**
+     * True when the cells of agentList lag behind agentCells: on a grid,
+     * commitMoves only moves the indices, and the views of agentList are
+     * made again when it is asked for (see getAgentList()).
+     */
+    private transient boolean agentListStale;
+    /**
+     * Position of every agent in its list of agentList, by flat index of
+     * the cell it occupies. Built on demand.
+     */
+    private transient int[] agentSlots;
+    /**
+     * Agents being moved by commitMoves, reused among calls.
+     */
+    private transient InfoAgent[] moving;
+    /**
+     * Slots in agentList of the agents being moved by commitMoves, reused
+     * among calls.
+     */
+    private transient int[] movingSlots;
+    /**
+     * Cells left by the movements of the delta being checked by applyDelta.
+     * Cleared after every check.
+     */
+    private transient BitSet leaving;
+    /**
+     * Cells entered by the movements of the delta being checked by
+     * applyDelta. Cleared after every check.
+     */
+    private transient BitSet entering;
     
 
     public float getSeed() {
@@ -189,14 +278,210 @@ public class GameSettings implements java.io.Serializable {
      */
     @XmlTransient
     public Cell[][] getMap() {
+        if (map == null && grid != null) {
+            map = grid.toCells();
+        }
         return map;
     }
+
+    /**
+     * Gets the flat backing store of the city map, if any.
+     * @return the grid, or null when the map is kept as Cell objects.
+     */
+    @XmlTransient
+    public CityGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Moves the city map into a flat CityGrid. From then on, cells are views
+     * on the grid.
+     */
+    public void useGrid() {
+        if (grid != null) {
+            return;
+        }
+        grid = CityGrid.fromCells(map);
+        map = null;
+        if (agentList != null) {
+            for (List<Cell> cells : getAgentList().values()) {
+                for (int i = 0; i < cells.size(); i++) {
+                    Cell cell = cells.get(i);
+                    cells.set(i, grid.cell(cell.getRow(), cell.getCol()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of rows of the city map.
+     * @return number of rows.
+     */
+    @XmlTransient
+    public int getRows() {
+        return (grid != null) ? grid.getRows() : map.length;
+    }
+
+    /**
+     * Number of columns of the city map.
+     * @return number of columns.
+     */
+    @XmlTransient
+    public int getCols() {
+        return (grid != null) ? grid.getCols() : map[0].length;
+    }
     
+    /**
+     * Gets the street distances table, building it on first use.
+     * @return the routing table of this city.
+     */
+    @XmlTransient
+    public RoutingTable getRouting() {
+        if (routing == null) {
+            int rows = getRows();
+            int cols = getCols();
+            byte[] types = new byte[rows * cols];
+            int[] centers = getRecyclingCenterCells();
+            int[][] prices = new int[centers.length][];
+            if (grid != null) {
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = grid.getType(i);
+                }
+                for (int c = 0; c < centers.length; c++) {
+                    prices[c] = grid.getPrices(centers[c]);
+                }
+            } else {
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < cols; c++) {
+                        Cell cell = map[r][c];
+                        if (cell instanceof RecyclingCenterCell) {
+                            types[r * cols + c] = CityGrid.RECYCLING_CENTER;
+                        } else if (cell instanceof BuildingCell) {
+                            types[r * cols + c] = CityGrid.BUILDING;
+                        } else {
+                            types[r * cols + c] = CityGrid.STREET;
+                        }
+                    }
+                }
+                for (int c = 0; c < centers.length; c++) {
+                    prices[c] = ((RecyclingCenterCell) map[centers[c] / cols][centers[c] % cols]).getPrices();
+                }
+            }
+            routing = new RoutingTable(rows, cols, types, centers, prices);
+        }
+        return routing;
+    }
+    /**
+     * Gets the cell indices of all the recycling centers, in map order.
+     * @return sorted cell indices of the recycling centers.
+     */
+    @XmlTransient
+    public int[] getRecyclingCenterCells() {
+        if (grid != null) {
+            return grid.getCenters();
+        }
+        int rows = getRows();
+        int cols = getCols();
+        List<Integer> found = new ArrayList<>();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (map[r][c] instanceof RecyclingCenterCell) {
+                    found.add(r * cols + c);
+                }
+            }
+        }
+        int[] centers = new int[found.size()];
+        for (int c = 0; c < centers.length; c++) {
+            centers[c] = found.get(c);
+        }
+        return centers;
+    }
+
+    /**
+     * Gets the path planner, building it on first use with the current
+     * positions of the agents.
+     * @return the path planner of this city.
+     */
+    @XmlTransient
+    public PathPlanner getPlanner() {
+        if (planner == null) {
+            planner = new PathPlanner(getRouting());
+            for (AgentType type : agentList.keySet()) {
+                for (int cell : getAgentCells(type)) {
+                    planner.setOccupied(cell, true);
+                }
+            }
+        }
+        return planner;
+    }
+    /**
+     * Gets the spatial index of buildings with garbage, building it on
+     * first use.
+     * @return the index of buildings with garbage.
+     */
+    @XmlTransient
+    public GarbageIndex getGarbageIndex() {
+        if (garbageIndex == null) {
+            int rows = getRows();
+            int cols = getCols();
+            garbageIndex = new GarbageIndex(rows, cols);
+            if (grid != null) {
+                grid.setGarbageIndex(garbageIndex);
+            } else {
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < cols; c++) {
+                        if (map[r][c] instanceof BuildingCell) {
+                            ((BuildingCell) map[r][c]).setGarbageIndex(garbageIndex);
+                        }
+                    }
+                }
+            }
+        }
+        return garbageIndex;
+    }
+    
+    /**
+     * Finds all surrounding cells to (row,col) that are buildings and have
+     * garbage on it, detecting their garbage (see BuildingCell.detectGarbage()).
+     * 
+     * The returned array is reused among calls: the detected buildings are
+     * at its beginning, followed by null.
+     * 
+     * @param row row number (zero based).
+     * @param col column number (zero based).
+     * @return the buildings with garbage around, followed by null.
+     */
     public Cell[] detectBuildingsWithGarbage(int row, int col) {
-        //TODO: find all surrounding cells to (row,col) that are
-        //      buildings and have garbage on it.
-        //      Use: BuildingCell.detectGarbage() to do so.
-        return null;
+        if (detected == null) {
+            detected = new Cell[9];
+        }
+        int count = detectBuildingsWithGarbage(row, col, detected);
+        for (int i = count; i < detected.length && detected[i] != null; i++) {
+            detected[i] = null;
+        }
+        return detected;
+    }
+    
+    /**
+     * Finds all surrounding cells to (row,col) that are buildings and have
+     * garbage on it, detecting their garbage (see BuildingCell.detectGarbage()).
+     * 
+     * @param row row number (zero based).
+     * @param col column number (zero based).
+     * @param buffer where to put the buildings found; at least 8 long.
+     * @return number of buildings found.
+     */
+    public int detectBuildingsWithGarbage(int row, int col, Cell[] buffer) {
+        int mask = getGarbageIndex().neighbourMask(row, col);
+        int count = 0;
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            BuildingCell building = (BuildingCell) get(row + GarbageIndex.rowOffset(direction), col + GarbageIndex.colOffset(direction));
+            building.detectGarbage();
+            buffer[count++] = building;
+        }
+        return count;
     }
     
     /**
@@ -206,26 +491,458 @@ public class GameSettings implements java.io.Serializable {
      * @return a city's Cell.
      */
     public Cell get(int row, int col) {
+        if (map == null && grid != null) {
+            return grid.cell(row, col);
+        }
         return map[row][col];
     }
 
+    /**
+     * Gets the cells of the agents, by type. On a grid, the cells of the
+     * agents moved since the last call are made here; the code run every
+     * step uses getAgentCells() instead.
+     * @return cells of the agents, by type.
+     */
     @XmlTransient
     public Map<AgentType, List<Cell>> getAgentList() {
+        if (agentListStale) {
+            agentListStale = false;
+            for (Map.Entry<AgentType, int[]> entry : agentCells.entrySet()) {
+                List<Cell> cells = agentList.get(entry.getKey());
+                int[] indices = entry.getValue();
+                for (int i = 0; i < indices.length; i++) {
+                    if (indexOf(cells.get(i)) != indices[i]) {
+                        cells.set(i, get(indices[i]));
+                    }
+                }
+            }
+        }
         return agentList;
     }
 
     public void setAgentList(Map<AgentType, List<Cell>> agentList) {
         this.agentList = agentList;
+        this.agentCells = null;
+        this.agentListStale = false;
+        this.agentSlots = null;
+    }
+
+    /**
+     * Gets the cells of the agents of a type as flat indices, in the order
+     * of getAgentList(), without making any Cell.
+     * @param type agent type.
+     * @return flat cell indices, empty if there is no agent of the type; do
+     * not modify.
+     */
+    public int[] getAgentCells(AgentType type) {
+        if (agentCells == null) {
+            if (agentList == null) {
+                return new int[0];
+            }
+            agentCells = new EnumMap<>(AgentType.class);
+            for (Map.Entry<AgentType, List<Cell>> entry : agentList.entrySet()) {
+                List<Cell> cells = entry.getValue();
+                int[] indices = new int[cells.size()];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = indexOf(cells.get(i));
+                }
+                agentCells.put(entry.getKey(), indices);
+            }
+        }
+        int[] indices = agentCells.get(type);
+        return (indices == null) ? new int[0] : indices;
+    }
+
+    /**
+     * Gets the position of the agent in a street cell among the agents of
+     * its type, as in getAgentCells(). It does not change as the agent
+     * moves.
+     * @param index flat index of a street cell with an agent.
+     * @return position of the agent among the agents of its type.
+     */
+    public int getAgentSlot(int index) {
+        if (agentSlots == null) {
+            agentSlots = new int[getRows() * getCols()];
+            for (AgentType type : agentList.keySet()) {
+                int[] cells = getAgentCells(type);
+                for (int i = 0; i < cells.length; i++) {
+                    agentSlots[cells[i]] = i;
+                }
+            }
+        }
+        return agentSlots[index];
+    }
+
+    @XmlTransient
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Gets the cell given its flat index (row * cols + col).
+     * @param index flat cell index.
+     * @return a city's Cell.
+     */
+    public Cell get(int index) {
+        int cols = getCols();
+        return get(index / cols, index % cols);
+    }
+
+    /**
+     * Gets the flat index of the given cell, as used in MapDelta.
+     * @param cell a city's Cell.
+     * @return flat cell index (row * cols + col).
+     */
+    public int indexOf(Cell cell) {
+        return cell.getRow() * getCols() + cell.getCol();
+    }
+
+    /**
+     * Tells whether a cell is a street.
+     * @param index flat cell index.
+     * @return true for street cells.
+     */
+    public boolean isStreet(int index) {
+        if (grid != null) {
+            return grid.getType(index) == CityGrid.STREET;
+        }
+        int cols = getCols();
+        return map[index / cols][index % cols].getCellType() == CellType.STREET;
+    }
+
+    /**
+     * Tells whether a cell is a building.
+     * @param index flat cell index.
+     * @return true for building cells.
+     */
+    public boolean isBuilding(int index) {
+        if (grid != null) {
+            return grid.getType(index) == CityGrid.BUILDING;
+        }
+        int cols = getCols();
+        return map[index / cols][index % cols] instanceof BuildingCell;
+    }
+
+    /**
+     * Gets the agent in a street cell.
+     * @param index flat index of a street cell.
+     * @return the agent, or null if the cell is empty.
+     */
+    public InfoAgent getAgent(int index) {
+        if (grid != null) {
+            return grid.getAgent(index);
+        }
+        int cols = getCols();
+        return ((StreetCell) map[index / cols][index % cols]).getAgent();
+    }
+
+    /**
+     * Tells whether the garbage of a building is already found.
+     * @param index flat index of a building.
+     * @return true if scouts found its garbage.
+     */
+    public boolean isFound(int index) {
+        if (grid != null) {
+            return grid.isFound(index);
+        }
+        int cols = getCols();
+        return ((BuildingCell) map[index / cols][index % cols]).isFound();
+    }
+
+    /**
+     * Marks the garbage of a building as found, if there is any (see
+     * BuildingCell.detectGarbage()).
+     * @param index flat index of a building.
+     */
+    public void detectGarbage(int index) {
+        if (grid != null) {
+            grid.markFound(index);
+        } else {
+            int cols = getCols();
+            ((BuildingCell) map[index / cols][index % cols]).detectGarbage();
+        }
+    }
+
+    /**
+     * Gets the type of the found garbage of a building.
+     * @param index flat index of a building.
+     * @return the garbage type, or null if there is no garbage found.
+     */
+    public GarbageType getGarbageType(int index) {
+        if (grid != null) {
+            return grid.isFound(index) ? grid.getGarbageType(index) : null;
+        }
+        int cols = getCols();
+        return ((BuildingCell) map[index / cols][index % cols]).getGarbageType();
+    }
+
+    /**
+     * Gets the units of found garbage of a type in a building.
+     * @param index flat index of a building.
+     * @param type garbage type.
+     * @return units of garbage; 0 if there is no garbage of the type found.
+     */
+    public int getGarbageAmount(int index, GarbageType type) {
+        if (grid != null) {
+            return (getGarbageType(index) == type) ? grid.getGarbageAmount(index) : 0;
+        }
+        int cols = getCols();
+        return ((BuildingCell) map[index / cols][index % cols]).getGarbageAmount(type);
+    }
+
+    /**
+     * Picks up found garbage from a building (see BuildingCell.pickup()).
+     * @param index flat index of a building.
+     * @param type garbage type to pick up.
+     * @param maxUnits maximum units to pick up.
+     * @return units picked up.
+     */
+    public int pickup(int index, GarbageType type, int maxUnits) {
+        if (grid != null) {
+            return grid.pickup(index, type, maxUnits);
+        }
+        int cols = getCols();
+        return ((BuildingCell) map[index / cols][index % cols]).pickup(type, maxUnits);
+    }
+
+    /**
+     * Sets the garbage left in a building, as recorded in a MapDelta (see
+     * SettableBuildingCell.updateGarbage()).
+     * @param index flat index of a building.
+     * @param type garbage type.
+     * @param amount units left; 0 empties the building.
+     */
+    public void updateGarbage(int index, GarbageType type, int amount) {
+        if (grid != null) {
+            grid.setGarbage(index, type, amount, amount > 0 && grid.isFound(index));
+        } else {
+            int cols = getCols();
+            ((SettableBuildingCell) map[index / cols][index % cols]).updateGarbage(type, amount);
+        }
+    }
+
+    /**
+     * Gets the prices of a recycling center.
+     * @param index flat cell index.
+     * @return prices of recycling plastic, glass and paper; null if the cell
+     * is not a recycling center.
+     */
+    public int[] getPrices(int index) {
+        if (grid != null) {
+            return grid.getPrices(index);
+        }
+        int cols = getCols();
+        Cell cell = map[index / cols][index % cols];
+        return (cell instanceof RecyclingCenterCell) ? ((RecyclingCenterCell) cell).getPrices() : null;
+    }
+
+    /**
+     * Moves agents between street cells in one pass, without any check: the
+     * movements must have been resolved beforehand (every origin has an
+     * agent, and every destination is a street cell that is empty or left
+     * by another of the movements). The agent cells and the path planner
+     * are kept up to date; on a grid, the views of the agent list are only
+     * made again when it is asked for (see getAgentList()).
+     * 
+     * @param from flat index of the origin of every movement.
+     * @param to flat index of the destination of every movement.
+     * @param count number of movements.
+     */
+    public void commitMoves(int[] from, int[] to, int count) {
+        if (count == 0) {
+            return;
+        }
+        // builds the agent cells and slots, if not yet
+        getAgentSlot(from[0]);
+        if (moving == null || moving.length < count) {
+            moving = new InfoAgent[Math.max(count, 16)];
+            movingSlots = new int[moving.length];
+        }
+        // all agents leave their cells before entering the new ones, so that
+        // chains and rotations can be committed in any order
+        int cols = getCols();
+        int[] slots = movingSlots;
+        for (int i = 0; i < count; i++) {
+            int cell = from[i];
+            slots[i] = agentSlots[cell];
+            if (grid != null) {
+                moving[i] = grid.getAgent(cell);
+                grid.clearAgent(cell);
+            } else {
+                StreetCell street = (StreetCell) map[cell / cols][cell % cols];
+                moving[i] = street.getAgent();
+                street.setAgent(null);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int cell = to[i];
+            if (grid != null) {
+                grid.setAgent(cell, moving[i]);
+            } else {
+                Cell destination = map[cell / cols][cell % cols];
+                ((StreetCell) destination).setAgent(moving[i]);
+                agentList.get(moving[i].getType()).set(slots[i], destination);
+            }
+            agentCells.get(moving[i].getType())[slots[i]] = cell;
+            agentSlots[cell] = slots[i];
+            moving[i] = null;
+        }
+        agentListStale = (grid != null);
+        if (planner != null) {
+            for (int i = 0; i < count; i++) {
+                planner.setOccupied(from[i], false);
+            }
+            for (int i = 0; i < count; i++) {
+                planner.setOccupied(to[i], true);
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of a simulation step on this city map. The whole
+     * delta is checked before changing anything, so that the map is left
+     * untouched when it cannot be applied.
+     * 
+     * @param delta changes to apply.
+     * @throws IllegalStateException if the delta does not follow the current
+     * version or it is malformed; a new snapshot has to be requested then.
+     */
+    public void applyDelta(MapDelta delta) {
+        checkDelta(delta);
+        // the movements were resolved by the System agent, so they are
+        // committed like there, through the slot table
+        int moves = delta.getMoveCount();
+        int[] from = new int[moves];
+        int[] to = new int[moves];
+        for (int i = 0; i < moves; i++) {
+            from[i] = delta.getMoveFrom(i);
+            to[i] = delta.getMoveTo(i);
+        }
+        commitMoves(from, to, moves);
+        for (int i = 0; i < delta.getGarbageCount(); i++) {
+            updateGarbage(delta.getGarbageCell(i), delta.getGarbageType(i), delta.getGarbageAmount(i));
+        }
+        for (int i = 0; i < delta.getDetectedCount(); i++) {
+            detectGarbage(delta.getDetected(i));
+        }
+        version = delta.getVersion();
+    }
+
+    /**
+     * Checks that a delta can be applied on this city map: it follows the
+     * current version, every movement goes from an agent to a street cell
+     * that is empty or left by another movement, and every garbage change
+     * and detection refers to a building.
+     *
+     * @param delta changes to check.
+     * @throws IllegalStateException if the delta cannot be applied.
+     */
+    private void checkDelta(MapDelta delta) {
+        if (delta.getBaseVersion() != version) {
+            throw new IllegalStateException("Delta for version " + delta.getBaseVersion() + " cannot be applied on version " + version);
+        }
+        int cells = getRows() * getCols();
+        if (leaving == null) {
+            leaving = new BitSet(cells);
+            entering = new BitSet(cells);
+        }
+        int moves = delta.getMoveCount();
+        try {
+            for (int i = 0; i < moves; i++) {
+                int from = delta.getMoveFrom(i);
+                int to = delta.getMoveTo(i);
+                if (from < 0 || from >= cells || to < 0 || to >= cells
+                        || !isStreet(from) || !isStreet(to) || getAgent(from) == null
+                        || leaving.get(from) || entering.get(to)) {
+                    throw new IllegalStateException("Invalid movement on version " + version + ": " + from + " -> " + to);
+                }
+                leaving.set(from);
+                entering.set(to);
+            }
+            for (int i = 0; i < moves; i++) {
+                int to = delta.getMoveTo(i);
+                if (getAgent(to) != null && !leaving.get(to)) {
+                    throw new IllegalStateException("Invalid movement on version " + version + ": " + delta.getMoveFrom(i) + " -> " + to + " is occupied");
+                }
+            }
+        } finally {
+            leaving.clear();
+            entering.clear();
+        }
+        for (int i = 0; i < delta.getGarbageCount(); i++) {
+            int cell = delta.getGarbageCell(i);
+            GarbageType type;
+            try {
+                type = delta.getGarbageType(i);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                type = null;
+            }
+            int amount = delta.getGarbageAmount(i);
+            if (cell < 0 || cell >= cells || !isBuilding(cell) || amount < 0 || (amount > 0 && type == null)) {
+                throw new IllegalStateException("Invalid garbage change on version " + version + ": " + cell + " " + type + " " + amount);
+            }
+        }
+        for (int i = 0; i < delta.getDetectedCount(); i++) {
+            int cell = delta.getDetected(i);
+            if (cell < 0 || cell >= cells || !isBuilding(cell)) {
+                throw new IllegalStateException("Invalid detection on version " + version + ": " + cell);
+            }
+        }
     }
     
+    /**
+     * Human readable summary of the game settings.
+     * @return multi line summary.
+     */
+    @Override
     public String toString() {
-        //TODO: show a human readable summary of the game settings.
-        return "Game settings";
+        StringBuilder text = new StringBuilder();
+        text.append(title).append('\n');
+        text.append("Map: ").append(getRows()).append('x').append(getCols())
+                .append(", ").append(simulationSteps).append(" steps, seed ").append(seed).append('\n');
+        text.append("New garbage: ").append(newGarbageProbability).append("% of the steps, up to ")
+                .append(maxNumberBuildingWithNewGargabe).append(" buildings with up to ")
+                .append(maxAmountOfNewGargabe).append(" units\n");
+        text.append("Harvesters capacity: ").append(harvestersCapacity).append('\n');
+        text.append("Recycling centers (plastic, glass, paper prices): ")
+                .append(recyclingCenterPrices.length);
+        for (int i = 0; i < Math.min(recyclingCenterPrices.length, MAX_LISTED); i++) {
+            text.append(' ').append(Arrays.toString(recyclingCenterPrices[i]));
+        }
+        if (recyclingCenterPrices.length > MAX_LISTED) {
+            text.append(" ...");
+        }
+        text.append('\n').append(getShortString());
+        return text.toString();
     }
-    
+
+    /**
+     * Summary of the agents of the game: number and positions of the agents
+     * of every type.
+     * @return one line per agent type.
+     */
     public String getShortString() {
-        //TODO: list of agents
-        return "Game settings: agent related string";
+        StringBuilder text = new StringBuilder("Agents:");
+        if (agentList == null) {
+            return text.append(" none\n").toString();
+        }
+        text.append('\n');
+        for (Map.Entry<AgentType, List<Cell>> entry : getAgentList().entrySet()) {
+            List<Cell> cells = entry.getValue();
+            text.append("  ").append(entry.getKey()).append(": ").append(cells.size());
+            for (int i = 0; i < Math.min(cells.size(), MAX_LISTED); i++) {
+                text.append(" (").append(cells.get(i).getRow()).append(',').append(cells.get(i).getCol()).append(')');
+            }
+            if (cells.size() > MAX_LISTED) {
+                text.append(" ...");
+            }
+            text.append('\n');
+        }
+        return text.toString();
     }
     
 }
@@ -0,0 +1,214 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Garbage tasks of a type waiting to be auctioned, as kept by the type
+ * coordinators and the in-process kernel. A building has at most one task
+ * waiting: a newer announcement replaces it, and a task with no garbage
+ * (see GarbageTaskBatch.fromDelta()) withdraws it, also from the auction
+ * running, as the building was emptied meanwhile.
+ *
+ * The backlog is bounded: tasks waiting for more than MAX_AGE steps are
+ * dropped by expire(), and the oldest ones when more than MAX_PENDING are
+ * waiting. Their garbage stays in the building, detected, until a harvester
+ * picks up part of it and the rest is announced again.
+ */
+public class GarbageBacklog {
+
+    /**
+     * Maximum number of tasks waiting.
+     */
+    public static final int MAX_PENDING = 1024;
+    /**
+     * Steps a task may wait before it is dropped.
+     */
+    public static final int MAX_AGE = 200;
+
+    /**
+     * A waiting task and the step it was first announced in.
+     */
+    private static final class Entry {
+
+        private final GarbageTask task;
+        private final int step;
+
+        private Entry(GarbageTask task, int step) {
+            this.task = task;
+            this.step = step;
+        }
+
+        private boolean isAt(GarbageTask other) {
+            return task.getRow() == other.getRow() && task.getCol() == other.getCol();
+        }
+    }
+
+    /**
+     * Waiting tasks, oldest first.
+     */
+    private final List<Entry> waiting = new ArrayList<>();
+    /**
+     * Tasks taken for the auction running.
+     */
+    private final List<Entry> auctioned = new ArrayList<>();
+    /**
+     * True when tasks arrived since the last auction was taken.
+     */
+    private boolean newTasks = false;
+    /**
+     * Number of tasks dropped so far.
+     */
+    private long dropped = 0;
+
+    /**
+     * Adds the tasks of a batch: new ones are queued, and the ones without
+     * garbage withdraw the task of their building.
+     *
+     * @param batch announced tasks.
+     */
+    public void add(GarbageTaskBatch batch) {
+        for (GarbageTask task : batch.getTasks()) {
+            remove(waiting, task);
+            remove(auctioned, task);
+            if (task.getAmount() > 0) {
+                waiting.add(new Entry(task, batch.getStep()));
+                newTasks = true;
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Drops the tasks announced more than MAX_AGE steps ago.
+     *
+     * @param step current step.
+     * @return number of tasks dropped.
+     */
+    public int expire(int step) {
+        int count = 0;
+        for (Iterator<Entry> it = waiting.iterator(); it.hasNext();) {
+            if (step - it.next().step > MAX_AGE) {
+                it.remove();
+                count++;
+            }
+        }
+        dropped += count;
+        return count;
+    }
+
+    /**
+     * Takes all the waiting tasks for an auction.
+     *
+     * @param step step of the auction.
+     * @return batch with the tasks, oldest first.
+     */
+    public GarbageTaskBatch take(int step) {
+        GarbageTaskBatch batch = new GarbageTaskBatch(step);
+        for (Entry entry : waiting) {
+            batch.add(entry.task);
+        }
+        auctioned.clear();
+        auctioned.addAll(waiting);
+        waiting.clear();
+        newTasks = false;
+        return batch;
+    }
+
+    /**
+     * Returns the tasks not awarded in the auction, ahead of the ones that
+     * arrived meanwhile and in the order they were taken, whatever the
+     * order they are given in. Tasks withdrawn or announced again meanwhile
+     * are left out.
+     *
+     * @param unassigned tasks of the last batch taken not awarded.
+     */
+    public void putBack(List<GarbageTask> unassigned) {
+        List<Entry> back = new ArrayList<>();
+        for (Entry entry : auctioned) {
+            if (!contains(waiting, entry.task) && isAnyAt(unassigned, entry)) {
+                back.add(entry);
+            }
+        }
+        auctioned.clear();
+        waiting.addAll(0, back);
+        trim();
+    }
+
+    /**
+     * Tells whether tasks arrived since the last auction was taken.
+     *
+     * @return true if there are new tasks.
+     */
+    public boolean hasNewTasks() {
+        return newTasks;
+    }
+
+    public boolean isEmpty() {
+        return waiting.isEmpty();
+    }
+
+    public int size() {
+        return waiting.size();
+    }
+
+    /**
+     * Number of tasks dropped so far, as expired or beyond MAX_PENDING.
+     *
+     * @return dropped tasks.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Drops the oldest tasks beyond MAX_PENDING.
+     */
+    private void trim() {
+        int excess = waiting.size() - MAX_PENDING;
+        if (excess > 0) {
+            waiting.subList(0, excess).clear();
+            dropped += excess;
+        }
+    }
+
+    private static void remove(List<Entry> entries, GarbageTask task) {
+        entries.removeIf(entry -> entry.isAt(task));
+    }
+
+    private static boolean isAnyAt(List<GarbageTask> tasks, Entry entry) {
+        for (GarbageTask task : tasks) {
+            if (entry.isAt(task)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(List<Entry> entries, GarbageTask task) {
+        for (Entry entry : entries) {
+            if (entry.isAt(task)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
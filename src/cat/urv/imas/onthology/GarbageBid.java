@@ -0,0 +1,74 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+/**
+ * Proposal of a harvester for a batch of garbage tasks: its estimated cost
+ * for each task of the call for proposals, in the same order, and the units
+ * of garbage it can still take. The number of the harvester breaks the ties
+ * between equal offers (see GarbageTaskBatch.award()).
+ */
+public class GarbageBid implements java.io.Serializable {
+
+    /**
+     * Cost value of the tasks the harvester cannot do.
+     */
+    public static final int NO_BID = -1;
+
+    /**
+     * Number of the harvester, in creation order; -1 if unknown.
+     */
+    private final int bidder;
+    /**
+     * Remaining capacity of the harvester, in units of garbage.
+     */
+    private final int capacity;
+    /**
+     * Estimated travel cost of every task, or NO_BID.
+     */
+    private final int[] costs;
+
+    /**
+     * Builds a bid.
+     *
+     * @param bidder number of the harvester; -1 if unknown.
+     * @param capacity remaining capacity of the harvester.
+     * @param costs estimated cost of every task of the batch.
+     */
+    public GarbageBid(int bidder, int capacity, int[] costs) {
+        this.bidder = bidder;
+        this.capacity = capacity;
+        this.costs = costs;
+    }
+
+    public int getBidder() {
+        return bidder;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getCost(int task) {
+        return costs[task];
+    }
+
+    public int size() {
+        return costs.length;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+/**
+ * A building with detected garbage to be harvested, as announced by the
+ * harvester coordinators.
+ */
+public class GarbageTask implements java.io.Serializable {
+
+    /**
+     * Row of the building, zero based.
+     */
+    private final int row;
+    /**
+     * Column of the building, zero based.
+     */
+    private final int col;
+    /**
+     * Type of garbage in the building.
+     */
+    private final GarbageType type;
+    /**
+     * Units of garbage in the building.
+     */
+    private final int amount;
+
+    /**
+     * Builds a task.
+     *
+     * @param row row of the building.
+     * @param col column of the building.
+     * @param type type of garbage.
+     * @param amount units of garbage.
+     */
+    public GarbageTask(int row, int col, GarbageType type, int amount) {
+        this.row = row;
+        this.col = col;
+        this.type = type;
+        this.amount = amount;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    public GarbageType getType() {
+        return type;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "(garbage-task (r " + row + ")(c " + col + ") " + type.getShortString() + " " + amount + ")";
+    }
+}
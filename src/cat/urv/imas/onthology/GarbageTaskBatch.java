@@ -0,0 +1,165 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Garbage tasks announced together. All garbage detected during a simulation
+ * step travels down the harvester coordinators as a single batch, and it is
+ * allocated to the harvesters with a single contract-net round per type of
+ * garbage.
+ */
+public class GarbageTaskBatch implements java.io.Serializable {
+
+    /**
+     * Simulation step (game settings version) of the batch.
+     */
+    private final int step;
+    /**
+     * Tasks of the batch.
+     */
+    private final List<GarbageTask> tasks;
+
+    /**
+     * Builds an empty batch.
+     *
+     * @param step simulation step of the batch.
+     */
+    public GarbageTaskBatch(int step) {
+        this.step = step;
+        this.tasks = new ArrayList<>();
+    }
+
+    /**
+     * Builds the batch with the garbage of the buildings detected during a
+     * step: one task per building and type of garbage.
+     *
+     * @param game game settings, with the step applied.
+     * @param delta changes of the step.
+     * @return tasks of the detected garbage; empty when nothing was detected.
+     */
+    public static GarbageTaskBatch fromDetected(GameSettings game, MapDelta delta) {
+        GarbageTaskBatch batch = new GarbageTaskBatch(delta.getVersion());
+        int cols = game.getCols();
+        for (int i = 0; i < delta.getDetectedCount(); i++) {
+            int cell = delta.getDetected(i);
+            GarbageType type = game.getGarbageType(cell);
+            if (type != null) {
+                batch.add(new GarbageTask(cell / cols, cell % cols, type, game.getGarbageAmount(cell, type)));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Builds the batch with the garbage of the buildings detected during a
+     * step, as fromDetected(), and a task without garbage for every
+     * building emptied during the step, to withdraw the task still waiting
+     * for it, if any (see GarbageBacklog).
+     *
+     * @param game game settings, with the step applied.
+     * @param delta changes of the step.
+     * @return tasks of the detected garbage and withdrawals; empty when
+     * there are none.
+     */
+    public static GarbageTaskBatch fromDelta(GameSettings game, MapDelta delta) {
+        GarbageTaskBatch batch = fromDetected(game, delta);
+        int cols = game.getCols();
+        for (int i = 0; i < delta.getGarbageCount(); i++) {
+            GarbageType type = delta.getGarbageType(i);
+            if (delta.getGarbageAmount(i) == 0 && type != null) {
+                int cell = delta.getGarbageCell(i);
+                batch.add(new GarbageTask(cell / cols, cell % cols, type, 0));
+            }
+        }
+        return batch;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public List<GarbageTask> getTasks() {
+        return tasks;
+    }
+
+    public void add(GarbageTask task) {
+        tasks.add(task);
+    }
+
+    public boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Awards the tasks of this batch greedily by increasing cost: every task
+     * goes to the cheapest bidder that can take all its garbage or, failing
+     * that, to the cheapest bidder with some capacity left. Equal offers go
+     * to the lowest bidder number (see GarbageBid.getBidder()), so the
+     * result does not depend on the order the bids arrived in.
+     *
+     * @param bids bids for all the tasks of this batch.
+     * @return index of the winning bid of every task, or -1 when no bidder
+     * can take it.
+     */
+    public int[] award(List<GarbageBid> bids) {
+        // (cost, task, bid) of every offer, cheapest first
+        List<int[]> offers = new ArrayList<>();
+        for (int b = 0; b < bids.size(); b++) {
+            for (int t = 0; t < tasks.size(); t++) {
+                if (bids.get(b).getCost(t) != GarbageBid.NO_BID) {
+                    offers.add(new int[]{bids.get(b).getCost(t), t, b});
+                }
+            }
+        }
+        offers.sort((x, y) -> (x[0] != y[0]) ? Integer.compare(x[0], y[0])
+                : (x[1] != y[1]) ? Integer.compare(x[1], y[1])
+                : Integer.compare(bids.get(x[2]).getBidder(), bids.get(y[2]).getBidder()));
+
+        int[] winner = new int[tasks.size()];
+        Arrays.fill(winner, -1);
+        int[] capacity = new int[bids.size()];
+        for (int b = 0; b < bids.size(); b++) {
+            capacity[b] = bids.get(b).getCapacity();
+        }
+        for (boolean whole : new boolean[]{true, false}) {
+            for (int[] offer : offers) {
+                int t = offer[1];
+                int b = offer[2];
+                int amount = tasks.get(t).getAmount();
+                if (winner[t] < 0 && capacity[b] > 0 && (!whole || capacity[b] >= amount)) {
+                    winner[t] = b;
+                    capacity[b] = Math.max(0, capacity[b] - amount);
+                }
+            }
+        }
+        return winner;
+    }
+
+    @Override
+    public String toString() {
+        return "(garbage-tasks (step " + step + ") " + tasks + ")";
+    }
+}
@@ -0,0 +1,742 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.map.BuildingCell;
+import cat.urv.imas.map.Cell;
+import cat.urv.imas.map.CityGrid;
+import cat.urv.imas.map.RecyclingCenterCell;
+import cat.urv.imas.map.SettableBuildingCell;
+import cat.urv.imas.map.StreetCell;
+import jade.content.lang.Codec.CodecException;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary content language for the objects of this onthology:
+ * game settings (including the city map), map deltas, agent information and
+ * the messages of the garbage auctions and of the step barrier.
+ * 
+ * Every content starts with the format version and a tag telling the kind of
+ * object. Integers are written as variable-length quantities, so that small
+ * values (most of them in the city) take a single byte, and cells are
+ * written as a single header byte plus only the data they actually hold.
+ * 
+ * Messages in this language carry NAME as their language, and their
+ * content is set and read with fillContent() and extractContent(). It is
+ * not registered in the content manager of the agents: the objects of this
+ * onthology are not expressed as JADE abstract descriptors. An instance
+ * keeps an internal buffer that is reused among encodings, so it must not
+ * be shared among threads.
+ */
+public class ImasCodec {
+
+    /**
+     * Name of this content language.
+     */
+    public static final String NAME = "imas-binary";
+    /**
+     * Version of the binary format. Contents with another version are
+     * rejected.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    /* Tags for the kind of content. */
+    private static final int TAG_GAME_SETTINGS = 1;
+    private static final int TAG_MAP_DELTA = 2;
+    private static final int TAG_INFO_AGENT = 3;
+    private static final int TAG_GARBAGE_TASKS = 4;
+    private static final int TAG_GARBAGE_BID = 5;
+    private static final int TAG_STEP_REPORT = 6;
+
+    /* Cell header: bits 0-1 cell type, bit 2 cell content, bit 3 garbage found. */
+    private static final int CELL_STREET = 0;
+    private static final int CELL_BUILDING = 1;
+    private static final int CELL_RECYCLING_CENTER = 2;
+    private static final int CELL_TYPE_MASK = 3;
+    private static final int CELL_HAS_CONTENT = 4;
+    private static final int CELL_FOUND = 8;
+
+    /**
+     * Reusable output buffer.
+     */
+    private byte[] buffer = new byte[1024];
+    /**
+     * Number of bytes written into buffer.
+     */
+    private int size;
+    /**
+     * Input being decoded.
+     */
+    private byte[] input;
+    /**
+     * Position of the next byte to read from input.
+     */
+    private int position;
+
+    /* ***************** Messaging API ****************************************/
+
+    /**
+     * Sets the given content into the message, using this language.
+     *
+     * @param msg message to fill in.
+     * @param content GameSettings, MapDelta, InfoAgent, GarbageTaskBatch,
+     * GarbageBid or StepReport.
+     */
+    public void fillContent(ACLMessage msg, Object content) {
+        msg.setLanguage(NAME);
+        msg.setByteSequenceContent(encodeContent(content));
+    }
+
+    /**
+     * Gets the content of the message. Messages in other languages are
+     * understood as Java serialized objects.
+     *
+     * @param msg message to read.
+     * @return the decoded object.
+     * @throws Exception if the content cannot be decoded.
+     */
+    public Object extractContent(ACLMessage msg) throws Exception {
+        if (NAME.equals(msg.getLanguage())) {
+            return decodeContent(msg.getByteSequenceContent());
+        }
+        return msg.getContentObject();
+    }
+
+    /* ***************** Encoding *********************************************/
+
+    /**
+     * Encodes the given object.
+     *
+     * @param content GameSettings, MapDelta, InfoAgent, GarbageTaskBatch,
+     * GarbageBid or StepReport.
+     * @return the binary representation of the content.
+     */
+    public byte[] encodeContent(Object content) {
+        size = 0;
+        writeVarInt(FORMAT_VERSION);
+        if (content instanceof GameSettings) {
+            writeVarInt(TAG_GAME_SETTINGS);
+            writeGameSettings((GameSettings) content);
+        } else if (content instanceof MapDelta) {
+            writeVarInt(TAG_MAP_DELTA);
+            writeMapDelta((MapDelta) content);
+        } else if (content instanceof InfoAgent) {
+            writeVarInt(TAG_INFO_AGENT);
+            writeInfoAgent((InfoAgent) content);
+        } else if (content instanceof GarbageTaskBatch) {
+            writeVarInt(TAG_GARBAGE_TASKS);
+            writeGarbageTasks((GarbageTaskBatch) content);
+        } else if (content instanceof GarbageBid) {
+            writeVarInt(TAG_GARBAGE_BID);
+            writeGarbageBid((GarbageBid) content);
+        } else if (content instanceof StepReport) {
+            writeVarInt(TAG_STEP_REPORT);
+            writeStepReport((StepReport) content);
+        } else {
+            throw new IllegalArgumentException("Content not supported by " + NAME + ": " + content);
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void writeGameSettings(GameSettings game) {
+        writeInt(Float.floatToIntBits(game.getSeed()));
+        writeVarInt(game.getSimulationSteps());
+        writeVarInt(game.newGarbageProbability);
+        writeVarInt(game.maxNumberBuildingWithNewGargabe);
+        writeVarInt(game.maxAmountOfNewGargabe);
+        writeVarInt(game.harvestersCapacity);
+        writeString(game.title);
+        writeVarInt(game.version);
+
+        int[][] prices = game.getRecyclingCenterPrices();
+        writeVarInt(prices.length);
+        for (int[] price : prices) {
+            writePrices(price);
+        }
+
+        GarbageType[][] allowed = game.allowedGarbageTypePerHarvester;
+        writeVarInt((allowed == null) ? 0 : allowed.length);
+        if (allowed != null) {
+            for (GarbageType[] types : allowed) {
+                writeGarbageTypes(types);
+            }
+        }
+
+        boolean hasMap = game.map != null || game.grid != null;
+        int rows = (hasMap) ? game.getRows() : 0;
+        int cols = (hasMap) ? game.getCols() : 0;
+        writeVarInt(rows);
+        writeVarInt(cols);
+        CityGrid grid = game.grid;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (grid != null) {
+                    writeCell(grid, grid.index(r, c));
+                } else {
+                    writeCell(game.map[r][c]);
+                }
+            }
+        }
+
+        Map<AgentType, List<Cell>> agents = game.getAgentList();
+        writeVarInt((agents == null) ? 0 : agents.size());
+        if (agents != null) {
+            for (Map.Entry<AgentType, List<Cell>> entry : agents.entrySet()) {
+                writeVarInt(entry.getKey().ordinal());
+                writeVarInt(entry.getValue().size());
+                for (Cell cell : entry.getValue()) {
+                    writeVarInt(cell.getRow() * cols + cell.getCol());
+                }
+            }
+        }
+    }
+
+    private void writeCell(Cell cell) {
+        switch (cell.getCellType()) {
+            case STREET:
+                StreetCell street = (StreetCell) cell;
+                if (street.isThereAnAgent()) {
+                    writeByte(CELL_STREET | CELL_HAS_CONTENT);
+                    writeInfoAgent(street.getAgent());
+                } else {
+                    writeByte(CELL_STREET);
+                }
+                break;
+            case BUILDING:
+                BuildingCell building = (BuildingCell) cell;
+                boolean real = (building instanceof SettableBuildingCell);
+                GarbageType type = (real)
+                        ? ((SettableBuildingCell) building).getRealGarbageType()
+                        : building.getGarbageType();
+                if (type == null) {
+                    writeByte(CELL_BUILDING);
+                } else {
+                    // a single type of garbage at a time
+                    writeByte(CELL_BUILDING | CELL_HAS_CONTENT | (building.isFound() ? CELL_FOUND : 0));
+                    writeVarInt(type.ordinal());
+                    writeVarInt((real)
+                            ? ((SettableBuildingCell) building).getRealGarbageAmount(type)
+                            : building.getGarbageAmount(type));
+                }
+                break;
+            case RECYCLING_CENTER:
+                writeByte(CELL_RECYCLING_CENTER);
+                writePrices(((RecyclingCenterCell) cell).getPrices());
+                break;
+        }
+    }
+
+    /**
+     * Writes a cell of a grid, in the same format as writeCell(Cell) but
+     * without creating cell views.
+     *
+     * @param grid grid keeping the city map.
+     * @param index flat cell index.
+     */
+    private void writeCell(CityGrid grid, int index) {
+        switch (grid.getType(index)) {
+            case CityGrid.STREET:
+                InfoAgent agent = grid.getAgent(index);
+                if (agent != null) {
+                    writeByte(CELL_STREET | CELL_HAS_CONTENT);
+                    writeInfoAgent(agent);
+                } else {
+                    writeByte(CELL_STREET);
+                }
+                break;
+            case CityGrid.BUILDING:
+                GarbageType type = grid.getGarbageType(index);
+                if (type == null) {
+                    writeByte(CELL_BUILDING);
+                } else {
+                    writeByte(CELL_BUILDING | CELL_HAS_CONTENT | (grid.isFound(index) ? CELL_FOUND : 0));
+                    writeVarInt(type.ordinal());
+                    writeVarInt(grid.getGarbageAmount(index));
+                }
+                break;
+            case CityGrid.RECYCLING_CENTER:
+                writeByte(CELL_RECYCLING_CENTER);
+                writePrices(grid.getPrices(index));
+                break;
+        }
+    }
+
+    private void writeInfoAgent(InfoAgent info) {
+        writeVarInt(info.getType().ordinal());
+        AID aid = info.getAID();
+        writeString((aid == null) ? "" : aid.getName());
+        if (aid != null) {
+            String[] addresses = aid.getAddressesArray();
+            writeVarInt(addresses.length);
+            for (String address : addresses) {
+                writeString(address);
+            }
+        }
+        if (info instanceof HarvesterInfoAgent) {
+            HarvesterInfoAgent harvester = (HarvesterInfoAgent) info;
+            writeVarInt(harvester.getCapacity() + 1);
+            writeGarbageTypes(harvester.getAllowedType());
+        } else {
+            writeVarInt(0);
+        }
+    }
+
+    private void writeMapDelta(MapDelta delta) {
+        writeVarInt(delta.getBaseVersion());
+        writeVarInt(delta.getMoveCount());
+        for (int i = 0; i < delta.getMoveCount(); i++) {
+            writeVarInt(delta.getMoveFrom(i));
+            writeVarInt(delta.getMoveTo(i));
+        }
+        writeVarInt(delta.getGarbageCount());
+        for (int i = 0; i < delta.getGarbageCount(); i++) {
+            GarbageType type = delta.getGarbageType(i);
+            writeVarInt(delta.getGarbageCell(i));
+            writeVarInt((type == null) ? 0 : type.ordinal() + 1);
+            writeVarInt(delta.getGarbageAmount(i));
+        }
+        writeVarInt(delta.getDetectedCount());
+        for (int i = 0; i < delta.getDetectedCount(); i++) {
+            writeVarInt(delta.getDetected(i));
+        }
+    }
+
+    private void writeGarbageTasks(GarbageTaskBatch batch) {
+        writeVarInt(batch.getStep());
+        writeVarInt(batch.size());
+        for (GarbageTask task : batch.getTasks()) {
+            writeVarInt(task.getRow());
+            writeVarInt(task.getCol());
+            writeVarInt(task.getType().ordinal());
+            writeVarInt(task.getAmount());
+        }
+    }
+
+    private void writeGarbageBid(GarbageBid bid) {
+        // unknown bidders (-1) are written as 0
+        writeVarInt(bid.getBidder() + 1);
+        writeVarInt(bid.getCapacity());
+        writeVarInt(bid.size());
+        for (int i = 0; i < bid.size(); i++) {
+            // NO_BID (-1) is written as 0
+            writeVarInt(bid.getCost(i) + 1);
+        }
+    }
+
+    private void writeStepReport(StepReport report) {
+        writeVarInt(report.getStep());
+        writeVarInt(report.getAgents());
+        writeVarInt(report.getHarvesters());
+        writeVarInt(report.getBusyHarvesters());
+        writeVarInt(report.getTasks());
+        writeVarInt(report.getRemainingCapacity());
+        writeVarInt(report.getMessages());
+        writeVarInt(report.getAwarded());
+        writeVarInt(report.getMoveCount());
+        for (int i = 0; i < report.getMoveCount(); i++) {
+            writeVarInt(report.getMoveFrom(i));
+            writeVarInt(report.getMoveTo(i));
+        }
+        writeVarInt(report.getActionCount());
+        for (int i = 0; i < report.getActionCount(); i++) {
+            writeVarInt(report.isPickup(i) ? 0 : 1);
+            writeVarInt(report.getActionHarvester(i));
+            writeVarInt(report.getActionTarget(i));
+            writeVarInt(report.getActionType(i).ordinal());
+            writeVarInt(report.getActionUnits(i));
+        }
+    }
+
+    private void writePrices(int[] prices) {
+        for (int j = 0; j < 3; j++) {
+            writeVarInt(prices[j]);
+        }
+    }
+
+    /**
+     * Writes a list of garbage types, keeping their order.
+     *
+     * @param types garbage types; null is written as an empty list.
+     */
+    private void writeGarbageTypes(GarbageType[] types) {
+        writeVarInt((types == null) ? 0 : types.length);
+        if (types != null) {
+            for (GarbageType type : types) {
+                writeVarInt(type.ordinal());
+            }
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Writes a non negative integer in 7-bit groups, least significant first.
+     *
+     * @param value value to write.
+     */
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            value = "";
+        }
+        byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /* ***************** Decoding *********************************************/
+
+    /**
+     * Decodes the given binary content.
+     *
+     * @param bytes content produced by encodeContent().
+     * @return a GameSettings, MapDelta, InfoAgent, GarbageTaskBatch,
+     * GarbageBid or StepReport.
+     * @throws CodecException when the content is not valid, whatever the
+     * way it is malformed.
+     */
+    public Object decodeContent(byte[] bytes) throws CodecException {
+        input = bytes;
+        position = 0;
+        try {
+            int format = readVarInt();
+            if (format != FORMAT_VERSION) {
+                throw new CodecException("Unsupported " + NAME + " format version: " + format);
+            }
+            int tag = readVarInt();
+            switch (tag) {
+                case TAG_GAME_SETTINGS:
+                    return readGameSettings();
+                case TAG_MAP_DELTA:
+                    return readMapDelta();
+                case TAG_INFO_AGENT:
+                    return readInfoAgent();
+                case TAG_GARBAGE_TASKS:
+                    return readGarbageTasks();
+                case TAG_GARBAGE_BID:
+                    return readGarbageBid();
+                case TAG_STEP_REPORT:
+                    return readStepReport();
+                default:
+                    throw new CodecException("Unknown " + NAME + " content tag: " + tag);
+            }
+        } catch (RuntimeException e) {
+            if (position > input.length) {
+                throw new CodecException("Truncated " + NAME + " content", e);
+            }
+            throw new CodecException("Malformed " + NAME + " content at byte " + position + ": " + e, e);
+        } finally {
+            input = null;
+        }
+    }
+
+    private GameSettings readGameSettings() throws CodecException {
+        GameSettings game = new GameSettings();
+        game.setSeed(Float.intBitsToFloat(readInt()));
+        game.setSimulationSteps(readVarInt());
+        game.newGarbageProbability = readVarInt();
+        game.maxNumberBuildingWithNewGargabe = readVarInt();
+        game.maxAmountOfNewGargabe = readVarInt();
+        game.harvestersCapacity = readVarInt();
+        game.title = readString();
+        game.version = readVarInt();
+
+        int[][] prices = new int[readCount()][];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = readPrices();
+        }
+        try {
+            game.setRecyclingCenterPrices(prices);
+        } catch (Error e) {
+            // the prices are checked by throwing an Error
+            throw new CodecException("Invalid " + NAME + " recycling center prices", e);
+        }
+
+        int harvesters = readCount();
+        game.allowedGarbageTypePerHarvester = new GarbageType[harvesters][];
+        for (int i = 0; i < harvesters; i++) {
+            game.allowedGarbageTypePerHarvester[i] = readGarbageTypes();
+        }
+
+        int rows = readCount();
+        int cols = readCount();
+        if ((long) rows * cols > input.length - position) {
+            // every cell takes a byte at least
+            throw new CodecException("Invalid " + NAME + " map size: " + rows + "x" + cols);
+        }
+        if (rows * cols >= GameSettings.GRID_THRESHOLD) {
+            game.grid = new CityGrid(rows, cols);
+            for (int i = 0; i < rows * cols; i++) {
+                readCell(game.grid, i);
+            }
+        } else {
+            game.map = new Cell[rows][cols];
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    game.map[r][c] = readCell(r, c);
+                }
+            }
+        }
+
+        int types = readVarInt();
+        game.agentList = new HashMap<>();
+        for (int i = 0; i < types; i++) {
+            AgentType type = AgentType.values()[readVarInt()];
+            int count = readCount();
+            List<Cell> cells = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                int index = readVarInt();
+                cells.add(game.get(index));
+            }
+            game.agentList.put(type, cells);
+        }
+        return game;
+    }
+
+    private Cell readCell(int row, int col) throws CodecException {
+        int header = readByte();
+        boolean content = (header & CELL_HAS_CONTENT) != 0;
+        switch (header & CELL_TYPE_MASK) {
+            case CELL_STREET:
+                StreetCell street = new StreetCell(row, col);
+                if (content) {
+                    try {
+                        street.addAgent(readInfoAgent());
+                    } catch (Exception e) {
+                        throw new CodecException("Invalid agent at (" + row + "," + col + ")", e);
+                    }
+                }
+                return street;
+            case CELL_BUILDING:
+                SettableBuildingCell building = new SettableBuildingCell(row, col);
+                if (content) {
+                    building.setGarbage(GarbageType.values()[readVarInt()], readVarInt());
+                    if ((header & CELL_FOUND) != 0) {
+                        building.detectGarbage();
+                    }
+                }
+                return building;
+            case CELL_RECYCLING_CENTER:
+                return new RecyclingCenterCell(row, col, readPrices());
+            default:
+                throw new CodecException("Unknown cell type at (" + row + "," + col + "): " + header);
+        }
+    }
+
+    /**
+     * Reads a cell directly into a grid.
+     *
+     * @param grid grid keeping the city map.
+     * @param index flat cell index.
+     * @throws CodecException if the cell is not valid.
+     */
+    private void readCell(CityGrid grid, int index) throws CodecException {
+        int header = readByte();
+        boolean content = (header & CELL_HAS_CONTENT) != 0;
+        switch (header & CELL_TYPE_MASK) {
+            case CELL_STREET:
+                if (content) {
+                    grid.setAgent(index, readInfoAgent());
+                }
+                break;
+            case CELL_BUILDING:
+                grid.setBuilding(index);
+                if (content) {
+                    grid.setGarbage(index, GarbageType.values()[readVarInt()], readVarInt(), (header & CELL_FOUND) != 0);
+                }
+                break;
+            case CELL_RECYCLING_CENTER:
+                grid.setRecyclingCenter(index, readPrices());
+                break;
+            default:
+                throw new CodecException("Unknown cell type at " + index + ": " + header);
+        }
+    }
+
+    private InfoAgent readInfoAgent() {
+        AgentType type = AgentType.values()[readVarInt()];
+        String name = readString();
+        AID aid = null;
+        if (!name.isEmpty()) {
+            aid = new AID(name, AID.ISGUID);
+            int addresses = readVarInt();
+            for (int i = 0; i < addresses; i++) {
+                aid.addAddresses(readString());
+            }
+        }
+        int capacity = readVarInt() - 1;
+        if (capacity < 0) {
+            return new InfoAgent(type, aid);
+        }
+        return new HarvesterInfoAgent(type, aid, readGarbageTypes(), capacity);
+    }
+
+    private MapDelta readMapDelta() {
+        MapDelta delta = new MapDelta(readVarInt());
+        int moves = readVarInt();
+        for (int i = 0; i < moves; i++) {
+            delta.addMove(readVarInt(), readVarInt());
+        }
+        int garbage = readVarInt();
+        for (int i = 0; i < garbage; i++) {
+            int cell = readVarInt();
+            int type = readVarInt();
+            delta.addGarbage(cell, (type == 0) ? null : GarbageType.values()[type - 1], readVarInt());
+        }
+        int detected = readVarInt();
+        for (int i = 0; i < detected; i++) {
+            delta.addDetected(readVarInt());
+        }
+        return delta;
+    }
+
+    private GarbageTaskBatch readGarbageTasks() {
+        GarbageType[] all = GarbageType.values();
+        GarbageTaskBatch batch = new GarbageTaskBatch(readVarInt());
+        int count = readVarInt();
+        for (int i = 0; i < count; i++) {
+            int row = readVarInt();
+            int col = readVarInt();
+            GarbageType type = all[readVarInt()];
+            batch.add(new GarbageTask(row, col, type, readVarInt()));
+        }
+        return batch;
+    }
+
+    private GarbageBid readGarbageBid() {
+        int bidder = readVarInt() - 1;
+        int capacity = readVarInt();
+        int[] costs = new int[readCount()];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = readVarInt() - 1;
+        }
+        return new GarbageBid(bidder, capacity, costs);
+    }
+
+    private StepReport readStepReport() {
+        StepReport report = new StepReport(readVarInt(), readVarInt(), readVarInt(),
+                readVarInt(), readVarInt(), readVarInt(), readVarInt(), readVarInt());
+        int moves = readVarInt();
+        for (int i = 0; i < moves; i++) {
+            report.addMove(readVarInt(), readVarInt());
+        }
+        GarbageType[] types = GarbageType.values();
+        int actions = readVarInt();
+        for (int i = 0; i < actions; i++) {
+            boolean pickup = readVarInt() == 0;
+            int harvester = readVarInt();
+            int target = readVarInt();
+            GarbageType type = types[readVarInt()];
+            int units = readVarInt();
+            if (pickup) {
+                report.addPickup(harvester, target, type, units);
+            } else {
+                report.addUnload(harvester, target, type, units);
+            }
+        }
+        return report;
+    }
+
+    private int[] readPrices() {
+        return new int[]{readVarInt(), readVarInt(), readVarInt()};
+    }
+
+    private GarbageType[] readGarbageTypes() {
+        GarbageType[] all = GarbageType.values();
+        GarbageType[] types = new GarbageType[readCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = all[readVarInt()];
+        }
+        return types;
+    }
+
+    private int readByte() {
+        return input[position++] & 0xFF;
+    }
+
+    private int readInt() {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private int readVarInt() {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Reads the number of items that follow, every one taking a byte at
+     * least, so that malformed contents cannot make huge arrays.
+     *
+     * @return number of items.
+     */
+    private int readCount() {
+        int count = readVarInt();
+        if (count < 0 || count > input.length - position) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        return count;
+    }
+
+    private String readString() {
+        int length = readCount();
+        String value = new String(input, position, length, java.nio.charset.StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+}
@@ -20,6 +20,11 @@ public class InfoAgent implements java.io.Serializable {
      * AID for the related agent.
      */
     private AID aid;
+    /**
+     * Id of this agent in the CityGrid it is placed on, so that the grid
+     * finds it without any lookup; -1 until it is placed on a grid.
+     */
+    private int gridId = -1;
 
     /**
      * Building new instance with only the type.
@@ -48,8 +53,10 @@ public class InfoAgent implements java.io.Serializable {
      */
     @Override
     public boolean equals(Object a) {
-        if (a instanceof InfoAgent) {
-            return ((InfoAgent) a).getAID().equals(this.aid);
+        if (a == this) {
+            return true;
+        } else if (a instanceof InfoAgent) {
+            return this.aid != null && this.aid.equals(((InfoAgent) a).getAID());
         } else {
             return false;
         }
@@ -84,6 +91,25 @@ public class InfoAgent implements java.io.Serializable {
         this.aid = aid;
     }
 
+    /**
+     * Gets the id of this agent in the CityGrid it is placed on.
+     *
+     * @return grid id, or -1 if it is not placed on a grid.
+     */
+    public int getGridId() {
+        return gridId;
+    }
+
+    /**
+     * Sets the id of this agent in the CityGrid it is placed on. It is set
+     * by the grid (see CityGrid.setAgent()).
+     *
+     * @param gridId grid id.
+     */
+    public void setGridId(int gridId) {
+        this.gridId = gridId;
+    }
+
     /**
      * Type of agent.
      *
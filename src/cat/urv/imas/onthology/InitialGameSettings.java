@@ -143,15 +143,32 @@ public class InitialGameSettings extends GameSettings {
         }
     }
 
+    /**
+     * Loads the settings from the given file, either an XML file (see
+     * GenerateGameSettings) or a compact one (see CompactSettings), and
+     * initializes the map. World snapshots (see WorldSnapshot) are opened
+     * as they are, with their map already initialized.
+     * 
+     * @param filename settings file; "game.settings" if null.
+     * @return the loaded settings.
+     */
     public static final GameSettings load(String filename) {
         if (filename == null) {
             filename = "game.settings";
         }
         try {
-            // create JAXBContext which will be used to update writer 		
-            JAXBContext context = JAXBContext.newInstance(InitialGameSettings.class);
-            Unmarshaller u = context.createUnmarshaller();
-            InitialGameSettings starter = (InitialGameSettings) u.unmarshal(new FileReader(filename));
+            if (WorldSnapshot.isSnapshot(filename)) {
+                return WorldSnapshot.open(filename);
+            }
+            InitialGameSettings starter;
+            if (CompactSettings.isCompact(filename)) {
+                starter = CompactSettings.read(filename);
+            } else {
+                // create JAXBContext which will be used to update writer 		
+                JAXBContext context = JAXBContext.newInstance(InitialGameSettings.class);
+                Unmarshaller u = context.createUnmarshaller();
+                starter = (InitialGameSettings) u.unmarshal(new FileReader(filename));
+            }
             starter.initMap();
             return starter;
         } catch (Exception e) {
@@ -162,13 +179,22 @@ public class InitialGameSettings extends GameSettings {
     }
 
     /**
-     * Initializes the cell map.
+     * Initializes the cell map. Large maps (see GRID_THRESHOLD) are directly
+     * built into a CityGrid, without creating a Cell object per cell.
+     * It is called by load(); settings built by code have to call it once
+     * all their fields are set.
      * @throws Exception if some error occurs when adding agents.
      */
-    private void initMap() throws Exception {
+    public void initMap() throws Exception {
         int rows = this.initialMap.length;
         int cols = this.initialMap[0].length;
-        map = new Cell[rows][cols];
+        if (rows * cols >= GRID_THRESHOLD) {
+            map = null;
+            grid = new CityGrid(rows, cols);
+        } else {
+            map = new Cell[rows][cols];
+            grid = null;
+        }
         int recyclingCenterIndex = 0;
         int allowedGarbageTypeIndex = 0;
         int[] recyclingCenterPrice;
@@ -176,40 +202,44 @@ public class InitialGameSettings extends GameSettings {
         this.agentList = new HashMap();
         
         int cell;
-        StreetCell c;
+        InfoAgent agent;
         for (int row = 0; row < rows; row++) {
             for (int col = 0; col < cols; col++) {
                 cell = initialMap[row][col];
                 switch (cell) {
                     case H: 
-                        c = new StreetCell(row, col);
                         if (allowedGarbageTypeIndex >= allowedGarbageTypePerHarvester.length) {
                             throw new Error(getClass().getCanonicalName() + " : There are more harvesters than settings for them.");
                         }
-                        c.addAgent(new HarvesterInfoAgent(AgentType.HARVESTER, allowedGarbageTypePerHarvester[allowedGarbageTypeIndex++], this.getHarvestersCapacity()));
-                        map[row][col] = c;
-                        addAgentToList(AgentType.HARVESTER, c);
+                        agent = new HarvesterInfoAgent(AgentType.HARVESTER, allowedGarbageTypePerHarvester[allowedGarbageTypeIndex++], this.getHarvestersCapacity());
+                        addAgentToList(AgentType.HARVESTER, putStreet(row, col, agent));
                         break;
                     case SC:
-                        c = new StreetCell(row, col);
-                        c.addAgent(new InfoAgent(AgentType.SCOUT));
-                        map[row][col] = c;
-                        addAgentToList(AgentType.SCOUT, c);
+                        agent = new InfoAgent(AgentType.SCOUT);
+                        addAgentToList(AgentType.SCOUT, putStreet(row, col, agent));
                         break;
                     case S:
-                        map[row][col] = new StreetCell(row, col);
+                        putStreet(row, col, null);
                         break;
                     case R:
                         if (recyclingCenterIndex >= recyclingCenterPrices.length) {
                             throw new Error(getClass().getCanonicalName() + " : More recycling centers in the map than given prices");
                         }
                         recyclingCenterPrice = recyclingCenterPrices[recyclingCenterIndex++];
-                        map[row][col] = new RecyclingCenterCell(row, col, recyclingCenterPrice);
+                        if (grid != null) {
+                            grid.setRecyclingCenter(grid.index(row, col), recyclingCenterPrice);
+                        } else {
+                            map[row][col] = new RecyclingCenterCell(row, col, recyclingCenterPrice);
+                        }
                         break;
                     default: //positive value means building.
                         // agents has to check for BuildingCell casts. 
                         // Only SystemAgent can access to the SettableBuildingCell
-                        map[row][col] = new SettableBuildingCell(row, col);
+                        if (grid != null) {
+                            grid.setBuilding(grid.index(row, col));
+                        } else {
+                            map[row][col] = new SettableBuildingCell(row, col);
+                        }
                         break;
                 }
             }
@@ -220,6 +250,35 @@ public class InitialGameSettings extends GameSettings {
         if (this.allowedGarbageTypePerHarvester.length != this.getAgentList().get(AgentType.HARVESTER).size()) {
             throw new Error(getClass().getCanonicalName() + " : There are less harvesters than settings.");
         }
+        // street distances are only computed once per loaded city
+        routing = null;
+        getRouting();
+    }
+    
+    /**
+     * Sets a street cell, with the given agent on it.
+     * 
+     * @param row row number.
+     * @param col column number.
+     * @param agent agent on the street, or null if none.
+     * @return the street cell.
+     * @throws Exception if some error occurs when adding the agent.
+     */
+    private Cell putStreet(int row, int col, InfoAgent agent) throws Exception {
+        if (grid != null) {
+            // grid cells are streets by default
+            if (agent != null) {
+                grid.setAgent(grid.index(row, col), agent);
+                return grid.cell(row, col);
+            }
+            return null;
+        }
+        StreetCell c = new StreetCell(row, col);
+        if (agent != null) {
+            c.addAgent(agent);
+        }
+        map[row][col] = c;
+        return c;
     }
     
     /**
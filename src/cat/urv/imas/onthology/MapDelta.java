@@ -0,0 +1,263 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import java.util.Arrays;
+
+/**
+ * Changes performed on the city during a single simulation step. Instead of
+ * sending the whole game settings every step, the System agent sends a
+ * snapshot once (see <code>MessageContent.GET_MAP</code>) and then one delta
+ * per step. Deltas are versioned: a delta can only be applied on game settings
+ * whose version is the delta's base version; otherwise a new snapshot has to
+ * be requested.
+ * 
+ * Cells are identified by their flat index <code>row * cols + col</code>, and
+ * all changes are kept in primitive arrays, so that its size is proportional
+ * to the amount of changes and not to the size of the map.
+ */
+public class MapDelta implements java.io.Serializable {
+
+    /**
+     * Initial capacity of the arrays, in number of changes.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Version of the game settings this delta applies on.
+     */
+    private int baseVersion;
+    /**
+     * Moved agents, as pairs of (from, to) cell indices.
+     */
+    private transient int[] moves = new int[INITIAL_CAPACITY * 2];
+    /**
+     * Number of moved agents.
+     */
+    private int moveCount = 0;
+    /**
+     * Garbage changes, as triples of (cell index, garbage type ordinal,
+     * current amount). An amount of 0 means the building has no more garbage.
+     */
+    private transient int[] garbage = new int[INITIAL_CAPACITY * 3];
+    /**
+     * Number of garbage changes.
+     */
+    private int garbageCount = 0;
+    /**
+     * Cell indices of the buildings whose garbage has been detected by scouts
+     * during this step.
+     */
+    private transient int[] detected = new int[INITIAL_CAPACITY];
+    /**
+     * Number of newly detected buildings.
+     */
+    private int detectedCount = 0;
+
+    /**
+     * Builds an empty delta.
+     *
+     * @param baseVersion version of the game settings this delta applies on.
+     */
+    public MapDelta(int baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    /**
+     * Empties this delta so that it can be reused for another step.
+     *
+     * @param baseVersion version of the game settings this delta applies on.
+     */
+    public void reset(int baseVersion) {
+        this.baseVersion = baseVersion;
+        moveCount = 0;
+        garbageCount = 0;
+        detectedCount = 0;
+    }
+
+    /**
+     * Gets the version of the game settings this delta applies on.
+     *
+     * @return base version.
+     */
+    public int getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * Gets the version of the game settings once this delta is applied.
+     *
+     * @return resulting version.
+     */
+    public int getVersion() {
+        return baseVersion + 1;
+    }
+
+    /**
+     * Tells whether nothing changed in the step.
+     *
+     * @return true if there is no change.
+     */
+    public boolean isEmpty() {
+        return moveCount == 0 && garbageCount == 0 && detectedCount == 0;
+    }
+
+    /* ***************** Recording changes ************************************/
+
+    /**
+     * Records the movement of an agent.
+     *
+     * @param from cell index where the agent was.
+     * @param to cell index where the agent is now.
+     */
+    public void addMove(int from, int to) {
+        if (moveCount * 2 == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[moveCount * 2] = from;
+        moves[moveCount * 2 + 1] = to;
+        moveCount++;
+    }
+
+    /**
+     * Records the current garbage of a building.
+     *
+     * @param cell cell index of the building.
+     * @param type type of garbage; when amount is 0, the type the building
+     * had (null if unknown).
+     * @param amount current amount of garbage; 0 when the building is empty.
+     */
+    public void addGarbage(int cell, GarbageType type, int amount) {
+        if (garbageCount * 3 == garbage.length) {
+            garbage = Arrays.copyOf(garbage, garbage.length * 2);
+        }
+        garbage[garbageCount * 3] = cell;
+        garbage[garbageCount * 3 + 1] = (type == null) ? -1 : type.ordinal();
+        garbage[garbageCount * 3 + 2] = amount;
+        garbageCount++;
+    }
+
+    /**
+     * Records a building whose garbage has been detected by scouts.
+     *
+     * @param cell cell index of the building.
+     */
+    public void addDetected(int cell) {
+        if (detectedCount == detected.length) {
+            detected = Arrays.copyOf(detected, detected.length * 2);
+        }
+        detected[detectedCount++] = cell;
+    }
+
+    /* ***************** Reading changes **************************************/
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getMoveFrom(int i) {
+        return moves[i * 2];
+    }
+
+    public int getMoveTo(int i) {
+        return moves[i * 2 + 1];
+    }
+
+    public int getGarbageCount() {
+        return garbageCount;
+    }
+
+    public int getGarbageCell(int i) {
+        return garbage[i * 3];
+    }
+
+    /**
+     * Gets the type of the i-th garbage change.
+     *
+     * @param i change number.
+     * @return the garbage type (for an emptied building, the type it had),
+     * or null if unknown.
+     */
+    public GarbageType getGarbageType(int i) {
+        int ordinal = garbage[i * 3 + 1];
+        return (ordinal < 0) ? null : GarbageType.values()[ordinal];
+    }
+
+    public int getGarbageAmount(int i) {
+        return garbage[i * 3 + 2];
+    }
+
+    public int getDetectedCount() {
+        return detectedCount;
+    }
+
+    public int getDetected(int i) {
+        return detected[i];
+    }
+
+    /* ***************** Serialization ****************************************/
+
+    /**
+     * Only the used part of the arrays is serialized.
+     *
+     * @param out stream to write to.
+     * @throws java.io.IOException on stream errors.
+     */
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+        out.defaultWriteObject();
+        writeInts(out, moves, moveCount * 2);
+        writeInts(out, garbage, garbageCount * 3);
+        writeInts(out, detected, detectedCount);
+    }
+
+    /**
+     * Reads the arrays written by writeObject().
+     *
+     * @param in stream to read from.
+     * @throws java.io.IOException on stream errors.
+     * @throws ClassNotFoundException on unknown classes.
+     */
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        moves = readInts(in, moveCount * 2, INITIAL_CAPACITY * 2);
+        garbage = readInts(in, garbageCount * 3, INITIAL_CAPACITY * 3);
+        detected = readInts(in, detectedCount, INITIAL_CAPACITY);
+    }
+
+    private static void writeInts(java.io.ObjectOutputStream out, int[] values, int length) throws java.io.IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static int[] readInts(java.io.ObjectInputStream in, int length, int minCapacity) throws java.io.IOException {
+        int[] values = new int[Math.max(length, minCapacity)];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "(map-delta (version " + getVersion() + ")"
+                + " (moves " + moveCount + ")"
+                + " (garbage " + garbageCount + ")"
+                + " (detected " + detectedCount + "))";
+    }
+}
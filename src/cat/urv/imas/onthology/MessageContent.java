@@ -27,5 +27,29 @@ public class MessageContent {
      * city information.
      */
     public static final String GET_MAP = "Get map";
+
+    /**
+     * Protocol of the messages sent from System agent, every simulation step,
+     * to all agents that got the city information. They contain a MapDelta
+     * with the changes of the step.
+     */
+    public static final String MAP_DELTA = "map-delta";
+
+    /**
+     * Protocol of the messages with a GarbageTaskBatch sent down the harvester
+     * coordinators: from the Coordinator agent to the Harvester Coordinator
+     * agent, with the garbage detected in a step, and from the latter to the
+     * coordinator of every type of garbage, which auctions them.
+     */
+    public static final String GARBAGE_TASKS = "garbage-tasks";
+
+    /**
+     * Protocol of the step barrier along the agent hierarchy: an agent
+     * SUBSCRIBEs to its superior to take part in it; once a step is done, a
+     * REQUEST with a StepReport of the moves committed in the step goes down
+     * the hierarchy, and an INFORM with a StepReport aggregating every
+     * subtree goes up.
+     */
+    public static final String STEP_BARRIER = "step-barrier";
     
 }
@@ -0,0 +1,364 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import java.util.Arrays;
+
+/**
+ * Report of a simulation step, aggregated up the agent hierarchy: every
+ * agent reports its own state and the moves it requests, and every
+ * coordinator merges the reports of its subordinates with its own before
+ * sending a single report to its superior. This way, the System agent gets a
+ * single report per step from the whole city. Going down, the request of
+ * every round carries the report of the moves committed in the step (see
+ * performed()), so that agents learn where they are.
+ *
+ * Moves are kept as pairs of (from, to) cell indices, as in MapDelta.
+ * Harvesters also report the garbage they pick up from a building or unload
+ * at a recycling center next to them; in the report of a performed step,
+ * the units of every action are the ones actually picked up or unloaded.
+ */
+public class StepReport implements java.io.Serializable {
+
+    /**
+     * Initial capacity of the moves array, in number of moves.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+    /**
+     * Kinds of garbage actions.
+     */
+    private static final int PICKUP = 0;
+    private static final int UNLOAD = 1;
+    /**
+     * Number of ints per garbage action: kind, harvester cell, target cell,
+     * garbage type and units.
+     */
+    private static final int ACTION_SIZE = 5;
+    /**
+     * Step of the rounds of the step barrier run before the first step,
+     * which only tell the agents taking part (see SimulationStepBehaviour).
+     */
+    public static final int JOINING = -1;
+
+    /**
+     * Step reported.
+     */
+    private final int step;
+    /**
+     * Number of agents whose reports are aggregated.
+     */
+    private int agents;
+    /**
+     * Number of harvesters, and how many of them have tasks to do.
+     */
+    private int harvesters;
+    private int busyHarvesters;
+    /**
+     * Garbage tasks held by the harvesters.
+     */
+    private int tasks;
+    /**
+     * Units of garbage the harvesters can still take.
+     */
+    private int remainingCapacity;
+    /**
+     * Messages sent to gather this report (requests and reports).
+     */
+    private int messages;
+    /**
+     * Garbage tasks the harvesters took since their last report.
+     */
+    private int awarded;
+    /**
+     * Requested moves, as pairs of (from, to) cell indices.
+     */
+    private int[] moves = new int[INITIAL_CAPACITY * 2];
+    /**
+     * Number of requested moves.
+     */
+    private int moveCount = 0;
+    /**
+     * Garbage actions, as groups of ACTION_SIZE ints.
+     */
+    private int[] actions = new int[0];
+    /**
+     * Number of garbage actions.
+     */
+    private int actionCount = 0;
+
+    /**
+     * Builds the report of a single agent.
+     *
+     * @param step step reported.
+     */
+    public StepReport(int step) {
+        this.step = step;
+        this.agents = 1;
+    }
+
+    /**
+     * Builds the report of the moves committed in a step, sent down the
+     * hierarchy when the step is done. It stands for no agent.
+     *
+     * @param step step done.
+     * @param delta changes of the step.
+     * @return report with the committed moves.
+     */
+    public static StepReport performed(int step, MapDelta delta) {
+        StepReport report = new StepReport(step, 0, 0, 0, 0, 0, 0, 0);
+        for (int i = 0; i < delta.getMoveCount(); i++) {
+            report.addMove(delta.getMoveFrom(i), delta.getMoveTo(i));
+        }
+        return report;
+    }
+
+    /**
+     * Builds a report with the given counters; used when decoding.
+     */
+    StepReport(int step, int agents, int harvesters, int busyHarvesters, int tasks, int remainingCapacity, int messages, int awarded) {
+        this.step = step;
+        this.agents = agents;
+        this.harvesters = harvesters;
+        this.busyHarvesters = busyHarvesters;
+        this.tasks = tasks;
+        this.remainingCapacity = remainingCapacity;
+        this.messages = messages;
+        this.awarded = awarded;
+    }
+
+    /**
+     * Sets the state of the reporting harvester.
+     *
+     * @param tasks tasks it holds.
+     * @param remainingCapacity units of garbage it can still take.
+     * @param busy true if it has tasks or garbage to unload.
+     */
+    public void setHarvester(int tasks, int remainingCapacity, boolean busy) {
+        this.harvesters = 1;
+        this.busyHarvesters = busy ? 1 : 0;
+        this.tasks = tasks;
+        this.remainingCapacity = remainingCapacity;
+    }
+
+    /**
+     * Requests a move for the next step.
+     *
+     * @param from cell index where the agent is.
+     * @param to cell index where it wants to go.
+     */
+    public void addMove(int from, int to) {
+        if (moveCount * 2 == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[moveCount * 2] = from;
+        moves[moveCount * 2 + 1] = to;
+        moveCount++;
+    }
+
+    /**
+     * Requests to pick up garbage from a building next to the harvester.
+     *
+     * @param harvester cell index of the harvester.
+     * @param building cell index of the building.
+     * @param type type of garbage.
+     * @param units units to pick up, at most.
+     */
+    public void addPickup(int harvester, int building, GarbageType type, int units) {
+        addAction(PICKUP, harvester, building, type, units);
+    }
+
+    /**
+     * Requests to unload garbage at a recycling center next to the
+     * harvester.
+     *
+     * @param harvester cell index of the harvester.
+     * @param center cell index of the recycling center.
+     * @param type type of garbage.
+     * @param units units to unload.
+     */
+    public void addUnload(int harvester, int center, GarbageType type, int units) {
+        addAction(UNLOAD, harvester, center, type, units);
+    }
+
+    private void addAction(int kind, int harvester, int target, GarbageType type, int units) {
+        if ((actionCount + 1) * ACTION_SIZE > actions.length) {
+            actions = Arrays.copyOf(actions, Math.max(INITIAL_CAPACITY, actionCount * 2) * ACTION_SIZE);
+        }
+        int a = actionCount * ACTION_SIZE;
+        actions[a] = kind;
+        actions[a + 1] = harvester;
+        actions[a + 2] = target;
+        actions[a + 3] = type.ordinal();
+        actions[a + 4] = units;
+        actionCount++;
+    }
+
+    /**
+     * Counts messages sent to gather this report.
+     *
+     * @param count number of messages.
+     */
+    public void addMessages(int count) {
+        messages += count;
+    }
+
+    /**
+     * Counts garbage tasks taken by the reporting harvester.
+     *
+     * @param count number of tasks.
+     */
+    public void addAwarded(int count) {
+        awarded += count;
+    }
+
+    /**
+     * Adds the report of a subordinate to this one.
+     *
+     * @param other report of the same step.
+     */
+    public void merge(StepReport other) {
+        agents += other.agents;
+        harvesters += other.harvesters;
+        busyHarvesters += other.busyHarvesters;
+        tasks += other.tasks;
+        remainingCapacity += other.remainingCapacity;
+        messages += other.messages;
+        awarded += other.awarded;
+        for (int i = 0; i < other.moveCount; i++) {
+            addMove(other.getMoveFrom(i), other.getMoveTo(i));
+        }
+        for (int i = 0; i < other.actionCount; i++) {
+            addAction(other.actions[i * ACTION_SIZE], other.getActionHarvester(i),
+                    other.getActionTarget(i), other.getActionType(i), other.getActionUnits(i));
+        }
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public int getAgents() {
+        return agents;
+    }
+
+    public int getHarvesters() {
+        return harvesters;
+    }
+
+    public int getBusyHarvesters() {
+        return busyHarvesters;
+    }
+
+    public int getTasks() {
+        return tasks;
+    }
+
+    public int getRemainingCapacity() {
+        return remainingCapacity;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public int getAwarded() {
+        return awarded;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getMoveFrom(int i) {
+        return moves[i * 2];
+    }
+
+    public int getMoveTo(int i) {
+        return moves[i * 2 + 1];
+    }
+
+    /**
+     * Gets where the agent of a cell goes.
+     *
+     * @param from cell index where the agent is.
+     * @return cell index of its move, or -1 if it has none.
+     */
+    public int getDestination(int from) {
+        for (int i = 0; i < moveCount; i++) {
+            if (moves[i * 2] == from) {
+                return moves[i * 2 + 1];
+            }
+        }
+        return -1;
+    }
+
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    /**
+     * Tells whether a garbage action is a pickup or an unload.
+     *
+     * @param i action number.
+     * @return true for a pickup.
+     */
+    public boolean isPickup(int i) {
+        return actions[i * ACTION_SIZE] == PICKUP;
+    }
+
+    public int getActionHarvester(int i) {
+        return actions[i * ACTION_SIZE + 1];
+    }
+
+    public int getActionTarget(int i) {
+        return actions[i * ACTION_SIZE + 2];
+    }
+
+    public GarbageType getActionType(int i) {
+        return GarbageType.values()[actions[i * ACTION_SIZE + 3]];
+    }
+
+    public int getActionUnits(int i) {
+        return actions[i * ACTION_SIZE + 4];
+    }
+
+    /**
+     * Gets the garbage action of the harvester of a cell.
+     *
+     * @param harvester cell index where the harvester is.
+     * @return action number, or -1 if it has none.
+     */
+    public int getAction(int harvester) {
+        for (int i = 0; i < actionCount; i++) {
+            if (actions[i * ACTION_SIZE + 1] == harvester) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "(step-report (step " + step + ")"
+                + " (agents " + agents + ")"
+                + " (harvesters " + busyHarvesters + "/" + harvesters + ")"
+                + " (tasks " + tasks + ")"
+                + " (moves " + moveCount + ")"
+                + " (garbage-actions " + actionCount + "))";
+    }
+}
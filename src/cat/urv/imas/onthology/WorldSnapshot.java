@@ -0,0 +1,331 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.onthology;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.map.Cell;
+import cat.urv.imas.map.CityGrid;
+import jade.core.AID;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshots of a fully initialized world (settings, city map with garbage,
+ * recycling centers with prices and agent placements), so that a city can
+ * be restarted or replicated without parsing its settings and building its
+ * map again.
+ * 
+ * A snapshot starts with a small header holding the settings, the recycling
+ * centers and the agents. It is followed, at an 8-byte aligned offset, by
+ * the raw cell data of the CityGrid (see CityGrid.writeCells()), in little
+ * endian order. Files are written and read through a memory mapping, so the
+ * cell data is copied straight into the grid arrays.
+ * 
+ * InitialGameSettings.load() recognizes snapshots by their MAGIC bytes.
+ */
+public class WorldSnapshot {
+
+    /**
+     * First bytes of every snapshot: "IMSW".
+     */
+    public static final int MAGIC = 0x494D5357;
+    /**
+     * Version of the format. Snapshots with another version are rejected.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /* Kinds of agent information. */
+    private static final int AGENT_INFO = 0;
+    private static final int AGENT_HARVESTER = 1;
+
+    private static final GarbageType[] GARBAGE_TYPES = GarbageType.values();
+
+    /**
+     * Tells whether the file is a snapshot, by its first bytes.
+     * 
+     * @param filename file to check.
+     * @return true if it is a snapshot.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isSnapshot(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /* ***************** Dumping **********************************************/
+
+    /**
+     * Dumps the current world into a snapshot file. Worlds kept as Cell
+     * objects are copied into a grid first; the given settings are not
+     * modified.
+     * 
+     * @param game world to dump.
+     * @param filename snapshot file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void dump(GameSettings game, String filename) throws IOException {
+        CityGrid grid = (game.grid != null) ? game.grid : CityGrid.fromCells(game.map);
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeInt(rows);
+        header.writeInt(cols);
+        header.writeFloat(game.getSeed());
+        header.writeInt(game.getSimulationSteps());
+        header.writeInt(game.newGarbageProbability);
+        header.writeInt(game.maxNumberBuildingWithNewGargabe);
+        header.writeInt(game.maxAmountOfNewGargabe);
+        header.writeInt(game.harvestersCapacity);
+        header.writeInt(game.version);
+        writeString(header, game.title);
+
+        int[] centers = grid.getCenters();
+        header.writeInt(centers.length);
+        for (int center : centers) {
+            header.writeInt(center);
+            for (int price : grid.getPrices(center)) {
+                header.writeInt(price);
+            }
+        }
+
+        GarbageType[][] allowed = game.allowedGarbageTypePerHarvester;
+        header.writeInt((allowed == null) ? 0 : allowed.length);
+        if (allowed != null) {
+            for (GarbageType[] types : allowed) {
+                writeGarbageTypes(header, types);
+            }
+        }
+
+        Map<AgentType, List<Cell>> agents = game.getAgentList();
+        header.writeInt((agents == null) ? 0 : agents.size());
+        if (agents != null) {
+            for (Map.Entry<AgentType, List<Cell>> entry : agents.entrySet()) {
+                header.writeInt(entry.getKey().ordinal());
+                header.writeInt(entry.getValue().size());
+                for (Cell cell : entry.getValue()) {
+                    int index = grid.index(cell.getRow(), cell.getCol());
+                    header.writeInt(index);
+                    writeAgent(header, grid.getAgent(index));
+                }
+            }
+        }
+        while (bytes.size() % 8 != 0) {
+            header.writeByte(0);
+        }
+        header.flush();
+
+        long cellsOffset = bytes.size();
+        long size = cellsOffset + CityGrid.cellBytes(rows, cols);
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw");
+                FileChannel channel = file.getChannel()) {
+            file.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.put(bytes.toByteArray());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            grid.writeCells(buffer);
+            buffer.force();
+        }
+    }
+
+    private static void writeAgent(DataOutputStream out, InfoAgent agent) throws IOException {
+        if (agent instanceof HarvesterInfoAgent) {
+            HarvesterInfoAgent harvester = (HarvesterInfoAgent) agent;
+            out.writeByte(AGENT_HARVESTER);
+            out.writeInt(harvester.getCapacity());
+            writeGarbageTypes(out, harvester.getAllowedType());
+        } else {
+            out.writeByte(AGENT_INFO);
+        }
+        AID aid = agent.getAID();
+        writeString(out, (aid == null) ? null : aid.getName());
+    }
+
+    private static void writeGarbageTypes(DataOutputStream out, GarbageType[] types) throws IOException {
+        out.writeInt((types == null) ? 0 : types.length);
+        if (types != null) {
+            for (GarbageType type : types) {
+                out.writeByte(type.ordinal());
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /* ***************** Opening **********************************************/
+
+    /**
+     * Opens a snapshot, getting back the world as it was dumped. The city
+     * map is always kept in a CityGrid. The routing table and the path
+     * planner are built on first use, as usual.
+     * 
+     * @param filename snapshot file.
+     * @return the world.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static GameSettings open(String filename) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+                FileChannel channel = file.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("'" + filename + "' is not a world snapshot.");
+        }
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("World snapshot version " + version + " is not supported.");
+        }
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        GameSettings game = new GameSettings();
+        game.setSeed(buffer.getFloat());
+        game.setSimulationSteps(buffer.getInt());
+        game.newGarbageProbability = buffer.getInt();
+        game.maxNumberBuildingWithNewGargabe = buffer.getInt();
+        game.maxAmountOfNewGargabe = buffer.getInt();
+        game.harvestersCapacity = buffer.getInt();
+        game.version = buffer.getInt();
+        game.title = readString(buffer);
+
+        int[] centers = new int[buffer.getInt()];
+        int[][] prices = new int[centers.length][3];
+        for (int c = 0; c < centers.length; c++) {
+            centers[c] = buffer.getInt();
+            for (int j = 0; j < 3; j++) {
+                prices[c][j] = buffer.getInt();
+            }
+        }
+        game.setRecyclingCenterPrices(prices);
+
+        game.allowedGarbageTypePerHarvester = new GarbageType[buffer.getInt()][];
+        for (int i = 0; i < game.allowedGarbageTypePerHarvester.length; i++) {
+            game.allowedGarbageTypePerHarvester[i] = readGarbageTypes(buffer);
+        }
+
+        // agents can only be placed once the grid is built, after the header
+        int agentTypes = buffer.getInt();
+        AgentType[] typeOf = new AgentType[agentTypes];
+        int[][] cellsOf = new int[agentTypes][];
+        InfoAgent[][] agentsOf = new InfoAgent[agentTypes][];
+        for (int t = 0; t < agentTypes; t++) {
+            typeOf[t] = AgentType.values()[buffer.getInt()];
+            cellsOf[t] = new int[buffer.getInt()];
+            agentsOf[t] = new InfoAgent[cellsOf[t].length];
+            for (int i = 0; i < cellsOf[t].length; i++) {
+                cellsOf[t][i] = buffer.getInt();
+                agentsOf[t][i] = readAgent(buffer, typeOf[t]);
+            }
+        }
+
+        buffer.position((buffer.position() + 7) & ~7);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        CityGrid grid = new CityGrid(rows, cols);
+        grid.readCells(buffer);
+        for (int c = 0; c < centers.length; c++) {
+            grid.setRecyclingCenter(centers[c], prices[c]);
+        }
+        game.grid = grid;
+        game.map = null;
+
+        game.agentList = new HashMap<>();
+        for (int t = 0; t < agentTypes; t++) {
+            List<Cell> cells = new ArrayList<>(cellsOf[t].length);
+            for (int i = 0; i < cellsOf[t].length; i++) {
+                int index = cellsOf[t][i];
+                grid.setAgent(index, agentsOf[t][i]);
+                cells.add(grid.cell(index / cols, index % cols));
+            }
+            game.agentList.put(typeOf[t], cells);
+        }
+        return game;
+    }
+
+    private static InfoAgent readAgent(ByteBuffer buffer, AgentType type) {
+        int kind = buffer.get();
+        int capacity = 0;
+        GarbageType[] allowed = null;
+        if (kind == AGENT_HARVESTER) {
+            capacity = buffer.getInt();
+            allowed = readGarbageTypes(buffer);
+        }
+        String name = readString(buffer);
+        AID aid = name.isEmpty() ? null : new AID(name, AID.ISGUID);
+        if (kind == AGENT_HARVESTER) {
+            return new HarvesterInfoAgent(type, aid, allowed, capacity);
+        }
+        return new InfoAgent(type, aid);
+    }
+
+    private static GarbageType[] readGarbageTypes(ByteBuffer buffer) {
+        GarbageType[] types = new GarbageType[buffer.getInt()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = GARBAGE_TYPES[buffer.get()];
+        }
+        return types;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads a settings file (XML, compact or a snapshot) and dumps its world
+     * into a snapshot, telling how long it takes to open it again.
+     * 
+     * @param args settings file and snapshot file.
+     * @throws Exception if the files cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: WorldSnapshot settings snapshot");
+            System.exit(-1);
+        }
+        dump(InitialGameSettings.load(args[0]), args[1]);
+        long start = System.nanoTime();
+        GameSettings game = open(args[1]);
+        System.out.println("Snapshot of " + game.getRows() + "x" + game.getCols()
+                + " cells opened in " + (System.nanoTime() - start) / 1000000 + " ms.");
+    }
+}
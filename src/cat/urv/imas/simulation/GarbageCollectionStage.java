@@ -0,0 +1,232 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.map.RecyclingCenterCell;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.HarvesterInfoAgent;
+import cat.urv.imas.onthology.InfoAgent;
+import cat.urv.imas.onthology.MapDelta;
+import cat.urv.imas.onthology.StepReport;
+import java.util.Arrays;
+
+/**
+ * Step stage where the harvesters pick up and unload garbage. The garbage
+ * actions requested since the last step (see StepReport.addPickup() and
+ * StepReport.addUnload()) are performed in order of harvester cell, so the
+ * result does not depend on the order they were requested in.
+ * 
+ * The garbage carried by every harvester is kept here, as it is picked up
+ * and unloaded: a harvester carries a single type of garbage at a time, up
+ * to its capacity. A pickup takes as much detected garbage of its type as
+ * the building has, up to the units requested and the capacity left, and
+ * records the garbage left into the step delta. When some is left, the
+ * building is recorded as detected again, so that the rest is announced as
+ * a new task. An unload takes up to the units carried of its type, when the
+ * recycling center recycles it, and they are paid at its price. The units
+ * collected and recycled, and the coins earned, are recorded in the
+ * statistics of the engine.
+ * 
+ * Actions are rejected (performed with 0 units) when there is no harvester
+ * in their cell, the harvester is not allowed to handle their type of
+ * garbage, or their target is not next to it or not a building (or
+ * recycling center). The actions performed in the last step, with the units
+ * actually picked up or unloaded, are added to the report sent down the
+ * agent hierarchy (see addPerformed()).
+ */
+public class GarbageCollectionStage implements StepStage {
+
+    /**
+     * Actions requested for the next step.
+     */
+    private StepReport requested = new StepReport(0);
+    /**
+     * Actions performed in the last step.
+     */
+    private StepReport performed = new StepReport(0);
+    /**
+     * Units of garbage carried by every harvester, by its position among the
+     * harvesters (see GameSettings.getAgentSlot()).
+     */
+    private int[] loads = new int[0];
+    /**
+     * Type of the garbage carried by every harvester; null when empty.
+     */
+    private GarbageType[] loadTypes = new GarbageType[0];
+
+    /**
+     * Requests all the garbage actions of a step report.
+     *
+     * @param report report aggregated along the agent hierarchy.
+     */
+    public void request(StepReport report) {
+        for (int i = 0; i < report.getActionCount(); i++) {
+            copy(report, i, report.getActionUnits(i), requested);
+        }
+    }
+
+    /**
+     * Number of garbage actions waiting for the next step.
+     *
+     * @return pending actions.
+     */
+    public int getPendingCount() {
+        return requested.getActionCount();
+    }
+
+    /**
+     * Adds the garbage actions performed in the last step to a report.
+     *
+     * @param report report of the performed step.
+     */
+    public void addPerformed(StepReport report) {
+        for (int i = 0; i < performed.getActionCount(); i++) {
+            copy(performed, i, performed.getActionUnits(i), report);
+        }
+    }
+
+    @Override
+    public void execute(SimulationEngine engine) {
+        GameSettings game = engine.getGame();
+        StepReport actions = requested;
+        requested = new StepReport(0);
+        performed = new StepReport(0);
+        int harvesters = game.getAgentCells(AgentType.HARVESTER).length;
+        if (loads.length != harvesters) {
+            loads = Arrays.copyOf(loads, harvesters);
+            loadTypes = Arrays.copyOf(loadTypes, harvesters);
+        }
+        int count = actions.getActionCount();
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) actions.getActionHarvester(i) << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (long key : keys) {
+            int i = (int) key;
+            int units = isValid(game, actions, i) ? perform(engine, actions, i) : 0;
+            copy(actions, i, units, performed);
+        }
+    }
+
+    /**
+     * Tells whether an action has a harvester next to its target, allowed to
+     * handle its type of garbage.
+     *
+     * @param game game settings.
+     * @param actions requested actions.
+     * @param i action number.
+     * @return true if the action can be performed.
+     */
+    private boolean isValid(GameSettings game, StepReport actions, int i) {
+        int cells = game.getRows() * game.getCols();
+        int cols = game.getCols();
+        int harvester = actions.getActionHarvester(i);
+        int target = actions.getActionTarget(i);
+        if (harvester < 0 || harvester >= cells || target < 0 || target >= cells
+                || harvester == target || !game.isStreet(harvester)
+                || Math.abs(harvester / cols - target / cols) > 1
+                || Math.abs(harvester % cols - target % cols) > 1) {
+            return false;
+        }
+        InfoAgent agent = game.getAgent(harvester);
+        if (agent == null || agent.getType() != AgentType.HARVESTER
+                || !(agent instanceof HarvesterInfoAgent)) {
+            return false;
+        }
+        GarbageType[] allowed = ((HarvesterInfoAgent) agent).getAllowedType();
+        GarbageType type = actions.getActionType(i);
+        for (int t = 0; allowed != null && t < allowed.length; t++) {
+            if (allowed[t] == type && type != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Performs a valid action, keeping up to date the load of its harvester.
+     *
+     * @param engine engine performing the step.
+     * @param actions requested actions.
+     * @param i action number.
+     * @return units picked up or unloaded.
+     */
+    private int perform(SimulationEngine engine, StepReport actions, int i) {
+        GameSettings game = engine.getGame();
+        MapDelta delta = engine.getDelta();
+        int target = actions.getActionTarget(i);
+        GarbageType type = actions.getActionType(i);
+        int harvester = actions.getActionHarvester(i);
+        int slot = game.getAgentSlot(harvester);
+        if (loads[slot] > 0 && loadTypes[slot] != type) {
+            return 0;
+        }
+        if (actions.isPickup(i)) {
+            int room = ((HarvesterInfoAgent) game.getAgent(harvester)).getCapacity() - loads[slot];
+            if (!game.isBuilding(target) || room <= 0) {
+                return 0;
+            }
+            int units = game.pickup(target, type, Math.min(actions.getActionUnits(i), room));
+            if (units > 0) {
+                loads[slot] += units;
+                loadTypes[slot] = type;
+                engine.getStatistics().add(StepStatistics.COLLECTED, type, units);
+                int left = game.getGarbageAmount(target, type);
+                delta.addGarbage(target, type, left);
+                if (left > 0) {
+                    delta.addDetected(target);
+                }
+            }
+            return units;
+        }
+        int units = Math.min(actions.getActionUnits(i), loads[slot]);
+        int[] prices = game.getPrices(target);
+        if (prices == null || units <= 0) {
+            return 0;
+        }
+        int price = prices[RecyclingCenterCell.priceIndex(type)];
+        if (price <= 0) {
+            return 0;
+        }
+        loads[slot] -= units;
+        if (loads[slot] == 0) {
+            loadTypes[slot] = null;
+        }
+        engine.getStatistics().addRecycled(target, type, units, units * price);
+        return units;
+    }
+
+    /**
+     * Copies an action into a report.
+     *
+     * @param from report with the action.
+     * @param i action number.
+     * @param units units of the copy.
+     * @param to report to add it to.
+     */
+    private static void copy(StepReport from, int i, int units, StepReport to) {
+        if (from.isPickup(i)) {
+            to.addPickup(from.getActionHarvester(i), from.getActionTarget(i), from.getActionType(i), units);
+        } else {
+            to.addUnload(from.getActionHarvester(i), from.getActionTarget(i), from.getActionType(i), units);
+        }
+    }
+}
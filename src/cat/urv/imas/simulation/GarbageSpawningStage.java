@@ -0,0 +1,84 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+import cat.urv.imas.map.GarbageIndex;
+import cat.urv.imas.map.SettableBuildingCell;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.GarbageType;
+import java.util.SplittableRandom;
+
+/**
+ * Step stage where new garbage appears in the city. At every step, with a
+ * probability of <code>newGarbageProbability</code> percent, up to
+ * <code>maxNumberBuildingWithNewGargabe</code> buildings without garbage
+ * get up to <code>maxAmountOfNewGargabe</code> units of a random type of
+ * garbage.
+ * 
+ * Buildings are drawn from the pool of free buildings of the garbage index,
+ * so a step costs as much as the garbage it spawns, and the same seed
+ * always spawns the same garbage at the same steps.
+ */
+public class GarbageSpawningStage implements StepStage {
+
+    private static final GarbageType[] TYPES = GarbageType.values();
+
+    /**
+     * Seeded random number generator.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Builds the stage with the seed of the game settings.
+     *
+     * @param game game settings.
+     */
+    public GarbageSpawningStage(GameSettings game) {
+        this(Float.floatToIntBits(game.getSeed()));
+    }
+
+    /**
+     * Builds the stage with the given seed.
+     *
+     * @param seed seed of the random number generator.
+     */
+    public GarbageSpawningStage(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public void execute(SimulationEngine engine) {
+        GameSettings game = engine.getGame();
+        if (random.nextInt(100) >= game.getNewGarbageProbability()
+                || game.getMaxNumberBuildingWithNewGargabe() <= 0
+                || game.getMaxAmountOfNewGargabe() <= 0) {
+            return;
+        }
+        GarbageIndex index = game.getGarbageIndex();
+        int buildings = 1 + random.nextInt(game.getMaxNumberBuildingWithNewGargabe());
+        for (int i = 0; i < buildings && index.freeCount() > 0; i++) {
+            int cell = index.getFree(random.nextInt(index.freeCount()));
+            GarbageType type = TYPES[random.nextInt(TYPES.length)];
+            int amount = 1 + random.nextInt(game.getMaxAmountOfNewGargabe());
+            // the building leaves the pool of free buildings
+            ((SettableBuildingCell) game.get(cell)).setGarbage(type, amount);
+            engine.getDelta().addGarbage(cell, type, amount);
+            engine.getStatistics().add(StepStatistics.SPAWNED, type, amount);
+        }
+    }
+}
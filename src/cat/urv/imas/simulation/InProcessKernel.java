@@ -0,0 +1,427 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.agent.HarvesterLogic;
+import cat.urv.imas.agent.ScoutLogic;
+import cat.urv.imas.map.Cell;
+import cat.urv.imas.map.StreetCell;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.GarbageBacklog;
+import cat.urv.imas.onthology.GarbageBid;
+import cat.urv.imas.onthology.GarbageTask;
+import cat.urv.imas.onthology.GarbageTaskBatch;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.HarvesterInfoAgent;
+import cat.urv.imas.onthology.InitialGameSettings;
+import cat.urv.imas.onthology.MapDelta;
+import cat.urv.imas.onthology.StepReport;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Simulation kernel that runs the agents in process, without JADE nor ACL
+ * messages, for parameter sweeps. The world evolves with the same stages the
+ * System agent uses (moves, garbage spawning and scout sensing), and the
+ * decisions of the agents are the same code the JADE agents run, called
+ * directly: the Coordinator turns the changes of the step into tasks
+ * (GarbageTaskBatch.fromDelta()), the type coordinators keep them in a
+ * GarbageBacklog and auction them, one type after the other, every
+ * HarvesterLogic bids and the tasks are awarded with
+ * GarbageTaskBatch.award(). Bids of every round are computed in parallel on
+ * a ForkJoinPool, sharing the world model. Then the harvesters and scouts
+ * learn the outcome of the step and every one decides its move (and every
+ * harvester its garbage action) into a single StepReport, requested to the
+ * MoveResolutionStage and GarbageCollectionStage of the engine for the next
+ * step, as the System agent does with the report aggregated along the agent
+ * hierarchy.
+ *
+ * This is the order the JADE-hosted run follows too, as the Harvester
+ * Coordinator agent holds the step barrier until the auctions of the step
+ * are done (see GarbageTaskDispatchBehaviour), so for a given seed both
+ * award the same tasks and record the same statistics (see
+ * cat.urv.imas.check.ConformanceCheck), unless barrier rounds are
+ * abandoned. The kernel is deterministic regardless of the parallelism.
+ */
+public class InProcessKernel implements StepStage {
+
+    /**
+     * Minimum number of bidders to compute the bids in parallel.
+     */
+    private static final int PARALLEL_BIDDERS = 64;
+    private static final GarbageType[] TYPES = GarbageType.values();
+
+    /**
+     * Engine advancing the world, with this kernel as last stage.
+     */
+    private final SimulationEngine engine;
+    /**
+     * Pool where the bids are computed.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * All harvesters, in the order of the agent list (creation order of the
+     * Harvester agents).
+     */
+    private final HarvesterLogic[] harvesters;
+    /**
+     * All scouts, in the order of the agent list.
+     */
+    private final ScoutLogic[] scouts;
+    /**
+     * Stage of the engine moving the agents; null if there is none, and then
+     * the agents do not move.
+     */
+    private final MoveResolutionStage moves;
+    /**
+     * Stage of the engine where the harvesters pick up and unload garbage;
+     * null if there is none.
+     */
+    private final GarbageCollectionStage collection;
+    /**
+     * Agent on every street cell, by flat index: harvesters first, then
+     * scouts; -1 if none.
+     */
+    private final int[] agentAt;
+    /**
+     * Agents moved in the last step, as indexes of agentAt.
+     */
+    private int[] movers = new int[64];
+    /**
+     * Harvesters able to harvest every type of garbage, in the same order.
+     */
+    private final HarvesterLogic[][] harvestersByType = new HarvesterLogic[TYPES.length][];
+    /**
+     * Tasks of every type waiting for an auction.
+     */
+    private final GarbageBacklog[] pending = new GarbageBacklog[TYPES.length];
+    /**
+     * Number of tasks awarded so far.
+     */
+    private long awarded = 0;
+
+    /**
+     * Builds the kernel for the given world, with its own engine.
+     *
+     * @param game game settings to simulate.
+     * @param pool pool where the agents are stepped.
+     */
+    public InProcessKernel(GameSettings game, ForkJoinPool pool) {
+        this(worldEngine(game), pool);
+    }
+
+    /**
+     * Builds the kernel as the last stage of an engine that already evolves
+     * the world (e.g. the one of the System agent, in pooled execution),
+     * including its MoveResolutionStage and GarbageCollectionStage.
+     *
+     * @param engine engine with the world stages.
+     * @param pool pool where the agents are stepped.
+     */
+    public InProcessKernel(SimulationEngine engine, ForkJoinPool pool) {
+        GameSettings game = engine.getGame();
+        this.pool = pool;
+        this.engine = engine;
+        this.engine.addStage(this);
+        this.moves = engine.getStage(MoveResolutionStage.class);
+        this.collection = engine.getStage(GarbageCollectionStage.class);
+        this.agentAt = new int[game.getRows() * game.getCols()];
+        Arrays.fill(agentAt, -1);
+
+        List<Cell> cells = game.getAgentList().get(AgentType.HARVESTER);
+        int count = (cells == null) ? 0 : cells.size();
+        this.harvesters = new HarvesterLogic[count];
+        for (int h = 0; h < count; h++) {
+            Cell cell = cells.get(h);
+            HarvesterInfoAgent info = (HarvesterInfoAgent) ((StreetCell) cell).getAgent();
+            harvesters[h] = new HarvesterLogic(cell.getRow(), cell.getCol(), h, info.getCapacity(), info.getAllowedType(), game.getRouting());
+            agentAt[game.indexOf(cell)] = h;
+        }
+        cells = game.getAgentList().get(AgentType.SCOUT);
+        count = (cells == null) ? 0 : cells.size();
+        this.scouts = new ScoutLogic[count];
+        for (int s = 0; s < count; s++) {
+            Cell cell = cells.get(s);
+            scouts[s] = new ScoutLogic(cell.getRow(), cell.getCol(), s, game.getRouting());
+            agentAt[game.indexOf(cell)] = harvesters.length + s;
+        }
+        for (GarbageType type : TYPES) {
+            List<HarvesterLogic> allowed = new ArrayList<>();
+            for (HarvesterLogic harvester : harvesters) {
+                if (harvester.isAllowedType(type)) {
+                    allowed.add(harvester);
+                }
+            }
+            harvestersByType[type.ordinal()] = allowed.toArray(new HarvesterLogic[allowed.size()]);
+            pending[type.ordinal()] = new GarbageBacklog();
+        }
+    }
+
+    /**
+     * Builds an engine with the stages the System agent uses to evolve the
+     * world.
+     *
+     * @param game game settings to simulate.
+     * @return engine without agent stages.
+     */
+    private static SimulationEngine worldEngine(GameSettings game) {
+        SimulationEngine engine = new SimulationEngine(game);
+        engine.addStage(new MoveResolutionStage());
+        engine.addStage(new GarbageCollectionStage());
+        engine.addStage(new GarbageSpawningStage(game));
+        engine.addStage(new ScoutSensingStage());
+        return engine;
+    }
+
+    /**
+     * Gets the engine advancing the world.
+     *
+     * @return simulation engine.
+     */
+    public SimulationEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Gets the harvesters, in creation order.
+     *
+     * @return logic of every harvester.
+     */
+    public HarvesterLogic[] getHarvesters() {
+        return harvesters;
+    }
+
+    /**
+     * Gets the scouts, in creation order.
+     *
+     * @return logic of every scout.
+     */
+    public ScoutLogic[] getScouts() {
+        return scouts;
+    }
+
+    /**
+     * Number of tasks awarded so far.
+     *
+     * @return awarded tasks.
+     */
+    public long getAwardedCount() {
+        return awarded;
+    }
+
+    /**
+     * Number of tasks no harvester could take yet.
+     *
+     * @return pending tasks.
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (GarbageBacklog backlog : pending) {
+            count += backlog.size();
+        }
+        return count;
+    }
+
+    /**
+     * Performs all remaining steps.
+     */
+    public void run() {
+        engine.run();
+    }
+
+    @Override
+    public void execute(SimulationEngine engine) {
+        GarbageTaskBatch announced = GarbageTaskBatch.fromDelta(engine.getGame(), engine.getDelta());
+        // split by type, as the Harvester Coordinator agent does
+        GarbageTaskBatch[] parts = new GarbageTaskBatch[TYPES.length];
+        for (GarbageTask task : announced.getTasks()) {
+            int t = task.getType().ordinal();
+            if (parts[t] == null) {
+                parts[t] = new GarbageTaskBatch(announced.getStep());
+            }
+            parts[t].add(task);
+        }
+        for (GarbageType type : TYPES) {
+            GarbageBacklog backlog = pending[type.ordinal()];
+            if (parts[type.ordinal()] != null) {
+                backlog.add(parts[type.ordinal()]);
+                if (backlog.hasNewTasks()) {
+                    auction(type, announced.getStep());
+                }
+            }
+        }
+        moved(engine.getDelta());
+        if (collection != null) {
+            collected();
+        }
+        int busy = 0;
+        for (HarvesterLogic harvester : harvesters) {
+            busy += harvester.isBusy() ? 1 : 0;
+        }
+        engine.getStatistics().addHarvesters(busy, harvesters.length - busy);
+        if (moves != null) {
+            StepReport report = new StepReport(announced.getStep());
+            for (HarvesterLogic harvester : harvesters) {
+                harvester.decide(report);
+            }
+            for (ScoutLogic scout : scouts) {
+                scout.decide(report);
+            }
+            moves.request(report);
+            if (collection != null) {
+                collection.request(report);
+            }
+        }
+    }
+
+    /**
+     * Tells the harvesters the garbage they picked up or unloaded in this
+     * step. Harvesters do not move while they act, so they are found where
+     * they requested the action.
+     */
+    private void collected() {
+        StepReport performed = new StepReport(engine.getCurrentStep());
+        collection.addPerformed(performed);
+        for (int i = 0; i < performed.getActionCount(); i++) {
+            int agent = agentAt[performed.getActionHarvester(i)];
+            if (agent < 0 || agent >= harvesters.length) {
+                continue;
+            }
+            if (performed.isPickup(i)) {
+                harvesters[agent].completeTask(performed.getActionUnits(i));
+            } else {
+                harvesters[agent].unloaded(performed.getActionUnits(i));
+            }
+        }
+    }
+
+    /**
+     * Updates the positions of the agents with the moves committed in this
+     * step. Every agent is told whether it moved, as the agents hosted by
+     * JADE are told by the step barrier.
+     *
+     * @param delta changes of this step.
+     */
+    private void moved(MapDelta delta) {
+        int count = delta.getMoveCount();
+        if (movers.length < count) {
+            movers = new int[Math.max(count, movers.length * 2)];
+        }
+        // all origins are cleared before filling the destinations, as
+        // chains of agents move at once
+        for (int i = 0; i < count; i++) {
+            movers[i] = agentAt[delta.getMoveFrom(i)];
+            agentAt[delta.getMoveFrom(i)] = -1;
+        }
+        for (int i = 0; i < count; i++) {
+            agentAt[delta.getMoveTo(i)] = movers[i];
+        }
+        for (int i = 0; i < count; i++) {
+            int agent = movers[i];
+            if (agent >= harvesters.length) {
+                scouts[agent - harvesters.length].moved(delta.getMoveTo(i));
+            } else if (agent >= 0) {
+                harvesters[agent].moved(delta.getMoveTo(i));
+            }
+        }
+        for (ScoutLogic scout : scouts) {
+            // the scouts that did not move turn if their move was refused
+            scout.moved(-1);
+        }
+    }
+
+    /**
+     * Runs a contract-net round with all the pending tasks of a type, as
+     * the GarbageAuctioneerBehaviour of its coordinator does.
+     *
+     * @param type type of garbage.
+     * @param step step of the round.
+     */
+    private void auction(GarbageType type, int step) {
+        GarbageBacklog backlog = pending[type.ordinal()];
+        HarvesterLogic[] bidders = harvestersByType[type.ordinal()];
+        backlog.expire(step);
+        if (backlog.isEmpty() || bidders.length == 0) {
+            return;
+        }
+        GarbageTaskBatch batch = backlog.take(step);
+
+        GarbageBid[] answers = new GarbageBid[bidders.length];
+        List<GarbageTask> tasks = batch.getTasks();
+        if (bidders.length >= PARALLEL_BIDDERS) {
+            pool.submit(() -> IntStream.range(0, bidders.length).parallel()
+                    .forEach(h -> answers[h] = bidders[h].bid(tasks))).join();
+        } else {
+            for (int h = 0; h < bidders.length; h++) {
+                answers[h] = bidders[h].bid(tasks);
+            }
+        }
+        // refusals are left out, keeping the order of the bidders
+        List<GarbageBid> bids = new ArrayList<>();
+        List<HarvesterLogic> proposers = new ArrayList<>();
+        for (int h = 0; h < bidders.length; h++) {
+            if (answers[h] != null) {
+                bids.add(answers[h]);
+                proposers.add(bidders[h]);
+            }
+        }
+        int[] winner = batch.award(bids);
+        List<GarbageTask> unassigned = new ArrayList<>();
+        int taken = 0;
+        for (int t = 0; t < tasks.size(); t++) {
+            if (winner[t] >= 0 && proposers.get(winner[t]).assignTask(tasks.get(t))) {
+                taken++;
+            } else {
+                unassigned.add(tasks.get(t));
+            }
+        }
+        awarded += taken;
+        engine.getStatistics().add(StepStatistics.AWARDED_TASKS, taken);
+        backlog.putBack(unassigned);
+    }
+
+    /**
+     * Runs a whole simulation in process and prints its statistics.
+     *
+     * @param args settings file and, optionally, the parallelism of the pool.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: InProcessKernel settings-file [parallelism]");
+            System.exit(1);
+        }
+        int parallelism = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameSettings game = InitialGameSettings.load(args[0]);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            InProcessKernel kernel = new InProcessKernel(game, pool);
+            kernel.run();
+            SimulationEngine engine = kernel.getEngine();
+            System.out.println(engine.getCurrentStep() + " steps in process ("
+                    + String.format("%.1f", engine.getStepsPerSecond()) + " steps/s, parallelism " + parallelism + ")");
+            System.out.println(engine.getStatistics());
+            System.out.println("Tasks awarded: " + kernel.getAwardedCount() + ", pending: " + kernel.getPendingCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.map.PathPlanner;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.MapDelta;
+import cat.urv.imas.onthology.StepReport;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Step stage where the agents move. The movements are requested by the
+ * System agent with the step report aggregated along the agent hierarchy
+ * (harvesters heading to their tasks and scouts exploring, see
+ * HarvesterLogic.decide() and ScoutLogic.decide()), or by the in-process
+ * kernel. The movements requested since the last step are resolved together against a bitmap of the occupied street cells,
+ * and committed in a single pass (see GameSettings.commitMoves()).
+ * 
+ * A movement is rejected when its origin has no agent (or already has a
+ * movement), its destination is not an adjacent street cell, an earlier
+ * movement goes to the same cell, or the destination stays occupied. An
+ * agent may enter a cell being left by another one, so chains and rotations
+ * of agents move at once, but two agents never swap their cells.
+ * 
+ * A movement may also give a farther street cell as destination, for the
+ * agent to head there. Its next cell is then planned with the path planner
+ * of the city: the cached shortest path avoiding the occupied cells, unless
+ * it runs into the paths planned before in the same step, in which case a
+ * search over the reservation table (see PathPlanner.planReserved()).
+ * 
+ * Movements are planned and resolved in order of origin cell, so the result
+ * does not depend on the order they were requested in. Rejections are not
+ * errors: the agents just stay where they are, and can find it out from the
+ * step delta.
+ */
+public class MoveResolutionStage implements StepStage {
+
+    /**
+     * Resolution state of a movement.
+     */
+    private static final byte PENDING = 0;
+    private static final byte VISITING = 1;
+    private static final byte ACCEPTED = 2;
+    private static final byte REJECTED = 3;
+
+    /**
+     * Street cells with an agent, by flat index. Built on first use from
+     * the agent list; from then on this stage must be the only one moving
+     * agents.
+     */
+    private BitSet occupied;
+    /**
+     * Cells whose agent has a valid movement this step.
+     */
+    private BitSet leaving;
+    /**
+     * Destinations already taken by a valid movement this step.
+     */
+    private BitSet claimed;
+    /**
+     * Movement leaving every cell, by flat index; only meaningful for the
+     * cells in leaving.
+     */
+    private int[] moveOf;
+    /**
+     * Requested movements, in order of arrival.
+     */
+    private int[] from = new int[64];
+    private int[] to = new int[64];
+    private int count = 0;
+    /**
+     * Movements packed as (from, to), to sort them.
+     */
+    private long[] keys = new long[64];
+    /**
+     * Resolution state and position in the chain being walked, by movement.
+     */
+    private byte[] state = new byte[64];
+    private int[] chainPosition = new int[64];
+    private int[] chain = new int[64];
+    /**
+     * Accepted movements of the last step.
+     */
+    private int[] acceptedFrom = new int[64];
+    private int[] acceptedTo = new int[64];
+    private int accepted = 0;
+    /**
+     * Movements requested for the last step.
+     */
+    private int requested = 0;
+
+    /**
+     * Requests a movement for the next step.
+     *
+     * @param fromCell flat index of the cell of the agent.
+     * @param toCell flat index of its destination: an adjacent street cell,
+     * or a farther one to head to.
+     */
+    public void request(int fromCell, int toCell) {
+        if (count == from.length) {
+            int length = count * 2;
+            from = Arrays.copyOf(from, length);
+            to = Arrays.copyOf(to, length);
+        }
+        from[count] = fromCell;
+        to[count] = toCell;
+        count++;
+    }
+
+    /**
+     * Requests all the movements of a step report.
+     *
+     * @param report report aggregated along the agent hierarchy.
+     */
+    public void request(StepReport report) {
+        for (int i = 0; i < report.getMoveCount(); i++) {
+            request(report.getMoveFrom(i), report.getMoveTo(i));
+        }
+    }
+
+    /**
+     * Number of movements waiting for the next step.
+     *
+     * @return pending movements.
+     */
+    public int getPendingCount() {
+        return count;
+    }
+
+    /**
+     * Number of movements requested for the last step.
+     *
+     * @return requested movements.
+     */
+    public int getRequestedCount() {
+        return requested;
+    }
+
+    /**
+     * Number of movements committed in the last step.
+     *
+     * @return accepted movements.
+     */
+    public int getAcceptedCount() {
+        return accepted;
+    }
+
+    /**
+     * Tells whether a street cell has an agent.
+     *
+     * @param cell flat cell index.
+     * @return true if it is occupied.
+     */
+    public boolean isOccupied(int cell) {
+        return occupied != null && occupied.get(cell);
+    }
+
+    @Override
+    public void execute(SimulationEngine engine) {
+        GameSettings game = engine.getGame();
+        requested = count;
+        accepted = 0;
+        if (count == 0) {
+            return;
+        }
+        if (occupied == null) {
+            init(game);
+        }
+        if (state.length < count) {
+            state = new byte[from.length];
+            chainPosition = new int[from.length];
+            chain = new int[from.length];
+            acceptedFrom = new int[from.length];
+            acceptedTo = new int[from.length];
+            keys = new long[from.length];
+        }
+        sort();
+        plan(game, engine.getCurrentStep());
+        validate(game);
+        for (int i = 0; i < count; i++) {
+            if (state[i] == PENDING) {
+                resolve(i);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (state[i] == ACCEPTED) {
+                acceptedFrom[accepted] = from[i];
+                acceptedTo[accepted] = to[i];
+                accepted++;
+            }
+        }
+        leaving.clear();
+        claimed.clear();
+        game.commitMoves(acceptedFrom, acceptedTo, accepted);
+        MapDelta delta = engine.getDelta();
+        for (int i = 0; i < accepted; i++) {
+            occupied.clear(acceptedFrom[i]);
+        }
+        for (int i = 0; i < accepted; i++) {
+            occupied.set(acceptedTo[i]);
+            delta.addMove(acceptedFrom[i], acceptedTo[i]);
+        }
+        count = 0;
+    }
+
+    /**
+     * Builds the occupancy bitmap from the current positions of the agents.
+     *
+     * @param game game settings.
+     */
+    private void init(GameSettings game) {
+        int cells = game.getRows() * game.getCols();
+        occupied = new BitSet(cells);
+        leaving = new BitSet(cells);
+        claimed = new BitSet(cells);
+        moveOf = new int[cells];
+        for (AgentType type : AgentType.values()) {
+            for (int cell : game.getAgentCells(type)) {
+                occupied.set(cell);
+            }
+        }
+    }
+
+    /**
+     * Sorts the requested movements by origin (and destination).
+     */
+    private void sort() {
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) from[i] << 32) | (to[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(keys, 0, count);
+        for (int i = 0; i < count; i++) {
+            from[i] = (int) (keys[i] >> 32);
+            to[i] = (int) keys[i];
+        }
+    }
+
+    /**
+     * Replaces the farther destinations by the next cell towards them. The
+     * paths planned are reserved, so that later agents avoid them; the
+     * agents that have to wait get no movement.
+     *
+     * @param game game settings.
+     * @param step current simulation step.
+     */
+    private void plan(GameSettings game, int step) {
+        PathPlanner planner = null;
+        int cols = game.getCols();
+        int cells = game.getRows() * cols;
+        for (int i = 0; i < count; i++) {
+            int f = from[i];
+            int t = to[i];
+            if (f < 0 || f >= cells || t < 0 || t >= cells || f == t
+                    || Math.abs(f / cols - t / cols) + Math.abs(f % cols - t % cols) == 1
+                    || !game.isStreet(f) || !game.isStreet(t)) {
+                continue;
+            }
+            if (planner == null) {
+                // paths are planned again every step
+                planner = game.getPlanner();
+                planner.advanceTo(step);
+                planner.clearReservations();
+            }
+            int[] path = planner.plan(f, t);
+            if (path == null || !planner.isClear(path, step)) {
+                path = planner.planReserved(f, t, step);
+            }
+            if (path == null) {
+                to[i] = -1;
+                continue;
+            }
+            planner.reserve(path, step);
+            to[i] = (path.length > 1) ? path[1] : -1;
+        }
+    }
+
+    /**
+     * Rejects the movements that are invalid on their own, and gives every
+     * destination to the first movement requesting it.
+     *
+     * @param game game settings.
+     */
+    private void validate(GameSettings game) {
+        int cols = game.getCols();
+        int cells = game.getRows() * cols;
+        for (int i = 0; i < count; i++) {
+            int f = from[i];
+            int t = to[i];
+            state[i] = REJECTED;
+            if (f < 0 || f >= cells || t < 0 || t >= cells
+                    || !occupied.get(f) || leaving.get(f) || claimed.get(t)) {
+                continue;
+            }
+            int rows = Math.abs(f / cols - t / cols);
+            int columns = Math.abs(f % cols - t % cols);
+            if (rows + columns != 1 || !game.isStreet(t)) {
+                continue;
+            }
+            state[i] = PENDING;
+            leaving.set(f);
+            claimed.set(t);
+            moveOf[f] = i;
+        }
+    }
+
+    /**
+     * Resolves a movement, and all the ones it depends on: the chain of
+     * agents in the way is followed until a free cell (all of them move), a
+     * cell whose agent stays (none of them moves) or a movement already
+     * resolved. A closed chain is a rotation, accepted unless it is a swap.
+     *
+     * @param first movement to resolve.
+     */
+    private void resolve(int first) {
+        int length = 0;
+        int move = first;
+        byte outcome;
+        while (true) {
+            state[move] = VISITING;
+            chainPosition[move] = length;
+            chain[length++] = move;
+            int t = to[move];
+            if (!occupied.get(t)) {
+                outcome = ACCEPTED;
+                break;
+            }
+            if (!leaving.get(t)) {
+                outcome = REJECTED;
+                break;
+            }
+            int next = moveOf[t];
+            if (state[next] == ACCEPTED || state[next] == REJECTED) {
+                outcome = state[next];
+                break;
+            }
+            if (state[next] == VISITING) {
+                int start = chainPosition[next];
+                byte rotation = (length - start > 2) ? ACCEPTED : REJECTED;
+                for (int i = start; i < length; i++) {
+                    state[chain[i]] = rotation;
+                }
+                length = start;
+                outcome = rotation;
+                break;
+            }
+            move = next;
+        }
+        for (int i = 0; i < length; i++) {
+            state[chain[i]] = outcome;
+        }
+    }
+}
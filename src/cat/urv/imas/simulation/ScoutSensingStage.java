@@ -0,0 +1,53 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+import cat.urv.imas.agent.AgentType;
+import cat.urv.imas.map.GarbageIndex;
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.MapDelta;
+
+/**
+ * Step stage where every scout senses its surroundings: the garbage of the
+ * buildings around every scout is detected, and the newly found buildings
+ * are recorded into the step delta.
+ */
+public class ScoutSensingStage implements StepStage {
+
+    @Override
+    public void execute(SimulationEngine engine) {
+        GameSettings game = engine.getGame();
+        GarbageIndex index = game.getGarbageIndex();
+        MapDelta delta = engine.getDelta();
+        int cols = game.getCols();
+        for (int scout : game.getAgentCells(AgentType.SCOUT)) {
+            int row = scout / cols;
+            int col = scout % cols;
+            int mask = index.neighbourMask(row, col);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int building = (row + GarbageIndex.rowOffset(direction)) * cols + col + GarbageIndex.colOffset(direction);
+                if (!game.isFound(building)) {
+                    game.detectGarbage(building);
+                    delta.addDetected(building);
+                }
+            }
+        }
+    }
+}
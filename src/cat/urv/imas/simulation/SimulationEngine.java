@@ -0,0 +1,207 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.MapDelta;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-step simulation engine. It advances the world
+ * <code>GameSettings.getSimulationSteps()</code> times, running all the
+ * registered stages in order at every step.
+ * 
+ * The engine does not depend on JADE nor Swing, so that it can be driven by
+ * the System agent (with or without GUI) or directly from a batch job.
+ */
+public class SimulationEngine {
+
+    /**
+     * World being simulated.
+     */
+    private final GameSettings game;
+    /**
+     * Stages to run at every step, in order.
+     */
+    private final List<StepStage> stages = new ArrayList<>();
+    /**
+     * Number of steps already performed. It is also the zero based number of
+     * the next step to perform.
+     */
+    private int currentStep = 0;
+    /**
+     * Accumulated time spent on steps, in nanoseconds.
+     */
+    private long elapsedNanos = 0;
+    /**
+     * Changes of the step being performed (or the last one performed). It is
+     * reused every step.
+     */
+    private final MapDelta delta;
+    /**
+     * Metrics recorded at every step.
+     */
+    private final StepStatistics statistics;
+
+    /**
+     * Builds the engine for the given world.
+     *
+     * @param game game settings to simulate.
+     */
+    public SimulationEngine(GameSettings game) {
+        this.game = game;
+        this.delta = new MapDelta(game.getVersion());
+        this.statistics = new StepStatistics(game);
+    }
+
+    /**
+     * Adds a new stage at the end of the step pipeline.
+     *
+     * @param stage stage to add.
+     */
+    public void addStage(StepStage stage) {
+        stages.add(stage);
+    }
+
+    /**
+     * Gets the first stage of a class in the step pipeline.
+     *
+     * @param type class of the stage.
+     * @param <T> type of the stage.
+     * @return the stage, or null if there is none.
+     */
+    public <T extends StepStage> T getStage(Class<T> type) {
+        for (StepStage stage : stages) {
+            if (type.isInstance(stage)) {
+                return type.cast(stage);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the world being simulated.
+     *
+     * @return game settings.
+     */
+    public GameSettings getGame() {
+        return game;
+    }
+
+    /**
+     * Gets the changes of the current step. Stages have to record on it all
+     * the changes they perform on the world, so that they can be shared with
+     * other agents once the step is completed.
+     *
+     * @return changes of the current (or last) step.
+     */
+    public MapDelta getDelta() {
+        return delta;
+    }
+
+    /**
+     * Gets the statistics of the simulation. Stages record on it the metrics
+     * that cannot be read from the step delta (e.g. spawned garbage).
+     *
+     * @return step statistics.
+     */
+    public StepStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Gets the zero based number of the step being performed, or the number
+     * of steps already performed when no step is running.
+     *
+     * @return current step number.
+     */
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
+    /**
+     * Total number of steps to simulate.
+     *
+     * @return number of steps.
+     */
+    public int getTotalSteps() {
+        return game.getSimulationSteps();
+    }
+
+    /**
+     * Tells whether there are steps left to simulate.
+     *
+     * @return true when a new step can be performed.
+     */
+    public boolean hasNextStep() {
+        return currentStep < game.getSimulationSteps();
+    }
+
+    /**
+     * Performs a single simulation step, running all stages in order.
+     *
+     * @return the number of steps performed so far.
+     */
+    public int step() {
+        if (!hasNextStep()) {
+            throw new IllegalStateException("Simulation already finished after " + currentStep + " steps.");
+        }
+        long start = System.nanoTime();
+        delta.reset(game.getVersion());
+        statistics.beginStep(currentStep);
+        for (StepStage stage : stages) {
+            stage.execute(this);
+        }
+        statistics.addDelta(game, delta);
+        currentStep++;
+        game.setVersion(delta.getVersion());
+        long latency = System.nanoTime() - start;
+        elapsedNanos += latency;
+        statistics.endStep(latency);
+        return currentStep;
+    }
+
+    /**
+     * Performs all remaining steps without interruption. Intended for batch
+     * and headless runs.
+     */
+    public void run() {
+        while (hasNextStep()) {
+            step();
+        }
+    }
+
+    /**
+     * Accumulated time spent running steps.
+     *
+     * @return time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Throughput of the simulation so far.
+     *
+     * @return steps per second, or 0 when no step was performed.
+     */
+    public double getStepsPerSecond() {
+        return (elapsedNanos == 0) ? 0 : currentStep * 1e9 / elapsedNanos;
+    }
+}
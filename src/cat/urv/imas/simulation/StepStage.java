@@ -0,0 +1,34 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+/**
+ * A piece of work the simulation engine performs on the world at every
+ * simulation step (spawning garbage, moving agents, collecting statistics...).
+ * Stages are executed in the order they were added to the engine.
+ */
+public interface StepStage {
+
+    /**
+     * Advances this stage for the engine's current step.
+     *
+     * @param engine engine running the simulation; gives access to the game
+     * settings and the current step number.
+     */
+    public void execute(SimulationEngine engine);
+}
@@ -0,0 +1,552 @@
+/**
+ * IMAS base code for the practical work. 
+ * Copyright (C) 2016 DEIM - URV
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cat.urv.imas.simulation;
+
+import cat.urv.imas.onthology.GameSettings;
+import cat.urv.imas.onthology.GarbageType;
+import cat.urv.imas.onthology.MapDelta;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Statistics of the simulation, recorded step by step. Every step is a row
+ * of metrics (see the metric constants) kept in a primitive ring buffer with
+ * the last steps, besides the totals of the whole run and the coins earned by
+ * every recycling center. Rows can be exported as CSV.
+ *
+ * Metrics are recorded by the thread running the steps; exporting and
+ * summarizing may be done from any other thread.
+ */
+public class StepStatistics {
+
+    /**
+     * Step latency, in nanoseconds.
+     */
+    public static final int LATENCY = 0;
+    /**
+     * Messages sent because of the step.
+     */
+    public static final int MESSAGES = 1;
+    /**
+     * Units of garbage spawned; one column per garbage type, in ordinal order.
+     */
+    public static final int SPAWNED = 2;
+    /**
+     * Units of garbage discovered by scouts; one column per garbage type.
+     */
+    public static final int DISCOVERED = SPAWNED + 3;
+    /**
+     * Units of garbage collected by harvesters; one column per garbage type.
+     */
+    public static final int COLLECTED = DISCOVERED + 3;
+    /**
+     * Units of garbage recycled; one column per garbage type.
+     */
+    public static final int RECYCLED = COLLECTED + 3;
+    /**
+     * Coins earned by recycling.
+     */
+    public static final int COINS = RECYCLED + 3;
+    /**
+     * Buildings whose garbage was discovered.
+     */
+    public static final int DISCOVERED_BUILDINGS = COINS + 1;
+    /**
+     * Harvesters with tasks to do or garbage to unload once the step is
+     * done.
+     */
+    public static final int BUSY_HARVESTERS = DISCOVERED_BUILDINGS + 1;
+    /**
+     * Harvesters with neither tasks nor garbage once the step is done.
+     */
+    public static final int IDLE_HARVESTERS = BUSY_HARVESTERS + 1;
+    /**
+     * Garbage tasks taken by the harvesters they were awarded to.
+     */
+    public static final int AWARDED_TASKS = IDLE_HARVESTERS + 1;
+    /**
+     * Step barrier rounds given up before all the agents reported the step.
+     */
+    public static final int ABANDONED_ROUNDS = AWARDED_TASKS + 1;
+    /**
+     * Number of metrics per step.
+     */
+    public static final int METRICS = ABANDONED_ROUNDS + 1;
+    /**
+     * Maximum number of steps kept in the ring buffer.
+     */
+    public static final int MAX_WINDOW = 1 << 14;
+
+    /**
+     * Maximum number of recycling centers listed in the summary.
+     */
+    private static final int MAX_LISTED_CENTERS = 20;
+
+    private static final GarbageType[] TYPES = GarbageType.values();
+    /**
+     * CSV column names, in metric order.
+     */
+    private static final String[] COLUMNS = columns();
+
+    /**
+     * Last steps, as rows of METRICS values.
+     */
+    private final long[] window;
+    /**
+     * Step number of every row of the window.
+     */
+    private final int[] steps;
+    /**
+     * Number of steps the window can hold.
+     */
+    private final int capacity;
+    /**
+     * Number of completed steps.
+     */
+    private int completed = 0;
+    /**
+     * Metrics of the step being performed.
+     */
+    private final long[] current = new long[METRICS];
+    /**
+     * Number of the step being performed, or -1 when no step is running.
+     */
+    private int currentStep = -1;
+    /**
+     * Totals of all completed steps.
+     */
+    private final long[] totals = new long[METRICS];
+    /**
+     * Highest step latency, in nanoseconds.
+     */
+    private long maxLatency = 0;
+    /**
+     * Number of columns of the map, to turn cell indices into positions.
+     */
+    private final int cols;
+    /**
+     * Cell indices of the recycling centers, sorted.
+     */
+    private final int[] centers;
+    /**
+     * Coins earned by every recycling center.
+     */
+    private final long[] centerCoins;
+    /**
+     * Units recycled by every recycling center.
+     */
+    private final long[] centerUnits;
+
+    /**
+     * Builds the statistics of the given game, with a window as long as the
+     * simulation (up to MAX_WINDOW steps).
+     *
+     * @param game game settings.
+     */
+    public StepStatistics(GameSettings game) {
+        this(game.getCols(), game.getRecyclingCenterCells(),
+                Math.max(1, Math.min(game.getSimulationSteps(), MAX_WINDOW)));
+    }
+
+    /**
+     * Builds empty statistics.
+     *
+     * @param cols number of columns of the map.
+     * @param centers sorted cell indices of the recycling centers.
+     * @param capacity number of steps kept in the window.
+     */
+    public StepStatistics(int cols, int[] centers, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid window size: " + capacity);
+        }
+        this.cols = cols;
+        this.centers = centers.clone();
+        this.centerCoins = new long[centers.length];
+        this.centerUnits = new long[centers.length];
+        this.capacity = capacity;
+        this.window = new long[capacity * METRICS];
+        this.steps = new int[capacity];
+    }
+
+    private static String[] columns() {
+        String[] names = new String[METRICS];
+        names[LATENCY] = "latency_ns";
+        names[MESSAGES] = "messages";
+        for (GarbageType type : TYPES) {
+            String suffix = "_" + type.name().toLowerCase();
+            names[SPAWNED + type.ordinal()] = "spawned" + suffix;
+            names[DISCOVERED + type.ordinal()] = "discovered" + suffix;
+            names[COLLECTED + type.ordinal()] = "collected" + suffix;
+            names[RECYCLED + type.ordinal()] = "recycled" + suffix;
+        }
+        names[COINS] = "coins";
+        names[DISCOVERED_BUILDINGS] = "discovered_buildings";
+        names[BUSY_HARVESTERS] = "busy_harvesters";
+        names[IDLE_HARVESTERS] = "idle_harvesters";
+        names[AWARDED_TASKS] = "awarded_tasks";
+        names[ABANDONED_ROUNDS] = "abandoned_rounds";
+        return names;
+    }
+
+    /* ***************** Recording ********************************************/
+
+    /**
+     * Starts recording a new step.
+     *
+     * @param step zero based step number.
+     */
+    public void beginStep(int step) {
+        Arrays.fill(current, 0);
+        currentStep = step;
+    }
+
+    /**
+     * Adds a value to a metric of the current step.
+     *
+     * @param metric metric constant.
+     * @param value value to add.
+     */
+    public void add(int metric, long value) {
+        current[metric] += value;
+    }
+
+    /**
+     * Adds a value to a per type metric of the current step.
+     *
+     * @param metric per type metric constant (SPAWNED, DISCOVERED, COLLECTED
+     * or RECYCLED).
+     * @param type garbage type.
+     * @param value value to add.
+     */
+    public void add(int metric, GarbageType type, long value) {
+        current[metric + type.ordinal()] += value;
+    }
+
+    /**
+     * Records garbage delivered to a recycling center.
+     *
+     * @param center cell index of the recycling center.
+     * @param type type of garbage.
+     * @param units units recycled.
+     * @param coins coins earned.
+     */
+    public void addRecycled(int center, GarbageType type, int units, int coins) {
+        current[RECYCLED + type.ordinal()] += units;
+        current[COINS] += coins;
+        int c = Arrays.binarySearch(centers, center);
+        if (c >= 0) {
+            centerCoins[c] += coins;
+            centerUnits[c] += units;
+        }
+    }
+
+    /**
+     * Counts sent messages. Messages sent between steps, like the delta sent
+     * once a step is completed, are counted in the last completed step.
+     *
+     * @param count number of messages.
+     */
+    public void addMessages(int count) {
+        addLate(MESSAGES, count);
+    }
+
+    /**
+     * Counts the busy and idle harvesters. Their state is reported once the
+     * step is done, so it may be counted between steps, in the last
+     * completed step.
+     *
+     * @param busy harvesters with tasks or garbage.
+     * @param idle harvesters with neither.
+     */
+    public void addHarvesters(int busy, int idle) {
+        addLate(BUSY_HARVESTERS, busy);
+        addLate(IDLE_HARVESTERS, idle);
+    }
+
+    /**
+     * Counts the garbage tasks the harvesters took. They report them once
+     * the step is done, so they may be counted between steps, in the last
+     * completed step.
+     *
+     * @param count number of tasks.
+     */
+    public void addAwarded(int count) {
+        addLate(AWARDED_TASKS, count);
+    }
+
+    /**
+     * Counts a step barrier round given up before all the agents reported.
+     * Rounds run between steps, so it is counted in the last completed step.
+     */
+    public void addAbandonedRound() {
+        addLate(ABANDONED_ROUNDS, 1);
+    }
+
+    /**
+     * Adds a value to a metric of the current step or, between steps, of
+     * the last completed one.
+     *
+     * @param metric metric constant.
+     * @param value value to add.
+     */
+    private synchronized void addLate(int metric, long value) {
+        if (currentStep >= 0 || completed == 0) {
+            current[metric] += value;
+        } else {
+            window[((completed - 1) % capacity) * METRICS + metric] += value;
+            totals[metric] += value;
+        }
+    }
+
+    /**
+     * Records the metrics that can be read from the changes of the step:
+     * the garbage of newly discovered buildings. The garbage collected and
+     * recycled is recorded by the GarbageCollectionStage, and the busy and
+     * idle harvesters by who steps them (see addHarvesters()).
+     *
+     * @param game game settings, once the step is applied.
+     * @param delta changes of the step.
+     */
+    public void addDelta(GameSettings game, MapDelta delta) {
+        for (int i = 0; i < delta.getDetectedCount(); i++) {
+            int cell = delta.getDetected(i);
+            if (game.isBuilding(cell)) {
+                current[DISCOVERED_BUILDINGS]++;
+                GarbageType type = game.getGarbageType(cell);
+                if (type != null) {
+                    current[DISCOVERED + type.ordinal()] += game.getGarbageAmount(cell, type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finishes the current step, storing its metrics.
+     *
+     * @param latencyNanos time spent on the step, in nanoseconds.
+     */
+    public synchronized void endStep(long latencyNanos) {
+        current[LATENCY] = latencyNanos;
+        int row = completed % capacity;
+        System.arraycopy(current, 0, window, row * METRICS, METRICS);
+        steps[row] = currentStep;
+        for (int m = 0; m < METRICS; m++) {
+            totals[m] += current[m];
+        }
+        maxLatency = Math.max(maxLatency, latencyNanos);
+        completed++;
+        currentStep = -1;
+    }
+
+    /* ***************** Reading **********************************************/
+
+    /**
+     * Number of completed steps.
+     *
+     * @return steps recorded so far.
+     */
+    public synchronized int getStepCount() {
+        return completed;
+    }
+
+    /**
+     * Number of steps currently held in the window.
+     *
+     * @return steps that can be read or exported.
+     */
+    public synchronized int getWindowSize() {
+        return Math.min(completed, capacity);
+    }
+
+    /**
+     * Gets a metric of a recent step.
+     *
+     * @param metric metric constant.
+     * @param back 0 for the last completed step, 1 for the previous one...
+     * @return value of the metric.
+     */
+    public synchronized long get(int metric, int back) {
+        if (back < 0 || back >= getWindowSize()) {
+            throw new IndexOutOfBoundsException("Step not in the window: " + back);
+        }
+        return window[((completed - 1 - back) % capacity) * METRICS + metric];
+    }
+
+    /**
+     * Gets the total of a metric over all completed steps.
+     *
+     * @param metric metric constant.
+     * @return sum of the metric.
+     */
+    public synchronized long getTotal(int metric) {
+        return totals[metric];
+    }
+
+    /**
+     * Gets the total of a per type metric over all completed steps.
+     *
+     * @param metric per type metric constant.
+     * @param type garbage type.
+     * @return sum of the metric.
+     */
+    public long getTotal(int metric, GarbageType type) {
+        return getTotal(metric + type.ordinal());
+    }
+
+    /**
+     * Gets the mean of a metric over the steps in the window.
+     *
+     * @param metric metric constant.
+     * @return mean value, or 0 when no step was completed.
+     */
+    public synchronized double getWindowMean(int metric) {
+        int size = getWindowSize();
+        if (size == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int row = 0; row < size; row++) {
+            sum += window[row * METRICS + metric];
+        }
+        return (double) sum / size;
+    }
+
+    /**
+     * Gets the highest step latency of the run.
+     *
+     * @return latency in nanoseconds.
+     */
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Fraction of harvester steps spent doing something.
+     *
+     * @return utilization between 0 and 1.
+     */
+    public synchronized double getHarvesterUtilization() {
+        long all = totals[BUSY_HARVESTERS] + totals[IDLE_HARVESTERS];
+        return (all == 0) ? 0 : (double) totals[BUSY_HARVESTERS] / all;
+    }
+
+    /**
+     * Coins earned by a recycling center.
+     *
+     * @param center cell index of the recycling center.
+     * @return coins earned so far, or 0 if the cell is not a center.
+     */
+    public synchronized long getCenterCoins(int center) {
+        int c = Arrays.binarySearch(centers, center);
+        return (c < 0) ? 0 : centerCoins[c];
+    }
+
+    /* ***************** Export ***********************************************/
+
+    /**
+     * Writes the steps of the window as CSV, with a header line.
+     *
+     * @param out destination.
+     * @throws IOException on write errors.
+     */
+    public synchronized void writeCsv(Appendable out) throws IOException {
+        out.append("step");
+        for (String column : COLUMNS) {
+            out.append(',').append(column);
+        }
+        out.append('\n');
+        int size = getWindowSize();
+        for (int i = size - 1; i >= 0; i--) {
+            int row = (completed - 1 - i) % capacity;
+            out.append(Integer.toString(steps[row]));
+            for (int m = 0; m < METRICS; m++) {
+                out.append(',').append(Long.toString(window[row * METRICS + m]));
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Writes the recycling centers as CSV, with a header line.
+     *
+     * @param out destination.
+     * @throws IOException on write errors.
+     */
+    public synchronized void writeCentersCsv(Appendable out) throws IOException {
+        out.append("row,col,recycled,coins\n");
+        for (int c = 0; c < centers.length; c++) {
+            out.append(Integer.toString(centers[c] / cols)).append(',')
+                    .append(Integer.toString(centers[c] % cols)).append(',')
+                    .append(Long.toString(centerUnits[c])).append(',')
+                    .append(Long.toString(centerCoins[c])).append('\n');
+        }
+    }
+
+    /**
+     * Gets the steps of the window as CSV.
+     *
+     * @return CSV text.
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder();
+        try {
+            writeCsv(csv);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Human readable summary of the run.
+     *
+     * @return multi line summary.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("Steps: ").append(completed).append('\n');
+        text.append(String.format("Step latency: %.3f ms mean (last %d steps), %.3f ms max%n",
+                getWindowMean(LATENCY) / 1e6, getWindowSize(), maxLatency / 1e6));
+        text.append("Messages: ").append(totals[MESSAGES]);
+        if (totals[ABANDONED_ROUNDS] > 0) {
+            text.append(" (").append(totals[ABANDONED_ROUNDS]).append(" step barrier rounds abandoned)");
+        }
+        text.append('\n');
+        text.append(String.format("%-12s%10s%10s%10s%10s%n", "Garbage", "spawned", "found", "collected", "recycled"));
+        for (GarbageType type : TYPES) {
+            int t = type.ordinal();
+            text.append(String.format("%-12s%10d%10d%10d%10d%n", type,
+                    totals[SPAWNED + t], totals[DISCOVERED + t], totals[COLLECTED + t], totals[RECYCLED + t]));
+        }
+        text.append("Buildings discovered: ").append(totals[DISCOVERED_BUILDINGS]).append('\n');
+        text.append("Garbage tasks awarded: ").append(totals[AWARDED_TASKS]).append('\n');
+        text.append(String.format("Harvester utilization: %.1f%% (%d idle harvester steps)%n",
+                getHarvesterUtilization() * 100, totals[IDLE_HARVESTERS]));
+        text.append("Coins: ").append(totals[COINS]).append('\n');
+        for (int c = 0; c < Math.min(centers.length, MAX_LISTED_CENTERS); c++) {
+            text.append("  center (").append(centers[c] / cols).append(',').append(centers[c] % cols)
+                    .append("): ").append(centerCoins[c]).append(" coins, ")
+                    .append(centerUnits[c]).append(" units\n");
+        }
+        if (centers.length > MAX_LISTED_CENTERS) {
+            text.append("  ... ").append(centers.length - MAX_LISTED_CENTERS).append(" more centers\n");
+        }
+        return text.toString();
+    }
+}